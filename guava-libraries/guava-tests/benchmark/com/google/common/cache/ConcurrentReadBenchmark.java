@@ -0,0 +1,95 @@
+/*
+ * Copyright (C) 2013 The Guava Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.common.cache;
+
+import com.google.caliper.Param;
+import com.google.caliper.legacy.Benchmark;
+import com.google.caliper.runner.CaliperMain;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Measures how the throughput of cache hits scales with the number of reading threads. Each rep
+ * is one {@link Cache#getIfPresent} call, shared out between {@code threads} threads, so a
+ * perfectly scalable cache would report a time per rep inversely proportional to the number of
+ * threads (up to the number of processors).
+ *
+ * <p>The cache is bounded by size, so every hit is recorded in its segment's read buffer, whose
+ * kind is chosen by {@code readBufferMode}.
+ */
+public class ConcurrentReadBenchmark extends Benchmark {
+  @Param({"1", "2", "4", "8", "16", "32", "64"}) int threads;
+  @Param({"1", "4", "16"}) int concurrencyLevel;
+  @Param("10000") int size;
+  @Param ReadBufferMode readBufferMode;
+
+  private Cache<Integer, Integer> cache;
+  private Integer[] keys;
+  private ExecutorService executor;
+
+  @Override protected void setUp() {
+    cache = CacheBuilder.newBuilder()
+        .concurrencyLevel(concurrencyLevel)
+        .maximumSize(2 * size)
+        .readBufferMode(readBufferMode)
+        .build();
+    keys = new Integer[size];
+    Random random = new Random(0);
+    for (int i = 0; i < size; i++) {
+      keys[i] = random.nextInt();
+      cache.put(keys[i], i);
+    }
+    executor = Executors.newFixedThreadPool(threads);
+  }
+
+  @Override protected void tearDown() {
+    executor.shutdownNow();
+  }
+
+  public int time(int reps) throws Exception {
+    final int perThread = reps / threads;
+    List<Future<Integer>> futures = new ArrayList<Future<Integer>>(threads);
+    for (int t = 0; t < threads; t++) {
+      final int offset = t * (size / threads);
+      futures.add(executor.submit(new Callable<Integer>() {
+        @Override public Integer call() {
+          int dummy = 0;
+          int mask = Integer.highestOneBit(size) - 1;
+          for (int i = 0; i < perThread; i++) {
+            dummy += cache.getIfPresent(keys[(offset + i) & mask]);
+          }
+          return dummy;
+        }
+      }));
+    }
+    int dummy = 0;
+    for (Future<Integer> future : futures) {
+      dummy += future.get();
+    }
+    return dummy;
+  }
+
+  public static void main(String[] args) {
+    CaliperMain.main(ConcurrentReadBenchmark.class, args);
+  }
+}
@@ -0,0 +1,181 @@
+/*
+ * Copyright (C) 2013 The Guava Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.common.cache;
+
+import com.google.caliper.Param;
+import com.google.caliper.legacy.Benchmark;
+import com.google.caliper.runner.CaliperMain;
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+import com.google.common.primitives.Longs;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Compares the hit rate of the cache's {@link EvictionPolicy eviction policies} by replaying a
+ * trace of keys through a {@link LoadingCache}.
+ *
+ * <p>A recorded trace may be replayed by setting {@code traceFile} to the path of a text file
+ * containing one numeric key per line. Otherwise a synthetic trace is generated according to
+ * {@code workload}. The hit rate is printed when the benchmark is torn down.
+ */
+public class EvictionPolicyHitRateBenchmark extends Benchmark {
+  @Param({"LRU", "TINY_LFU"}) EvictionPolicy policy;
+  @Param({"ZIPF", "ZIPF_WITH_SCAN", "LOOP"}) Workload workload;
+  @Param("1000") int maximumSize;
+  @Param("10000") int distinctKeys;
+  @Param("1000000") int traceLength;
+  @Param("") String traceFile;
+
+  enum Workload {
+    /** Keys are drawn from a Zipfian distribution, so a small set of keys is very popular. */
+    ZIPF {
+      @Override long[] generate(int distinctKeys, int length, Random random) {
+        return zipf(distinctKeys, length, random);
+      }
+    },
+
+    /**
+     * A Zipfian trace interrupted by periodic scans over keys that are never requested again,
+     * mimicking a batch job walking the whole key space.
+     */
+    ZIPF_WITH_SCAN {
+      @Override long[] generate(int distinctKeys, int length, Random random) {
+        long[] trace = zipf(distinctKeys, length, random);
+        int period = 10 * distinctKeys;
+        long scanKey = distinctKeys;
+        for (int start = period / 2; start < length; start += period) {
+          int end = Math.min(length, start + distinctKeys);
+          for (int i = start; i < end; i++) {
+            trace[i] = scanKey++;
+          }
+        }
+        return trace;
+      }
+    },
+
+    /** Repeatedly cycles through every key in order, which defeats LRU when it does not fit. */
+    LOOP {
+      @Override long[] generate(int distinctKeys, int length, Random random) {
+        long[] trace = new long[length];
+        for (int i = 0; i < length; i++) {
+          trace[i] = i % distinctKeys;
+        }
+        return trace;
+      }
+    };
+
+    abstract long[] generate(int distinctKeys, int length, Random random);
+  }
+
+  static final double ZIPF_EXPONENT = 0.9;
+
+  final AtomicLong requests = new AtomicLong();
+  final AtomicLong misses = new AtomicLong();
+
+  LoadingCache<Long, Long> cache;
+  long[] trace;
+
+  @Override protected void setUp() throws IOException {
+    trace = traceFile.isEmpty()
+        ? workload.generate(distinctKeys, traceLength, new Random(0))
+        : readTrace(new File(traceFile));
+
+    cache = CacheBuilder.newBuilder()
+        .concurrencyLevel(1)
+        .maximumSize(maximumSize)
+        .evictionPolicy(policy)
+        .build(new CacheLoader<Long, Long>() {
+          @Override public Long load(Long key) {
+            misses.incrementAndGet();
+            return key;
+          }
+        });
+
+    // warm the cache with one pass over the trace
+    for (long key : trace) {
+      cache.getUnchecked(key);
+    }
+    requests.set(0);
+    misses.set(0);
+  }
+
+  public long time(int reps) {
+    long dummy = 0;
+    int index = 0;
+    for (int i = 0; i < reps; i++) {
+      dummy += cache.getUnchecked(trace[index]);
+      if (++index == trace.length) {
+        index = 0;
+      }
+    }
+    requests.addAndGet(reps);
+    return dummy;
+  }
+
+  @Override protected void tearDown() {
+    double req = requests.get();
+    double hit = req - misses.get();
+    System.out.println(policy + " " + workload + " hit rate: " + hit / req);
+  }
+
+  static long[] readTrace(File file) throws IOException {
+    List<String> lines = Files.readLines(file, Charsets.UTF_8);
+    long[] keys = new long[lines.size()];
+    int size = 0;
+    for (String line : lines) {
+      Long key = Longs.tryParse(line.trim());
+      if (key != null) {
+        keys[size++] = key;
+      }
+    }
+    return Arrays.copyOf(keys, size);
+  }
+
+  static long[] zipf(int distinctKeys, int length, Random random) {
+    double[] cumulative = new double[distinctKeys];
+    double sum = 0;
+    for (int i = 0; i < distinctKeys; i++) {
+      sum += 1.0 / Math.pow(i + 1, ZIPF_EXPONENT);
+      cumulative[i] = sum;
+    }
+
+    // shuffle the ranks so that popular keys are not clustered in the key space
+    long[] keys = new long[distinctKeys];
+    for (int i = 0; i < distinctKeys; i++) {
+      int j = random.nextInt(i + 1);
+      keys[i] = keys[j];
+      keys[j] = i;
+    }
+
+    long[] trace = new long[length];
+    for (int i = 0; i < length; i++) {
+      int rank = Arrays.binarySearch(cumulative, random.nextDouble() * sum);
+      trace[i] = keys[(rank < 0) ? Math.min(-rank - 1, distinctKeys - 1) : rank];
+    }
+    return trace;
+  }
+
+  public static void main(String[] args) {
+    CaliperMain.main(EvictionPolicyHitRateBenchmark.class, args);
+  }
+}
@@ -35,6 +35,14 @@ public class MapMakerComparisonBenchmark extends Benchmark {
 
   private static final Function<Object, Object> IDENTITY = Functions.identity();
 
+  private static final int MAXIMUM_SIZE = 1024;
+  private static final Integer[] KEYS = new Integer[4 * MAXIMUM_SIZE];
+  static {
+    for (int i = 0; i < KEYS.length; i++) {
+      KEYS[i] = i;
+    }
+  }
+
   // Loading/computing versions:
   private final Map<Object, Object> computingMap = new MapMaker().makeComputingMap(IDENTITY);
   private final LoadingCache<Object, Object> loadingCache =
@@ -47,11 +55,21 @@ public class MapMakerComparisonBenchmark extends Benchmark {
   private final Cache<Object, Object> cache = CacheBuilder.newBuilder().recordStats().build();
   private final Cache<Object, Object> cacheNoStats = CacheBuilder.newBuilder().build();
 
+  // Bounded versions, with segment-wide and fine-grained locking:
+  private final Cache<Object, Object> boundedCache =
+      CacheBuilder.newBuilder().maximumSize(MAXIMUM_SIZE).build();
+  private final Cache<Object, Object> fineGrainedCache = CacheBuilder.newBuilder()
+      .concurrencyMode(ConcurrencyMode.FINE_GRAINED)
+      .maximumSize(MAXIMUM_SIZE)
+      .build();
+
   @Override
   public void setUp() {
     map.put(TEST_KEY, TEST_VALUE);
     cache.put(TEST_KEY, TEST_VALUE);
     cacheNoStats.put(TEST_KEY, TEST_VALUE);
+    boundedCache.put(TEST_KEY, TEST_VALUE);
+    fineGrainedCache.put(TEST_KEY, TEST_VALUE);
   }
 
   public void timeComputingMapMaker(int rep) {
@@ -90,6 +108,32 @@ public class MapMakerComparisonBenchmark extends Benchmark {
     }
   }
 
+  public void timeBoundedCacheBuilder(int rep) {
+    for (int i = 0; i < rep; i++) {
+      boundedCache.getIfPresent(TEST_KEY);
+    }
+  }
+
+  public void timeFineGrainedCacheBuilder(int rep) {
+    for (int i = 0; i < rep; i++) {
+      fineGrainedCache.getIfPresent(TEST_KEY);
+    }
+  }
+
+  public void timeBoundedCacheBuilder_put(int rep) {
+    int mask = KEYS.length - 1;
+    for (int i = 0; i < rep; i++) {
+      boundedCache.put(KEYS[i & mask], TEST_VALUE);
+    }
+  }
+
+  public void timeFineGrainedCacheBuilder_put(int rep) {
+    int mask = KEYS.length - 1;
+    for (int i = 0; i < rep; i++) {
+      fineGrainedCache.put(KEYS[i & mask], TEST_VALUE);
+    }
+  }
+
   public static void main(String[] args) {
     CaliperMain.main(MapMakerComparisonBenchmark.class, args);
   }
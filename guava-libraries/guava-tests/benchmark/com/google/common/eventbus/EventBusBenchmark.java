@@ -19,19 +19,31 @@ package com.google.common.eventbus;
 import com.google.caliper.legacy.Benchmark;
 import com.google.caliper.runner.CaliperMain;
 
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
 /**
  * Benchmark for {@link EventBus}.
  *
  * @author Eric Fellheimer
  */
 public class EventBusBenchmark extends Benchmark {
+  private static final int NUM_THREADS = 8;
 
   private EventBus eventBus;
+  private ExecutorService executorService;
 
   @Override
   protected void setUp() {
     eventBus = new EventBus("for benchmarking purposes");
     eventBus.register(this);
+    executorService = Executors.newFixedThreadPool(NUM_THREADS);
+  }
+
+  @Override
+  protected void tearDown() {
+    executorService.shutdown();
   }
 
   public void timePostStrings(int reps) {
@@ -40,11 +52,45 @@ public class EventBusBenchmark extends Benchmark {
     }
   }
 
+  /**
+   * Posts {@code reps} events from each of {@link #NUM_THREADS} threads at once, to measure the
+   * contention between posting threads.  The handler allows concurrent events, so that the
+   * threads only contend inside the bus.
+   */
+  public void timePostIntegers_multiThreaded(final int reps) throws InterruptedException {
+    final CountDownLatch startLatch = new CountDownLatch(1);
+    final CountDownLatch doneLatch = new CountDownLatch(NUM_THREADS);
+    for (int i = 0; i < NUM_THREADS; i++) {
+      executorService.execute(new Runnable() {
+        @Override public void run() {
+          try {
+            startLatch.await();
+            for (int j = 0; j < reps; j++) {
+              eventBus.post(j);
+            }
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+          } finally {
+            doneLatch.countDown();
+          }
+        }
+      });
+    }
+    startLatch.countDown();
+    doneLatch.await();
+  }
+
   @Subscribe
   public void handleStrings(String string) {
     // Nothing to do here.
   }
 
+  @Subscribe
+  @AllowConcurrentEvents
+  public void handleIntegers(Integer integer) {
+    // Nothing to do here.
+  }
+
   public static void main(String[] args) {
     CaliperMain.main(EventBusBenchmark.class, args);
   }
@@ -0,0 +1,84 @@
+/*
+ * Copyright (C) 2013 The Guava Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.common.eventbus;
+
+import com.google.caliper.Param;
+import com.google.caliper.legacy.Benchmark;
+import com.google.caliper.runner.CaliperMain;
+
+import java.lang.reflect.Method;
+
+/**
+ * Benchmarks for the {@link HandlerDispatchStrategy} implementations, which
+ * compare calling a handler method by reflection to calling it from a
+ * generated invoker.
+ */
+public class EventHandlerBenchmark extends Benchmark {
+
+  enum Impl {
+    REFLECTIVE {
+      @Override HandlerDispatchStrategy newDispatcher() {
+        return new ReflectiveHandlerDispatcher();
+      }
+    },
+    GENERATED {
+      @Override HandlerDispatchStrategy newDispatcher() {
+        return new GeneratedHandlerDispatcher();
+      }
+    };
+
+    abstract HandlerDispatchStrategy newDispatcher();
+  }
+
+  @Param Impl impl;
+
+  private final Handler target = new Handler();
+  private EventHandler handler;
+  private EventHandler synchronizedHandler;
+
+  @Override protected void setUp() throws Exception {
+    Method method = Handler.class.getMethod("handle", String.class);
+    HandlerDispatchStrategy.Invoker invoker = impl.newDispatcher().invokerFor(method);
+    handler = new EventHandler(target, method, invoker);
+    synchronizedHandler = new SynchronizedEventHandler(target, method, invoker);
+  }
+
+  public int timeHandleEvent(int reps) throws Exception {
+    for (int i = 0; i < reps; i++) {
+      handler.handleEvent("hello there");
+    }
+    return target.count;
+  }
+
+  public int timeHandleEvent_synchronized(int reps) throws Exception {
+    for (int i = 0; i < reps; i++) {
+      synchronizedHandler.handleEvent("hello there");
+    }
+    return target.count;
+  }
+
+  public static class Handler {
+    int count;
+
+    public void handle(String event) {
+      count++;
+    }
+  }
+
+  public static void main(String[] args) {
+    CaliperMain.main(EventHandlerBenchmark.class, args);
+  }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright (C) 2013 The Guava Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.common.hash;
+
+import com.google.caliper.Param;
+import com.google.caliper.legacy.Benchmark;
+import com.google.caliper.runner.CaliperMain;
+import com.google.common.hash.BloomFilter.Layout;
+
+import java.util.Random;
+
+/**
+ * Compares the lookup latency of the {@link BloomFilter.Layout layouts} of a {@link BloomFilter},
+ * for filters which fit in the processor caches and for filters which are much larger.
+ *
+ * <p>Each filter is filled to the number of insertions it is sized for, and then queried with
+ * keys of which about half were inserted. The measured false positive probability is printed when
+ * the benchmark is torn down.
+ */
+public class BloomFilterBenchmark extends Benchmark {
+  @Param({"1000000", "100000000", "1000000000"}) long numBits;
+  @Param Layout layout;
+  @Param("0.01") double fpp;
+
+  private static final int QUERY_COUNT = 1 << 16;
+  private static final int FPP_SAMPLE_SIZE = 1000000;
+
+  private BloomFilter<Long> filter;
+  private long[] queries;
+  private double measuredFpp;
+
+  @Override protected void setUp() {
+    // the inverse of BloomFilter.optimalNumOfBits, so that the filter has about numBits bits
+    int expectedInsertions = (int) (numBits * Math.log(2) * Math.log(2) / -Math.log(fpp));
+    filter = BloomFilter.create(Funnels.longFunnel(), expectedInsertions, fpp, layout);
+    for (long i = 0; i < expectedInsertions; i++) {
+      filter.put(i);
+    }
+
+    Random random = new Random(42);
+    queries = new long[QUERY_COUNT];
+    for (int i = 0; i < QUERY_COUNT; i++) {
+      queries[i] = random.nextInt(2 * expectedInsertions);
+    }
+
+    int falsePositives = 0;
+    for (long i = expectedInsertions; i < expectedInsertions + FPP_SAMPLE_SIZE; i++) {
+      if (filter.mightContain(i)) {
+        falsePositives++;
+      }
+    }
+    measuredFpp = (double) falsePositives / FPP_SAMPLE_SIZE;
+  }
+
+  public int timeMightContain(int reps) {
+    BloomFilter<Long> filter = this.filter;
+    long[] queries = this.queries;
+    int mask = QUERY_COUNT - 1;
+    int dummy = 0;
+    for (int i = 0; i < reps; i++) {
+      if (filter.mightContain(queries[i & mask])) {
+        dummy++;
+      }
+    }
+    return dummy;
+  }
+
+  @Override protected void tearDown() {
+    System.out.println(layout + " " + filter.bitSize() + " bits, measured fpp: " + measuredFpp);
+  }
+
+  public static void main(String[] args) {
+    CaliperMain.main(BloomFilterBenchmark.class, args);
+  }
+}
@@ -64,6 +64,37 @@ public class ChecksumBenchmark extends Benchmark {
     return result;
   }
 
+  // CRC32C
+
+  public byte timeCrc32cHashFunction(int reps) {
+    return runHashFunction(reps, Hashing.crc32c());
+  }
+
+  public byte timeCrc32cChecksum(int reps) throws Exception {
+    byte result = 0x01;
+    for (int i = 0; i < reps; i++) {
+      Crc32c checksum = new Crc32c();
+      checksum.update(testBytes, 0, testBytes.length);
+      result ^= checksum.getValue();
+    }
+    return result;
+  }
+
+  /**
+   * Computes the CRC32C of the test bytes as that of two halves, which could be computed in
+   * parallel, and then combines them.
+   */
+  public byte timeCrc32cCombine(int reps) throws Exception {
+    byte result = 0x01;
+    int half = testBytes.length / 2;
+    for (int i = 0; i < reps; i++) {
+      HashCode first = Hashing.crc32c().hashBytes(testBytes, 0, half);
+      HashCode second = Hashing.crc32c().hashBytes(testBytes, half, testBytes.length - half);
+      result ^= Hashing.combineCrc32c(first, second, testBytes.length - half).asBytes()[0];
+    }
+    return result;
+  }
+
   // Adler32
 
   public byte timeAdler32HashFunction(int reps) {
@@ -86,6 +117,7 @@ public class ChecksumBenchmark extends Benchmark {
     byte result = 0x01;
     // Trick the JVM to prevent it from using the hash function non-polymorphically
     result ^= Hashing.crc32().hashInt(reps).asBytes()[0];
+    result ^= Hashing.crc32c().hashInt(reps).asBytes()[0];
     result ^= Hashing.adler32().hashInt(reps).asBytes()[0];
     for (int i = 0; i < reps; i++) {
       result ^= hashFunction.hashBytes(testBytes).asBytes()[0];
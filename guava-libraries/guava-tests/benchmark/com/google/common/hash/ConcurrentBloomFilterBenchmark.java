@@ -0,0 +1,149 @@
+/*
+ * Copyright (C) 2013 The Guava Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.common.hash;
+
+import com.google.caliper.Param;
+import com.google.caliper.legacy.Benchmark;
+import com.google.caliper.runner.CaliperMain;
+import com.google.common.collect.Lists;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Measures the throughput of putting elements into, and querying, a Bloom filter shared by
+ * several threads: a {@link ConcurrentBloomFilter}, or a {@link BloomFilter} guarded by a lock.
+ *
+ * <p>Each rep is one operation; the reps are divided evenly between the threads.
+ */
+public class ConcurrentBloomFilterBenchmark extends Benchmark {
+  @Param({"1", "2", "4", "8"}) int threads;
+  @Param Impl impl;
+  @Param("10000000") int expectedInsertions;
+
+  enum Impl {
+    CONCURRENT {
+      @Override SharedFilter create(int expectedInsertions) {
+        final ConcurrentBloomFilter<Long> filter =
+            ConcurrentBloomFilter.create(Funnels.longFunnel(), expectedInsertions, 0.01);
+        return new SharedFilter() {
+          @Override public boolean put(Long key) {
+            return filter.put(key);
+          }
+
+          @Override public boolean mightContain(Long key) {
+            return filter.mightContain(key);
+          }
+        };
+      }
+    },
+
+    SYNCHRONIZED {
+      @Override SharedFilter create(int expectedInsertions) {
+        final BloomFilter<Long> filter =
+            BloomFilter.create(Funnels.longFunnel(), expectedInsertions, 0.01);
+        return new SharedFilter() {
+          @Override public synchronized boolean put(Long key) {
+            return filter.put(key);
+          }
+
+          @Override public synchronized boolean mightContain(Long key) {
+            return filter.mightContain(key);
+          }
+        };
+      }
+    };
+
+    abstract SharedFilter create(int expectedInsertions);
+  }
+
+  interface SharedFilter {
+    boolean put(Long key);
+
+    boolean mightContain(Long key);
+  }
+
+  private static final int KEY_COUNT = 1 << 20;
+
+  private SharedFilter filter;
+  private long[] keys;
+  private ExecutorService executor;
+
+  @Override protected void setUp() {
+    filter = impl.create(expectedInsertions);
+    Random random = new Random(42);
+    keys = new long[KEY_COUNT];
+    for (int i = 0; i < KEY_COUNT; i++) {
+      keys[i] = random.nextLong();
+    }
+    // half of the queried keys are present
+    for (int i = 0; i < KEY_COUNT; i += 2) {
+      filter.put(keys[i]);
+    }
+    executor = Executors.newFixedThreadPool(threads);
+  }
+
+  @Override protected void tearDown() {
+    executor.shutdown();
+  }
+
+  public int timePut(int reps) throws Exception {
+    return runInThreads(reps, true);
+  }
+
+  public int timeMightContain(int reps) throws Exception {
+    return runInThreads(reps, false);
+  }
+
+  private int runInThreads(int reps, final boolean put)
+      throws InterruptedException, ExecutionException {
+    final int repsPerThread = reps / threads;
+    List<Future<Integer>> futures = Lists.newArrayListWithCapacity(threads);
+    for (int t = 0; t < threads; t++) {
+      final int start = t * (KEY_COUNT / threads);
+      futures.add(executor.submit(new Callable<Integer>() {
+        @Override public Integer call() {
+          SharedFilter filter = ConcurrentBloomFilterBenchmark.this.filter;
+          long[] keys = ConcurrentBloomFilterBenchmark.this.keys;
+          int mask = KEY_COUNT - 1;
+          int dummy = 0;
+          for (int i = 0; i < repsPerThread; i++) {
+            long key = keys[(start + i) & mask];
+            if (put ? filter.put(key) : filter.mightContain(key)) {
+              dummy++;
+            }
+          }
+          return dummy;
+        }
+      }));
+    }
+    int dummy = 0;
+    for (Future<Integer> future : futures) {
+      dummy += future.get();
+    }
+    return dummy;
+  }
+
+  public static void main(String[] args) {
+    CaliperMain.main(ConcurrentBloomFilterBenchmark.class, args);
+  }
+}
@@ -17,6 +17,7 @@
 package com.google.common.hash;
 
 import com.google.caliper.Param;
+import com.google.caliper.api.SkipThisScenarioException;
 import com.google.caliper.legacy.Benchmark;
 import com.google.caliper.runner.CaliperMain;
 import com.google.common.hash.HashFunction;
@@ -32,6 +33,10 @@ import java.util.Random;
  * <li>hashFunctionEnum: The {@link HashFunction} to use for hashing.
  * </ul>
  *
+ * <p>To compare the garbage created by {@link #timeHashFunctionAsLong} and {@link
+ * #timeLongHashFunction}, run the benchmark with Caliper's allocation instrument ({@code -i
+ * allocation}).
+ *
  * @author Kurt Alfred Kluever
  */
 public class HashFunctionBenchmark extends Benchmark {
@@ -60,6 +65,31 @@ public class HashFunctionBenchmark extends Benchmark {
     return result;
   }
 
+  public long timeHashFunctionAsLong(int reps) {
+    HashFunction hashFunction = hashFunctionEnum.getHashFunction();
+    if (hashFunction.bits() < Long.SIZE) {
+      throw new SkipThisScenarioException();
+    }
+    long result = 37;
+    for (int i = 0; i < reps; i++) {
+      result ^= hashFunction.hashBytes(testBytes).asLong();
+    }
+    return result;
+  }
+
+  /** Compares the allocation-free {@link LongHashFunction} with {@link #timeHashFunctionAsLong}. */
+  public long timeLongHashFunction(int reps) {
+    if (hashFunctionEnum != HashFunctionEnum.MURMUR3_128) {
+      throw new SkipThisScenarioException();
+    }
+    LongHashFunction hashFunction = LongHashFunction.murmur3_128();
+    long result = 37;
+    for (int i = 0; i < reps; i++) {
+      result ^= hashFunction.hashBytes(testBytes);
+    }
+    return result;
+  }
+
   public static void main(String[] args) {
     CaliperMain.main(HashFunctionBenchmark.class, args);
   }
@@ -130,6 +130,24 @@ public class ExecutionListBenchmark extends Benchmark {
         };
       }
     },
+    ABSTRACT_FUTURE {
+      @Override ExecutionListWrapper newExecutionList() {
+        return new ExecutionListWrapper() {
+          final AbstractFutureImpl future = new AbstractFutureImpl();
+          @Override public void add(Runnable runnable, Executor executor) {
+            future.addListener(runnable, executor);
+          }
+
+          @Override public void execute() {
+            future.set(null);
+          }
+
+          @Override public Object getImpl() {
+            return future;
+          }
+        };
+      }
+    },
     OLD {
       @Override ExecutionListWrapper newExecutionList() {
         return new ExecutionListWrapper() {
@@ -277,6 +295,14 @@ public class ExecutionListBenchmark extends Benchmark {
     CaliperMain.main(ExecutionListBenchmark.class, args);
   }
 
+  // The listeners of an AbstractFuture are kept in its own lock-free stack rather than in an
+  // ExecutionList; completing the future executes them.
+  private static final class AbstractFutureImpl extends AbstractFuture<Void> {
+    @Override public boolean set(@Nullable Void value) {
+      return super.set(value);
+    }
+  }
+
   // This is the old implementation of ExecutionList using a LinkedList.
   private static final class OldExecutionList {
     static final Logger log = Logger.getLogger(OldExecutionList.class.getName());
@@ -0,0 +1,115 @@
+/*
+ * Copyright (C) 2013 The Guava Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.common.util.concurrent;
+
+import com.google.caliper.legacy.Benchmark;
+import com.google.caliper.runner.CaliperMain;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Benchmark for acquiring permits from a {@link RateLimiter} shared between threads.  The rate is
+ * high enough that permits never have to be waited for, so that only the bookkeeping is measured.
+ */
+public class RateLimiterBenchmark extends Benchmark {
+  private static final int NUM_THREADS = 8;
+  private static final double PERMITS_PER_SECOND = 1E+12;
+
+  private RateLimiter rateLimiter;
+  private ExecutorService executorService;
+
+  @Override
+  protected void setUp() {
+    rateLimiter = RateLimiter.create(PERMITS_PER_SECOND);
+    executorService = Executors.newFixedThreadPool(NUM_THREADS);
+  }
+
+  @Override
+  protected void tearDown() {
+    executorService.shutdown();
+  }
+
+  public void timeAcquire(int reps) {
+    for (int i = 0; i < reps; i++) {
+      rateLimiter.acquire();
+    }
+  }
+
+  public int timeTryAcquire(int reps) {
+    int acquired = 0;
+    for (int i = 0; i < reps; i++) {
+      if (rateLimiter.tryAcquire()) {
+        acquired++;
+      }
+    }
+    return acquired;
+  }
+
+  /**
+   * Acquires {@code reps} permits from each of {@link #NUM_THREADS} threads at once, to measure
+   * the contention between acquiring threads.
+   */
+  public void timeAcquire_multiThreaded(final int reps) throws InterruptedException {
+    runConcurrently(new Runnable() {
+      @Override public void run() {
+        for (int j = 0; j < reps; j++) {
+          rateLimiter.acquire();
+        }
+      }
+    });
+  }
+
+  /**
+   * Like {@link #timeAcquire_multiThreaded}, but with {@link RateLimiter#tryAcquire()}.
+   */
+  public void timeTryAcquire_multiThreaded(final int reps) throws InterruptedException {
+    runConcurrently(new Runnable() {
+      @Override public void run() {
+        for (int j = 0; j < reps; j++) {
+          rateLimiter.tryAcquire();
+        }
+      }
+    });
+  }
+
+  private void runConcurrently(final Runnable task) throws InterruptedException {
+    final CountDownLatch startLatch = new CountDownLatch(1);
+    final CountDownLatch doneLatch = new CountDownLatch(NUM_THREADS);
+    for (int i = 0; i < NUM_THREADS; i++) {
+      executorService.execute(new Runnable() {
+        @Override public void run() {
+          try {
+            startLatch.await();
+            task.run();
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+          } finally {
+            doneLatch.countDown();
+          }
+        }
+      });
+    }
+    startLatch.countDown();
+    doneLatch.await();
+  }
+
+  public static void main(String[] args) {
+    CaliperMain.main(RateLimiterBenchmark.class, args);
+  }
+}
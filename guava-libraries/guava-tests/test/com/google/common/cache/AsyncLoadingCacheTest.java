@@ -0,0 +1,355 @@
+/*
+ * Copyright (C) 2013 The Guava Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.common.cache;
+
+import static com.google.common.cache.TestingCacheLoaders.identityLoader;
+import static com.google.common.cache.TestingCacheLoaders.incrementingLoader;
+import static java.util.Arrays.asList;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+import com.google.common.cache.CacheLoader.InvalidCacheLoadException;
+import com.google.common.cache.TestingCacheLoaders.IdentityLoader;
+import com.google.common.cache.TestingCacheLoaders.IncrementingLoader;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+import com.google.common.testing.FakeTicker;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tests for {@link AsyncLoadingCache}.
+ */
+public class AsyncLoadingCacheTest extends TestCase {
+
+  public void testGet_present() throws Exception {
+    IdentityLoader<Integer> loader = identityLoader();
+    QueuingExecutor executor = new QueuingExecutor();
+    AsyncLoadingCache<Integer, Integer> cache = CacheBuilder.newBuilder()
+        .recordStats()
+        .buildAsync(loader, executor);
+    cache.synchronous().put(1, 2);
+
+    ListenableFuture<Integer> future = cache.get(1);
+    assertTrue(future.isDone());
+    assertEquals(Integer.valueOf(2), future.get());
+    assertTrue(executor.tasks.isEmpty());
+    assertEquals(1, cache.synchronous().stats().hitCount());
+  }
+
+  public void testGet_absentSharesLoad() throws Exception {
+    QueuingExecutor executor = new QueuingExecutor();
+    IncrementingLoader loader = incrementingLoader();
+    AsyncLoadingCache<Integer, Integer> cache = CacheBuilder.newBuilder()
+        .recordStats()
+        .buildAsync(loader, executor);
+
+    ListenableFuture<Integer> first = cache.get(1);
+    ListenableFuture<Integer> second = cache.get(1);
+    assertFalse(first.isDone());
+    assertFalse(second.isDone());
+    assertEquals(1, executor.tasks.size());
+    assertEquals(0, loader.getLoadCount());
+
+    executor.runAll();
+    assertEquals(Integer.valueOf(1), first.get());
+    assertEquals(Integer.valueOf(1), second.get());
+    assertEquals(1, loader.getLoadCount());
+    assertEquals(Integer.valueOf(1), cache.synchronous().getIfPresent(1));
+
+    CacheStats stats = cache.synchronous().stats();
+    assertEquals(2, stats.missCount());
+    assertEquals(1, stats.loadSuccessCount());
+  }
+
+  public void testGet_sharesSynchronousLoad() throws Exception {
+    IdentityLoader<Integer> loader = identityLoader();
+    QueuingExecutor executor = new QueuingExecutor();
+    AsyncLoadingCache<Integer, Integer> cache =
+        CacheBuilder.newBuilder().buildAsync(loader, executor);
+
+    ListenableFuture<Integer> future = cache.get(1);
+    executor.runAll();
+    assertEquals(Integer.valueOf(1), future.get());
+    assertEquals(Integer.valueOf(1), cache.synchronous().get(1));
+  }
+
+  public void testGet_loadFailure() throws Exception {
+    final RuntimeException exception = new IllegalStateException();
+    AsyncLoadingCache<Integer, Integer> cache = CacheBuilder.newBuilder()
+        .recordStats()
+        .buildAsync(new CacheLoader<Integer, Integer>() {
+          @Override
+          public Integer load(Integer key) {
+            throw exception;
+          }
+        }, MoreExecutors.sameThreadExecutor());
+
+    ListenableFuture<Integer> future = cache.get(1);
+    try {
+      future.get();
+      fail();
+    } catch (ExecutionException expected) {
+      assertSame(exception, expected.getCause());
+    }
+    assertEquals(0, cache.synchronous().size());
+    assertEquals(1, cache.synchronous().stats().loadExceptionCount());
+  }
+
+  public void testGet_loadNull() throws Exception {
+    AsyncLoadingCache<Integer, Integer> cache = CacheBuilder.newBuilder()
+        .buildAsync(new CacheLoader<Integer, Integer>() {
+          @Override
+          public Integer load(Integer key) {
+            return null;
+          }
+        }, MoreExecutors.sameThreadExecutor());
+
+    try {
+      cache.get(1).get();
+      fail();
+    } catch (ExecutionException expected) {
+      assertTrue(expected.getCause() instanceof InvalidCacheLoadException);
+    }
+    assertEquals(0, cache.synchronous().size());
+  }
+
+  public void testGet_rejected() throws Exception {
+    IdentityLoader<Integer> loader = identityLoader();
+    Executor rejecting = new Executor() {
+      @Override
+      public void execute(Runnable command) {
+        throw new RejectedExecutionException();
+      }
+    };
+    AsyncLoadingCache<Integer, Integer> cache =
+        CacheBuilder.newBuilder().buildAsync(loader, rejecting);
+
+    try {
+      cache.get(1).get();
+      fail();
+    } catch (ExecutionException expected) {
+      assertTrue(expected.getCause() instanceof RejectedExecutionException);
+    }
+    assertNull(cache.synchronous().asMap().get(1));
+    assertEquals(0, cache.synchronous().size());
+  }
+
+  public void testGet_refreshRunsOnExecutor() throws Exception {
+    final CountDownLatch reloadReleased = new CountDownLatch(1);
+    CacheLoader<Integer, Integer> loader = new CacheLoader<Integer, Integer>() {
+      @Override
+      public Integer load(Integer key) {
+        return key;
+      }
+
+      @Override
+      public ListenableFuture<Integer> reload(Integer key, Integer oldValue) throws Exception {
+        // a blocking reload, which would stall the caller if it ran inline
+        assertTrue(reloadReleased.await(10, SECONDS));
+        return Futures.immediateFuture(oldValue + 1);
+      }
+    };
+    FakeTicker ticker = new FakeTicker();
+    QueuingExecutor executor = new QueuingExecutor();
+    AsyncLoadingCache<Integer, Integer> cache = CacheBuilder.newBuilder()
+        .ticker(ticker)
+        .refreshAfterWrite(1, NANOSECONDS)
+        .buildAsync(loader, executor);
+    cache.synchronous().put(1, 1);
+    ticker.advance(2, NANOSECONDS);
+
+    ListenableFuture<Integer> future = cache.get(1);
+    assertTrue(future.isDone());
+    assertEquals(Integer.valueOf(1), future.get());
+    assertEquals(1, executor.tasks.size());
+
+    reloadReleased.countDown();
+    executor.runAll();
+    assertEquals(Integer.valueOf(2), cache.synchronous().getIfPresent(1));
+  }
+
+  public void testGet_nullKey() {
+    IdentityLoader<Integer> loader = identityLoader();
+    AsyncLoadingCache<Integer, Integer> cache = CacheBuilder.newBuilder()
+        .buildAsync(loader, MoreExecutors.sameThreadExecutor());
+    try {
+      cache.get(null);
+      fail();
+    } catch (NullPointerException expected) {}
+  }
+
+  public void testGetAll_loadAll() throws Exception {
+    QueuingExecutor executor = new QueuingExecutor();
+    final AtomicInteger loadAllCount = new AtomicInteger();
+    AsyncLoadingCache<Integer, Integer> cache = CacheBuilder.newBuilder()
+        .buildAsync(new CacheLoader<Integer, Integer>() {
+          @Override
+          public Integer load(Integer key) {
+            throw new AssertionError();
+          }
+
+          @Override
+          public Map<Integer, Integer> loadAll(Iterable<? extends Integer> keys) {
+            loadAllCount.incrementAndGet();
+            Map<Integer, Integer> result = Maps.newHashMap();
+            for (Integer key : keys) {
+              result.put(key, -key);
+            }
+            return result;
+          }
+        }, executor);
+    cache.synchronous().put(1, 1);
+
+    ListenableFuture<ImmutableMap<Integer, Integer>> future = cache.getAll(asList(1, 2, 3, 2));
+    ListenableFuture<Integer> three = cache.get(3);
+    assertFalse(future.isDone());
+    assertEquals(1, executor.tasks.size());
+
+    executor.runAll();
+    assertEquals(ImmutableMap.of(1, 1, 2, -2, 3, -3), future.get());
+    assertEquals(Integer.valueOf(-3), three.get());
+    assertEquals(1, loadAllCount.get());
+    assertEquals(3, cache.synchronous().size());
+  }
+
+  public void testGetAll_loadAllMissingKey() throws Exception {
+    AsyncLoadingCache<Integer, Integer> cache = CacheBuilder.newBuilder()
+        .buildAsync(new CacheLoader<Integer, Integer>() {
+          @Override
+          public Integer load(Integer key) {
+            throw new AssertionError();
+          }
+
+          @Override
+          public Map<Integer, Integer> loadAll(Iterable<? extends Integer> keys) {
+            return ImmutableMap.of(1, 1);
+          }
+        }, MoreExecutors.sameThreadExecutor());
+
+    try {
+      cache.getAll(asList(1, 2)).get();
+      fail();
+    } catch (ExecutionException expected) {
+      assertTrue(expected.getCause() instanceof InvalidCacheLoadException);
+    }
+    assertEquals(Integer.valueOf(1), cache.synchronous().getIfPresent(1));
+    assertNull(cache.synchronous().asMap().get(2));
+  }
+
+  public void testGetAll_loadAllNullValue() throws Exception {
+    QueuingExecutor executor = new QueuingExecutor();
+    AsyncLoadingCache<Integer, Integer> cache = CacheBuilder.newBuilder()
+        .buildAsync(new CacheLoader<Integer, Integer>() {
+          @Override
+          public Integer load(Integer key) {
+            throw new AssertionError();
+          }
+
+          @Override
+          public Map<Integer, Integer> loadAll(Iterable<? extends Integer> keys) {
+            Map<Integer, Integer> result = Maps.newHashMap();
+            result.put(1, 1);
+            result.put(2, null);
+            return result;
+          }
+        }, executor);
+
+    ListenableFuture<ImmutableMap<Integer, Integer>> future = cache.getAll(asList(1, 2));
+    ListenableFuture<Integer> one = cache.get(1);
+    ListenableFuture<Integer> two = cache.get(2);
+    executor.runAll();
+    try {
+      future.get();
+      fail();
+    } catch (ExecutionException expected) {
+      assertTrue(expected.getCause() instanceof InvalidCacheLoadException);
+    }
+    // only the key loadAll didn't return a value for fails
+    assertEquals(Integer.valueOf(1), one.get());
+    try {
+      two.get();
+      fail();
+    } catch (ExecutionException expected) {
+      assertTrue(expected.getCause() instanceof InvalidCacheLoadException);
+    }
+    assertEquals(Integer.valueOf(1), cache.synchronous().getIfPresent(1));
+    assertNull(cache.synchronous().asMap().get(2));
+  }
+
+  public void testGetAll_fallbackToLoad() throws Exception {
+    QueuingExecutor executor = new QueuingExecutor();
+    IncrementingLoader loader = incrementingLoader();
+    AsyncLoadingCache<Integer, Integer> cache =
+        CacheBuilder.newBuilder().buildAsync(loader, executor);
+
+    ListenableFuture<ImmutableMap<Integer, Integer>> future = cache.getAll(asList(1, 2, 3));
+    assertEquals(1, executor.tasks.size());
+    executor.runNext();
+
+    // loadAll is unsupported, so each key is loaded by its own task
+    assertEquals(3, executor.tasks.size());
+    executor.runAll();
+    assertEquals(ImmutableMap.of(1, 1, 2, 2, 3, 3), future.get());
+    assertEquals(3, loader.getLoadCount());
+  }
+
+  public void testGetAll_nullKey() {
+    IdentityLoader<Integer> loader = identityLoader();
+    QueuingExecutor executor = new QueuingExecutor();
+    AsyncLoadingCache<Integer, Integer> cache =
+        CacheBuilder.newBuilder().buildAsync(loader, executor);
+    try {
+      cache.getAll(asList(1, null));
+      fail();
+    } catch (NullPointerException expected) {}
+    assertTrue(executor.tasks.isEmpty());
+    assertEquals(0, cache.synchronous().size());
+  }
+
+  static final class QueuingExecutor implements Executor {
+    final Queue<Runnable> tasks = new ArrayDeque<Runnable>();
+
+    @Override
+    public void execute(Runnable task) {
+      tasks.add(task);
+    }
+
+    void runNext() {
+      tasks.remove().run();
+    }
+
+    void runAll() {
+      Runnable task;
+      while ((task = tasks.poll()) != null) {
+        task.run();
+      }
+    }
+  }
+}
@@ -33,6 +33,7 @@ import com.google.common.cache.TestingRemovalListeners.QueuingRemovalListener;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 import com.google.common.testing.NullPointerTester;
+import com.google.common.util.concurrent.MoreExecutors;
 
 import junit.framework.TestCase;
 
@@ -205,6 +206,31 @@ public class CacheBuilderTest extends TestCase {
     } catch (IllegalStateException expected) {}
   }
 
+  @GwtIncompatible("offHeapValues")
+  public void testOffHeapValues_withoutMaximumWeight() {
+    CacheBuilder<Object, byte[]> builder = CacheBuilder.newBuilder().offHeapValues();
+    try {
+      builder.build();
+      fail();
+    } catch (IllegalStateException expected) {}
+  }
+
+  @GwtIncompatible("offHeapValues")
+  public void testOffHeapValues_withWeigherOrSize() {
+    try {
+      CacheBuilder.newBuilder().weigher(constantWeigher(42)).offHeapValues();
+      fail();
+    } catch (IllegalStateException expected) {}
+    try {
+      CacheBuilder.newBuilder().maximumSize(1).offHeapValues();
+      fail();
+    } catch (IllegalStateException expected) {}
+    try {
+      CacheBuilder.newBuilder().softValues().offHeapValues();
+      fail();
+    } catch (IllegalStateException expected) {}
+  }
+
   @GwtIncompatible("weigher")
   public void testWeigher_withoutMaximumWeight() {
     CacheBuilder<Object, Object> builder = new CacheBuilder<Object, Object>()
@@ -231,6 +257,39 @@ public class CacheBuilderTest extends TestCase {
     } catch (IllegalStateException expected) {}
   }
 
+  @GwtIncompatible("evictionPolicy")
+  public void testEvictionPolicy_setTwice() {
+    CacheBuilder<Object, Object> builder =
+        new CacheBuilder<Object, Object>().evictionPolicy(EvictionPolicy.TINY_LFU);
+    try {
+      // even to the same value is not allowed
+      builder.evictionPolicy(EvictionPolicy.TINY_LFU);
+      fail();
+    } catch (IllegalStateException expected) {}
+  }
+
+  @GwtIncompatible("concurrencyMode")
+  public void testConcurrencyMode_setTwice() {
+    CacheBuilder<Object, Object> builder =
+        new CacheBuilder<Object, Object>().concurrencyMode(ConcurrencyMode.FINE_GRAINED);
+    try {
+      // even to the same value is not allowed
+      builder.concurrencyMode(ConcurrencyMode.FINE_GRAINED);
+      fail();
+    } catch (IllegalStateException expected) {}
+  }
+
+  @GwtIncompatible("readBufferMode")
+  public void testReadBufferMode_setTwice() {
+    CacheBuilder<Object, Object> builder =
+        new CacheBuilder<Object, Object>().readBufferMode(ReadBufferMode.STRIPED);
+    try {
+      // even to the same value is not allowed
+      builder.readBufferMode(ReadBufferMode.STRIPED);
+      fail();
+    } catch (IllegalStateException expected) {}
+  }
+
   @GwtIncompatible("weakKeys")
   public void testKeyStrengthSetTwice() {
     CacheBuilder<Object, Object> builder1 = new CacheBuilder<Object, Object>().weakKeys();
@@ -321,6 +380,45 @@ public class CacheBuilderTest extends TestCase {
     // well, it didn't blow up.
   }
 
+  @GwtIncompatible("expireAfter")
+  public void testExpireAfter_setTwice() {
+    CacheBuilder<Object, Object> builder =
+        new CacheBuilder<Object, Object>().expireAfter(constantExpiry());
+    try {
+      builder.expireAfter(constantExpiry());
+      fail();
+    } catch (IllegalStateException expected) {}
+  }
+
+  @GwtIncompatible("expireAfter")
+  public void testExpireAfter_withFixedExpiration() {
+    try {
+      new CacheBuilder<Object, Object>()
+          .expireAfterWrite(3600, SECONDS)
+          .expireAfter(constantExpiry());
+      fail();
+    } catch (IllegalStateException expected) {}
+    try {
+      new CacheBuilder<Object, Object>()
+          .expireAfter(constantExpiry())
+          .expireAfterAccess(3600, SECONDS);
+      fail();
+    } catch (IllegalStateException expected) {}
+  }
+
+  @GwtIncompatible("expireAfter")
+  private static Expiry<Object, Object> constantExpiry() {
+    return new Expiry<Object, Object>() {
+      @Override public long expireAfterCreate(Object key, Object value) {
+        return SECONDS.toNanos(3600);
+      }
+
+      @Override public long expireAfterUpdate(Object key, Object value, long currentDuration) {
+        return currentDuration;
+      }
+    };
+  }
+
   @GwtIncompatible("refreshAfterWrite")
   public void testRefresh_zero() {
     CacheBuilder<Object, Object> builder = new CacheBuilder<Object, Object>();
@@ -341,6 +439,16 @@ public class CacheBuilderTest extends TestCase {
     } catch (IllegalStateException expected) {}
   }
 
+  @GwtIncompatible("refreshExecutor")
+  public void testRefreshExecutor_setTwice() {
+    CacheBuilder<Object, Object> builder = new CacheBuilder<Object, Object>()
+        .refreshExecutor(MoreExecutors.sameThreadExecutor());
+    try {
+      builder.refreshExecutor(MoreExecutors.sameThreadExecutor());
+      fail();
+    } catch (IllegalStateException expected) {}
+  }
+
   public void testTicker_setTwice() {
     Ticker testTicker = Ticker.systemTicker();
     CacheBuilder<Object, Object> builder =
@@ -598,6 +706,7 @@ public class CacheBuilderTest extends TestCase {
   @GwtIncompatible("NullPointerTester")
   public void testNullParameters() throws Exception {
     NullPointerTester tester = new NullPointerTester();
+    tester.setDefault(CacheLoader.class, identityLoader());
     CacheBuilder<Object, Object> builder = new CacheBuilder<Object, Object>();
     tester.testAllPublicInstanceMethods(builder);
   }
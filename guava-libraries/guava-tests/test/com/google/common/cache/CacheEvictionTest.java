@@ -92,6 +92,54 @@ public class CacheEvictionTest extends TestCase {
     CacheTesting.checkValidState(cache);
   }
 
+  public void testEviction_fineGrained() {
+    CountingRemovalListener<Integer, Integer> removalListener = countingRemovalListener();
+    IdentityLoader<Integer> loader = identityLoader();
+    LoadingCache<Integer, Integer> cache = CacheBuilder.newBuilder()
+        .concurrencyMode(ConcurrencyMode.FINE_GRAINED)
+        .maximumSize(MAX_SIZE)
+        .removalListener(removalListener)
+        .build(loader);
+    LocalCache<Integer, Integer> map = CacheTesting.toLocalCache(cache);
+    assertTrue(map.segments.length >= LocalCache.FINE_GRAINED_SEGMENTS_PER_PROCESSOR);
+    for (int i = 0; i < 10 * MAX_SIZE; i++) {
+      cache.getUnchecked(i);
+      assertEquals(Math.min(i + 1, MAX_SIZE), cache.size());
+      assertNotNull(cache.getIfPresent(i));
+    }
+
+    assertEquals(MAX_SIZE, map.globalWeight.get());
+    assertEquals(MAX_SIZE, CacheTesting.accessQueueSize(cache));
+    CacheTesting.processPendingNotifications(cache);
+    assertEquals(9 * MAX_SIZE, removalListener.getCount());
+    CacheTesting.checkValidState(cache);
+  }
+
+  public void testEviction_fineGrainedWeight() {
+    IdentityLoader<Integer> loader = identityLoader();
+    LoadingCache<Integer, Integer> cache = CacheBuilder.newBuilder()
+        .concurrencyMode(ConcurrencyMode.FINE_GRAINED)
+        .maximumWeight(2 * MAX_SIZE)
+        .weigher(intKeyWeigher())
+        .build(loader);
+    LocalCache<Integer, Integer> map = CacheTesting.toLocalCache(cache);
+    for (int i = 0; i < 2 * MAX_SIZE; i++) {
+      cache.getUnchecked(i);
+      assertTrue(map.globalWeight.get() <= 2 * MAX_SIZE);
+    }
+
+    long totalWeight = 0;
+    for (Integer key : cache.asMap().keySet()) {
+      totalWeight += key;
+    }
+    assertEquals(totalWeight, map.globalWeight.get());
+
+    // an entry heavier than the whole cache is evicted at once
+    cache.getUnchecked(2 * MAX_SIZE + 1);
+    assertNull(cache.getIfPresent(2 * MAX_SIZE + 1));
+    CacheTesting.checkValidState(cache);
+  }
+
   public void testEviction_maxSize() {
     CountingRemovalListener<Integer, Integer> removalListener = countingRemovalListener();
     IdentityLoader<Integer> loader = identityLoader();
@@ -258,6 +306,97 @@ public class CacheEvictionTest extends TestCase {
     ASSERT.that(keySet).has().item(0);
   }
 
+  public void testEviction_tinyLfu() {
+    // test frequency-based admission within a single segment
+    IdentityLoader<Integer> loader = identityLoader();
+    LoadingCache<Integer, Integer> cache = CacheBuilder.newBuilder()
+        .concurrencyLevel(1)
+        .maximumSize(10)
+        .evictionPolicy(EvictionPolicy.TINY_LFU)
+        .build(loader);
+    CacheTesting.warmUp(cache, 0, 10);
+    Set<Integer> keySet = cache.asMap().keySet();
+    ASSERT.that(keySet).has().allOf(0, 1, 2, 3, 4, 5, 6, 7, 8, 9);
+
+    // make every resident entry popular
+    for (int i = 0; i < 3; i++) {
+      getAll(cache, asList(0, 1, 2, 3, 4, 5, 6, 7, 8, 9));
+    }
+    CacheTesting.drainRecencyQueues(cache);
+
+    // a scan of new keys is not admitted
+    getAll(cache, asList(10, 11, 12, 13, 14));
+    CacheTesting.drainRecencyQueues(cache);
+    ASSERT.that(keySet).has().allOf(0, 1, 2, 3, 4, 5, 6, 7, 8, 9);
+    assertEquals(10, keySet.size());
+
+    // a key that becomes more popular than the lru entry displaces it
+    for (int i = 0; i < 10; i++) {
+      cache.getUnchecked(20);
+    }
+    CacheTesting.drainRecencyQueues(cache);
+    assertTrue(keySet.contains(20));
+    assertFalse(keySet.contains(0));
+    assertEquals(10, keySet.size());
+  }
+
+  public void testEviction_tinyLfuOverweight() {
+    IdentityLoader<Integer> loader = identityLoader();
+    LoadingCache<Integer, Integer> cache = CacheBuilder.newBuilder()
+        .concurrencyLevel(1)
+        .maximumWeight(45)
+        .weigher(intKeyWeigher())
+        .evictionPolicy(EvictionPolicy.TINY_LFU)
+        .build(loader);
+    CacheTesting.warmUp(cache, 0, 10);
+    Set<Integer> keySet = cache.asMap().keySet();
+
+    // an over-the-maximum-weight entry is never retained
+    getAll(cache, asList(46));
+    CacheTesting.drainRecencyQueues(cache);
+    assertFalse(keySet.contains(46));
+    CacheTesting.checkValidState(cache);
+  }
+
+  public void testEviction_tinyLfuKeepsFrequenciesAcrossExpansion() {
+    IdentityLoader<Integer> loader = identityLoader();
+    LoadingCache<Integer, Integer> cache = CacheBuilder.newBuilder()
+        .concurrencyLevel(1)
+        .initialCapacity(1)
+        .maximumSize(100)
+        .evictionPolicy(EvictionPolicy.TINY_LFU)
+        .build(loader);
+    LocalCache<Integer, Integer> map = CacheTesting.toLocalCache(cache);
+    for (int i = 0; i < 10; i++) {
+      cache.getUnchecked(0);
+    }
+    CacheTesting.drainRecencyQueues(cache);
+    FrequencySketch sketch = map.segments[0].frequencySketch;
+    int frequency = sketch.frequency(map.hash(0));
+    assertTrue(frequency > 1);
+
+    // grow the table well past its initial capacity
+    CacheTesting.warmUp(cache, 1, 100);
+    assertTrue(sketch.frequency(map.hash(0)) >= frequency);
+  }
+
+  public void testEviction_tinyLfuFineGrainedSketchSize() {
+    LoadingCache<Integer, Integer> cache = CacheBuilder.newBuilder()
+        .concurrencyMode(ConcurrencyMode.FINE_GRAINED)
+        .maximumSize(1 << 20)
+        .evictionPolicy(EvictionPolicy.TINY_LFU)
+        .build(identityLoader());
+    LocalCache<Integer, Integer> map = CacheTesting.toLocalCache(cache);
+    int segmentCount = map.segments.length;
+    for (LocalCache.Segment<Integer, Integer> segment : map.segments) {
+      // each segment's sketch is sized for its share of the cache, not the whole of it
+      int length = segment.frequencySketch.table.length;
+      assertTrue(length <= Math.max(LocalCache.MINIMUM_SKETCH_SIZE,
+          2 * Math.min((1 << 20) / segmentCount, LocalCache.MAXIMUM_SKETCH_SIZE)));
+      assertTrue(length >= LocalCache.MINIMUM_SKETCH_SIZE);
+    }
+  }
+
   public void testEviction_invalidateAll() {
     // test that .invalidateAll() resets total weight state correctly
     IdentityLoader<Integer> loader = identityLoader();
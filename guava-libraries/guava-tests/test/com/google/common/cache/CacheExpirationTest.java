@@ -17,7 +17,11 @@ package com.google.common.cache;
 import static com.google.common.cache.TestingCacheLoaders.identityLoader;
 import static com.google.common.cache.TestingRemovalListeners.countingRemovalListener;
 import static java.util.Arrays.asList;
+import static java.util.concurrent.TimeUnit.DAYS;
+import static java.util.concurrent.TimeUnit.HOURS;
 import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.MINUTES;
+import static java.util.concurrent.TimeUnit.SECONDS;
 import static org.truth0.Truth.ASSERT;
 
 import com.google.common.cache.TestingCacheLoaders.IdentityLoader;
@@ -70,6 +74,18 @@ public class CacheExpirationTest extends TestCase {
     checkExpiration(cache, loader, ticker, removalListener);
   }
 
+  public void testExpiration_expireAfter() {
+    FakeTicker ticker = new FakeTicker();
+    CountingRemovalListener<String, Integer> removalListener = countingRemovalListener();
+    WatchedCreatorLoader loader = new WatchedCreatorLoader();
+    LoadingCache<String, Integer> cache = CacheBuilder.newBuilder()
+        .expireAfter(FixedExpiry.INSTANCE)
+        .removalListener(removalListener)
+        .ticker(ticker)
+        .build(loader);
+    checkExpiration(cache, loader, ticker, removalListener);
+  }
+
   private void checkExpiration(LoadingCache<String, Integer> cache, WatchedCreatorLoader loader,
       FakeTicker ticker, CountingRemovalListener<String, Integer> removalListener) {
 
@@ -119,6 +135,18 @@ public class CacheExpirationTest extends TestCase {
     runExpirationTest(cache, loader, ticker, removalListener);
   }
 
+  public void testExpiringGet_expireAfter() {
+    FakeTicker ticker = new FakeTicker();
+    CountingRemovalListener<String, Integer> removalListener = countingRemovalListener();
+    WatchedCreatorLoader loader = new WatchedCreatorLoader();
+    LoadingCache<String, Integer> cache = CacheBuilder.newBuilder()
+        .expireAfter(FixedExpiry.INSTANCE)
+        .removalListener(removalListener)
+        .ticker(ticker)
+        .build(loader);
+    runExpirationTest(cache, loader, ticker, removalListener);
+  }
+
   private void runExpirationTest(LoadingCache<String, Integer> cache, WatchedCreatorLoader loader,
       FakeTicker ticker, CountingRemovalListener<String, Integer> removalListener) {
 
@@ -246,6 +274,18 @@ public class CacheExpirationTest extends TestCase {
     runRemovalScheduler(cache, removalListener, loader, ticker, KEY_PREFIX, EXPIRING_TIME);
   }
 
+  public void testRemovalScheduler_expireAfter() {
+    FakeTicker ticker = new FakeTicker();
+    CountingRemovalListener<String, Integer> removalListener = countingRemovalListener();
+    WatchedCreatorLoader loader = new WatchedCreatorLoader();
+    LoadingCache<String, Integer> cache = CacheBuilder.newBuilder()
+        .expireAfter(FixedExpiry.INSTANCE)
+        .removalListener(removalListener)
+        .ticker(ticker)
+        .build(loader);
+    runRemovalScheduler(cache, removalListener, loader, ticker, KEY_PREFIX, EXPIRING_TIME);
+  }
+
   public void testExpirationOrder_access() {
     // test lru within a single segment
     FakeTicker ticker = new FakeTicker();
@@ -394,6 +434,139 @@ public class CacheExpirationTest extends TestCase {
     ASSERT.that(keySet).has().allOf(3, 6);
   }
 
+  public void testExpireAfter_perEntry() {
+    // each entry lives for as many minutes as its key
+    FakeTicker ticker = new FakeTicker();
+    IdentityLoader<Integer> loader = identityLoader();
+    LoadingCache<Integer, Integer> cache = CacheBuilder.newBuilder()
+        .concurrencyLevel(1)
+        .expireAfter(new Expiry<Integer, Integer>() {
+          @Override public long expireAfterCreate(Integer key, Integer value) {
+            return MINUTES.toNanos(key);
+          }
+
+          @Override public long expireAfterUpdate(Integer key, Integer value,
+              long currentDuration) {
+            return MINUTES.toNanos(value);
+          }
+        })
+        .ticker(ticker)
+        .build(loader);
+    for (int i = 1; i <= 10; i++) {
+      cache.getUnchecked(i);
+    }
+    CacheTesting.checkExpiration(cache);
+
+    Set<Integer> keySet = cache.asMap().keySet();
+    ticker.advance(3, MINUTES);
+    ASSERT.that(keySet).has().allOf(4, 5, 6, 7, 8, 9, 10);
+
+    // an update recalculates the expiration time
+    cache.put(4, 10);
+    cache.put(10, 1);
+    ticker.advance(3, MINUTES);
+    ASSERT.that(keySet).has().allOf(4, 7, 8, 9);
+    CacheTesting.checkExpiration(cache);
+
+    ticker.advance(7, MINUTES);
+    assertEquals(0, Iterators.size(keySet.iterator()));
+    cache.cleanUp();
+    assertEquals(0, CacheTesting.writeQueueSize(cache));
+  }
+
+  public void testExpireAfter_currentDuration() {
+    FakeTicker ticker = new FakeTicker();
+    Cache<Integer, Integer> cache = CacheBuilder.newBuilder()
+        .expireAfter(new Expiry<Integer, Integer>() {
+          @Override public long expireAfterCreate(Integer key, Integer value) {
+            return MINUTES.toNanos(10);
+          }
+
+          @Override public long expireAfterUpdate(Integer key, Integer value,
+              long currentDuration) {
+            assertEquals(MINUTES.toNanos(4), currentDuration);
+            return currentDuration;
+          }
+        })
+        .ticker(ticker)
+        .build();
+    cache.put(1, 1);
+    ticker.advance(6, MINUTES);
+    cache.put(1, 2);
+    ticker.advance(3, MINUTES);
+    assertEquals(Integer.valueOf(2), cache.getIfPresent(1));
+    ticker.advance(1, MINUTES);
+    assertNull(cache.getIfPresent(1));
+  }
+
+  public void testExpireAfter_zero() {
+    FakeTicker ticker = new FakeTicker();
+    CountingRemovalListener<Integer, Integer> removalListener = countingRemovalListener();
+    Cache<Integer, Integer> cache = CacheBuilder.newBuilder()
+        .expireAfter(new Expiry<Integer, Integer>() {
+          @Override public long expireAfterCreate(Integer key, Integer value) {
+            return (key == 0) ? 0 : Long.MAX_VALUE;
+          }
+
+          @Override public long expireAfterUpdate(Integer key, Integer value,
+              long currentDuration) {
+            return -1;
+          }
+        })
+        .removalListener(removalListener)
+        .ticker(ticker)
+        .build();
+    cache.put(0, 0);
+    cache.put(1, 1);
+    assertNull(cache.getIfPresent(0));
+    assertEquals(Integer.valueOf(1), cache.getIfPresent(1));
+
+    // a duration of Long.MAX_VALUE effectively never expires
+    ticker.advance(365 * 100, DAYS);
+    assertEquals(Integer.valueOf(1), cache.getIfPresent(1));
+
+    cache.put(1, 2);
+    assertNull(cache.getIfPresent(1));
+    cache.cleanUp();
+    assertEquals(0, cache.size());
+    assertEquals(3, removalListener.getCount());
+  }
+
+  public void testExpireAfter_longHorizon() {
+    // entries spread over months are each removed once their time has come
+    FakeTicker ticker = new FakeTicker();
+    CountingRemovalListener<Integer, Integer> removalListener = countingRemovalListener();
+    IdentityLoader<Integer> loader = identityLoader();
+    LoadingCache<Integer, Integer> cache = CacheBuilder.newBuilder()
+        .concurrencyLevel(1)
+        .expireAfter(new Expiry<Integer, Integer>() {
+          @Override public long expireAfterCreate(Integer key, Integer value) {
+            return HOURS.toNanos(key);
+          }
+
+          @Override public long expireAfterUpdate(Integer key, Integer value,
+              long currentDuration) {
+            return currentDuration;
+          }
+        })
+        .removalListener(removalListener)
+        .ticker(ticker)
+        .build(loader);
+    int hours = 24 * 90;
+    for (int i = 1; i <= hours; i++) {
+      cache.put(i, i);
+    }
+
+    for (int i = 1; i <= hours; i++) {
+      ticker.advance(1, HOURS);
+      ticker.advance(1, SECONDS);
+      cache.cleanUp();
+      assertEquals(hours - i, cache.size());
+      assertEquals(hours - i, CacheTesting.writeQueueSize(cache));
+      assertEquals(i, removalListener.getCount());
+    }
+  }
+
   private void runRemovalScheduler(LoadingCache<String, Integer> cache,
       CountingRemovalListener<String, Integer> removalListener,
       WatchedCreatorLoader loader,
@@ -446,6 +619,18 @@ public class CacheExpirationTest extends TestCase {
     }
   }
 
+  private enum FixedExpiry implements Expiry<Object, Object> {
+    INSTANCE;
+
+    @Override public long expireAfterCreate(Object key, Object value) {
+      return MILLISECONDS.toNanos(EXPIRING_TIME);
+    }
+
+    @Override public long expireAfterUpdate(Object key, Object value, long currentDuration) {
+      return MILLISECONDS.toNanos(EXPIRING_TIME);
+    }
+  }
+
   private static class WatchedCreatorLoader extends CacheLoader<String, Integer> {
     boolean wasCalled = false; // must be set in load()
     String keyPrefix = KEY_PREFIX;
@@ -0,0 +1,224 @@
+/*
+ * Copyright (C) 2013 The Guava Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.common.cache;
+
+import static com.google.common.cache.TestingRemovalListeners.queuingRemovalListener;
+
+import com.google.common.cache.LocalCache.LocalManualCache;
+import com.google.common.cache.TestingRemovalListeners.QueuingRemovalListener;
+import com.google.common.testing.FakeTicker;
+import com.google.common.testing.SerializableTester;
+
+import junit.framework.TestCase;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests of caches built with {@link CacheBuilder#offHeapValues}.
+ */
+public class CacheOffHeapTest extends TestCase {
+
+  public void testGet_returnsCopy() {
+    Cache<String, byte[]> cache = CacheBuilder.newBuilder()
+        .offHeapValues()
+        .maximumWeight(1000)
+        .build();
+    byte[] value = bytes(10, 1);
+    cache.put("a", value);
+    value[0] = 42;
+
+    byte[] first = cache.getIfPresent("a");
+    byte[] second = cache.getIfPresent("a");
+    assertTrue(Arrays.equals(bytes(10, 1), first));
+    assertNotSame(first, second);
+    assertTrue(Arrays.equals(first, second));
+  }
+
+  public void testLoad() {
+    LoadingCache<Integer, byte[]> cache = CacheBuilder.newBuilder()
+        .offHeapValues()
+        .maximumWeight(1000)
+        .build(new CacheLoader<Integer, byte[]>() {
+          @Override public byte[] load(Integer key) {
+            return bytes(key, key);
+          }
+        });
+    assertTrue(Arrays.equals(bytes(5, 5), cache.getUnchecked(5)));
+    assertTrue(Arrays.equals(bytes(0, 0), cache.getUnchecked(0)));
+    assertEquals(2, cache.size());
+  }
+
+  public void testMaximumWeight_bytes() {
+    QueuingRemovalListener<Integer, byte[]> listener = queuingRemovalListener();
+    Cache<Integer, byte[]> cache = CacheBuilder.newBuilder()
+        .concurrencyLevel(1)
+        .offHeapValues()
+        .maximumWeight(100)
+        .removalListener(listener)
+        .build();
+    for (int i = 0; i < 5; i++) {
+      cache.put(i, bytes(30, i));
+    }
+
+    // only three 30 byte values fit, so the two least recently used are evicted
+    assertEquals(3, cache.size());
+    assertEquals(2, listener.size());
+    for (int i = 0; i < 2; i++) {
+      RemovalNotification<Integer, byte[]> notification = listener.poll();
+      assertEquals(RemovalCause.SIZE, notification.getCause());
+      assertEquals(Integer.valueOf(i), notification.getKey());
+      assertTrue(Arrays.equals(bytes(30, i), notification.getValue()));
+    }
+  }
+
+  public void testRemovalCauses() {
+    FakeTicker ticker = new FakeTicker();
+    QueuingRemovalListener<String, byte[]> listener = queuingRemovalListener();
+    Cache<String, byte[]> cache = CacheBuilder.newBuilder()
+        .offHeapValues()
+        .maximumWeight(1000)
+        .expireAfterWrite(1, TimeUnit.MINUTES)
+        .ticker(ticker)
+        .removalListener(listener)
+        .build();
+
+    cache.put("a", bytes(10, 1));
+    cache.put("a", bytes(20, 2));
+    checkNotification(listener.poll(), RemovalCause.REPLACED, bytes(10, 1));
+
+    cache.invalidate("a");
+    checkNotification(listener.poll(), RemovalCause.EXPLICIT, bytes(20, 2));
+
+    cache.put("b", bytes(5, 3));
+    ticker.advance(2, TimeUnit.MINUTES);
+    cache.cleanUp();
+    checkNotification(listener.poll(), RemovalCause.EXPIRED, bytes(5, 3));
+    assertTrue(listener.isEmpty());
+  }
+
+  public void testReplace_comparesContents() {
+    Cache<String, byte[]> cache = CacheBuilder.newBuilder()
+        .offHeapValues()
+        .maximumWeight(1000)
+        .build();
+    cache.put("a", bytes(10, 1));
+    assertTrue(cache.asMap().replace("a", bytes(10, 1), bytes(10, 2)));
+    assertFalse(cache.asMap().replace("a", bytes(10, 1), bytes(10, 3)));
+    assertTrue(cache.asMap().containsValue(bytes(10, 2)));
+    assertTrue(cache.asMap().remove("a", bytes(10, 2)));
+    assertEquals(0, cache.size());
+  }
+
+  public void testContainsKey() {
+    Cache<String, byte[]> cache = CacheBuilder.newBuilder()
+        .offHeapValues()
+        .maximumWeight(1000)
+        .build();
+    cache.put("a", bytes(10, 1));
+    assertTrue(cache.asMap().containsKey("a"));
+    assertFalse(cache.asMap().containsKey("b"));
+    cache.invalidate("a");
+    assertFalse(cache.asMap().containsKey("a"));
+  }
+
+  public void testHasValue_released() {
+    LocalCache.OffHeapValueReference<String, byte[]> valueReference =
+        new LocalCache.OffHeapValueReference<String, byte[]>(new SlabAllocator(), bytes(10, 1));
+    assertTrue(LocalCache.hasValue(valueReference));
+    valueReference.release();
+    assertFalse(LocalCache.hasValue(valueReference));
+    assertNull(valueReference.get());
+  }
+
+  public void testExpand_keepsValues() {
+    Cache<Integer, byte[]> cache = CacheBuilder.newBuilder()
+        .concurrencyLevel(1)
+        .initialCapacity(1)
+        .offHeapValues()
+        .maximumWeight(100000)
+        .build();
+    for (int i = 0; i < 1000; i++) {
+      cache.put(i, bytes(10, i));
+    }
+    for (int i = 0; i < 1000; i++) {
+      assertTrue(Arrays.equals(bytes(10, i), cache.getIfPresent(i)));
+    }
+  }
+
+  public void testMemoryIsReused() {
+    Cache<Integer, byte[]> cache = CacheBuilder.newBuilder()
+        .concurrencyLevel(1)
+        .offHeapValues()
+        .maximumWeight(10000)
+        .build();
+    SlabAllocator allocator = localCache(cache).slabAllocator;
+
+    cache.put(0, bytes(100, 0));
+    long reserved = allocator.reservedBytes();
+    for (int i = 1; i < 10000; i++) {
+      cache.put(0, bytes(100, i));
+    }
+    assertEquals(reserved, allocator.reservedBytes());
+    assertTrue(Arrays.equals(bytes(100, 9999), cache.getIfPresent(0)));
+  }
+
+  public void testLargeValue() {
+    int length = 3 * SlabAllocator.PAGE_SIZE / 2;
+    Cache<Integer, byte[]> cache = CacheBuilder.newBuilder()
+        .concurrencyLevel(1)
+        .offHeapValues()
+        .maximumWeight(10L * SlabAllocator.PAGE_SIZE)
+        .build();
+    SlabAllocator allocator = localCache(cache).slabAllocator;
+
+    cache.put(0, bytes(length, 7));
+    assertEquals(length, allocator.reservedBytes());
+    assertTrue(Arrays.equals(bytes(length, 7), cache.getIfPresent(0)));
+    cache.invalidate(0);
+    assertEquals(0, allocator.reservedBytes());
+  }
+
+  public void testSerialization() {
+    Cache<String, byte[]> cache = CacheBuilder.newBuilder()
+        .offHeapValues()
+        .maximumWeight(1000)
+        .build();
+    LocalCache<String, byte[]> copy = localCache(SerializableTester.reserialize(cache));
+    assertSame(LocalCache.Strength.OFF_HEAP, copy.valueStrength);
+    assertEquals(localCache(cache).maxWeight, copy.maxWeight);
+    assertNotNull(copy.slabAllocator);
+  }
+
+  private static <K, V> LocalCache<K, V> localCache(Cache<K, V> cache) {
+    return ((LocalManualCache<K, V>) cache).localCache;
+  }
+
+  private static void checkNotification(RemovalNotification<String, byte[]> notification,
+      RemovalCause cause, byte[] value) {
+    assertEquals(cause, notification.getCause());
+    assertTrue(Arrays.equals(value, notification.getValue()));
+  }
+
+  private static byte[] bytes(int length, int seed) {
+    byte[] bytes = new byte[length];
+    for (int i = 0; i < length; i++) {
+      bytes[i] = (byte) (seed + i);
+    }
+    return bytes;
+  }
+}
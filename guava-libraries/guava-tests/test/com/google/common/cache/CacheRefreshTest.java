@@ -22,6 +22,11 @@ import com.google.common.testing.FakeTicker;
 
 import junit.framework.TestCase;
 
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
 /**
  * Tests relating to automatic cache refreshing.
  *
@@ -97,4 +102,104 @@ public class CacheRefreshTest extends TestCase {
     assertEquals(expectedLoads, loader.getLoadCount());
     assertEquals(expectedReloads, loader.getReloadCount());
   }
+  public void testAutoRefresh_refreshExecutor() {
+    FakeTicker ticker = new FakeTicker();
+    IncrementingLoader loader = incrementingLoader();
+    QueuingExecutor executor = new QueuingExecutor();
+    LoadingCache<Integer, Integer> cache = CacheBuilder.newBuilder()
+        .refreshAfterWrite(3, MILLISECONDS)
+        .refreshExecutor(executor)
+        .ticker(ticker)
+        .build(loader);
+    assertEquals(Integer.valueOf(0), cache.getUnchecked(0));
+    assertEquals(1, loader.getLoadCount());
+
+    // the stale value is returned while the reload is pending
+    ticker.advance(4, MILLISECONDS);
+    assertEquals(Integer.valueOf(0), cache.getUnchecked(0));
+    assertEquals(0, loader.getReloadCount());
+    assertEquals(1, executor.tasks.size());
+
+    // duplicate refreshes are ignored
+    assertEquals(Integer.valueOf(0), cache.getUnchecked(0));
+    cache.refresh(0);
+    assertEquals(1, executor.tasks.size());
+
+    executor.runAll();
+    assertEquals(1, loader.getReloadCount());
+    assertEquals(Integer.valueOf(1), cache.getUnchecked(0));
+    assertEquals(1, loader.getLoadCount());
+    assertEquals(0, executor.tasks.size());
+  }
+
+  public void testRefresh_refreshExecutor() {
+    IncrementingLoader loader = incrementingLoader();
+    QueuingExecutor executor = new QueuingExecutor();
+    LoadingCache<Integer, Integer> cache = CacheBuilder.newBuilder()
+        .refreshExecutor(executor)
+        .build(loader);
+    assertEquals(Integer.valueOf(0), cache.getUnchecked(0));
+
+    cache.refresh(0);
+    assertEquals(Integer.valueOf(0), cache.getUnchecked(0));
+    assertEquals(0, loader.getReloadCount());
+
+    executor.runAll();
+    assertEquals(1, loader.getReloadCount());
+    assertEquals(Integer.valueOf(1), cache.getUnchecked(0));
+
+    // refreshing an absent key loads it on the executor
+    cache.refresh(5);
+    assertFalse(cache.asMap().containsKey(5));
+    executor.runAll();
+    assertEquals(2, loader.getLoadCount());
+    assertEquals(Integer.valueOf(5), cache.getIfPresent(5));
+  }
+
+  public void testAutoRefresh_refreshExecutorRejects() {
+    FakeTicker ticker = new FakeTicker();
+    IncrementingLoader loader = incrementingLoader();
+    RejectingExecutor executor = new RejectingExecutor();
+    LoadingCache<Integer, Integer> cache = CacheBuilder.newBuilder()
+        .refreshAfterWrite(3, MILLISECONDS)
+        .refreshExecutor(executor)
+        .ticker(ticker)
+        .build(loader);
+    assertEquals(Integer.valueOf(0), cache.getUnchecked(0));
+
+    // the old value is retained, and each stale read retries the refresh
+    ticker.advance(4, MILLISECONDS);
+    assertEquals(Integer.valueOf(0), cache.getUnchecked(0));
+    assertEquals(Integer.valueOf(0), cache.getUnchecked(0));
+    assertEquals(2, executor.rejected);
+    assertEquals(0, loader.getReloadCount());
+    assertEquals(1, loader.getLoadCount());
+    assertEquals(1, cache.size());
+  }
+
+  static final class QueuingExecutor implements Executor {
+    final Queue<Runnable> tasks = new ArrayDeque<Runnable>();
+
+    @Override
+    public void execute(Runnable task) {
+      tasks.add(task);
+    }
+
+    void runAll() {
+      Runnable task;
+      while ((task = tasks.poll()) != null) {
+        task.run();
+      }
+    }
+  }
+
+  static final class RejectingExecutor implements Executor {
+    int rejected;
+
+    @Override
+    public void execute(Runnable task) {
+      rejected++;
+      throw new RejectedExecutionException();
+    }
+  }
 }
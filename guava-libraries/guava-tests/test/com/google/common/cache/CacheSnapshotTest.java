@@ -0,0 +1,235 @@
+/*
+ * Copyright (C) 2013 The Guava Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.common.cache;
+
+import static com.google.common.cache.CacheSnapshot.serializableCodec;
+import static com.google.common.cache.TestingCacheLoaders.identityLoader;
+import static java.util.concurrent.TimeUnit.MINUTES;
+
+import com.google.common.cache.CacheSnapshot.Codec;
+import com.google.common.cache.TestingCacheLoaders.IdentityLoader;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.io.ByteSink;
+import com.google.common.io.ByteSource;
+import com.google.common.testing.FakeTicker;
+
+import junit.framework.TestCase;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Unit tests for {@link CacheSnapshot}.
+ */
+public class CacheSnapshotTest extends TestCase {
+  private final Codec<Integer> intCodec = new Codec<Integer>() {
+    @Override public void encode(Integer value, DataOutput out) throws IOException {
+      out.writeInt(value);
+    }
+
+    @Override public Integer decode(DataInput in) throws IOException {
+      return in.readInt();
+    }
+  };
+
+  public void testRoundTrip() throws IOException {
+    Cache<Integer, String> cache = CacheBuilder.newBuilder().build();
+    for (int i = 0; i < 100; i++) {
+      cache.put(i, "value" + i);
+    }
+    InMemorySink sink = new InMemorySink();
+    Codec<String> stringCodec = serializableCodec();
+    assertEquals(100, CacheSnapshot.writeTo(cache, sink, intCodec, stringCodec));
+
+    IdentityLoader<Object> loader = identityLoader();
+    LoadingCache<Object, Object> restored = CacheBuilder.newBuilder()
+        .recordStats()
+        .build(loader);
+    assertEquals(100, CacheSnapshot.loadFrom(restored, sink.asByteSource(), intCodec, stringCodec));
+    assertEquals(cache.asMap(), restored.asMap());
+    assertEquals(0, restored.stats().requestCount());
+    assertEquals(0, restored.stats().loadCount());
+  }
+
+  public void testLoad_keepsPresentKeys() throws IOException {
+    Cache<Integer, Integer> cache = CacheBuilder.newBuilder().build();
+    cache.put(1, 1);
+    cache.put(2, 2);
+    InMemorySink sink = new InMemorySink();
+    CacheSnapshot.writeTo(cache, sink, intCodec, intCodec);
+
+    Cache<Integer, Integer> restored = CacheBuilder.newBuilder().build();
+    restored.put(1, 10);
+    assertEquals(1, CacheSnapshot.loadFrom(restored, sink.asByteSource(), intCodec, intCodec));
+    assertEquals(ImmutableMap.of(1, 10, 2, 2), restored.asMap());
+  }
+
+  public void testLeastRecentlyUsedOrder() throws IOException {
+    Cache<Integer, Integer> cache = CacheBuilder.newBuilder()
+        .concurrencyLevel(1)
+        .maximumSize(10)
+        .build();
+    for (int i = 0; i < 10; i++) {
+      cache.put(i, i);
+    }
+    for (int i = 0; i < 5; i++) {
+      cache.getIfPresent(i);
+    }
+    InMemorySink sink = new InMemorySink();
+    CacheSnapshot.writeTo(cache, sink, intCodec, intCodec);
+
+    Cache<Integer, Integer> restored = CacheBuilder.newBuilder()
+        .concurrencyLevel(1)
+        .maximumSize(5)
+        .build();
+    CacheSnapshot.loadFrom(restored, sink.asByteSource(), intCodec, intCodec);
+    assertEquals(ImmutableSet.of(0, 1, 2, 3, 4), restored.asMap().keySet());
+  }
+
+  public void testAgesArePreserved() throws IOException {
+    FakeTicker ticker = new FakeTicker();
+    Cache<Integer, Integer> cache = CacheBuilder.newBuilder()
+        .expireAfterWrite(10, MINUTES)
+        .ticker(ticker)
+        .build();
+    cache.put(1, 1);
+    ticker.advance(6, MINUTES);
+    cache.put(2, 2);
+    ticker.advance(1, MINUTES);
+    InMemorySink sink = new InMemorySink();
+    assertEquals(2, CacheSnapshot.writeTo(cache, sink, intCodec, intCodec));
+
+    FakeTicker restartedTicker = new FakeTicker();
+    restartedTicker.advance(100, MINUTES);
+    Cache<Integer, Integer> restored = CacheBuilder.newBuilder()
+        .expireAfterWrite(10, MINUTES)
+        .ticker(restartedTicker)
+        .build();
+    assertEquals(2, CacheSnapshot.loadFrom(restored, sink.asByteSource(), intCodec, intCodec));
+    assertEquals(ImmutableMap.of(1, 1, 2, 2), restored.asMap());
+
+    restartedTicker.advance(4, MINUTES);
+    assertNull(restored.getIfPresent(1));
+    assertEquals(Integer.valueOf(2), restored.getIfPresent(2));
+  }
+
+  public void testLoad_skipsExpiredEntries() throws IOException {
+    FakeTicker ticker = new FakeTicker();
+    Cache<Integer, Integer> cache = CacheBuilder.newBuilder()
+        .expireAfterAccess(10, MINUTES)
+        .ticker(ticker)
+        .build();
+    cache.put(1, 1);
+    cache.put(2, 2);
+    ticker.advance(5, MINUTES);
+    cache.getIfPresent(2);
+    InMemorySink sink = new InMemorySink();
+    CacheSnapshot.writeTo(cache, sink, intCodec, intCodec);
+
+    Cache<Integer, Integer> restored = CacheBuilder.newBuilder()
+        .expireAfterAccess(5, MINUTES)
+        .build();
+    assertEquals(1, CacheSnapshot.loadFrom(restored, sink.asByteSource(), intCodec, intCodec));
+    assertEquals(ImmutableMap.of(2, 2), restored.asMap());
+  }
+
+  public void testLoad_restoresExpirationOrder() throws IOException {
+    FakeTicker ticker = new FakeTicker();
+    Cache<Integer, Integer> cache = CacheBuilder.newBuilder()
+        .concurrencyLevel(1)
+        .maximumSize(10)
+        .expireAfterWrite(10, MINUTES)
+        .ticker(ticker)
+        .build();
+    cache.put(1, 1);
+    ticker.advance(8, MINUTES);
+    cache.put(2, 2);
+    ticker.advance(1, MINUTES);
+    // the snapshot lists the younger entry 2 before the older entry 1
+    cache.getIfPresent(1);
+    InMemorySink sink = new InMemorySink();
+    CacheSnapshot.writeTo(cache, sink, intCodec, intCodec);
+
+    FakeTicker restartedTicker = new FakeTicker();
+    Cache<Integer, Integer> restored = CacheBuilder.newBuilder()
+        .concurrencyLevel(1)
+        .maximumSize(10)
+        .expireAfterWrite(10, MINUTES)
+        .ticker(restartedTicker)
+        .build();
+    assertEquals(2, CacheSnapshot.loadFrom(restored, sink.asByteSource(), intCodec, intCodec));
+    assertEquals(2, restored.size());
+
+    restartedTicker.advance(2, MINUTES);
+    restored.cleanUp();
+    assertEquals(1, restored.size());
+    assertEquals(ImmutableMap.of(2, 2), restored.asMap());
+  }
+
+  public void testLoad_notASnapshot() {
+    Cache<Integer, Integer> cache = CacheBuilder.newBuilder().build();
+    try {
+      CacheSnapshot.loadFrom(cache, ByteSource.wrap(new byte[] {1, 2, 3, 4, 5, 6, 7, 8}),
+          intCodec, intCodec);
+      fail();
+    } catch (IOException expected) {}
+  }
+
+  public void testLoad_truncated() throws IOException {
+    Cache<Integer, Integer> cache = CacheBuilder.newBuilder().build();
+    cache.put(1, 1);
+    InMemorySink sink = new InMemorySink();
+    CacheSnapshot.writeTo(cache, sink, intCodec, intCodec);
+    byte[] bytes = sink.asByteSource().read();
+    ByteSource truncated = ByteSource.wrap(bytes).slice(0, bytes.length - 1);
+
+    Cache<Integer, Integer> restored = CacheBuilder.newBuilder().build();
+    try {
+      CacheSnapshot.loadFrom(restored, truncated, intCodec, intCodec);
+      fail();
+    } catch (IOException expected) {}
+  }
+
+  public void testUnsupportedCache() throws IOException {
+    Cache<Integer, Integer> cache = new AbstractCache<Integer, Integer>() {
+      @Override public Integer getIfPresent(Object key) {
+        return null;
+      }
+    };
+    try {
+      CacheSnapshot.writeTo(cache, new InMemorySink(), intCodec, intCodec);
+      fail();
+    } catch (IllegalArgumentException expected) {}
+  }
+
+  private static final class InMemorySink extends ByteSink {
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+    @Override public OutputStream openStream() {
+      bytes.reset();
+      return bytes;
+    }
+
+    ByteSource asByteSource() {
+      return ByteSource.wrap(bytes.toByteArray());
+    }
+  }
+}
@@ -16,8 +16,12 @@
 
 package com.google.common.cache;
 
+import static com.google.common.cache.TestingCacheLoaders.identityLoader;
+
 import junit.framework.TestCase;
 
+import java.util.List;
+
 /**
  * Unit test for {@link CacheStats}.
  *
@@ -98,4 +102,33 @@ public class CacheStatsTest extends TestCase {
 
     assertEquals(sum, one.plus(two));
   }
+
+  public void testSegmentStats() {
+    LoadingCache<Integer, Integer> cache = CacheBuilder.newBuilder()
+        .concurrencyLevel(4)
+        .recordStats()
+        .build(identityLoader());
+    for (int i = 0; i < 100; i++) {
+      cache.getUnchecked(i);
+      cache.getUnchecked(i);
+    }
+
+    List<CacheStats> segmentStats = CacheStats.segmentStats(cache);
+    assertEquals(4, segmentStats.size());
+    CacheStats sum = new CacheStats(0, 0, 0, 0, 0, 0);
+    for (CacheStats stats : segmentStats) {
+      sum = sum.plus(stats);
+    }
+    assertEquals(100, sum.hitCount());
+    assertEquals(100, sum.missCount());
+  }
+
+  public void testSegmentStats_notBuiltByCacheBuilder() {
+    Cache<Object, Object> cache = new ForwardingCache.SimpleForwardingCache<Object, Object>(
+        CacheBuilder.newBuilder().build()) {};
+    try {
+      CacheStats.segmentStats(cache);
+      fail();
+    } catch (IllegalArgumentException expected) {}
+  }
 }
@@ -223,7 +223,20 @@ class CacheTesting {
 
   static void checkExpiration(LocalCache<?, ?> cchm) {
     for (Segment<?, ?> segment : cchm.segments) {
-      if (cchm.usesWriteQueue()) {
+      if (cchm.expiresVariably()) {
+        // the timer wheel is not ordered by expiration time
+        Set<ReferenceEntry<?, ?>> entries = Sets.newIdentityHashSet();
+        for (ReferenceEntry<?, ?> current : segment.writeQueue) {
+          assertTrue(entries.add(current));
+          assertSame(current, current.getPreviousInWriteQueue().getNextInWriteQueue());
+          assertSame(current, current.getNextInWriteQueue().getPreviousInWriteQueue());
+          Object key = current.getKey();
+          if (key != null) {
+            assertSame(current, segment.getEntry(key, current.getHash()));
+          }
+        }
+        assertEquals(segment.count, entries.size());
+      } else if (cchm.usesWriteQueue()) {
         Set<ReferenceEntry<?, ?>> entries = Sets.newIdentityHashSet();
 
         ReferenceEntry<?, ?> prev = null;
@@ -362,7 +362,8 @@ public class EmptyCachesTest extends TestCase {
   private CacheBuilderFactory cacheFactory() {
     return new CacheBuilderFactory()
         .withKeyStrengths(ImmutableSet.of(Strength.STRONG, Strength.WEAK))
-        .withValueStrengths(ImmutableSet.copyOf(Strength.values()))
+        // off-heap values must be byte arrays, and have tests of their own
+        .withValueStrengths(ImmutableSet.of(Strength.STRONG, Strength.WEAK, Strength.SOFT))
         .withConcurrencyLevels(ImmutableSet.of(1, 4, 16, 64))
         .withMaximumSizes(ImmutableSet.of(0, 1, 10, 100, 1000))
         .withInitialCapacities(ImmutableSet.of(0, 1, 10, 100, 1000))
@@ -0,0 +1,135 @@
+/*
+ * Copyright (C) 2013 The Guava Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.common.cache;
+
+import static com.google.common.cache.LoadLatencyHistogram.BUCKET_COUNT;
+import static com.google.common.cache.LoadLatencyHistogram.bucketIndex;
+import static com.google.common.cache.LoadLatencyHistogram.highestValueInBucket;
+import static com.google.common.cache.LoadLatencyHistogram.lowestValueInBucket;
+
+import com.google.common.cache.AbstractCache.HistogramStatsCounter;
+
+import junit.framework.TestCase;
+
+import java.util.Random;
+
+/**
+ * Unit tests for {@link LoadLatencyHistogram}.
+ */
+public class LoadLatencyHistogramTest extends TestCase {
+
+  public void testBucketIndex_small() {
+    for (int i = 0; i < LoadLatencyHistogram.SUB_BUCKET_COUNT; i++) {
+      assertEquals(i, bucketIndex(i));
+      assertEquals(i, lowestValueInBucket(i));
+      assertEquals(i, highestValueInBucket(i));
+    }
+    assertEquals(0, bucketIndex(-1));
+    assertEquals(0, bucketIndex(Long.MIN_VALUE));
+  }
+
+  public void testBucketIndex_bounds() {
+    assertEquals(BUCKET_COUNT - 1, bucketIndex(Long.MAX_VALUE));
+    assertEquals(Long.MAX_VALUE, highestValueInBucket(BUCKET_COUNT - 1));
+    for (int i = 0; i < BUCKET_COUNT; i++) {
+      long low = lowestValueInBucket(i);
+      long high = highestValueInBucket(i);
+      assertTrue(low <= high);
+      assertEquals(i, bucketIndex(low));
+      assertEquals(i, bucketIndex(high));
+      if (i > 0) {
+        assertEquals(low - 1, highestValueInBucket(i - 1));
+      }
+    }
+  }
+
+  public void testBucketIndex_relativeError() {
+    Random random = new Random(0);
+    for (int i = 0; i < 10000; i++) {
+      long value = (random.nextLong() >>> 1) >>> random.nextInt(Long.SIZE - 1);
+      int index = bucketIndex(value);
+      assertTrue(lowestValueInBucket(index) <= value);
+      assertTrue(value <= highestValueInBucket(index));
+      assertTrue(highestValueInBucket(index) - value <= value / 8);
+    }
+  }
+
+  public void testEmpty() {
+    LoadLatencyHistogram histogram = new LoadLatencyHistogram();
+    assertEquals(0, histogram.count());
+    assertEquals(0, histogram.percentile(50.0));
+    assertEquals(0, histogram.percentile(100.0));
+  }
+
+  public void testPercentile() {
+    LoadLatencyHistogram histogram = new LoadLatencyHistogram();
+    for (int i = 0; i < 99; i++) {
+      histogram.record(5);
+    }
+    histogram.record(1000000);
+    assertEquals(100, histogram.count());
+    assertEquals(5, histogram.percentile(0.0));
+    assertEquals(5, histogram.percentile(50.0));
+    assertEquals(5, histogram.percentile(99.0));
+
+    long max = histogram.percentile(100.0);
+    assertTrue(max >= 1000000);
+    assertTrue(max <= 1000000 + 1000000 / 8);
+    assertEquals(max, histogram.percentile(99.5));
+  }
+
+  public void testPercentile_outOfRange() {
+    LoadLatencyHistogram histogram = new LoadLatencyHistogram();
+    try {
+      histogram.percentile(-1.0);
+      fail();
+    } catch (IllegalArgumentException expected) {}
+    try {
+      histogram.percentile(100.1);
+      fail();
+    } catch (IllegalArgumentException expected) {}
+    try {
+      histogram.percentile(Double.NaN);
+      fail();
+    } catch (IllegalArgumentException expected) {}
+  }
+
+  public void testIncrementBy() {
+    LoadLatencyHistogram first = new LoadLatencyHistogram();
+    LoadLatencyHistogram second = new LoadLatencyHistogram();
+    first.record(1);
+    second.record(2);
+    second.record(3000);
+    first.incrementBy(second);
+    assertEquals(3, first.count());
+    assertEquals(2, second.count());
+    assertEquals(1, first.percentile(33.0));
+    assertEquals(highestValueInBucket(bucketIndex(3000)), first.percentile(100.0));
+  }
+
+  public void testHistogramStatsCounter() {
+    HistogramStatsCounter counter = new HistogramStatsCounter();
+    counter.recordHits(3);
+    counter.recordMisses(2);
+    counter.recordLoadSuccess(4);
+    counter.recordLoadException(6);
+    counter.recordEviction();
+    assertEquals(new CacheStats(3, 2, 1, 1, 10, 1), counter.snapshot());
+    assertEquals(2, counter.loadLatency().count());
+    assertEquals(6, counter.loadLatency().percentile(100.0));
+  }
+}
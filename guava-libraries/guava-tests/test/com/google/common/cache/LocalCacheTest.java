@@ -32,7 +32,10 @@ import static java.util.concurrent.TimeUnit.NANOSECONDS;
 import static java.util.concurrent.TimeUnit.SECONDS;
 
 import com.google.common.base.Equivalence;
+import com.google.common.base.Supplier;
 import com.google.common.base.Ticker;
+import com.google.common.cache.AbstractCache.HistogramStatsCounter;
+import com.google.common.cache.AbstractCache.StatsCounter;
 import com.google.common.cache.LocalCache.EntryFactory;
 import com.google.common.cache.LocalCache.LoadingValueReference;
 import com.google.common.cache.LocalCache.LocalLoadingCache;
@@ -40,8 +43,10 @@ import com.google.common.cache.LocalCache.LocalManualCache;
 import com.google.common.cache.LocalCache.ReferenceEntry;
 import com.google.common.cache.LocalCache.Segment;
 import com.google.common.cache.LocalCache.Strength;
+import com.google.common.cache.LocalCache.TimerWheel;
 import com.google.common.cache.LocalCache.ValueReference;
 import com.google.common.cache.TestingCacheLoaders.CountingLoader;
+import com.google.common.cache.TestingCacheLoaders.IdentityLoader;
 import com.google.common.cache.TestingRemovalListeners.CountingRemovalListener;
 import com.google.common.cache.TestingRemovalListeners.QueuingRemovalListener;
 import com.google.common.collect.ImmutableList;
@@ -63,6 +68,7 @@ import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
@@ -355,6 +361,22 @@ public class LocalCacheTest extends TestCase {
     assertEquals(unit.toNanos(duration), map.expireAfterAccessNanos);
   }
 
+  public void testSetExpireAfter() {
+    Expiry<Object, Object> expiry = new Expiry<Object, Object>() {
+      @Override public long expireAfterCreate(Object key, Object value) {
+        return 42;
+      }
+
+      @Override public long expireAfterUpdate(Object key, Object value, long currentDuration) {
+        return 42;
+      }
+    };
+    LocalCache<Object, Object> map = makeLocalCache(createCacheBuilder().expireAfter(expiry));
+    assertSame(expiry, map.expiry);
+    assertTrue(map.expiresVariably());
+    assertTrue(map.segments[0].writeQueue instanceof TimerWheel);
+  }
+
   public void testSetRefresh() {
     long duration = 42;
     TimeUnit unit = TimeUnit.SECONDS;
@@ -370,6 +392,120 @@ public class LocalCacheTest extends TestCase {
     assertSame(testListener, map.removalListener);
   }
 
+  public void testSetConcurrencyMode() {
+    LocalCache<Object, Object> map = makeLocalCache(createCacheBuilder().maximumSize(10));
+    assertSame(ConcurrencyMode.SEGMENTED, map.concurrencyMode);
+    assertFalse(map.evictsGlobally());
+    assertNull(map.globalWeight);
+    assertEquals(1, map.segments.length);
+
+    map = makeLocalCache(createCacheBuilder()
+        .concurrencyMode(ConcurrencyMode.FINE_GRAINED)
+        .maximumSize(10));
+    assertSame(ConcurrencyMode.FINE_GRAINED, map.concurrencyMode);
+    assertTrue(map.evictsGlobally());
+    assertEquals(0, map.globalWeight.get());
+    int processors = Runtime.getRuntime().availableProcessors();
+    assertTrue(map.segments.length >= LocalCache.FINE_GRAINED_SEGMENTS_PER_PROCESSOR * processors);
+    for (Segment<Object, Object> segment : map.segments) {
+      assertEquals(10, segment.maxSegmentWeight);
+    }
+
+    // without a maximum size there is nothing to track globally
+    map = makeLocalCache(createCacheBuilder().concurrencyMode(ConcurrencyMode.FINE_GRAINED));
+    assertFalse(map.evictsGlobally());
+    assertNull(map.globalWeight);
+  }
+
+  public void testSerializationProxy_concurrencyMode() {
+    Cache<Object, Object> cache = CacheBuilder.newBuilder()
+        .concurrencyMode(ConcurrencyMode.FINE_GRAINED)
+        .maximumSize(10)
+        .build();
+    LocalManualCache<Object, Object> copy =
+        (LocalManualCache<Object, Object>) SerializableTester.reserialize(cache);
+    assertSame(ConcurrencyMode.FINE_GRAINED, copy.localCache.concurrencyMode);
+  }
+
+  public void testSetReadBufferMode() {
+    LocalCache<Object, Object> map = makeLocalCache(createCacheBuilder().maximumSize(10));
+    assertSame(ReadBufferMode.UNBOUNDED, map.readBufferMode);
+    for (Segment<Object, Object> segment : map.segments) {
+      assertTrue(segment.recencyQueue instanceof ConcurrentLinkedQueue);
+    }
+
+    map = makeLocalCache(createCacheBuilder()
+        .readBufferMode(ReadBufferMode.STRIPED)
+        .maximumSize(10));
+    assertSame(ReadBufferMode.STRIPED, map.readBufferMode);
+    for (Segment<Object, Object> segment : map.segments) {
+      assertTrue(segment.recencyQueue instanceof ReadBuffer);
+    }
+
+    // without an access order no reads are recorded
+    map = makeLocalCache(createCacheBuilder().readBufferMode(ReadBufferMode.STRIPED));
+    for (Segment<Object, Object> segment : map.segments) {
+      assertSame(DISCARDING_QUEUE, segment.recencyQueue);
+    }
+  }
+
+  public void testSerializationProxy_readBufferMode() {
+    Cache<Object, Object> cache = CacheBuilder.newBuilder()
+        .readBufferMode(ReadBufferMode.STRIPED)
+        .maximumSize(10)
+        .build();
+    LocalManualCache<Object, Object> copy =
+        (LocalManualCache<Object, Object>) SerializableTester.reserialize(cache);
+    assertSame(ReadBufferMode.STRIPED, copy.localCache.readBufferMode);
+  }
+
+  public void testSetRecordStats() {
+    final List<HistogramStatsCounter> counters = Lists.newArrayList();
+    Supplier<StatsCounter> supplier = new Supplier<StatsCounter>() {
+      @Override public StatsCounter get() {
+        HistogramStatsCounter counter = new HistogramStatsCounter();
+        counters.add(counter);
+        return counter;
+      }
+    };
+    LocalCache<Object, Object> map =
+        makeLocalCache(createCacheBuilder().concurrencyLevel(4).recordStats(supplier));
+    assertEquals(5, counters.size());
+    assertSame(counters.get(0), map.globalStatsCounter);
+    for (int i = 0; i < map.segments.length; i++) {
+      assertSame(counters.get(i + 1), map.segments[i].statsCounter);
+    }
+  }
+
+  public void testSegmentStats() {
+    IdentityLoader<Integer> loader = identityLoader();
+    LoadingCache<Integer, Integer> cache = CacheBuilder.newBuilder()
+        .concurrencyLevel(4)
+        .recordStats()
+        .build(loader);
+    LocalCache<Integer, Integer> map = CacheTesting.toLocalCache(cache);
+    for (int i = 0; i < 100; i++) {
+      cache.getUnchecked(i);
+      cache.getUnchecked(i);
+    }
+
+    List<CacheStats> segmentStats = map.segmentStats();
+    assertEquals(map.segments.length, segmentStats.size());
+    long hits = 0;
+    long misses = 0;
+    for (int i = 0; i < map.segments.length; i++) {
+      CacheStats stats = segmentStats.get(i);
+      assertEquals(map.segments[i].count, stats.missCount());
+      assertEquals(map.segments[i].count, stats.hitCount());
+      hits += stats.hitCount();
+      misses += stats.missCount();
+    }
+    assertEquals(100, hits);
+    assertEquals(100, misses);
+    assertEquals(hits, cache.stats().hitCount());
+    assertEquals(misses, cache.stats().missCount());
+  }
+
   public void testSetTicker() {
     Ticker testTicker = new Ticker() {
       @Override
@@ -2119,6 +2255,86 @@ public class LocalCacheTest extends TestCase {
     assertTrue(segment.writeQueue.isEmpty());
   }
 
+  public void testExpireAfter() {
+    FakeTicker ticker = new FakeTicker();
+    LocalCache<Object, Object> map = makeLocalCache(createCacheBuilder()
+        .concurrencyLevel(1)
+        .ticker(ticker)
+        .expireAfter(new Expiry<Object, Object>() {
+          @Override public long expireAfterCreate(Object key, Object value) {
+            return 2;
+          }
+
+          @Override public long expireAfterUpdate(Object key, Object value, long currentDuration) {
+            return currentDuration;
+          }
+        }));
+    Segment<Object, Object> segment = map.segments[0];
+
+    Object key = new Object();
+    Object value = new Object();
+    map.put(key, value);
+    ReferenceEntry<Object, Object> entry = map.getEntry(key);
+    assertTrue(map.isLive(entry, ticker.read()));
+    assertEquals(ticker.read() + 2, entry.getAccessTime());
+    assertTrue(segment.writeQueue.contains(entry));
+    assertEquals(1, segment.writeQueue.size());
+
+    ticker.advance(1);
+    segment.recordRead(entry, ticker.read());
+    segment.expireEntries(ticker.read());
+    assertSame(value, map.get(key));
+    assertNull(segment.writeQueue.peek());
+    assertEquals(1, segment.writeQueue.size());
+
+    // an update keeps the remaining duration
+    Object newValue = new Object();
+    map.put(key, newValue);
+    assertEquals(ticker.read() + 1, entry.getAccessTime());
+
+    ticker.advance(1);
+    assertNull(map.get(key));
+    segment.expireEntries(ticker.read());
+    assertNull(map.get(key));
+
+    // the entry is removed once the timer wheel ticks past it
+    ticker.advance(TimerWheel.SPANS[0]);
+    segment.expireEntries(ticker.read());
+    assertTrue(segment.writeQueue.isEmpty());
+  }
+
+  public void testTimerWheel_advance() {
+    long start = -TimeUnit.DAYS.toNanos(10);
+    TimerWheel<Object, Object> timerWheel = new TimerWheel<Object, Object>(start);
+    long[] durations = {
+        0, 1, TimeUnit.SECONDS.toNanos(3), TimeUnit.SECONDS.toNanos(90),
+        TimeUnit.MINUTES.toNanos(90), TimeUnit.HOURS.toNanos(30), TimeUnit.DAYS.toNanos(5),
+        TimeUnit.DAYS.toNanos(20) };
+    List<ReferenceEntry<Object, Object>> entries = Lists.newArrayList();
+    for (long duration : durations) {
+      ReferenceEntry<Object, Object> entry = DummyEntry.create(new Object(), 0, null);
+      entry.setAccessTime(start + duration);
+      timerWheel.add(entry);
+      entries.add(entry);
+    }
+    assertEquals(durations.length, timerWheel.size());
+    assertSame(entries.get(0), timerWheel.poll());
+    assertNull(timerWheel.poll());
+
+    for (int i = 1; i < durations.length; i++) {
+      // nothing expires early
+      timerWheel.advance(start + durations[i] - 1);
+      assertNull(timerWheel.peek());
+
+      // and each entry expires within a tick of its time
+      timerWheel.advance(start + durations[i] + TimerWheel.SPANS[0]);
+      assertSame(entries.get(i), timerWheel.poll());
+      assertNull(timerWheel.poll());
+      assertEquals(durations.length - i - 1, timerWheel.size());
+    }
+    assertTrue(timerWheel.isEmpty());
+  }
+
   public void testExpireAfterAccess() {
     FakeTicker ticker = new FakeTicker();
     LocalCache<Object, Object> map = makeLocalCache(createCacheBuilder()
@@ -2207,7 +2423,7 @@ public class LocalCacheTest extends TestCase {
       it.next();
       it.remove();
     }
-    segment.evictEntries();
+    segment.evictEntries(entry);
     assertEquals(maxSize, map.size());
     assertEquals(originalMap, map);
   }
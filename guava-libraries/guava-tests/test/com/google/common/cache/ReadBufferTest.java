@@ -0,0 +1,139 @@
+/*
+ * Copyright (C) 2013 The Guava Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.common.cache;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Sets;
+
+import junit.framework.TestCase;
+
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Unit tests for {@link ReadBuffer}.
+ */
+public class ReadBufferTest extends TestCase {
+
+  public void testCeilingPowerOfTwo() {
+    assertEquals(1, ReadBuffer.ceilingPowerOfTwo(0));
+    assertEquals(1, ReadBuffer.ceilingPowerOfTwo(1));
+    assertEquals(2, ReadBuffer.ceilingPowerOfTwo(2));
+    assertEquals(4, ReadBuffer.ceilingPowerOfTwo(3));
+    assertEquals(64, ReadBuffer.ceilingPowerOfTwo(64));
+    assertEquals(128, ReadBuffer.ceilingPowerOfTwo(65));
+  }
+
+  public void testEmpty() {
+    ReadBuffer<Integer> buffer = new ReadBuffer<Integer>(4);
+    assertEquals(0, buffer.size());
+    assertNull(buffer.peek());
+    assertNull(buffer.poll());
+    assertFalse(buffer.iterator().hasNext());
+  }
+
+  public void testOffer_singleThreadIsOrdered() {
+    ReadBuffer<Integer> buffer = new ReadBuffer<Integer>(4);
+    for (int i = 0; i < 10; i++) {
+      assertTrue(buffer.offer(i));
+    }
+    assertEquals(10, buffer.size());
+    assertEquals(ImmutableList.of(0, 1, 2, 3, 4, 5, 6, 7, 8, 9), ImmutableList.copyOf(buffer));
+    assertEquals(Integer.valueOf(0), buffer.peek());
+    for (int i = 0; i < 10; i++) {
+      assertEquals(Integer.valueOf(i), buffer.poll());
+    }
+    assertNull(buffer.poll());
+    assertEquals(0, buffer.size());
+  }
+
+  public void testOffer_full() {
+    ReadBuffer<Integer> buffer = new ReadBuffer<Integer>(1);
+    for (int i = 0; i < ReadBuffer.STRIPE_CAPACITY; i++) {
+      assertTrue(buffer.offer(i));
+    }
+    assertFalse(buffer.offer(-1));
+    assertEquals(ReadBuffer.STRIPE_CAPACITY, buffer.size());
+
+    // draining makes room again, and the dropped element is gone
+    assertEquals(Integer.valueOf(0), buffer.poll());
+    assertTrue(buffer.offer(ReadBuffer.STRIPE_CAPACITY));
+    for (int i = 1; i <= ReadBuffer.STRIPE_CAPACITY; i++) {
+      assertEquals(Integer.valueOf(i), buffer.poll());
+    }
+    assertNull(buffer.poll());
+  }
+
+  public void testOffer_null() {
+    ReadBuffer<Integer> buffer = new ReadBuffer<Integer>(1);
+    try {
+      buffer.offer(null);
+      fail();
+    } catch (NullPointerException expected) {}
+  }
+
+  public void testOffer_concurrent() throws InterruptedException {
+    final ReadBuffer<Integer> buffer = new ReadBuffer<Integer>(4);
+    final int threads = 8;
+    final int perThread = 1000;
+    final CountDownLatch start = new CountDownLatch(1);
+    final CountDownLatch done = new CountDownLatch(threads);
+    final AtomicInteger rejected = new AtomicInteger();
+    for (int t = 0; t < threads; t++) {
+      final int base = t * perThread;
+      new Thread() {
+        @Override public void run() {
+          try {
+            start.await();
+            for (int i = 0; i < perThread; i++) {
+              if (!buffer.offer(base + i)) {
+                rejected.incrementAndGet();
+              }
+            }
+          } catch (InterruptedException e) {
+            throw new AssertionError(e);
+          } finally {
+            done.countDown();
+          }
+        }
+      }.start();
+    }
+
+    // drain concurrently, as a segment would while holding its lock
+    Set<Integer> drained = Sets.newHashSet();
+    start.countDown();
+    while (done.getCount() > 0) {
+      Integer e;
+      while ((e = buffer.poll()) != null) {
+        assertTrue(drained.add(e));
+      }
+    }
+    done.await();
+    Integer e;
+    while ((e = buffer.poll()) != null) {
+      assertTrue(drained.add(e));
+    }
+
+    // elements may be dropped, but are never duplicated or invented
+    assertTrue(drained.size() <= threads * perThread - rejected.get());
+    for (Integer element : drained) {
+      assertTrue(element >= 0 && element < threads * perThread);
+    }
+    assertEquals(0, buffer.size());
+  }
+}
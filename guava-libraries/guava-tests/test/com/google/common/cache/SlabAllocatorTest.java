@@ -0,0 +1,88 @@
+/*
+ * Copyright (C) 2013 The Guava Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.common.cache;
+
+import junit.framework.TestCase;
+
+import java.util.Arrays;
+
+/**
+ * Unit tests for {@link SlabAllocator}.
+ */
+public class SlabAllocatorTest extends TestCase {
+
+  public void testSizeClass() {
+    assertEquals(0, SlabAllocator.sizeClass(0));
+    assertEquals(0, SlabAllocator.sizeClass(16));
+    assertEquals(1, SlabAllocator.sizeClass(17));
+    assertEquals(1, SlabAllocator.sizeClass(32));
+    assertEquals(2, SlabAllocator.sizeClass(33));
+    assertEquals(SlabAllocator.MAX_SLOT_SHIFT - SlabAllocator.MIN_SLOT_SHIFT,
+        SlabAllocator.sizeClass(SlabAllocator.PAGE_SIZE / 2));
+    assertEquals(-1, SlabAllocator.sizeClass(SlabAllocator.PAGE_SIZE / 2 + 1));
+  }
+
+  public void testAllocate_roundTrip() {
+    SlabAllocator allocator = new SlabAllocator();
+    int[] lengths = { 0, 1, 16, 17, 1000, SlabAllocator.PAGE_SIZE / 2, SlabAllocator.PAGE_SIZE };
+    long[] addresses = new long[lengths.length];
+    for (int i = 0; i < lengths.length; i++) {
+      addresses[i] = allocator.allocate(bytes(lengths[i], i));
+    }
+    for (int i = 0; i < lengths.length; i++) {
+      assertTrue(Arrays.equals(bytes(lengths[i], i), allocator.read(addresses[i], lengths[i])));
+    }
+  }
+
+  public void testAllocate_sharesPages() {
+    SlabAllocator allocator = new SlabAllocator();
+    long first = allocator.allocate(bytes(100, 0));
+    long second = allocator.allocate(bytes(100, 1));
+    assertEquals(first >>> 32, second >>> 32);
+    assertEquals(128, SlabAllocator.offsetOf(second) - SlabAllocator.offsetOf(first));
+    assertEquals(SlabAllocator.PAGE_SIZE, allocator.reservedBytes());
+  }
+
+  public void testFree_reusesSlot() {
+    SlabAllocator allocator = new SlabAllocator();
+    long address = allocator.allocate(bytes(100, 0));
+    allocator.free(address, 100);
+    assertEquals(address, allocator.allocate(bytes(90, 1)));
+    assertTrue(Arrays.equals(bytes(90, 1), allocator.read(address, 90)));
+  }
+
+  public void testFree_oversizedPage() {
+    SlabAllocator allocator = new SlabAllocator();
+    int length = SlabAllocator.PAGE_SIZE + 1;
+    long address = allocator.allocate(bytes(length, 0));
+    assertEquals(length, allocator.reservedBytes());
+    allocator.free(address, length);
+    assertEquals(0, allocator.reservedBytes());
+    assertNull(allocator.pageOf(address));
+
+    // the page index is reused
+    assertEquals(address, allocator.allocate(bytes(length, 1)));
+  }
+
+  private static byte[] bytes(int length, int seed) {
+    byte[] bytes = new byte[length];
+    for (int i = 0; i < length; i++) {
+      bytes[i] = (byte) (seed * 31 + i);
+    }
+    return bytes;
+  }
+}
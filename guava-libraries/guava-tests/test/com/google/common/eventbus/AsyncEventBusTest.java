@@ -16,12 +16,22 @@
 
 package com.google.common.eventbus;
 
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
+import com.google.common.eventbus.AsyncEventBus.OverflowPolicy;
+import com.google.common.testing.TestLogHandler;
 
 import junit.framework.TestCase;
 
 import java.util.List;
 import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
 
 /**
  * Test case for {@link AsyncEventBus}.
@@ -62,6 +72,224 @@ public class AsyncEventBusTest extends TestCase {
     assertEquals("Correct string should be delivered.", EVENT, events.get(0));
   }
 
+  public void testBoundedDistribution_batched() {
+    AsyncEventBus boundedBus = new AsyncEventBus(executor, 10, OverflowPolicy.DROP);
+    StringCatcher catcher = new StringCatcher();
+    boundedBus.register(catcher);
+
+    boundedBus.post("a");
+    boundedBus.post("b");
+    boundedBus.post("c");
+    assertTrue("No events should be delivered synchronously.",
+        catcher.getEvents().isEmpty());
+
+    List<Runnable> tasks = executor.getTasks();
+    assertEquals("One task should deliver all the queued events.", 1, tasks.size());
+    tasks.get(0).run();
+    assertEquals(ImmutableList.of("a", "b", "c"), catcher.getEvents());
+
+    boundedBus.post("d");
+    assertEquals("A new task should be queued once the last one is done.", 2, tasks.size());
+    tasks.get(1).run();
+    assertEquals(ImmutableList.of("a", "b", "c", "d"), catcher.getEvents());
+  }
+
+  public void testBoundedDistribution_drop() {
+    AsyncEventBus boundedBus = new AsyncEventBus(executor, 2, OverflowPolicy.DROP);
+    StringCatcher catcher = new StringCatcher();
+    boundedBus.register(catcher);
+
+    boundedBus.post("a");
+    boundedBus.post("b");
+    boundedBus.post("c");
+
+    List<Runnable> tasks = executor.getTasks();
+    assertEquals(1, tasks.size());
+    tasks.get(0).run();
+    assertEquals(ImmutableList.of("a", "b"), catcher.getEvents());
+  }
+
+  public void testBoundedDistribution_dropIsLogged() {
+    AsyncEventBus boundedBus = new AsyncEventBus("dropped", executor, 1, OverflowPolicy.DROP);
+    boundedBus.register(new StringCatcher());
+    Logger logger = Logger.getLogger(EventBus.class.getName() + ".dropped");
+    TestLogHandler logHandler = new TestLogHandler();
+    logger.addHandler(logHandler);
+    try {
+      boundedBus.post("a");
+      boundedBus.post("b");
+    } finally {
+      logger.removeHandler(logHandler);
+    }
+
+    List<LogRecord> records = logHandler.getStoredLogRecords();
+    assertEquals(1, records.size());
+    assertEquals(Level.WARNING, records.get(0).getLevel());
+    assertTrue(records.get(0).getMessage().contains("b"));
+  }
+
+  public void testBoundedDistribution_callerRuns() {
+    AsyncEventBus boundedBus = new AsyncEventBus(executor, 1, OverflowPolicy.CALLER_RUNS);
+    StringCatcher catcher = new StringCatcher();
+    boundedBus.register(catcher);
+
+    boundedBus.post("a");
+    boundedBus.post("b");
+    assertEquals("The event which overflowed, and those queued before it, should be delivered "
+        + "synchronously, in order.", ImmutableList.of("a", "b"), catcher.getEvents());
+
+    List<Runnable> tasks = executor.getTasks();
+    assertEquals(1, tasks.size());
+    tasks.get(0).run();
+    assertEquals(ImmutableList.of("a", "b"), catcher.getEvents());
+  }
+
+  public void testBoundedDistribution_callerRunsPostingToItself() {
+    final AsyncEventBus boundedBus = new AsyncEventBus(executor, 1, OverflowPolicy.CALLER_RUNS);
+    final List<String> events = Lists.newArrayList();
+    boundedBus.register(new Object() {
+      @Subscribe public void handle(String event) {
+        events.add(event);
+        if (event.equals("a")) {
+          boundedBus.post("b");
+          boundedBus.post("c");
+        }
+      }
+    });
+
+    boundedBus.post("a");
+    List<Runnable> tasks = executor.getTasks();
+    assertEquals(1, tasks.size());
+    tasks.get(0).run();
+    assertEquals(ImmutableList.of("a", "b", "c"), events);
+  }
+
+  public void testBoundedDistribution_callerRunsInOrder() throws Exception {
+    ExecutorService realExecutor = Executors.newFixedThreadPool(2);
+    AsyncEventBus boundedBus = new AsyncEventBus(realExecutor, 1, OverflowPolicy.CALLER_RUNS);
+    final List<Integer> events = Lists.newCopyOnWriteArrayList();
+    boundedBus.register(new Object() {
+      @Subscribe public void handle(Integer event) {
+        events.add(event);
+      }
+    });
+
+    List<Integer> expectedEvents = Lists.newArrayList();
+    for (int i = 0; i < 1000; i++) {
+      boundedBus.post(i);
+      expectedEvents.add(i);
+    }
+    realExecutor.shutdown();
+    assertTrue(realExecutor.awaitTermination(10, TimeUnit.SECONDS));
+    assertEquals(expectedEvents, events);
+  }
+
+  public void testBoundedDistribution_callerRunsFromManyThreads() throws Exception {
+    final AtomicInteger delivered = new AtomicInteger();
+    Object handler = new Object() {
+      @Subscribe public void handle(Integer event) {
+        delivered.incrementAndGet();
+      }
+    };
+    for (int i = 0; i < 10; i++) {
+      ExecutorService realExecutor = Executors.newFixedThreadPool(2);
+      AsyncEventBus boundedBus = new AsyncEventBus(realExecutor, 1, OverflowPolicy.CALLER_RUNS);
+      boundedBus.register(handler);
+      delivered.set(0);
+      postFromThreads(boundedBus, 4, 5000);
+      realExecutor.shutdown();
+      assertTrue(realExecutor.awaitTermination(10, TimeUnit.SECONDS));
+      assertEquals("Every posted event should be delivered.", 4 * 5000, delivered.get());
+    }
+  }
+
+  public void testBoundedDistribution_concurrentHandler() {
+    AsyncEventBus boundedBus = new AsyncEventBus(executor, 100, OverflowPolicy.DROP);
+    final List<Integer> events = Lists.newArrayList();
+    boundedBus.register(new Object() {
+      @Subscribe @AllowConcurrentEvents public void handle(Integer event) {
+        events.add(event);
+      }
+    });
+
+    List<Integer> expectedEvents = Lists.newArrayList();
+    for (int i = 0; i < 40; i++) {
+      boundedBus.post(i);
+      expectedEvents.add(i);
+    }
+    List<Runnable> tasks = executor.getTasks();
+    assertTrue("Tasks should deliver the events of a concurrent handler in batches.",
+        tasks.size() < 40);
+    assertTrue("More than one task should deliver the events of a concurrent handler.",
+        tasks.size() > 1);
+    tasks.get(0).run();
+    assertEquals("A task should deliver all the queued events.", expectedEvents, events);
+  }
+
+  public void testBoundedDistribution_concurrentHandlerFromManyThreads() throws Exception {
+    ExecutorService realExecutor = Executors.newFixedThreadPool(4);
+    AsyncEventBus boundedBus = new AsyncEventBus(realExecutor, 64, OverflowPolicy.BLOCK);
+    final AtomicInteger delivered = new AtomicInteger();
+    boundedBus.register(new Object() {
+      @Subscribe @AllowConcurrentEvents public void handle(Integer event) {
+        delivered.incrementAndGet();
+      }
+    });
+
+    postFromThreads(boundedBus, 4, 5000);
+    realExecutor.shutdown();
+    assertTrue(realExecutor.awaitTermination(10, TimeUnit.SECONDS));
+    assertEquals("Every posted event should be delivered.", 4 * 5000, delivered.get());
+  }
+
+  /** Posts {@code postsPerThread} events from each of {@code threadCount} threads. */
+  private static void postFromThreads(final EventBus bus, int threadCount,
+      final int postsPerThread) throws InterruptedException {
+    Thread[] threads = new Thread[threadCount];
+    for (int i = 0; i < threadCount; i++) {
+      threads[i] = new Thread() {
+        @Override public void run() {
+          for (int j = 0; j < postsPerThread; j++) {
+            bus.post(j);
+          }
+        }
+      };
+      threads[i].start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+  }
+
+  public void testBoundedDistribution_block() throws Exception {
+    ExecutorService realExecutor = Executors.newFixedThreadPool(2);
+    AsyncEventBus boundedBus = new AsyncEventBus(realExecutor, 1, OverflowPolicy.BLOCK);
+    final List<Integer> events = Lists.newCopyOnWriteArrayList();
+    boundedBus.register(new Object() {
+      @Subscribe public void handle(Integer event) {
+        events.add(event);
+      }
+    });
+
+    List<Integer> expectedEvents = Lists.newArrayList();
+    for (int i = 0; i < 1000; i++) {
+      boundedBus.post(i);
+      expectedEvents.add(i);
+    }
+    realExecutor.shutdown();
+    assertTrue(realExecutor.awaitTermination(10, TimeUnit.SECONDS));
+    assertEquals("The events of a handler should be delivered in order, by one task at a time.",
+        expectedEvents, events);
+  }
+
+  public void testBoundedConstructor_invalidCapacity() {
+    try {
+      new AsyncEventBus(executor, 0, OverflowPolicy.BLOCK);
+      fail();
+    } catch (IllegalArgumentException expected) {
+    }
+  }
+
   /**
    * An {@link Executor} wanna-be that simply records the tasks it's given.
    * Arguably the Worst Executor Ever.
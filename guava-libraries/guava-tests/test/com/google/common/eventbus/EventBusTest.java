@@ -210,6 +210,40 @@ public class EventBusTest extends TestCase {
                  expectedEvents, catcher2.getEvents());
   }
 
+  /**
+   * Tests that registering and unregistering handlers affects events of a class
+   * which was already posted, for which the handlers were looked up before.
+   */
+  public void testRegisterAndUnregisterAfterPost() {
+    final List<Object> objectEvents = Lists.newArrayList();
+    Object objCatcher = new Object() {
+      @SuppressWarnings("unused")
+      @Subscribe public void eat(Object food) {
+        objectEvents.add(food);
+      }
+    };
+    StringCatcher stringCatcher = new StringCatcher();
+    bus.register(stringCatcher);
+    bus.post(EVENT);
+
+    bus.register(objCatcher);
+    bus.post(EVENT);
+    assertEquals(ImmutableList.of(EVENT, EVENT), stringCatcher.getEvents());
+    assertEquals(ImmutableList.of(EVENT), objectEvents);
+
+    bus.unregister(stringCatcher);
+    bus.post(EVENT);
+    assertEquals(ImmutableList.of(EVENT, EVENT), stringCatcher.getEvents());
+    assertEquals(ImmutableList.of(EVENT, EVENT), objectEvents);
+
+    bus.unregister(objCatcher);
+    GhostCatcher ghostCatcher = new GhostCatcher();
+    bus.register(ghostCatcher);
+    bus.post(EVENT);
+    assertEquals(ImmutableList.of(EVENT, EVENT), objectEvents);
+    assertEquals(1, ghostCatcher.getEvents().size());
+  }
+
   // NOTE: This test will always pass if register() is thread-safe but may also
   // pass if it isn't, though this is unlikely.
 
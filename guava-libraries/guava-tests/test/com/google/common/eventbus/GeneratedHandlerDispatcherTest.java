@@ -0,0 +1,235 @@
+/*
+ * Copyright (C) 2013 The Guava Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.common.eventbus;
+
+import com.google.common.collect.Lists;
+
+import junit.framework.TestCase;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.List;
+
+/**
+ * Test case for {@link GeneratedHandlerDispatcher}.
+ */
+public class GeneratedHandlerDispatcherTest extends TestCase {
+
+  private final HandlerDispatchStrategy dispatcher = new GeneratedHandlerDispatcher();
+
+  public void testBasicMethodCall() throws Exception {
+    Method method = Recorder.class.getMethod("record", String.class);
+    HandlerDispatchStrategy.Invoker invoker = dispatcher.invokerFor(method);
+    assertGenerated(invoker);
+
+    Recorder recorder = new Recorder();
+    invoker.invoke(recorder, "foo");
+    invoker.invoke(recorder, "bar");
+    assertEquals(Lists.newArrayList("foo", "bar"), recorder.events);
+  }
+
+  public void testInvokerIsShared() throws Exception {
+    Method method = Recorder.class.getMethod("record", String.class);
+    assertSame(dispatcher.invokerFor(method), new GeneratedHandlerDispatcher().invokerFor(method));
+  }
+
+  public void testInvokerClassLoaderIsShared() throws Exception {
+    HandlerDispatchStrategy.Invoker recordInvoker =
+        dispatcher.invokerFor(Recorder.class.getMethod("record", String.class));
+    HandlerDispatchStrategy.Invoker handleInvoker =
+        dispatcher.invokerFor(Handler.class.getMethod("handle", Object.class));
+    assertGenerated(recordInvoker);
+    assertGenerated(handleInvoker);
+    assertSame(recordInvoker.getClass().getClassLoader(),
+        handleInvoker.getClass().getClassLoader());
+  }
+
+  public void testWrongTargetType() throws Exception {
+    Method method = Recorder.class.getMethod("record", String.class);
+    HandlerDispatchStrategy.Invoker invoker = dispatcher.invokerFor(method);
+    assertGenerated(invoker);
+    try {
+      invoker.invoke(new Object(), "foo");
+      fail();
+    } catch (IllegalArgumentException expected) {
+      assertTrue(expected.getCause() instanceof ClassCastException);
+    }
+  }
+
+  public void testWrongEventType() throws Exception {
+    Method method = Recorder.class.getMethod("record", String.class);
+    EventHandler handler = new EventHandler(new Recorder(), method, dispatcher.invokerFor(method));
+    try {
+      handler.handleEvent(42);
+      fail("Handlers must reject events of the wrong type as reflection does");
+    } catch (Error expected) {
+      assertTrue(expected.getCause() instanceof IllegalArgumentException);
+    }
+  }
+
+  public void testOverridingMethod() throws Exception {
+    Method method = Recorder.class.getMethod("record", String.class);
+    HandlerDispatchStrategy.Invoker invoker = dispatcher.invokerFor(method);
+
+    SubRecorder recorder = new SubRecorder();
+    invoker.invoke(recorder, "foo");
+    assertEquals(Lists.newArrayList("sub foo"), recorder.events);
+  }
+
+  public void testReturnValuesAreIgnored() throws Exception {
+    Method method = Recorder.class.getMethod("recordAndReturnLong", Integer.class);
+    HandlerDispatchStrategy.Invoker invoker = dispatcher.invokerFor(method);
+    assertGenerated(invoker);
+
+    Recorder recorder = new Recorder();
+    invoker.invoke(recorder, 42);
+    assertEquals(Lists.newArrayList(42), recorder.events);
+  }
+
+  public void testInterfaceMethod() throws Exception {
+    Method method = Handler.class.getMethod("handle", Object.class);
+    HandlerDispatchStrategy.Invoker invoker = dispatcher.invokerFor(method);
+    assertGenerated(invoker);
+
+    final List<Object> events = Lists.newArrayList();
+    invoker.invoke(new Handler() {
+      @Override public void handle(Object event) {
+        events.add(event);
+      }
+    }, "foo");
+    assertEquals(Lists.newArrayList("foo"), events);
+  }
+
+  public void testExceptionWrapping() throws Exception {
+    Method method = Recorder.class.getMethod("throwException", Object.class);
+    EventHandler handler = new EventHandler(new Recorder(), method, dispatcher.invokerFor(method));
+    try {
+      handler.handleEvent("foo");
+      fail("Handlers whose methods throw must throw InvocationTargetException");
+    } catch (InvocationTargetException e) {
+      assertTrue(e.getCause() instanceof IntentionalException);
+    }
+  }
+
+  public void testErrorPassthrough() throws Exception {
+    Method method = Recorder.class.getMethod("throwError", Object.class);
+    EventHandler handler = new EventHandler(new Recorder(), method, dispatcher.invokerFor(method));
+    try {
+      handler.handleEvent("foo");
+      fail("Handlers whose methods throw Errors must rethrow them");
+    } catch (JudgmentError expected) {
+    }
+  }
+
+  public void testNonPublicClassFallsBackToReflection() throws Exception {
+    Method method = PrivateRecorder.class.getMethod("record", String.class);
+    assertFalse(GeneratedHandlerDispatcher.canGenerateInvoker(method));
+    HandlerDispatchStrategy.Invoker invoker = dispatcher.invokerFor(method);
+
+    PrivateRecorder recorder = new PrivateRecorder();
+    invoker.invoke(recorder, "foo");
+    assertEquals(Lists.newArrayList("foo"), recorder.events);
+  }
+
+  public void testCanGenerateInvoker() throws Exception {
+    assertTrue(GeneratedHandlerDispatcher.canGenerateInvoker(
+        Recorder.class.getMethod("record", String.class)));
+    assertFalse(GeneratedHandlerDispatcher.canGenerateInvoker(
+        Recorder.class.getMethod("recordStatic", String.class)));
+    assertFalse(GeneratedHandlerDispatcher.canGenerateInvoker(
+        Recorder.class.getMethod("recordInt", int.class)));
+    assertFalse(GeneratedHandlerDispatcher.canGenerateInvoker(
+        Recorder.class.getMethod("recordArray", String[].class)));
+    assertFalse(GeneratedHandlerDispatcher.canGenerateInvoker(
+        Recorder.class.getMethod("recordPrivateEvent", PrivateEvent.class)));
+  }
+
+  public void testEventBus() {
+    EventBus bus = new EventBus();
+    Recorder recorder = new Recorder();
+    bus.register(recorder);
+    bus.post("foo");
+    bus.post(42);
+    assertEquals(Lists.newArrayList("foo", 42), recorder.events);
+  }
+
+  private static void assertGenerated(HandlerDispatchStrategy.Invoker invoker) {
+    assertTrue(invoker.getClass().getName(),
+        invoker.getClass().getName().contains("$$EventHandlerInvoker$"));
+  }
+
+  public static class Recorder {
+    final List<Object> events = Lists.newArrayList();
+
+    @Subscribe
+    public void record(String event) {
+      events.add(event);
+    }
+
+    @Subscribe
+    public long recordAndReturnLong(Integer event) {
+      events.add(event);
+      return event;
+    }
+
+    public static void recordStatic(String event) {}
+
+    public void recordInt(int event) {}
+
+    public void recordArray(String[] event) {}
+
+    public void recordPrivateEvent(PrivateEvent event) {}
+
+    public void throwException(Object event) throws IntentionalException {
+      throw new IntentionalException();
+    }
+
+    public void throwError(Object event) {
+      throw new JudgmentError();
+    }
+  }
+
+  public static class SubRecorder extends Recorder {
+    @Override public void record(String event) {
+      events.add("sub " + event);
+    }
+  }
+
+  public interface Handler {
+    void handle(Object event);
+  }
+
+  private static class PrivateRecorder {
+    final List<Object> events = Lists.newArrayList();
+
+    @SuppressWarnings("unused") // called through an invoker
+    public void record(String event) {
+      events.add(event);
+    }
+  }
+
+  private static class PrivateEvent {}
+
+  /** Local exception subclass to check variety of exception thrown. */
+  static class IntentionalException extends Exception {
+    private static final long serialVersionUID = 0;
+  }
+
+  /** Local Error subclass to check variety of error thrown. */
+  static class JudgmentError extends Error {
+    private static final long serialVersionUID = 0;
+  }
+}
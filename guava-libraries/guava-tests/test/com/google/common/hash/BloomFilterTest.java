@@ -17,6 +17,7 @@
 package com.google.common.hash;
 
 import com.google.common.collect.ImmutableSet;
+import com.google.common.hash.BloomFilterStrategies.BitArray;
 import com.google.common.math.LongMath;
 import com.google.common.primitives.Ints;
 import com.google.common.testing.EqualsTester;
@@ -25,7 +26,11 @@ import com.google.common.testing.SerializableTester;
 
 import junit.framework.TestCase;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.math.RoundingMode;
+import java.util.Arrays;
 import java.util.Random;
 
 import javax.annotation.Nullable;
@@ -340,12 +345,101 @@ public class BloomFilterTest extends TestCase {
     SerializableTester.reserializeAndAssert(bf);
   }
 
+  public void testBlockedLayout() {
+    int numInsertions = 100000;
+    double fpp = 0.01;
+    BloomFilter<CharSequence> bf = BloomFilter.create(
+        Funnels.unencodedCharsFunnel(), numInsertions, fpp, BloomFilter.Layout.BLOCKED);
+    assertEquals(0, bf.bitSize() % BloomFilterStrategies.BLOCK_BITS);
+    assertTrue(bf.bitSize() >= BloomFilter.optimalNumOfBits(numInsertions, fpp));
+
+    for (int i = 0; i < numInsertions * 2; i += 2) {
+      bf.put(Integer.toString(i));
+    }
+    for (int i = 0; i < numInsertions * 2; i += 2) {
+      assertTrue(bf.mightContain(Integer.toString(i)));
+    }
+    int falsePositives = 0;
+    for (int i = 1; i < numInsertions * 2; i += 2) {
+      if (bf.mightContain(Integer.toString(i))) {
+        falsePositives++;
+      }
+    }
+    double actualFpp = (double) falsePositives / numInsertions;
+    assertTrue("actual fpp " + actualFpp, actualFpp > fpp / 2 && actualFpp < fpp * 1.5);
+  }
+
+  public void testBlockedLayout_bitsInOneBlock() {
+    for (int i = 0; i < 100; i++) {
+      BitArray elementBits = new BitArray(64 * BloomFilterStrategies.BLOCK_BITS);
+      BloomFilterStrategies.MURMUR128_BLOCKED_64.put(i, Funnels.integerFunnel(), 7, elementBits);
+      int first = -1;
+      int last = -1;
+      for (int bit = 0; bit < elementBits.bitSize(); bit++) {
+        if (elementBits.get(bit)) {
+          last = bit;
+          if (first == -1) {
+            first = bit;
+          }
+        }
+      }
+      assertEquals(first / BloomFilterStrategies.BLOCK_BITS,
+          last / BloomFilterStrategies.BLOCK_BITS);
+    }
+  }
+
+  public void testWriteToReadFrom() throws IOException {
+    BloomFilter<byte[]> bf = BloomFilter.create(Funnels.byteArrayFunnel(), 100);
+    for (int i = 0; i < 10; i++) {
+      bf.put(Ints.toByteArray(i));
+    }
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    bf.writeTo(out);
+    byte[] bytes = out.toByteArray();
+    assertEquals(BloomFilter.HEADER_BYTES + bf.bitSize() / Byte.SIZE, bytes.length);
+
+    BloomFilter<byte[]> copy =
+        BloomFilter.readFrom(new ByteArrayInputStream(bytes), Funnels.byteArrayFunnel());
+    assertEquals(bf, copy);
+    for (int i = 0; i < 10; i++) {
+      assertTrue(copy.mightContain(Ints.toByteArray(i)));
+    }
+    assertEquals(bf.expectedFpp(), copy.expectedFpp());
+  }
+
+  public void testReadFrom_invalid() throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    BloomFilter.create(Funnels.byteArrayFunnel(), 100).writeTo(out);
+    byte[] bytes = out.toByteArray();
+
+    assertReadFromFails(Arrays.copyOf(bytes, bytes.length - 1));
+    byte[] badVersion = bytes.clone();
+    badVersion[0] = 2;
+    assertReadFromFails(badVersion);
+    byte[] badStrategy = bytes.clone();
+    badStrategy[1] = (byte) BloomFilterStrategies.values().length;
+    assertReadFromFails(badStrategy);
+    byte[] noHashFunctions = bytes.clone();
+    noHashFunctions[2] = 0;
+    assertReadFromFails(noHashFunctions);
+  }
+
+  private static void assertReadFromFails(byte[] bytes) {
+    try {
+      BloomFilter.readFrom(new ByteArrayInputStream(bytes), Funnels.byteArrayFunnel());
+      fail();
+    } catch (IOException expected) {
+    }
+  }
+
   /**
    * This test will fail whenever someone updates/reorders the BloomFilterStrategies constants.
    * Only appending a new constant is allowed.
    */
   public void testBloomFilterStrategies() {
-    assertEquals(1, BloomFilterStrategies.values().length);
+    assertEquals(2, BloomFilterStrategies.values().length);
     assertEquals(BloomFilterStrategies.MURMUR128_MITZ_32, BloomFilterStrategies.values()[0]);
+    assertEquals(BloomFilterStrategies.MURMUR128_BLOCKED_64, BloomFilterStrategies.values()[1]);
   }
 }
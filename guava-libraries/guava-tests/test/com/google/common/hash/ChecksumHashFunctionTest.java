@@ -16,6 +16,7 @@ package com.google.common.hash;
 
 import static com.google.common.hash.Hashing.ChecksumType.ADLER_32;
 import static com.google.common.hash.Hashing.ChecksumType.CRC_32;
+import static com.google.common.hash.Hashing.ChecksumType.CRC_32C;
 
 import com.google.common.base.Supplier;
 
@@ -36,6 +37,12 @@ public class ChecksumHashFunctionTest extends TestCase {
     assertChecksum(CRC_32, "foobar");
   }
 
+  public void testCrc32c_equalsChecksumValue() throws Exception {
+    assertChecksum(CRC_32C, "");
+    assertChecksum(CRC_32C, "Z");
+    assertChecksum(CRC_32C, "foobar");
+  }
+
   public void testAdler32_equalsChecksumValue() throws Exception {
     assertChecksum(ADLER_32, "");
     assertChecksum(ADLER_32, "Z");
@@ -53,6 +60,17 @@ public class ChecksumHashFunctionTest extends TestCase {
     assertHash32(0x4400B5BC, CRC_32, "The quick brown fox jumps over the lazy cog");
   }
 
+  public void testCrc32c_knownValues() throws Exception {
+    assertHash32(0xA099F534, CRC_32C, "hell");
+    assertHash32(0x9A71BB4C, CRC_32C, "hello");
+    assertHash32(0x7E627E58, CRC_32C, "hello ");
+    assertHash32(0x2CAD83D5, CRC_32C, "hello w");
+    assertHash32(0x8BA6A423, CRC_32C, "hello wo");
+    assertHash32(0xF1B8AC25, CRC_32C, "hello wor");
+    assertHash32(0x22620404, CRC_32C, "The quick brown fox jumps over the lazy dog");
+    assertHash32(0x5692606D, CRC_32C, "The quick brown fox jumps over the lazy cog");
+  }
+
   public void testAdler32_knownValues() throws Exception {
     assertHash32(0x041701A6, ADLER_32, "hell");
     assertHash32(0x062C0215, ADLER_32, "hello");
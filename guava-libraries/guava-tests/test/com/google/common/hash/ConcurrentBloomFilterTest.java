@@ -0,0 +1,141 @@
+/*
+ * Copyright (C) 2013 The Guava Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.common.hash;
+
+import com.google.common.hash.BloomFilter.Layout;
+import com.google.common.testing.NullPointerTester;
+
+import junit.framework.TestCase;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tests for {@link ConcurrentBloomFilter}.
+ */
+public class ConcurrentBloomFilterTest extends TestCase {
+
+  public void testSameAsBloomFilter() {
+    for (Layout layout : Layout.values()) {
+      ConcurrentBloomFilter<CharSequence> cbf =
+          ConcurrentBloomFilter.create(Funnels.unencodedCharsFunnel(), 1000, 0.01, layout);
+      BloomFilter<CharSequence> bf =
+          BloomFilter.create(Funnels.unencodedCharsFunnel(), 1000, 0.01, layout);
+      assertEquals(bf.bitSize(), cbf.bitSize());
+      for (int i = 0; i < 1000; i++) {
+        String string = Integer.toString(i);
+        assertEquals(bf.put(string), cbf.put(string));
+      }
+      for (int i = 0; i < 2000; i++) {
+        String string = Integer.toString(i);
+        assertEquals(bf.mightContain(string), cbf.mightContain(string));
+        assertEquals(bf.mightContain(string), cbf.apply(string));
+      }
+      assertEquals(bf.expectedFpp(), cbf.expectedFpp());
+      assertEquals(bf, cbf.snapshot());
+    }
+  }
+
+  public void testPutReturnValue() {
+    ConcurrentBloomFilter<CharSequence> cbf =
+        ConcurrentBloomFilter.create(Funnels.unencodedCharsFunnel(), 100, 0.01);
+    for (int i = 0; i < 10; i++) {
+      String string = "Test" + i;
+      assertEquals(!cbf.mightContain(string), cbf.put(string));
+      assertFalse(cbf.put(string));
+      assertTrue(cbf.mightContain(string));
+    }
+  }
+
+  public void testSnapshotIsIndependent() {
+    ConcurrentBloomFilter<Integer> cbf =
+        ConcurrentBloomFilter.create(Funnels.integerFunnel(), 100, 0.01);
+    cbf.put(1);
+    BloomFilter<Integer> snapshot = cbf.snapshot();
+    cbf.put(2);
+    snapshot.put(3);
+    assertTrue(snapshot.mightContain(1));
+    assertFalse(snapshot.mightContain(2));
+    assertFalse(cbf.mightContain(3));
+  }
+
+  public void testConcurrentPuts() throws InterruptedException {
+    final int threadCount = 8;
+    final int perThread = 10000;
+    final ConcurrentBloomFilter<Integer> cbf =
+        ConcurrentBloomFilter.create(Funnels.integerFunnel(), threadCount * perThread, 0.01);
+    final CountDownLatch start = new CountDownLatch(1);
+    final AtomicInteger failures = new AtomicInteger();
+    Thread[] threads = new Thread[threadCount];
+    for (int t = 0; t < threadCount; t++) {
+      final int offset = t * perThread;
+      threads[t] = new Thread() {
+        @Override public void run() {
+          try {
+            start.await();
+          } catch (InterruptedException e) {
+            failures.incrementAndGet();
+            return;
+          }
+          for (int i = offset; i < offset + perThread; i++) {
+            cbf.put(i);
+            if (!cbf.mightContain(i)) {
+              failures.incrementAndGet();
+            }
+          }
+        }
+      };
+      threads[t].start();
+    }
+    start.countDown();
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    assertEquals(0, failures.get());
+
+    BloomFilter<Integer> bf =
+        BloomFilter.create(Funnels.integerFunnel(), threadCount * perThread, 0.01);
+    for (int i = 0; i < threadCount * perThread; i++) {
+      assertTrue(cbf.mightContain(i));
+      bf.put(i);
+    }
+    assertEquals(bf, cbf.snapshot());
+    assertEquals(bf.expectedFpp(), cbf.expectedFpp());
+  }
+
+  public void testPreconditions() {
+    try {
+      ConcurrentBloomFilter.create(Funnels.unencodedCharsFunnel(), -1, 0.01);
+      fail();
+    } catch (IllegalArgumentException expected) {}
+    try {
+      ConcurrentBloomFilter.create(Funnels.unencodedCharsFunnel(), 1, 0.0);
+      fail();
+    } catch (IllegalArgumentException expected) {}
+    try {
+      ConcurrentBloomFilter.create(Funnels.unencodedCharsFunnel(), 1, 1.0);
+      fail();
+    } catch (IllegalArgumentException expected) {}
+  }
+
+  public void testNullPointers() {
+    NullPointerTester tester = new NullPointerTester();
+    tester.testAllPublicInstanceMethods(
+        ConcurrentBloomFilter.create(Funnels.unencodedCharsFunnel(), 100, 0.01));
+    tester.testAllPublicStaticMethods(ConcurrentBloomFilter.class);
+  }
+}
@@ -0,0 +1,160 @@
+/*
+ * Copyright (C) 2013 The Guava Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.common.hash;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.testing.NullPointerTester;
+
+import junit.framework.TestCase;
+
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Tests for {@link CountMinSketch}.
+ */
+public class CountMinSketchTest extends TestCase {
+
+  public void testDimensions() {
+    assertEquals(272, CountMinSketch.width(0.01));
+    assertEquals(28, CountMinSketch.width(0.1));
+    assertEquals(5, CountMinSketch.depth(0.01));
+    assertEquals(1, CountMinSketch.depth(0.5));
+    assertEquals(1, CountMinSketch.depth(0.99));
+  }
+
+  public void testExactForFewElements() {
+    for (CountMinSketch<Integer> sketch : sketches(0.001, 0.01)) {
+      for (int i = 0; i < 10; i++) {
+        for (int j = 0; j <= i; j++) {
+          sketch.add(i);
+        }
+      }
+      for (int i = 0; i < 10; i++) {
+        assertEquals(i + 1, sketch.estimateCount(i));
+      }
+      assertEquals(0, sketch.estimateCount(10));
+      assertEquals(55, sketch.totalCount());
+    }
+  }
+
+  public void testErrorBound() {
+    for (CountMinSketch<Integer> sketch : sketches(0.001, 0.01)) {
+      // a skewed stream: element i occurs about 10000 / (i + 1) times
+      int[] counts = new int[10000];
+      Random random = new Random(0);
+      for (int n = 0; n < 100000; n++) {
+        int element = (int) (Math.exp(random.nextDouble() * Math.log(counts.length))) - 1;
+        counts[element]++;
+        long before = sketch.estimateCount(element);
+        assertEquals(before + 1, sketch.add(element));
+      }
+      assertEquals(100000, sketch.totalCount());
+      long errorBound = sketch.errorBound();
+      int exceeding = 0;
+      for (int i = 0; i < counts.length; i++) {
+        long estimate = sketch.estimateCount(i);
+        assertTrue(estimate >= counts[i]);
+        if (estimate > counts[i] + errorBound) {
+          exceeding++;
+        }
+      }
+      assertTrue("exceeding " + exceeding, exceeding <= counts.length * 0.01);
+    }
+  }
+
+  public void testConservativeUpdateIsMoreAccurate() {
+    CountMinSketch<Integer> conservative = CountMinSketch.create(Funnels.integerFunnel(), 0.01, 0.1);
+    CountMinSketch<Integer> concurrent =
+        CountMinSketch.createConcurrent(Funnels.integerFunnel(), 0.01, 0.1);
+    for (int i = 0; i < 10000; i++) {
+      conservative.add(i, i % 10);
+      concurrent.add(i, i % 10);
+    }
+    long conservativeError = 0;
+    long concurrentError = 0;
+    for (int i = 0; i < 10000; i++) {
+      conservativeError += conservative.estimateCount(i) - i % 10;
+      concurrentError += concurrent.estimateCount(i) - i % 10;
+    }
+    assertTrue(conservativeError + " " + concurrentError, conservativeError < concurrentError);
+  }
+
+  public void testConcurrentAdds() throws InterruptedException {
+    final CountMinSketch<Integer> sketch =
+        CountMinSketch.createConcurrent(Funnels.integerFunnel(), 0.001, 0.01);
+    final int threadCount = 8;
+    final CountDownLatch start = new CountDownLatch(1);
+    Thread[] threads = new Thread[threadCount];
+    for (int t = 0; t < threadCount; t++) {
+      threads[t] = new Thread() {
+        @Override public void run() {
+          try {
+            start.await();
+          } catch (InterruptedException e) {
+            return;
+          }
+          for (int i = 0; i < 10000; i++) {
+            sketch.add(i % 10);
+          }
+        }
+      };
+      threads[t].start();
+    }
+    start.countDown();
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    assertEquals(threadCount * 10000, sketch.totalCount());
+    for (int i = 0; i < 10; i++) {
+      assertEquals(threadCount * 1000, sketch.estimateCount(i));
+    }
+  }
+
+  public void testPreconditions() {
+    try {
+      CountMinSketch.create(Funnels.integerFunnel(), 0.0, 0.01);
+      fail();
+    } catch (IllegalArgumentException expected) {}
+    try {
+      CountMinSketch.create(Funnels.integerFunnel(), 0.01, 1.0);
+      fail();
+    } catch (IllegalArgumentException expected) {}
+    try {
+      CountMinSketch.create(Funnels.integerFunnel(), 1e-9, 1e-9);
+      fail();
+    } catch (IllegalArgumentException expected) {}
+    try {
+      CountMinSketch.create(Funnels.integerFunnel(), 0.01, 0.01).add(1, -1);
+      fail();
+    } catch (IllegalArgumentException expected) {}
+  }
+
+  public void testNullPointers() {
+    NullPointerTester tester = new NullPointerTester();
+    for (CountMinSketch<Integer> sketch : sketches(0.01, 0.01)) {
+      tester.testAllPublicInstanceMethods(sketch);
+    }
+    tester.testAllPublicStaticMethods(CountMinSketch.class);
+  }
+
+  private static Iterable<CountMinSketch<Integer>> sketches(double epsilon, double delta) {
+    return ImmutableList.of(
+        CountMinSketch.create(Funnels.integerFunnel(), epsilon, delta),
+        CountMinSketch.createConcurrent(Funnels.integerFunnel(), epsilon, delta));
+  }
+}
@@ -0,0 +1,180 @@
+/*
+ * Copyright (C) 2013 The Guava Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.common.hash;
+
+import com.google.common.hash.CountingBloomFilter.CounterArray;
+import com.google.common.testing.EqualsTester;
+import com.google.common.testing.NullPointerTester;
+import com.google.common.testing.SerializableTester;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests for {@link CountingBloomFilter}.
+ */
+public class CountingBloomFilterTest extends TestCase {
+
+  public void testSameAsBloomFilter() {
+    CountingBloomFilter<CharSequence> cbf =
+        CountingBloomFilter.create(Funnels.unencodedCharsFunnel(), 1000, 0.01);
+    BloomFilter<CharSequence> bf = BloomFilter.create(Funnels.unencodedCharsFunnel(), 1000, 0.01);
+    assertEquals(bf.bitSize(), cbf.counterCount());
+    for (int i = 0; i < 1000; i++) {
+      String string = Integer.toString(i);
+      assertEquals(bf.put(string), cbf.put(string));
+    }
+    for (int i = 0; i < 2000; i++) {
+      String string = Integer.toString(i);
+      assertEquals(bf.mightContain(string), cbf.mightContain(string));
+      assertEquals(bf.mightContain(string), cbf.apply(string));
+    }
+    assertEquals(bf.expectedFpp(), cbf.expectedFpp());
+  }
+
+  public void testRemove() {
+    int numInsertions = 10000;
+    CountingBloomFilter<CharSequence> cbf =
+        CountingBloomFilter.create(Funnels.unencodedCharsFunnel(), numInsertions, 0.01);
+    for (int i = 0; i < numInsertions * 2; i++) {
+      cbf.put(Integer.toString(i));
+    }
+    // remove the odd numbers
+    for (int i = 1; i < numInsertions * 2; i += 2) {
+      assertTrue(cbf.remove(Integer.toString(i)));
+    }
+    for (int i = 0; i < numInsertions * 2; i += 2) {
+      assertTrue(cbf.mightContain(Integer.toString(i)));
+    }
+    int falsePositives = 0;
+    for (int i = 1; i < numInsertions * 2; i += 2) {
+      if (cbf.mightContain(Integer.toString(i))) {
+        falsePositives++;
+      }
+    }
+    double actualFpp = (double) falsePositives / numInsertions;
+    assertTrue("actual fpp " + actualFpp, actualFpp < 0.02);
+
+    // removing everything leaves an empty filter
+    for (int i = 0; i < numInsertions * 2; i += 2) {
+      assertTrue(cbf.remove(Integer.toString(i)));
+    }
+    assertEquals(CountingBloomFilter.create(Funnels.unencodedCharsFunnel(), numInsertions, 0.01),
+        cbf);
+    assertEquals(0.0, cbf.expectedFpp());
+  }
+
+  public void testRemove_absent() {
+    CountingBloomFilter<CharSequence> cbf =
+        CountingBloomFilter.create(Funnels.unencodedCharsFunnel(), 100, 0.01);
+    cbf.put("a");
+    CountingBloomFilter<CharSequence> copy = cbf.copy();
+    assertFalse(cbf.remove("b"));
+    assertEquals(copy, cbf);
+  }
+
+  public void testPutTwice() {
+    CountingBloomFilter<CharSequence> cbf =
+        CountingBloomFilter.create(Funnels.unencodedCharsFunnel(), 100, 0.01);
+    assertTrue(cbf.put("a"));
+    assertFalse(cbf.put("a"));
+    assertTrue(cbf.remove("a"));
+    assertTrue(cbf.mightContain("a"));
+    assertTrue(cbf.remove("a"));
+    assertFalse(cbf.mightContain("a"));
+  }
+
+  public void testCounterArray() {
+    CounterArray counters = new CounterArray(CounterArray.COUNTERS_PER_WORD * 2);
+    assertEquals(32, counters.bitSize());
+    assertTrue(counters.set(17));
+    assertFalse(counters.set(17));
+    assertEquals(2, counters.count(17));
+    assertEquals(0, counters.count(16));
+    assertEquals(0, counters.count(18));
+    assertEquals(1, counters.nonZeroCount);
+    assertFalse(counters.decrement(17));
+    assertTrue(counters.decrement(17));
+    assertFalse(counters.decrement(17));
+    assertEquals(0, counters.count(17));
+    assertEquals(0, counters.nonZeroCount);
+  }
+
+  public void testCounterArray_saturates() {
+    CounterArray counters = new CounterArray(CounterArray.COUNTERS_PER_WORD);
+    for (int i = 0; i < 100; i++) {
+      counters.set(15);
+    }
+    assertEquals(CounterArray.MAX_COUNT, counters.count(15));
+    assertEquals(0, counters.count(14));
+    for (int i = 0; i < 100; i++) {
+      assertFalse(counters.decrement(15));
+    }
+    assertEquals(CounterArray.MAX_COUNT, counters.count(15));
+    assertEquals(counters, new CounterArray(counters.data.clone()));
+    assertEquals(1, new CounterArray(counters.data.clone()).nonZeroCount);
+  }
+
+  public void testPreconditions() {
+    try {
+      CountingBloomFilter.create(Funnels.unencodedCharsFunnel(), -1);
+      fail();
+    } catch (IllegalArgumentException expected) {}
+    try {
+      CountingBloomFilter.create(Funnels.unencodedCharsFunnel(), 1, 0.0);
+      fail();
+    } catch (IllegalArgumentException expected) {}
+    try {
+      CountingBloomFilter.create(Funnels.unencodedCharsFunnel(), 1, 1.0);
+      fail();
+    } catch (IllegalArgumentException expected) {}
+  }
+
+  public void testNullPointers() {
+    NullPointerTester tester = new NullPointerTester();
+    tester.testAllPublicInstanceMethods(
+        CountingBloomFilter.create(Funnels.unencodedCharsFunnel(), 100));
+    tester.testAllPublicStaticMethods(CountingBloomFilter.class);
+  }
+
+  public void testEquals() {
+    CountingBloomFilter<CharSequence> once =
+        CountingBloomFilter.create(Funnels.unencodedCharsFunnel(), 100);
+    once.put("foo");
+    CountingBloomFilter<CharSequence> twice = once.copy();
+    twice.put("foo");
+    new EqualsTester()
+        .addEqualityGroup(CountingBloomFilter.create(Funnels.unencodedCharsFunnel(), 100),
+            CountingBloomFilter.create(Funnels.unencodedCharsFunnel(), 100))
+        .addEqualityGroup(once, once.copy())
+        .addEqualityGroup(twice)
+        .addEqualityGroup(CountingBloomFilter.create(Funnels.unencodedCharsFunnel(), 200))
+        .addEqualityGroup(CountingBloomFilter.create(Funnels.byteArrayFunnel(), 100))
+        .testEquals();
+  }
+
+  public void testJavaSerialization() {
+    CountingBloomFilter<CharSequence> cbf =
+        CountingBloomFilter.create(Funnels.unencodedCharsFunnel(), 100);
+    for (int i = 0; i < 10; i++) {
+      cbf.put(Integer.toString(i));
+    }
+    CountingBloomFilter<CharSequence> copy = SerializableTester.reserializeAndAssert(cbf);
+    assertEquals(cbf.expectedFpp(), copy.expectedFpp());
+    assertTrue(copy.remove("0"));
+    assertFalse(copy.mightContain("0"));
+  }
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright (C) 2013 The Guava Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.common.hash;
+
+import junit.framework.TestCase;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Tests for {@link Crc32c}.
+ */
+public class Crc32cTest extends TestCase {
+  private static final long RANDOM_SEED = 42L;
+
+  public void testCheckValue() {
+    assertCrc(0xE3069283, HashTestUtils.ascii("123456789"));
+  }
+
+  // From RFC 3720, Section B.4.
+  public void testRfc3720Examples() {
+    byte[] bytes = new byte[32];
+    assertCrc(0x8A9136AA, bytes);
+
+    Arrays.fill(bytes, (byte) 0xFF);
+    assertCrc(0x62A8AB43, bytes);
+
+    for (int i = 0; i < 32; i++) {
+      bytes[i] = (byte) i;
+    }
+    assertCrc(0x46DD794E, bytes);
+
+    for (int i = 0; i < 32; i++) {
+      bytes[i] = (byte) (31 - i);
+    }
+    assertCrc(0x113FDB5C, bytes);
+  }
+
+  public void testUpdateByteMatchesUpdateArray() {
+    byte[] bytes = new byte[100];
+    new Random(RANDOM_SEED).nextBytes(bytes);
+    for (int len = 0; len <= bytes.length; len++) {
+      Crc32c byteWise = new Crc32c();
+      for (int i = 0; i < len; i++) {
+        byteWise.update(bytes[i]);
+      }
+      Crc32c arrayWise = new Crc32c();
+      arrayWise.update(bytes, 0, len);
+      assertEquals(byteWise.getValue(), arrayWise.getValue());
+    }
+  }
+
+  public void testReset() {
+    Crc32c crc = new Crc32c();
+    crc.update(HashTestUtils.ascii("garbage"), 0, 7);
+    crc.reset();
+    byte[] bytes = HashTestUtils.ascii("123456789");
+    crc.update(bytes, 0, bytes.length);
+    assertEquals(0xE3069283L, crc.getValue());
+  }
+
+  public void testCombine() {
+    Random random = new Random(RANDOM_SEED);
+    for (int trial = 0; trial < 200; trial++) {
+      byte[] bytes = new byte[random.nextInt(300)];
+      random.nextBytes(bytes);
+      int split = random.nextInt(bytes.length + 1);
+      int first = crc(bytes, 0, split);
+      int second = crc(bytes, split, bytes.length - split);
+      assertEquals(crc(bytes, 0, bytes.length),
+          Crc32c.combine(first, second, bytes.length - split));
+    }
+  }
+
+  public void testCombine_emptySecond() {
+    int crc = crc(HashTestUtils.ascii("123456789"), 0, 9);
+    assertEquals(crc, Crc32c.combine(crc, 0, 0));
+  }
+
+  public void testCombine_long() {
+    byte[] zeros = new byte[1 << 20];
+    byte[] prefix = HashTestUtils.ascii("123456789");
+    Crc32c whole = new Crc32c();
+    whole.update(prefix, 0, prefix.length);
+    for (int i = 0; i < 16; i++) {
+      whole.update(zeros, 0, zeros.length);
+    }
+    Crc32c second = new Crc32c();
+    for (int i = 0; i < 16; i++) {
+      second.update(zeros, 0, zeros.length);
+    }
+    assertEquals((int) whole.getValue(), Crc32c.combine(
+        crc(prefix, 0, prefix.length), (int) second.getValue(), 16L * zeros.length));
+  }
+
+  public void testCombine_negativeLength() {
+    try {
+      Crc32c.combine(0, 0, -1);
+      fail();
+    } catch (IllegalArgumentException expected) {
+    }
+  }
+
+  public void testHashingCombineCrc32c() {
+    byte[] bytes = HashTestUtils.ascii("The quick brown fox jumps over the lazy dog");
+    HashCode first = Hashing.crc32c().hashBytes(bytes, 0, 10);
+    HashCode second = Hashing.crc32c().hashBytes(bytes, 10, bytes.length - 10);
+    assertEquals(Hashing.crc32c().hashBytes(bytes),
+        Hashing.combineCrc32c(first, second, bytes.length - 10));
+    try {
+      Hashing.combineCrc32c(Hashing.crc32c().hashBytes(bytes), Hashing.md5().hashBytes(bytes), 1);
+      fail();
+    } catch (IllegalArgumentException expected) {
+    }
+  }
+
+  private static int crc(byte[] bytes, int off, int len) {
+    Crc32c crc = new Crc32c();
+    crc.update(bytes, off, len);
+    return (int) crc.getValue();
+  }
+
+  private static void assertCrc(int expected, byte[] bytes) {
+    assertEquals(expected, crc(bytes, 0, bytes.length));
+    assertEquals(expected, Hashing.crc32c().hashBytes(bytes).asInt());
+  }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright (C) 2013 The Guava Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.common.hash;
+
+import static com.google.common.base.Charsets.UTF_8;
+
+import com.google.common.primitives.Ints;
+import com.google.common.primitives.Longs;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests for {@link FarmHashFingerprint64}.
+ */
+public class FarmHashFingerprint64Test extends TestCase {
+  private static final HashFunction HASH_FN = Hashing.farmHashFingerprint64();
+
+  public void testKnownStringInputs() {
+    assertEquals(0x9ae16a3b2f90404fL, fingerprint(""));
+    assertEquals(0xb3454265b6df75e3L, fingerprint("a"));
+    assertEquals(0x24a5b3a074e7f369L, fingerprint("abc"));
+    assertEquals(0xb48be5a931380ce8L, fingerprint("hello"));
+    assertEquals(0x588fb7478bd6b01bL, fingerprint("hello world"));
+    assertEquals(0xabbe83f33b1b5134L,
+        fingerprint("The quick brown fox jumps over the lazy dog"));
+  }
+
+  /**
+   * Covers each of the algorithm's branches, which depend on the input length: up to 16, 32 and
+   * 64 bytes, and longer inputs, which are processed in 64-byte chunks.
+   */
+  public void testKnownByteInputs() {
+    assertFingerprint(0x9ae16a3b2f90404fL, 0);
+    assertFingerprint(0x57821efdee1b7472L, 1);
+    assertFingerprint(0x0265679dff512f39L, 2);
+    assertFingerprint(0x5f043801775be181L, 3);
+    assertFingerprint(0xdcf15d9b38b260fcL, 4);
+    assertFingerprint(0x545ac134b57925ffL, 7);
+    assertFingerprint(0xd14693440d28f69aL, 8);
+    assertFingerprint(0xc338033dfa6dca8dL, 15);
+    assertFingerprint(0xd9b28ec31be83978L, 16);
+    assertFingerprint(0xffb7cd799a150d69L, 17);
+    assertFingerprint(0x61a0625587879a75L, 31);
+    assertFingerprint(0x5b0213e62a3ca399L, 32);
+    assertFingerprint(0xd73bbb576c6c9808L, 33);
+    assertFingerprint(0xff2033b26af5e749L, 63);
+    assertFingerprint(0x56317ec658bfa4f9L, 64);
+    assertFingerprint(0x5a5b9a92eb3061d6L, 65);
+    assertFingerprint(0x7f647bd56658eb85L, 127);
+    assertFingerprint(0x62d2c1879bd73de5L, 128);
+    assertFingerprint(0xd8e52f1caf21aae2L, 129);
+    assertFingerprint(0x8f2dac6e1bb7686dL, 200);
+  }
+
+  public void testOffset() {
+    byte[] bytes = pattern(200);
+    byte[] padded = new byte[bytes.length + 7];
+    System.arraycopy(bytes, 0, padded, 5, bytes.length);
+    for (int len = 0; len <= bytes.length; len++) {
+      assertEquals(FarmHashFingerprint64.fingerprint(bytes, 0, len),
+          FarmHashFingerprint64.fingerprint(padded, 5, len));
+    }
+  }
+
+  public void testHasherMatchesHashBytes() {
+    byte[] bytes = pattern(200);
+    Hasher hasher = HASH_FN.newHasher();
+    hasher.putLong(0x0123456789abcdefL).putInt(42).putBytes(bytes);
+    byte[] combined = new byte[8 + 4 + bytes.length];
+    System.arraycopy(Longs.toByteArray(Long.reverseBytes(0x0123456789abcdefL)), 0, combined, 0, 8);
+    System.arraycopy(Ints.toByteArray(Integer.reverseBytes(42)), 0, combined, 8, 4);
+    System.arraycopy(bytes, 0, combined, 12, bytes.length);
+    assertEquals(HASH_FN.hashBytes(combined), hasher.hash());
+  }
+
+  public void testInvariants() {
+    HashTestUtils.assertInvariants(HASH_FN);
+  }
+
+  private static long fingerprint(String input) {
+    return HASH_FN.hashString(input, UTF_8).asLong();
+  }
+
+  private static void assertFingerprint(long expected, int length) {
+    assertEquals(expected, HASH_FN.hashBytes(pattern(length)).asLong());
+  }
+
+  /** Returns {@code length} bytes whose values are {@code 31 * i + 7}. */
+  private static byte[] pattern(int length) {
+    byte[] bytes = new byte[length];
+    for (int i = 0; i < length; i++) {
+      bytes[i] = (byte) (i * 31 + 7);
+    }
+    return bytes;
+  }
+}
@@ -400,6 +400,18 @@ public class HashingTest extends TestCase {
           .put(Hashing.crc32(), EMPTY_STRING, "00000000")
           .put(Hashing.crc32(), TQBFJOTLD, "39a34f41")
           .put(Hashing.crc32(), TQBFJOTLDP, "e9259051")
+          .put(Hashing.crc32c(), EMPTY_STRING, "00000000")
+          .put(Hashing.crc32c(), TQBFJOTLD, "04046222")
+          .put(Hashing.crc32c(), TQBFJOTLDP, "b3970019")
+          .put(Hashing.xxHash64(), EMPTY_STRING, "99e9d85137db46ef")
+          .put(Hashing.xxHash64(), TQBFJOTLD, "bc71da1f362d240b")
+          .put(Hashing.xxHash64(), TQBFJOTLDP, "73ad51577033ad44")
+          .put(Hashing.farmHashFingerprint64(), EMPTY_STRING, "4f40902f3b6ae19a")
+          .put(Hashing.farmHashFingerprint64(), TQBFJOTLD, "34511b3bf383beab")
+          .put(Hashing.farmHashFingerprint64(), TQBFJOTLDP, "737d7e5f8660653e")
+          .put(Hashing.sipHash24(), EMPTY_STRING, "310e0edd47db6f72")
+          .put(Hashing.sipHash24(), TQBFJOTLD, "e46f1fdc05612752")
+          .put(Hashing.sipHash24(), TQBFJOTLDP, "9b602581fce4d4f8")
           .build();
 
   public void testAllHashFunctionsHaveKnownHashes() throws Exception {
@@ -470,9 +482,11 @@ public class HashingTest extends TestCase {
         Object[] params2 = new Object[method.getParameterTypes().length];
         for (int i = 0; i < params1.length; i++) {
           if (method.getParameterTypes()[i] == int.class) {
-            // These have to be positive because Hashing#goodFastHash needs a positive (bit) value
-            params1[i] = random.nextInt(1000) + 1;
-            params2[i] = random.nextInt(1000) + 1;
+            // These have to be positive because Hashing#goodFastHash needs a positive (bit) value.
+            // They must differ by at least 128, since goodFastHash rounds up to a multiple of 128.
+            int param = random.nextInt(1000) + 1;
+            params1[i] = param;
+            params2[i] = param + 128 + random.nextInt(1000);
           } else if (method.getParameterTypes()[i] == long.class) {
             params1[i] = random.nextLong();
             params2[i] = random.nextLong();
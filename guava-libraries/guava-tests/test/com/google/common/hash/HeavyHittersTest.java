@@ -0,0 +1,106 @@
+/*
+ * Copyright (C) 2013 The Guava Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.common.hash;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.testing.NullPointerTester;
+
+import junit.framework.TestCase;
+
+import java.util.Random;
+
+/**
+ * Tests for {@link HeavyHitters}.
+ */
+public class HeavyHittersTest extends TestCase {
+
+  public void testTopK() {
+    HeavyHitters<Integer> heavyHitters = HeavyHitters.create(
+        CountMinSketch.createConcurrent(Funnels.integerFunnel(), 0.001, 0.01), 3);
+    assertEquals(ImmutableMap.of(), heavyHitters.topK());
+
+    Random random = new Random(0);
+    for (int n = 0; n < 100000; n++) {
+      // noise, with each element occurring about 10 times
+      heavyHitters.add(1000 + random.nextInt(9000));
+      // elements 1, 2 and 3 each occur 5000 to 15000 times
+      if (n % 10 == 0) {
+        heavyHitters.add(1);
+      } else if (n % 20 == 1) {
+        heavyHitters.add(2, 3);
+      } else if (n % 30 == 2) {
+        heavyHitters.add(3);
+      }
+    }
+    // an element which is only frequent late still makes it
+    for (int n = 0; n < 4000; n++) {
+      heavyHitters.add(4);
+    }
+    ImmutableMap<Integer, Long> topK = heavyHitters.topK();
+    assertEquals(ImmutableList.of(2, 1, 4), topK.keySet().asList());
+    assertEquals(Long.valueOf(heavyHitters.sketch().estimateCount(2)), topK.get(2));
+  }
+
+  public void testFewerThanK() {
+    HeavyHitters<Integer> heavyHitters =
+        HeavyHitters.create(CountMinSketch.create(Funnels.integerFunnel(), 0.01, 0.01), 10);
+    assertEquals(2, heavyHitters.add(1, 2));
+    heavyHitters.add(2);
+    heavyHitters.add(3, 5);
+    assertEquals(ImmutableMap.of(3, 5L, 1, 2L, 2, 1L), heavyHitters.topK());
+    assertEquals(ImmutableList.of(3, 1, 2), heavyHitters.topK().keySet().asList());
+  }
+
+  public void testPreconditions() {
+    CountMinSketch<Integer> sketch = CountMinSketch.create(Funnels.integerFunnel(), 0.01, 0.01);
+    try {
+      HeavyHitters.create(sketch, 0);
+      fail();
+    } catch (IllegalArgumentException expected) {}
+    sketch.add(1);
+    try {
+      HeavyHitters.create(sketch, 1);
+      fail();
+    } catch (IllegalArgumentException expected) {}
+  }
+
+  public void testAdd_nullIsNotCounted() {
+    // a funnel which accepts null, to show that the tracker rejects it regardless
+    Funnel<Integer> nullableFunnel = new Funnel<Integer>() {
+      @Override public void funnel(Integer from, PrimitiveSink into) {
+        into.putInt((from == null) ? -1 : from);
+      }
+    };
+    HeavyHitters<Integer> heavyHitters =
+        HeavyHitters.create(CountMinSketch.create(nullableFunnel, 0.01, 0.01), 2);
+    try {
+      heavyHitters.add(null);
+      fail();
+    } catch (NullPointerException expected) {}
+    assertEquals(0, heavyHitters.sketch().totalCount());
+  }
+
+  public void testNullPointers() {
+    NullPointerTester tester = new NullPointerTester();
+    tester.setDefault(CountMinSketch.class,
+        CountMinSketch.create(Funnels.integerFunnel(), 0.01, 0.01));
+    tester.testAllPublicInstanceMethods(HeavyHitters.create(
+        CountMinSketch.create(Funnels.integerFunnel(), 0.01, 0.01), 1));
+    tester.testAllPublicStaticMethods(HeavyHitters.class);
+  }
+}
@@ -0,0 +1,250 @@
+/*
+ * Copyright (C) 2013 The Guava Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.common.hash;
+
+import com.google.common.primitives.Bytes;
+import com.google.common.testing.EqualsTester;
+import com.google.common.testing.NullPointerTester;
+import com.google.common.testing.SerializableTester;
+
+import junit.framework.TestCase;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Tests for {@link HyperLogLog}.
+ */
+public class HyperLogLogTest extends TestCase {
+
+  public void testEmpty() {
+    HyperLogLog<Long> hll = HyperLogLog.create(Funnels.longFunnel());
+    assertEquals(0, hll.cardinality());
+    assertTrue(hll.isSparse());
+  }
+
+  public void testCardinality() {
+    for (int precision : new int[] {4, 10, 12, 14}) {
+      double standardError = 1.04 / Math.sqrt(1 << precision);
+      HyperLogLog<Long> hll = HyperLogLog.create(Funnels.longFunnel(), precision);
+      long distinct = 0;
+      for (long target : new long[] {10, 100, 1000, 10000, 100000, 1000000}) {
+        for (; distinct < target; distinct++) {
+          hll.put(distinct);
+          hll.put(distinct); // duplicates don't count
+        }
+        double error = Math.abs((double) hll.cardinality() - distinct) / distinct;
+        assertTrue("precision " + precision + " cardinality " + distinct + " error " + error,
+            error < 4 * standardError);
+      }
+      assertFalse(hll.isSparse());
+    }
+  }
+
+  public void testSparseBecomesDense() {
+    HyperLogLog<Long> hll = HyperLogLog.create(Funnels.longFunnel(), 12);
+    long i = 0;
+    while (hll.isSparse()) {
+      hll.put(i++);
+    }
+    // about a quarter of the registers are in use when the encoding switches
+    assertTrue("switched after " + i, i > 900 && i < 1300);
+  }
+
+  public void testPutReturnValue() {
+    HyperLogLog<Long> hll = HyperLogLog.create(Funnels.longFunnel(), 4);
+    for (long i = 0; i < 1000; i++) {
+      HyperLogLog<Long> before = hll.copy();
+      boolean changed = hll.put(i);
+      assertEquals(changed, !before.equals(hll));
+      assertFalse(hll.put(i));
+    }
+  }
+
+  public void testPutAll() {
+    HyperLogLog<Long> all = HyperLogLog.create(Funnels.longFunnel());
+    HyperLogLog<Long> sparseUnion = HyperLogLog.create(Funnels.longFunnel());
+    HyperLogLog<Long> denseUnion = HyperLogLog.create(Funnels.longFunnel());
+    for (int shard = 0; shard < 10; shard++) {
+      HyperLogLog<Long> sparse = HyperLogLog.create(Funnels.longFunnel());
+      HyperLogLog<Long> dense = HyperLogLog.create(Funnels.longFunnel());
+      for (long i = 0; i < 100; i++) {
+        sparse.put(shard * 100 + i);
+      }
+      for (long i = 0; i < 100000; i++) {
+        dense.put(shard * 100000 + i);
+      }
+      assertTrue(sparse.isSparse());
+      assertFalse(dense.isSparse());
+      for (long i = 0; i < 100; i++) {
+        all.put(shard * 100 + i);
+      }
+      for (long i = 0; i < 100000; i++) {
+        all.put(shard * 100000 + i);
+      }
+      sparseUnion.putAll(sparse);
+      denseUnion.putAll(dense);
+    }
+    assertTrue(sparseUnion.isSparse());
+    denseUnion.putAll(sparseUnion);
+    assertEquals(all, denseUnion);
+    assertEquals(all.cardinality(), denseUnion.cardinality());
+
+    sparseUnion.putAll(denseUnion);
+    assertFalse(sparseUnion.isSparse());
+    assertEquals(all, sparseUnion);
+  }
+
+  public void testPutAll_incompatible() {
+    HyperLogLog<Long> hll = HyperLogLog.create(Funnels.longFunnel(), 12);
+    try {
+      hll.putAll(hll);
+      fail();
+    } catch (IllegalArgumentException expected) {}
+    try {
+      hll.putAll(HyperLogLog.create(Funnels.longFunnel(), 13));
+      fail();
+    } catch (IllegalArgumentException expected) {}
+  }
+
+  public void testEquals() {
+    HyperLogLog<Long> sparse = HyperLogLog.create(Funnels.longFunnel());
+    sparse.put(1L);
+    HyperLogLog<Long> dense = HyperLogLog.create(Funnels.longFunnel());
+    dense.putAll(sparse);
+    HyperLogLog<Long> denseOther = HyperLogLog.create(Funnels.longFunnel());
+    for (long i = 0; i < 10000; i++) {
+      denseOther.put(i);
+    }
+    dense.putAll(denseOther);
+    HyperLogLog<Long> sparseCopy = HyperLogLog.create(Funnels.longFunnel());
+    sparseCopy.put(1L);
+    new EqualsTester()
+        .addEqualityGroup(HyperLogLog.create(Funnels.longFunnel()),
+            HyperLogLog.create(Funnels.longFunnel(), HyperLogLog.DEFAULT_PRECISION))
+        .addEqualityGroup(sparse, sparseCopy, sparse.copy())
+        .addEqualityGroup(dense, denseOther, dense.copy())
+        .addEqualityGroup(HyperLogLog.create(Funnels.longFunnel(), 10))
+        .addEqualityGroup(HyperLogLog.create(Funnels.integerFunnel()))
+        .testEquals();
+  }
+
+  public void testWriteToReadFrom() throws IOException {
+    HyperLogLog<Long> hll = HyperLogLog.create(Funnels.longFunnel());
+    for (long i = 0; i < 500; i++) {
+      hll.put(i);
+    }
+    assertTrue(hll.isSparse());
+    byte[] sparseBytes = writeTo(hll);
+    assertTrue("sparse size " + sparseBytes.length, sparseBytes.length < 3 * 500);
+    HyperLogLog<Long> sparseCopy = readFrom(sparseBytes);
+    assertTrue(sparseCopy.isSparse());
+    assertEquals(hll, sparseCopy);
+    assertEquals(hll.cardinality(), sparseCopy.cardinality());
+
+    for (long i = 500; i < 100000; i++) {
+      hll.put(i);
+    }
+    assertFalse(hll.isSparse());
+    byte[] denseBytes = writeTo(hll);
+    assertEquals(3 + 4096, denseBytes.length);
+    HyperLogLog<Long> denseCopy = readFrom(denseBytes);
+    assertFalse(denseCopy.isSparse());
+    assertEquals(hll, denseCopy);
+    assertEquals(hll.cardinality(), denseCopy.cardinality());
+  }
+
+  public void testReadFrom_invalid() throws IOException {
+    HyperLogLog<Long> hll = HyperLogLog.create(Funnels.longFunnel());
+    hll.put(1L);
+    hll.put(2L);
+    byte[] bytes = writeTo(hll);
+
+    assertReadFromFails(Arrays.copyOf(bytes, bytes.length - 1));
+    byte[] badVersion = bytes.clone();
+    badVersion[0] = 2;
+    assertReadFromFails(badVersion);
+    byte[] badPrecision = bytes.clone();
+    badPrecision[1] = 30;
+    assertReadFromFails(badPrecision);
+    byte[] badEncoding = bytes.clone();
+    badEncoding[2] = 2;
+    assertReadFromFails(badEncoding);
+  }
+
+  public void testReadFrom_sparseEntriesForSameRegister() throws IOException {
+    // version, precision, sparse encoding, two entries, then the delta-encoded entries
+    byte[] header = {HyperLogLog.FORMAT_VERSION, 12, 0, 0, 0, 0, 2};
+    byte[] firstEntry = {(byte) 0xC1, 0x02}; // varint of register 5, value 1
+
+    // register 6, value 1
+    HyperLogLog<Long> valid = readFrom(Bytes.concat(header, firstEntry, new byte[] {0x40}));
+    assertTrue(valid.isSparse());
+    // register 5 again, value 2
+    assertReadFromFails(Bytes.concat(header, firstEntry, new byte[] {0x01}));
+  }
+
+  private static void assertReadFromFails(byte[] bytes) {
+    try {
+      readFrom(bytes);
+      fail();
+    } catch (IOException expected) {
+    }
+  }
+
+  public void testJavaSerialization() {
+    HyperLogLog<Long> hll = HyperLogLog.create(Funnels.longFunnel());
+    for (long i = 0; i < 10; i++) {
+      hll.put(i);
+    }
+    SerializableTester.reserializeAndAssert(hll);
+    for (long i = 10; i < 10000; i++) {
+      hll.put(i);
+    }
+    SerializableTester.reserializeAndAssert(hll);
+  }
+
+  public void testPreconditions() {
+    try {
+      HyperLogLog.create(Funnels.longFunnel(), 3);
+      fail();
+    } catch (IllegalArgumentException expected) {}
+    try {
+      HyperLogLog.create(Funnels.longFunnel(), 19);
+      fail();
+    } catch (IllegalArgumentException expected) {}
+  }
+
+  public void testNullPointers() {
+    NullPointerTester tester = new NullPointerTester();
+    tester.setDefault(int.class, HyperLogLog.DEFAULT_PRECISION);
+    tester.testAllPublicInstanceMethods(HyperLogLog.create(Funnels.longFunnel()));
+    tester.testAllPublicStaticMethods(HyperLogLog.class);
+  }
+
+  private static byte[] writeTo(HyperLogLog<?> hll) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    hll.writeTo(out);
+    return out.toByteArray();
+  }
+
+  private static HyperLogLog<Long> readFrom(byte[] bytes) throws IOException {
+    return HyperLogLog.readFrom(new ByteArrayInputStream(bytes), Funnels.longFunnel());
+  }
+}
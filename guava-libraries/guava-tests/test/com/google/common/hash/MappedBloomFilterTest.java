@@ -0,0 +1,114 @@
+/*
+ * Copyright (C) 2013 The Guava Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.common.hash;
+
+import com.google.common.io.Files;
+import com.google.common.testing.NullPointerTester;
+
+import junit.framework.TestCase;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Tests for {@link MappedBloomFilter}.
+ */
+public class MappedBloomFilterTest extends TestCase {
+
+  public void testMap() throws IOException {
+    BloomFilter<CharSequence> bf = BloomFilter.create(Funnels.unencodedCharsFunnel(), 10000, 0.01);
+    for (int i = 0; i < 20000; i += 2) {
+      bf.put(Integer.toString(i));
+    }
+
+    File dir = Files.createTempDir();
+    File file = new File(dir, "bloom");
+    try {
+      OutputStream out = new FileOutputStream(file);
+      try {
+        bf.writeTo(out);
+      } finally {
+        out.close();
+      }
+
+      MappedBloomFilter<CharSequence> mapped =
+          MappedBloomFilter.map(file, Funnels.unencodedCharsFunnel());
+      assertEquals(bf.bitSize(), mapped.bitSize());
+      assertEquals(bf.expectedFpp(), mapped.expectedFpp());
+      for (int i = 0; i < 20000; i++) {
+        String string = Integer.toString(i);
+        assertEquals(bf.mightContain(string), mapped.mightContain(string));
+        assertEquals(bf.mightContain(string), mapped.apply(string));
+      }
+    } finally {
+      file.delete();
+      dir.delete();
+    }
+  }
+
+  public void testWrap_atOffset() throws IOException {
+    BloomFilter<byte[]> bf = BloomFilter.create(Funnels.byteArrayFunnel(), 100);
+    bf.put(new byte[] {1, 2, 3});
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    out.write(new byte[3]);
+    bf.writeTo(out);
+
+    ByteBuffer buffer = ByteBuffer.wrap(out.toByteArray());
+    buffer.position(3);
+    MappedBloomFilter<byte[]> mapped = MappedBloomFilter.wrap(buffer, Funnels.byteArrayFunnel());
+    assertEquals(3, buffer.position());
+    assertTrue(mapped.mightContain(new byte[] {1, 2, 3}));
+    assertFalse(mapped.mightContain(new byte[] {4, 5, 6}));
+  }
+
+  public void testWrap_invalid() throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    BloomFilter.create(Funnels.byteArrayFunnel(), 100).writeTo(out);
+    byte[] bytes = out.toByteArray();
+
+    assertWrapFails(new byte[BloomFilter.HEADER_BYTES - 1]);
+    assertWrapFails(Arrays.copyOf(bytes, bytes.length - 1));
+    byte[] badVersion = bytes.clone();
+    badVersion[0] = 0;
+    assertWrapFails(badVersion);
+    byte[] badStrategy = bytes.clone();
+    badStrategy[1] = -1;
+    assertWrapFails(badStrategy);
+  }
+
+  private static void assertWrapFails(byte[] bytes) {
+    try {
+      MappedBloomFilter.wrap(ByteBuffer.wrap(bytes), Funnels.byteArrayFunnel());
+      fail();
+    } catch (IOException expected) {
+    }
+  }
+
+  public void testNullPointers() throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    BloomFilter.create(Funnels.byteArrayFunnel(), 100).writeTo(out);
+    NullPointerTester tester = new NullPointerTester();
+    tester.testAllPublicInstanceMethods(
+        MappedBloomFilter.wrap(ByteBuffer.wrap(out.toByteArray()), Funnels.byteArrayFunnel()));
+    tester.testAllPublicStaticMethods(MappedBloomFilter.class);
+  }
+}
@@ -26,6 +26,7 @@ import junit.framework.TestCase;
 
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.util.Random;
 
 /**
  * Tests for {@link Murmur3_128HashFunction}.
@@ -83,4 +84,44 @@ public class Murmur3Hash128Test extends TestCase {
   public void testInvariants() {
     HashTestUtils.assertInvariants(murmur3_128());
   }
+
+  public void testLongHashFunction() {
+    Random random = new Random(0);
+    for (int seed : new int[] {0, 1, -1, 42}) {
+      HashFunction hashFunction = murmur3_128(seed);
+      LongHashFunction longHashFunction = LongHashFunction.murmur3_128(seed);
+      for (int i = 0; i < 100; i++) {
+        long l = random.nextLong();
+        assertEquals(hashFunction.hashLong(l).asLong(), longHashFunction.hashLong(l));
+        int n = random.nextInt();
+        assertEquals(hashFunction.hashInt(n).asLong(), longHashFunction.hashInt(n));
+      }
+      for (int length = 0; length < 100; length++) {
+        byte[] bytes = new byte[length + 3];
+        random.nextBytes(bytes);
+        long expected = hashFunction.hashBytes(bytes, 2, length).asLong();
+        assertEquals(expected, longHashFunction.hashBytes(bytes, 2, length));
+        assertEquals(hashFunction.hashBytes(bytes).asLong(), longHashFunction.hashBytes(bytes));
+
+        ByteBuffer heap = ByteBuffer.wrap(bytes, 2, length);
+        ByteBuffer direct = ByteBuffer.allocateDirect(bytes.length);
+        direct.put(bytes).position(2);
+        direct.limit(2 + length);
+        for (ByteBuffer buffer : new ByteBuffer[] {heap, heap.slice(), heap.asReadOnlyBuffer(),
+            direct, direct.duplicate().order(ByteOrder.LITTLE_ENDIAN)}) {
+          int position = buffer.position();
+          assertEquals(expected, longHashFunction.hashBytes(buffer));
+          assertEquals(position, buffer.position());
+        }
+
+        StringBuilder chars = new StringBuilder();
+        for (int i = 0; i < length; i++) {
+          chars.append((char) random.nextInt());
+        }
+        assertEquals(hashFunction.hashUnencodedChars(chars).asLong(),
+            longHashFunction.hashUnencodedChars(chars));
+      }
+    }
+    assertEquals(LongHashFunction.murmur3_128(0), LongHashFunction.murmur3_128());
+  }
 }
@@ -0,0 +1,160 @@
+/*
+ * Copyright (C) 2013 The Guava Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.common.hash;
+
+import com.google.common.testing.EqualsTester;
+import com.google.common.testing.NullPointerTester;
+import com.google.common.testing.SerializableTester;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests for {@link ScalableBloomFilter}.
+ */
+public class ScalableBloomFilterTest extends TestCase {
+
+  public void testGenerationSizes() {
+    assertEquals(100, ScalableBloomFilter.generationCapacity(100, 0));
+    assertEquals(200, ScalableBloomFilter.generationCapacity(100, 1));
+    assertEquals(400, ScalableBloomFilter.generationCapacity(100, 2));
+    assertEquals(Integer.MAX_VALUE, ScalableBloomFilter.generationCapacity(100, 40));
+
+    double sum = 0;
+    for (int i = 0; i < 100; i++) {
+      double generationFpp = ScalableBloomFilter.generationFpp(0.01, i);
+      assertTrue(generationFpp > 0);
+      sum += generationFpp;
+    }
+    assertEquals(0.01, sum, 1e-9);
+  }
+
+  public void testGrowsAndKeepsFpp() {
+    int initial = 1000;
+    double fpp = 0.01;
+    ScalableBloomFilter<CharSequence> sbf =
+        ScalableBloomFilter.create(Funnels.unencodedCharsFunnel(), initial, fpp);
+    assertEquals(1, sbf.generationCount());
+
+    int numInsertions = 50 * initial;
+    for (int i = 0; i < numInsertions * 2; i += 2) {
+      sbf.put(Integer.toString(i));
+    }
+    assertTrue(sbf.generationCount() > 1);
+    for (int i = 0; i < numInsertions * 2; i += 2) {
+      assertTrue(sbf.mightContain(Integer.toString(i)));
+    }
+
+    int falsePositives = 0;
+    for (int i = 1; i < numInsertions * 2; i += 2) {
+      if (sbf.mightContain(Integer.toString(i))) {
+        falsePositives++;
+      }
+    }
+    double actualFpp = (double) falsePositives / numInsertions;
+    assertTrue("actual fpp " + actualFpp, actualFpp <= fpp);
+    assertTrue("expected fpp " + sbf.expectedFpp(), sbf.expectedFpp() <= fpp);
+
+    // an overfilled plain BloomFilter is far worse
+    BloomFilter<CharSequence> bf =
+        BloomFilter.create(Funnels.unencodedCharsFunnel(), initial, fpp);
+    for (int i = 0; i < numInsertions * 2; i += 2) {
+      bf.put(Integer.toString(i));
+    }
+    assertTrue(bf.expectedFpp() > 10 * fpp);
+  }
+
+  public void testPutReturnValue() {
+    ScalableBloomFilter<CharSequence> sbf =
+        ScalableBloomFilter.create(Funnels.unencodedCharsFunnel(), 10, 0.01);
+    for (int i = 0; i < 100; i++) {
+      String string = "Test" + i;
+      boolean mightContain = sbf.mightContain(string);
+      assertEquals(!mightContain, sbf.put(string));
+      assertFalse(sbf.put(string));
+      assertTrue(sbf.mightContain(string));
+    }
+  }
+
+  public void testPreconditions() {
+    try {
+      ScalableBloomFilter.create(Funnels.unencodedCharsFunnel(), 0, 0.01);
+      fail();
+    } catch (IllegalArgumentException expected) {}
+    try {
+      ScalableBloomFilter.create(Funnels.unencodedCharsFunnel(), 1, 0.0);
+      fail();
+    } catch (IllegalArgumentException expected) {}
+    try {
+      ScalableBloomFilter.create(Funnels.unencodedCharsFunnel(), 1, 1.0);
+      fail();
+    } catch (IllegalArgumentException expected) {}
+  }
+
+  public void testNullPointers() {
+    NullPointerTester tester = new NullPointerTester();
+    tester.testAllPublicInstanceMethods(
+        ScalableBloomFilter.create(Funnels.unencodedCharsFunnel(), 100, 0.01));
+    tester.testAllPublicStaticMethods(ScalableBloomFilter.class);
+  }
+
+  public void testCopy() {
+    ScalableBloomFilter<CharSequence> original =
+        ScalableBloomFilter.create(Funnels.unencodedCharsFunnel(), 10, 0.01);
+    for (int i = 0; i < 100; i++) {
+      original.put("a" + i);
+    }
+    ScalableBloomFilter<CharSequence> copy = original.copy();
+    assertNotSame(original, copy);
+    assertEquals(original, copy);
+    copy.put("b");
+    assertFalse(original.mightContain("b"));
+    assertTrue(copy.mightContain("b"));
+  }
+
+  public void testEquals() {
+    ScalableBloomFilter<CharSequence> empty1 =
+        ScalableBloomFilter.create(Funnels.unencodedCharsFunnel(), 100, 0.01);
+    ScalableBloomFilter<CharSequence> empty2 =
+        ScalableBloomFilter.create(Funnels.unencodedCharsFunnel(), 100, 0.01);
+    ScalableBloomFilter<CharSequence> full =
+        ScalableBloomFilter.create(Funnels.unencodedCharsFunnel(), 100, 0.01);
+    full.put("foo");
+    new EqualsTester()
+        .addEqualityGroup(empty1, empty2)
+        .addEqualityGroup(full)
+        .addEqualityGroup(ScalableBloomFilter.create(Funnels.unencodedCharsFunnel(), 100, 0.02))
+        .addEqualityGroup(ScalableBloomFilter.create(Funnels.unencodedCharsFunnel(), 200, 0.01))
+        .addEqualityGroup(ScalableBloomFilter.create(Funnels.byteArrayFunnel(), 100, 0.01))
+        .testEquals();
+  }
+
+  public void testJavaSerialization() {
+    ScalableBloomFilter<CharSequence> sbf =
+        ScalableBloomFilter.create(Funnels.unencodedCharsFunnel(), 10, 0.01);
+    for (int i = 0; i < 100; i++) {
+      sbf.put(Integer.toString(i));
+    }
+    ScalableBloomFilter<CharSequence> copy = SerializableTester.reserializeAndAssert(sbf);
+    assertEquals(sbf.generationCount(), copy.generationCount());
+
+    // the copy keeps growing where the original left off
+    for (int i = 100; i < 1000; i++) {
+      assertEquals(sbf.put(Integer.toString(i)), copy.put(Integer.toString(i)));
+    }
+    assertEquals(sbf, copy);
+  }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright (C) 2013 The Guava Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.common.hash;
+
+import static com.google.common.base.Charsets.UTF_8;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests for {@link XxHash64HashFunction}.
+ */
+public class XxHash64HashFunctionTest extends TestCase {
+  private static final long PRIME = 2654435761L;
+
+  /**
+   * The input of the reference implementation's self-test: each byte is the top byte of a 32-bit
+   * value which is squared for the next byte.
+   */
+  private static final byte[] SANITY_BUFFER = new byte[101];
+
+  static {
+    int byteGen = (int) PRIME;
+    for (int i = 0; i < SANITY_BUFFER.length; i++) {
+      SANITY_BUFFER[i] = (byte) (byteGen >>> 24);
+      byteGen *= byteGen;
+    }
+  }
+
+  /** The known answers of the self-test of {@code xxhsum}. */
+  public void testSanityBuffer() {
+    assertXxHash64(0xef46db3751d8e999L, 0, 0);
+    assertXxHash64(0xac75fda2929b17efL, 0, PRIME);
+    assertXxHash64(0x4fce394cc88952d8L, 1, 0);
+    assertXxHash64(0x739840cb819fa723L, 1, PRIME);
+    assertXxHash64(0xcffa8db881bc3a3dL, 14, 0);
+    assertXxHash64(0x5b9611585efcc9cbL, 14, PRIME);
+    assertXxHash64(0x0eab543384f878adL, 101, 0);
+    assertXxHash64(0xcaa65939306f1e21L, 101, PRIME);
+  }
+
+  public void testKnownStringInputs() {
+    assertEquals(0xef46db3751d8e999L, xxHash64(""));
+    assertEquals(0xd24ec4f1a98c6e5bL, xxHash64("a"));
+    assertEquals(0x44bc2cf5ad770999L, xxHash64("abc"));
+    assertEquals(0x0b242d361fda71bcL, xxHash64("The quick brown fox jumps over the lazy dog"));
+  }
+
+  public void testStreaming() {
+    for (int len = 0; len <= SANITY_BUFFER.length; len++) {
+      long expected = Hashing.xxHash64(PRIME).hashBytes(SANITY_BUFFER, 0, len).asLong();
+      Hasher hasher = Hashing.xxHash64(PRIME).newHasher();
+      for (int i = 0; i < len; i++) {
+        hasher.putByte(SANITY_BUFFER[i]);
+      }
+      assertEquals(expected, hasher.hash().asLong());
+    }
+  }
+
+  public void testToString() {
+    assertEquals("Hashing.xxHash64(0)", Hashing.xxHash64().toString());
+    assertEquals("Hashing.xxHash64(-1)", Hashing.xxHash64(-1).toString());
+  }
+
+  public void testInvariants() {
+    HashTestUtils.assertInvariants(Hashing.xxHash64());
+  }
+
+  private static long xxHash64(String input) {
+    return Hashing.xxHash64().hashString(input, UTF_8).asLong();
+  }
+
+  private static void assertXxHash64(long expected, int length, long seed) {
+    assertEquals(expected, Hashing.xxHash64(seed).hashBytes(SANITY_BUFFER, 0, length).asLong());
+  }
+}
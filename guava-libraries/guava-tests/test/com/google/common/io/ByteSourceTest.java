@@ -27,16 +27,25 @@ import static org.junit.Assert.assertArrayEquals;
 
 import com.google.common.base.Charsets;
 import com.google.common.collect.ImmutableList;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hasher;
 import com.google.common.hash.Hashing;
+import com.google.common.util.concurrent.MoreExecutors;
 
 import junit.framework.TestSuite;
 
 import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.EOFException;
+import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.Arrays;
 import java.util.EnumSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * Tests for the default implementations of {@code ByteSource} methods.
@@ -122,6 +131,97 @@ public class ByteSourceTest extends IoTestCase {
     assertEquals("cfa0c5002275c90508338a5cdb2a9781", byteSource.hash(Hashing.md5()).toString());
   }
 
+  public void testHash_tree() throws IOException {
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      for (int leafSize : new int[] {1000, 3000, 9999, 10000, 20000}) {
+        HashCode expected = treeHash(bytes, leafSize);
+        assertEquals(expected, source.hash(Hashing.md5(), leafSize, executor));
+        assertEquals(expected,
+            source.hash(Hashing.md5(), leafSize, MoreExecutors.sameThreadExecutor()));
+        assertEquals(expected, ByteSource.wrap(bytes).hash(Hashing.md5(), leafSize, executor));
+      }
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  public void testHash_tree_empty() throws IOException {
+    assertEquals(treeHash(new byte[0], 100),
+        ByteSource.empty().hash(Hashing.md5(), 100, MoreExecutors.sameThreadExecutor()));
+  }
+
+  public void testHash_tree_sizeUnknown() throws IOException {
+    ByteSource unknownSize = new ByteSource() {
+      @Override
+      public InputStream openStream() {
+        return new ByteArrayInputStream(bytes);
+      }
+
+      @Override
+      public long size() {
+        return 0;
+      }
+    };
+    for (int leafSize : new int[] {1000, 3000, 9999, 10000, 20000}) {
+      assertEquals(treeHash(bytes, leafSize),
+          unknownSize.hash(Hashing.md5(), leafSize, MoreExecutors.sameThreadExecutor()));
+    }
+  }
+
+  public void testHash_tree_slice() throws IOException {
+    ByteSource slice = source.slice(100, 5000);
+    assertEquals(treeHash(Arrays.copyOfRange(bytes, 100, 5100), 700),
+        slice.hash(Hashing.md5(), 700, MoreExecutors.sameThreadExecutor()));
+  }
+
+  public void testHash_tree_file() throws IOException {
+    File file = File.createTempFile("ByteSourceTest", ".bin");
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      Files.write(bytes, file);
+      ByteSource fileSource = Files.asByteSource(file);
+      assertEquals(treeHash(bytes, 999), fileSource.hash(Hashing.md5(), 999, executor));
+      assertEquals(treeHash(Arrays.copyOfRange(bytes, 10, 9010), 999),
+          fileSource.slice(10, 9000).hash(Hashing.md5(), 999, executor));
+    } finally {
+      executor.shutdown();
+      assertTrue(file.delete());
+    }
+  }
+
+  public void testHash_tree_readThrows() {
+    TestByteSource failSource = new TestByteSource(bytes, READ_THROWS);
+    try {
+      failSource.hash(Hashing.md5(), 1000, MoreExecutors.sameThreadExecutor());
+      fail();
+    } catch (IOException expected) {
+    }
+  }
+
+  public void testHash_tree_invalidLeafSize() throws IOException {
+    try {
+      source.hash(Hashing.md5(), 0, MoreExecutors.sameThreadExecutor());
+      fail();
+    } catch (IllegalArgumentException expected) {
+    }
+  }
+
+  private static HashCode treeHash(byte[] bytes, int leafSize) {
+    Hasher root = Hashing.md5().newHasher().putByte((byte) 1);
+    int offset = 0;
+    do {
+      int length = Math.min(leafSize, bytes.length - offset);
+      HashCode leaf = Hashing.md5().newHasher()
+          .putByte((byte) 0)
+          .putBytes(bytes, offset, length)
+          .hash();
+      root.putBytes(leaf.asBytes());
+      offset += length;
+    } while (offset < bytes.length);
+    return root.hash();
+  }
+
   public void testContentEquals() throws IOException {
     assertTrue(source.contentEquals(source));
     assertTrue(source.wasStreamOpened() && source.wasStreamClosed());
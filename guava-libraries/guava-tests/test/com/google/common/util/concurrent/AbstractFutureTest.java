@@ -16,15 +16,25 @@
 
 package com.google.common.util.concurrent;
 
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
 import static org.truth0.Truth.ASSERT;
 
+import com.google.common.collect.Lists;
+
 import junit.framework.AssertionFailedError;
 import junit.framework.TestCase;
 
+import java.util.List;
+import java.util.concurrent.Callable;
 import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
 
 /**
@@ -148,6 +158,102 @@ public class AbstractFutureTest extends TestCase {
     executor.shutdown();
   }
 
+  public void testGet_manyWaiters() throws Exception {
+    final AbstractFuture<String> future = new AbstractFuture<String>() {};
+    int numWaiters = 10;
+    final CountDownLatch started = new CountDownLatch(numWaiters);
+    ExecutorService executor = Executors.newFixedThreadPool(numWaiters);
+    List<Future<String>> results = Lists.newArrayList();
+    for (int i = 0; i < numWaiters; i++) {
+      results.add(executor.submit(new Callable<String>() {
+        @Override public String call() throws Exception {
+          started.countDown();
+          return future.get();
+        }
+      }));
+    }
+    started.await();
+    future.set("foo");
+    for (Future<String> result : results) {
+      assertEquals("foo", result.get(10, SECONDS));
+    }
+    executor.shutdown();
+  }
+
+  public void testGet_timeoutThenSet() throws Exception {
+    AbstractFuture<String> future = new AbstractFuture<String>() {
+      @Override protected boolean set(String value) {
+        return super.set(value);
+      }
+    };
+    try {
+      future.get(10, MILLISECONDS);
+      fail();
+    } catch (TimeoutException expected) {
+    }
+    try {
+      future.get(0, MILLISECONDS);
+      fail();
+    } catch (TimeoutException expected) {
+    }
+    assertTrue(future.set("foo"));
+    assertEquals("foo", future.get(0, MILLISECONDS));
+    assertEquals("foo", future.get());
+  }
+
+  public void testGet_interrupted() throws Exception {
+    final AbstractFuture<String> future = new AbstractFuture<String>() {};
+    final CountDownLatch interrupted = new CountDownLatch(1);
+    Thread waiter = new Thread() {
+      @Override public void run() {
+        try {
+          future.get();
+        } catch (InterruptedException expected) {
+          interrupted.countDown();
+        } catch (ExecutionException e) {
+          throw new AssertionError(e);
+        }
+      }
+    };
+    waiter.start();
+    waiter.interrupt();
+    assertTrue(interrupted.await(10, SECONDS));
+    waiter.join();
+    assertFalse(future.isDone());
+  }
+
+  public void testAddListener_concurrentWithCompletion() throws Exception {
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    for (int i = 0; i < 1000; i++) {
+      final AbstractFuture<String> future = new AbstractFuture<String>() {
+        @Override protected boolean set(String value) {
+          return super.set(value);
+        }
+      };
+      final AtomicInteger count = new AtomicInteger();
+      final Runnable listener = new Runnable() {
+        @Override public void run() {
+          count.incrementAndGet();
+        }
+      };
+      final CountDownLatch done = new CountDownLatch(3);
+      for (int j = 0; j < 3; j++) {
+        executor.execute(new Runnable() {
+          @Override public void run() {
+            for (int k = 0; k < 10; k++) {
+              future.addListener(listener, MoreExecutors.sameThreadExecutor());
+            }
+            done.countDown();
+          }
+        });
+      }
+      future.set("foo");
+      done.await();
+      assertEquals(30, count.get());
+    }
+    executor.shutdown();
+  }
+
   private void checkStackTrace(ExecutionException e) {
     // Our call site for get() should be in the trace.
     int index = findStackFrame(
@@ -23,9 +23,13 @@ import com.google.common.testing.NullPointerTester.Visibility;
 import junit.framework.TestCase;
 
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Tests for RateLimiter.
@@ -302,6 +306,69 @@ public class RateLimiterTest extends TestCase {
     }
   }
 
+  public void testAcquire_concurrent() throws InterruptedException {
+    final int threadCount = 20;
+    // The time stands still, so every reservation is pushed one more second into the future
+    final ConcurrentLinkedQueue<Long> sleeps = new ConcurrentLinkedQueue<Long>();
+    RateLimiter.SleepingTicker stoppedTicker = new RateLimiter.SleepingTicker() {
+      @Override public long read() {
+        return 0L;
+      }
+
+      @Override void sleepMicrosUninterruptibly(long micros) {
+        sleeps.add(micros);
+      }
+    };
+    final RateLimiter limiter = RateLimiter.create(stoppedTicker, 1.0);
+    runConcurrently(threadCount, new Runnable() {
+      @Override public void run() {
+        limiter.acquire();
+      }
+    });
+    List<Long> expected = Lists.newArrayList();
+    for (long i = 0; i < threadCount; i++) {
+      expected.add(TimeUnit.SECONDS.toMicros(i));
+    }
+    List<Long> actual = Lists.newArrayList(sleeps);
+    Collections.sort(actual);
+    assertEquals(expected, actual);
+  }
+
+  public void testTryAcquire_concurrent() throws InterruptedException {
+    final RateLimiter limiter = RateLimiter.create(new FakeTicker(), 1.0);
+    final AtomicInteger acquired = new AtomicInteger();
+    runConcurrently(20, new Runnable() {
+      @Override public void run() {
+        if (limiter.tryAcquire()) {
+          acquired.incrementAndGet();
+        }
+      }
+    });
+    assertEquals(1, acquired.get());
+  }
+
+  private static void runConcurrently(int threadCount, final Runnable task)
+      throws InterruptedException {
+    final CountDownLatch startLatch = new CountDownLatch(1);
+    final CountDownLatch doneLatch = new CountDownLatch(threadCount);
+    for (int i = 0; i < threadCount; i++) {
+      new Thread() {
+        @Override public void run() {
+          try {
+            startLatch.await();
+            task.run();
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+          } finally {
+            doneLatch.countDown();
+          }
+        }
+      }.start();
+    }
+    startLatch.countDown();
+    doneLatch.await();
+  }
+
   public void testNulls() {
     NullPointerTester tester = new NullPointerTester()
         .setDefault(RateLimiter.SleepingTicker.class, ticker);
@@ -272,4 +272,76 @@ public abstract class AbstractCache<K, V> implements Cache<K, V> {
       evictionCount.add(otherStats.evictionCount());
     }
   }
+
+  /**
+   * A thread-safe {@link StatsCounter} which, in addition to the counts of a {@link
+   * SimpleStatsCounter}, records the time taken by each load, whether successful or not, in a
+   * {@link LoadLatencyHistogram}.
+   *
+   * <p>A {@link LocalCache} obtains one counter for each of its segments, so a supplier passed to
+   * {@link CacheBuilder#recordStats(com.google.common.base.Supplier)} may keep the counters it
+   * creates in order to report per-segment statistics, or to combine their histograms: <pre>   {@code
+   *
+   *   final List<HistogramStatsCounter> counters = new CopyOnWriteArrayList<HistogramStatsCounter>();
+   *   Cache<K, V> cache = CacheBuilder.newBuilder()
+   *       .recordStats(new Supplier<StatsCounter>() {
+   *         public StatsCounter get() {
+   *           HistogramStatsCounter counter = new HistogramStatsCounter();
+   *           counters.add(counter);
+   *           return counter;
+   *         }
+   *       })
+   *       .build();}</pre>
+   *
+   * @since 15.0
+   */
+  @Beta
+  public static final class HistogramStatsCounter implements StatsCounter {
+    private final SimpleStatsCounter counts = new SimpleStatsCounter();
+    private final LoadLatencyHistogram loadLatency = new LoadLatencyHistogram();
+
+    /**
+     * Constructs an instance with all counts initialized to zero.
+     */
+    public HistogramStatsCounter() {}
+
+    @Override
+    public void recordHits(int count) {
+      counts.recordHits(count);
+    }
+
+    @Override
+    public void recordMisses(int count) {
+      counts.recordMisses(count);
+    }
+
+    @Override
+    public void recordLoadSuccess(long loadTime) {
+      counts.recordLoadSuccess(loadTime);
+      loadLatency.record(loadTime);
+    }
+
+    @Override
+    public void recordLoadException(long loadTime) {
+      counts.recordLoadException(loadTime);
+      loadLatency.record(loadTime);
+    }
+
+    @Override
+    public void recordEviction() {
+      counts.recordEviction();
+    }
+
+    @Override
+    public CacheStats snapshot() {
+      return counts.snapshot();
+    }
+
+    /**
+     * Returns the live histogram of the load times recorded by this counter.
+     */
+    public LoadLatencyHistogram loadLatency() {
+      return loadLatency;
+    }
+  }
 }
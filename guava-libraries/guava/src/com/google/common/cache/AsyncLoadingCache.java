@@ -0,0 +1,78 @@
+/*
+ * Copyright (C) 2013 The Guava Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.common.cache;
+
+import com.google.common.annotations.Beta;
+import com.google.common.annotations.GwtIncompatible;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.util.concurrent.ListenableFuture;
+
+import java.util.concurrent.Executor;
+
+/**
+ * A semi-persistent mapping from keys to values whose lookups never block. Values are
+ * automatically loaded by the cache on an {@link Executor}, and are stored in the cache until
+ * either evicted or manually invalidated.
+ *
+ * <p>A load in progress is itself stored in the cache, so a request for a key which is already
+ * being loaded, whether through this interface or its {@linkplain #synchronous synchronous view},
+ * returns a future for that load rather than starting another.
+ *
+ * <p>Implementations of this interface are expected to be thread-safe, and can be safely accessed
+ * by multiple concurrent threads.
+ *
+ * @since 15.0
+ */
+@Beta
+@GwtIncompatible("To be supported")
+public interface AsyncLoadingCache<K, V> {
+
+  /**
+   * Returns a future for the value associated with {@code key} in this cache, first loading that
+   * value if necessary. If the value is present the returned future is already complete;
+   * otherwise {@link CacheLoader#load} is called on the cache's executor.
+   *
+   * <p>If the loader throws an exception, or returns {@code null}, the returned future fails and
+   * nothing is stored in the cache.
+   *
+   * @throws NullPointerException if {@code key} is null
+   */
+  ListenableFuture<V> get(K key);
+
+  /**
+   * Returns a future for a map of the values associated with {@code keys}, creating or retrieving
+   * those values if necessary. The returned map contains entries that were already cached,
+   * combined with newly loaded entries; it will never contain null keys or values.
+   *
+   * <p>All keys which are neither present nor already being loaded are loaded by a single call
+   * to {@link CacheLoader#loadAll} on the cache's executor. If {@code loadAll} is not implemented,
+   * each of those keys is instead loaded by its own call to {@link CacheLoader#load}, so that
+   * the loads proceed in parallel.
+   *
+   * <p>The returned future fails if any of the values cannot be loaded.
+   *
+   * @throws NullPointerException if {@code keys} or any of its elements is null
+   */
+  ListenableFuture<ImmutableMap<K, V>> getAll(Iterable<? extends K> keys);
+
+  /**
+   * Returns a view of this cache as a blocking {@link LoadingCache}. The view shares entries,
+   * including loads in progress, with this cache, and provides the operations for inspecting and
+   * modifying it, such as {@link LoadingCache#invalidate} and {@link LoadingCache#stats}.
+   */
+  LoadingCache<K, V> synchronous();
+}
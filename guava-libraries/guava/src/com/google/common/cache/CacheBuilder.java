@@ -38,11 +38,13 @@ import java.lang.ref.SoftReference;
 import java.lang.ref.WeakReference;
 import java.util.ConcurrentModificationException;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import javax.annotation.CheckReturnValue;
+import javax.annotation.Nullable;
 
 /**
  * <p>A builder of {@link LoadingCache} and {@link Cache} instances having any combination of the
@@ -50,7 +52,7 @@ import javax.annotation.CheckReturnValue;
  *
  * <ul>
  * <li>automatic loading of entries into the cache
- * <li>least-recently-used eviction when a maximum size is exceeded
+ * <li>least-recently-used or frequency-based eviction when a maximum size is exceeded
  * <li>time-based expiration of entries, measured since last access or last write
  * <li>keys automatically wrapped in {@linkplain WeakReference weak} references
  * <li>values automatically wrapped in {@linkplain WeakReference weak} or
@@ -204,6 +206,16 @@ public final class CacheBuilder<K, V> {
     }
   }
 
+  /** Weighs values stored off the heap by their length. */
+  enum ByteArrayWeigher implements Weigher<Object, byte[]> {
+    INSTANCE;
+
+    @Override
+    public int weigh(Object key, byte[] value) {
+      return value.length;
+    }
+  }
+
   static final Ticker NULL_TICKER = new Ticker() {
     @Override
     public long read() {
@@ -219,16 +231,21 @@ public final class CacheBuilder<K, V> {
 
   int initialCapacity = UNSET_INT;
   int concurrencyLevel = UNSET_INT;
+  ConcurrencyMode concurrencyMode;
   long maximumSize = UNSET_INT;
   long maximumWeight = UNSET_INT;
   Weigher<? super K, ? super V> weigher;
+  EvictionPolicy evictionPolicy;
+  ReadBufferMode readBufferMode;
 
   Strength keyStrength;
   Strength valueStrength;
 
   long expireAfterWriteNanos = UNSET_INT;
   long expireAfterAccessNanos = UNSET_INT;
+  Expiry<? super K, ? super V> expiry;
   long refreshNanos = UNSET_INT;
+  Executor refreshExecutor;
 
   Equivalence<Object> keyEquivalence;
   Equivalence<Object> valueEquivalence;
@@ -383,6 +400,34 @@ public final class CacheBuilder<K, V> {
     return (concurrencyLevel == UNSET_INT) ? DEFAULT_CONCURRENCY_LEVEL : concurrencyLevel;
   }
 
+  /**
+   * Specifies how the cache divides its table among write locks. By default the cache uses
+   * {@link ConcurrencyMode#SEGMENTED}, with about {@linkplain #concurrencyLevel concurrency level}
+   * segments, each of which evicts entries once it exceeds its share of the {@linkplain
+   * #maximumSize maximum size}.
+   *
+   * <p>With {@link ConcurrencyMode#FINE_GRAINED}, the table is divided into at least four lock
+   * stripes for each available processor, and the maximum size or weight is tracked for the cache
+   * as a whole, so that write throughput can scale with the number of processors without dividing
+   * a small maximum size into many small, separately evicted shares.
+   *
+   * @param mode the locking mode of the cache
+   * @throws IllegalStateException if a concurrency mode was already set
+   * @since 15.0
+   */
+  @Beta
+  @GwtIncompatible("To be supported")
+  public CacheBuilder<K, V> concurrencyMode(ConcurrencyMode mode) {
+    checkState(concurrencyMode == null, "concurrency mode was already set to %s",
+        concurrencyMode);
+    concurrencyMode = checkNotNull(mode);
+    return this;
+  }
+
+  ConcurrencyMode getConcurrencyMode() {
+    return firstNonNull(concurrencyMode, ConcurrencyMode.SEGMENTED);
+  }
+
   /**
    * Specifies the maximum number of entries the cache may contain. Note that the cache <b>may evict
    * an entry before this limit is exceeded</b>. As the cache size grows close to the maximum, the
@@ -501,6 +546,62 @@ public final class CacheBuilder<K, V> {
     return (Weigher<K1, V1>) Objects.firstNonNull(weigher, OneWeigher.INSTANCE);
   }
 
+  /**
+   * Specifies the policy used to choose which entry to evict when the cache exceeds its
+   * {@linkplain #maximumSize(long) maximum size} or {@linkplain #maximumWeight(long) maximum
+   * weight}. By default, the least-recently-used entry is evicted.
+   *
+   * <p>With {@link EvictionPolicy#TINY_LFU}, the cache keeps a compact estimate of how often each
+   * key has been read or written recently. When an entry is added or updated and the cache must
+   * evict, the new entry is only retained if it has been used more often than the
+   * least-recently-used entry; otherwise the new entry itself is evicted. This prevents a one-off
+   * scan over many keys from flushing the frequently used entries out of the cache.
+   *
+   * <p>The eviction policy has no effect unless {@link #maximumSize} or {@link #maximumWeight} is
+   * also specified.
+   *
+   * @param policy the policy used to select entries for size-based eviction
+   * @throws IllegalStateException if an eviction policy was already set
+   * @since 15.0
+   */
+  @Beta
+  @GwtIncompatible("To be supported")
+  public CacheBuilder<K, V> evictionPolicy(EvictionPolicy policy) {
+    checkState(evictionPolicy == null, "eviction policy was already set to %s", evictionPolicy);
+    evictionPolicy = checkNotNull(policy);
+    return this;
+  }
+
+  EvictionPolicy getEvictionPolicy() {
+    return firstNonNull(evictionPolicy, EvictionPolicy.LRU);
+  }
+
+  /**
+   * Specifies how the cache records the reads which hit it, when it orders its entries by access
+   * for {@linkplain #maximumSize size-based eviction} or {@linkplain #expireAfterAccess expiration
+   * after access}. By default, every read is recorded in an unbounded queue.
+   *
+   * <p>With {@link ReadBufferMode#STRIPED}, reads are recorded in fixed-size buffers, one for each
+   * of several stripes of threads, and a read which finds its buffer full or contended is dropped.
+   * This lets reads scale with the number of processors reading the same segment, at the cost of
+   * an access order which may miss some reads under heavy load.
+   *
+   * @param mode the way in which reads are recorded
+   * @throws IllegalStateException if a read buffer mode was already set
+   * @since 15.0
+   */
+  @Beta
+  @GwtIncompatible("To be supported")
+  public CacheBuilder<K, V> readBufferMode(ReadBufferMode mode) {
+    checkState(readBufferMode == null, "read buffer mode was already set to %s", readBufferMode);
+    readBufferMode = checkNotNull(mode);
+    return this;
+  }
+
+  ReadBufferMode getReadBufferMode() {
+    return firstNonNull(readBufferMode, ReadBufferMode.UNBOUNDED);
+  }
+
   /**
    * Specifies that each key (not value) stored in the cache should be wrapped in a {@link
    * WeakReference} (by default, strong references are used).
@@ -574,6 +675,51 @@ public final class CacheBuilder<K, V> {
     return setValueStrength(Strength.SOFT);
   }
 
+  /**
+   * Specifies that each value, a byte array, should be stored outside of the Java heap in direct
+   * {@link java.nio.ByteBuffer}s, leaving only the keys and small handles to the values on the
+   * heap. This lets a cache hold far more data than would otherwise be practical without long
+   * garbage collection pauses.
+   *
+   * <p>Values are copied into off-heap memory when they are stored, and a fresh copy is returned
+   * each time a value is read. The memory of a value is reused once it is evicted, expired,
+   * invalidated or replaced, and {@link RemovalListener}s receive a copy of the removed value.
+   * Memory is allocated from pages shared between values of similar sizes, and is retained by the
+   * cache for reuse; it is released when the cache itself is garbage collected.
+   *
+   * <p>Each entry is weighed by the length of its value, so this method requires a corresponding
+   * call to {@link #maximumWeight(long)}, which bounds the number of bytes stored off the heap.
+   * The direct memory available to the JVM must be somewhat larger than that bound.
+   *
+   * <p><b>Note:</b> when this method is used, the resulting cache will compare values by their
+   * contents, using {@link java.util.Arrays#equals(byte[], byte[])}.
+   *
+   * <p><b>Warning:</b> after invoking this method, do not continue to use <i>this</i> cache
+   * builder reference; instead use the reference this method <i>returns</i>. At runtime, these
+   * point to the same instance, but only the returned reference has the correct generic type
+   * information so as to ensure type safety.
+   *
+   * @return the cache builder reference that should be used instead of {@code this} for any
+   *     remaining configuration and cache building
+   * @throws IllegalStateException if the value strength, a weigher, or a maximum size was already
+   *     set
+   * @since 15.0
+   */
+  @Beta
+  @GwtIncompatible("java.nio.ByteBuffer")
+  @CheckReturnValue
+  public <K1 extends K> CacheBuilder<K1, byte[]> offHeapValues() {
+    checkState(weigher == null, "offHeapValues can not be combined with a weigher");
+    checkState(maximumSize == UNSET_INT, "offHeapValues can not be combined with maximum size");
+    setValueStrength(Strength.OFF_HEAP);
+
+    // values are byte arrays from now on
+    @SuppressWarnings("unchecked")
+    CacheBuilder<K1, byte[]> me = (CacheBuilder<K1, byte[]>) (CacheBuilder<?, ?>) this;
+    me.weigher = ByteArrayWeigher.INSTANCE;
+    return me;
+  }
+
   CacheBuilder<K, V> setValueStrength(Strength strength) {
     checkState(valueStrength == null, "Value strength was already set to %s", valueStrength);
     valueStrength = checkNotNull(strength);
@@ -606,6 +752,7 @@ public final class CacheBuilder<K, V> {
   public CacheBuilder<K, V> expireAfterWrite(long duration, TimeUnit unit) {
     checkState(expireAfterWriteNanos == UNSET_INT, "expireAfterWrite was already set to %s ns",
         expireAfterWriteNanos);
+    checkState(expiry == null, "expireAfterWrite may not be used with variable expiration");
     checkArgument(duration >= 0, "duration cannot be negative: %s %s", duration, unit);
     this.expireAfterWriteNanos = unit.toNanos(duration);
     return this;
@@ -640,6 +787,7 @@ public final class CacheBuilder<K, V> {
   public CacheBuilder<K, V> expireAfterAccess(long duration, TimeUnit unit) {
     checkState(expireAfterAccessNanos == UNSET_INT, "expireAfterAccess was already set to %s ns",
         expireAfterAccessNanos);
+    checkState(expiry == null, "expireAfterAccess may not be used with variable expiration");
     checkArgument(duration >= 0, "duration cannot be negative: %s %s", duration, unit);
     this.expireAfterAccessNanos = unit.toNanos(duration);
     return this;
@@ -650,6 +798,54 @@ public final class CacheBuilder<K, V> {
         ? DEFAULT_EXPIRATION_NANOS : expireAfterAccessNanos;
   }
 
+  /**
+   * Specifies that each entry should be automatically removed from the cache once a duration
+   * chosen by {@code expiry} has elapsed after the entry's creation, or the most recent
+   * replacement of its value. This allows entries to be given different lifetimes, for example
+   * according to the tenant that owns them.
+   *
+   * <p>Expired entries may be counted in {@link Cache#size}, but will never be visible to read or
+   * write operations. Expired entries are cleaned up as part of the routine maintenance described
+   * in the class javadoc. Entries are tracked by a hierarchical timer wheel, so this maintenance
+   * takes amortized constant time per expired entry regardless of how the durations vary.
+   *
+   * <p><b>Warning:</b> after invoking this method, do not continue to use <i>this</i> cache
+   * builder reference; instead use the reference this method <i>returns</i>. At runtime, these
+   * point to the same instance, but only the returned reference has the correct generic type
+   * information so as to ensure type safety.
+   *
+   * @param expiry the expiry used to calculate the lifetime of each entry
+   * @return the cache builder reference that should be used instead of {@code this} for any
+   *     remaining configuration and cache building
+   * @throws IllegalStateException if variable expiration was already set, or if {@link
+   *     #expireAfterWrite} or {@link #expireAfterAccess} was set
+   * @since 15.0
+   */
+  @Beta
+  @GwtIncompatible("To be supported")
+  @CheckReturnValue
+  public <K1 extends K, V1 extends V> CacheBuilder<K1, V1> expireAfter(
+      Expiry<? super K1, ? super V1> expiry) {
+    checkState(this.expiry == null, "expiry was already set to %s", this.expiry);
+    checkState(expireAfterWriteNanos == UNSET_INT,
+        "variable expiration may not be used with expireAfterWrite");
+    checkState(expireAfterAccessNanos == UNSET_INT,
+        "variable expiration may not be used with expireAfterAccess");
+
+    // safely limiting the kinds of caches this can produce
+    @SuppressWarnings("unchecked")
+    CacheBuilder<K1, V1> me = (CacheBuilder<K1, V1>) this;
+    me.expiry = checkNotNull(expiry);
+    return me;
+  }
+
+  // Make a safe contravariant cast now so we don't have to do it over and over.
+  @SuppressWarnings("unchecked")
+  @Nullable
+  <K1 extends K, V1 extends V> Expiry<K1, V1> getExpiry() {
+    return (Expiry<K1, V1>) expiry;
+  }
+
   /**
    * Specifies that active entries are eligible for automatic refresh once a fixed duration has
    * elapsed after the entry's creation, or the most recent replacement of its value. The semantics
@@ -657,14 +853,14 @@ public final class CacheBuilder<K, V> {
    * {@link CacheLoader#reload}.
    *
    * <p>As the default implementation of {@link CacheLoader#reload} is synchronous, it is
-   * recommended that users of this method override {@link CacheLoader#reload} with an asynchronous
-   * implementation; otherwise refreshes will be performed during unrelated cache read and write
-   * operations.
+   * recommended that users of this method either specify a {@link #refreshExecutor} or override
+   * {@link CacheLoader#reload} with an asynchronous implementation; otherwise refreshes will be
+   * performed during unrelated cache read and write operations.
    *
    * <p>Currently automatic refreshes are performed when the first stale request for an entry
-   * occurs. The request triggering refresh will make a blocking call to {@link CacheLoader#reload}
-   * and immediately return the new value if the returned future is complete, and the old value
-   * otherwise.
+   * occurs. Unless a {@link #refreshExecutor} was specified, the request triggering refresh will
+   * make a blocking call to {@link CacheLoader#reload} and immediately return the new value if the
+   * returned future is complete, and the old value otherwise.
    *
    * <p><b>Note:</b> <i>all exceptions thrown during refresh will be logged and then swallowed</i>.
    *
@@ -689,6 +885,37 @@ public final class CacheBuilder<K, V> {
     return (refreshNanos == UNSET_INT) ? DEFAULT_REFRESH_NANOS : refreshNanos;
   }
 
+  /**
+   * Specifies the executor on which entries are reloaded, whether they are refreshed
+   * {@linkplain #refreshAfterWrite automatically} or {@linkplain LoadingCache#refresh explicitly}.
+   * By default, {@link CacheLoader#reload} is called by the thread which triggers the refresh.
+   *
+   * <p>When an executor is specified, a request which finds a stale entry schedules the reload on
+   * {@code executor} and immediately returns the old value, without waiting for {@link
+   * CacheLoader#reload} to be called. While a reload is pending, further refreshes of the same key
+   * are ignored. If {@code executor} rejects the task, the old value is retained and the refresh
+   * will be attempted again on a later request.
+   *
+   * <p>A bounded executor, such as a {@link java.util.concurrent.ThreadPoolExecutor} with a fixed
+   * number of threads and a bounded queue, limits the load which refreshes place on the backing
+   * store.
+   *
+   * @param executor the executor used to call {@link CacheLoader#reload}
+   * @throws IllegalStateException if a refresh executor was already set
+   * @since 15.0
+   */
+  @Beta
+  @GwtIncompatible("To be supported")
+  public CacheBuilder<K, V> refreshExecutor(Executor executor) {
+    checkState(refreshExecutor == null, "refresh executor was already set to %s", refreshExecutor);
+    refreshExecutor = checkNotNull(executor);
+    return this;
+  }
+
+  Executor getRefreshExecutor() {
+    return firstNonNull(refreshExecutor, LocalCache.sameThreadExecutor);
+  }
+
   /**
    * Specifies a nanosecond-precision time source for use in determining when entries should be
    * expired. By default, {@link System#nanoTime} is used.
@@ -763,8 +990,28 @@ public final class CacheBuilder<K, V> {
     return this;
   }
   
+  /**
+   * Enable the accumulation of {@link CacheStats} during the operation of the cache, using
+   * counters obtained from {@code statsCounterSupplier} in place of the default ones. This allows
+   * additional statistics to be recorded, such as the distribution of load times kept by a {@link
+   * AbstractCache.HistogramStatsCounter}.
+   *
+   * <p>The supplier is called once for each segment of the cache, and once more for a counter
+   * which records the operations that span segments, such as {@link LoadingCache#getAll}. Each
+   * call must return a new, thread-safe counter; {@link Cache#stats} returns the sum of their
+   * snapshots.
+   *
+   * @since 15.0
+   */
+  @Beta
+  @GwtIncompatible("To be supported")
+  public CacheBuilder<K, V> recordStats(Supplier<? extends StatsCounter> statsCounterSupplier) {
+    this.statsCounterSupplier = checkNotNull(statsCounterSupplier);
+    return this;
+  }
+
   boolean isRecordingStats() {
-    return statsCounterSupplier == CACHE_STATS_COUNTER;
+    return statsCounterSupplier != NULL_STATS_COUNTER;
   }
 
   Supplier<? extends StatsCounter> getStatsCounterSupplier() {
@@ -789,6 +1036,27 @@ public final class CacheBuilder<K, V> {
     return new LocalCache.LocalLoadingCache<K1, V1>(this, loader);
   }
 
+  /**
+   * Builds a cache whose lookups return {@link ListenableFuture}s rather than blocking. Missing
+   * values are loaded by calling {@code loader} on {@code executor}, and a load in progress is
+   * shared by every request for the same key.
+   *
+   * <p>This method does not alter the state of this {@code CacheBuilder} instance, so it can be
+   * invoked again to create multiple independent caches.
+   *
+   * @param loader the cache loader used to obtain new values
+   * @param executor the executor on which {@code loader} is called
+   * @return a cache having the requested features
+   * @since 15.0
+   */
+  @Beta
+  @GwtIncompatible("To be supported")
+  public <K1 extends K, V1 extends V> AsyncLoadingCache<K1, V1> buildAsync(
+      CacheLoader<? super K1, V1> loader, Executor executor) {
+    checkWeightWithWeigher();
+    return new LocalCache.LocalAsyncLoadingCache<K1, V1>(this, loader, executor);
+  }
+
   /**
    * Builds a cache which does not automatically load values when keys are requested.
    *
@@ -812,6 +1080,9 @@ public final class CacheBuilder<K, V> {
   }
 
   private void checkWeightWithWeigher() {
+    if (valueStrength == Strength.OFF_HEAP) {
+      checkState(maximumWeight != UNSET_INT, "offHeapValues requires maximumWeight");
+    }
     if (weigher == null) {
       checkState(maximumWeight == UNSET_INT, "maximumWeight requires weigher");
     } else {
@@ -838,18 +1109,30 @@ public final class CacheBuilder<K, V> {
     if (concurrencyLevel != UNSET_INT) {
       s.add("concurrencyLevel", concurrencyLevel);
     }
+    if (concurrencyMode != null) {
+      s.add("concurrencyMode", concurrencyMode);
+    }
     if (maximumSize != UNSET_INT) {
       s.add("maximumSize", maximumSize);
     }
     if (maximumWeight != UNSET_INT) {
       s.add("maximumWeight", maximumWeight);
     }
+    if (evictionPolicy != null) {
+      s.add("evictionPolicy", evictionPolicy);
+    }
+    if (readBufferMode != null) {
+      s.add("readBufferMode", readBufferMode);
+    }
     if (expireAfterWriteNanos != UNSET_INT) {
       s.add("expireAfterWrite", expireAfterWriteNanos + "ns");
     }
     if (expireAfterAccessNanos != UNSET_INT) {
       s.add("expireAfterAccess", expireAfterAccessNanos + "ns");
     }
+    if (expiry != null) {
+      s.addValue("expiry");
+    }
     if (keyStrength != null) {
       s.add("keyStrength", Ascii.toLowerCase(keyStrength.toString()));
     }
@@ -865,6 +1148,9 @@ public final class CacheBuilder<K, V> {
     if (removalListener != null) {
       s.addValue("removalListener");
     }
+    if (refreshExecutor != null) {
+      s.addValue("refreshExecutor");
+    }
     return s.toString();
   }
 }
@@ -0,0 +1,241 @@
+/*
+ * Copyright (C) 2013 The Guava Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.common.cache;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+import com.google.common.annotations.Beta;
+import com.google.common.annotations.GwtIncompatible;
+import com.google.common.cache.LocalCache.LocalManualCache;
+import com.google.common.cache.LocalCache.SnapshotVisitor;
+import com.google.common.io.ByteSink;
+import com.google.common.io.ByteSource;
+import com.google.common.io.Closer;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+
+/**
+ * Static methods which write the entries of a {@link Cache} to a file, or any other {@link
+ * ByteSink}, and load them back. A process which writes a snapshot of its cache before shutting
+ * down can load it when it restarts, rather than sending every request to the backends behind the
+ * cache until the cache has warmed up again.
+ *
+ * <p>A snapshot records each entry's key and value, encoded by a {@link Codec}, along with the
+ * time since the entry was last written and last accessed. Entries are written in least recently
+ * used order within each segment, so a cache bounded by size which loads the snapshot evicts the
+ * same entries that it would have evicted before. Loading a snapshot does not call the cache's
+ * {@link CacheLoader}, and does not affect its {@link CacheStats}.
+ *
+ * <p>The snapshot is streamed, so neither writing nor loading it requires more memory than the
+ * cache itself, apart from a copy of the references held by one segment at a time. It is not a
+ * consistent view of the cache: entries written while the snapshot is taken may or may not be
+ * included.
+ *
+ * <p>Only caches created by {@link CacheBuilder#build()} or {@link CacheBuilder#build(CacheLoader)}
+ * are supported.
+ *
+ * @since 15.0
+ */
+@Beta
+@GwtIncompatible("java.io")
+public final class CacheSnapshot {
+  private CacheSnapshot() {}
+
+  static final int MAGIC = 0x47435331; // "GCS1"
+  static final int VERSION = 1;
+
+  /**
+   * Converts keys or values of type {@code T} to and from bytes.
+   *
+   * @since 15.0
+   */
+  @Beta
+  public interface Codec<T> {
+    /**
+     * Writes {@code value} to {@code out}.
+     */
+    void encode(T value, DataOutput out) throws IOException;
+
+    /**
+     * Reads a value from {@code in}, consuming exactly the bytes written by {@link #encode}.
+     */
+    T decode(DataInput in) throws IOException;
+  }
+
+  /**
+   * Returns a codec which uses Java serialization. It is a convenient default, but each value is
+   * serialized with its own class descriptors, so a codec for the actual type is typically much
+   * faster and more compact.
+   */
+  @SuppressWarnings("unchecked") // SerializableCodec decodes whatever it encoded
+  public static <T extends Serializable> Codec<T> serializableCodec() {
+    return (Codec<T>) (Codec<?>) SerializableCodec.INSTANCE;
+  }
+
+  private enum SerializableCodec implements Codec<Object> {
+    INSTANCE;
+
+    @Override
+    public void encode(Object value, DataOutput out) throws IOException {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      ObjectOutputStream objectOut = new ObjectOutputStream(bytes);
+      objectOut.writeObject(value);
+      objectOut.close();
+      out.writeInt(bytes.size());
+      out.write(bytes.toByteArray());
+    }
+
+    @Override
+    public Object decode(DataInput in) throws IOException {
+      byte[] bytes = new byte[in.readInt()];
+      in.readFully(bytes);
+      ObjectInputStream objectIn = new ObjectInputStream(new ByteArrayInputStream(bytes));
+      try {
+        return objectIn.readObject();
+      } catch (ClassNotFoundException e) {
+        throw new IOException(e);
+      } finally {
+        objectIn.close();
+      }
+    }
+  }
+
+  /**
+   * Writes a snapshot of the live entries of {@code cache} to {@code sink}, returning the number
+   * of entries written.
+   *
+   * @throws IllegalArgumentException if {@code cache} was not created by {@link CacheBuilder}
+   * @throws IOException if an I/O error occurs, or a codec fails to encode an entry
+   */
+  public static <K, V> long writeTo(Cache<K, V> cache, ByteSink sink,
+      final Codec<? super K> keyCodec, final Codec<? super V> valueCodec) throws IOException {
+    checkNotNull(sink);
+    checkNotNull(keyCodec);
+    checkNotNull(valueCodec);
+    LocalCache<K, V> localCache = localCache(cache);
+
+    Closer closer = Closer.create();
+    try {
+      final DataOutputStream out =
+          closer.register(new DataOutputStream(sink.openBufferedStream()));
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+      out.writeLong(System.currentTimeMillis());
+
+      final long[] count = new long[1];
+      localCache.snapshot(new SnapshotVisitor<K, V>() {
+        @Override
+        public void visit(K key, V value, long writeAge, long accessAge) throws IOException {
+          out.writeBoolean(true);
+          keyCodec.encode(key, out);
+          valueCodec.encode(value, out);
+          out.writeLong(writeAge);
+          out.writeLong(accessAge);
+          count[0]++;
+        }
+      });
+      out.writeBoolean(false);
+      out.flush();
+      return count[0];
+    } catch (Throwable e) {
+      throw closer.rethrow(e);
+    } finally {
+      closer.close();
+    }
+  }
+
+  /**
+   * Adds the entries of the snapshot in {@code source} to {@code cache}, returning the number of
+   * entries added. Keys which are already present in the cache, and entries which have expired
+   * since the snapshot was written, are skipped. The time between writing and loading the
+   * snapshot, as measured by the system clock, is added to the age of each entry.
+   *
+   * <p>Entries are added in the order in which they were written, so if {@code cache} is too small
+   * for the snapshot, the least recently used entries are evicted as usual. Caches which {@linkplain
+   * CacheBuilder#expireAfter expire entries variably} compute the expiration time of each entry as
+   * if it had just been created.
+   *
+   * @throws IllegalArgumentException if {@code cache} was not created by {@link CacheBuilder}
+   * @throws IOException if an I/O error occurs, {@code source} does not contain a snapshot, or a
+   *     codec fails to decode an entry
+   */
+  public static <K, V> long loadFrom(Cache<K, V> cache, ByteSource source,
+      Codec<? extends K> keyCodec, Codec<? extends V> valueCodec) throws IOException {
+    checkNotNull(source);
+    checkNotNull(keyCodec);
+    checkNotNull(valueCodec);
+    LocalCache<K, V> localCache = localCache(cache);
+
+    Closer closer = Closer.create();
+    try {
+      DataInputStream in = closer.register(new DataInputStream(source.openBufferedStream()));
+      if (in.readInt() != MAGIC) {
+        throw new IOException("Not a cache snapshot");
+      }
+      int version = in.readInt();
+      if (version != VERSION) {
+        throw new IOException("Unsupported cache snapshot version: " + version);
+      }
+      long elapsedMillis = System.currentTimeMillis() - in.readLong();
+      long elapsedNanos = MILLISECONDS.toNanos(Math.max(0, elapsedMillis));
+
+      long count = 0;
+      try {
+        while (in.readBoolean()) {
+          K key = keyCodec.decode(in);
+          V value = valueCodec.decode(in);
+          long writeAge = saturatedAdd(in.readLong(), elapsedNanos);
+          long accessAge = saturatedAdd(in.readLong(), elapsedNanos);
+          if (localCache.restore(key, value, writeAge, accessAge)) {
+            count++;
+          }
+        }
+      } finally {
+        // the entries arrive in recency or table order, not in order of expiration
+        localCache.finishRestore();
+      }
+      return count;
+    } catch (Throwable e) {
+      throw closer.rethrow(e);
+    } finally {
+      closer.close();
+    }
+  }
+
+  private static <K, V> LocalCache<K, V> localCache(Cache<K, V> cache) {
+    checkNotNull(cache);
+    checkArgument(cache instanceof LocalManualCache,
+        "Only caches created by CacheBuilder are supported: %s", cache);
+    return ((LocalManualCache<K, V>) cache).localCache;
+  }
+
+  private static long saturatedAdd(long age, long elapsedNanos) {
+    long sum = Math.max(0, age) + elapsedNanos;
+    return (sum < 0) ? Long.MAX_VALUE : sum;
+  }
+}
@@ -20,7 +20,9 @@ import static com.google.common.base.Preconditions.checkArgument;
 
 import com.google.common.annotations.Beta;
 import com.google.common.annotations.GwtCompatible;
+import com.google.common.annotations.GwtIncompatible;
 import com.google.common.base.Objects;
+import com.google.common.collect.ImmutableList;
 
 import java.util.concurrent.Callable;
 
@@ -242,6 +244,24 @@ public final class CacheStats {
         evictionCount + other.evictionCount);
   }
 
+  /**
+   * Returns a snapshot of the statistics recorded by each segment of {@code cache}, in segment
+   * order. Hit, miss or eviction counts which are much higher in some segments than in others
+   * point to hot segments, and so to a {@linkplain CacheBuilder#concurrencyLevel concurrency
+   * level} which is too low. Operations which span segments, such as {@link LoadingCache#getAll},
+   * are not included, so the sum of these statistics may be less than {@link Cache#stats}.
+   *
+   * @throws IllegalArgumentException if {@code cache} was not built by {@link CacheBuilder}
+   * @since 15.0
+   */
+  @Beta
+  @GwtIncompatible("To be supported")
+  public static ImmutableList<CacheStats> segmentStats(Cache<?, ?> cache) {
+    checkArgument(cache instanceof LocalCache.LocalManualCache,
+        "%s was not built by CacheBuilder", cache);
+    return ((LocalCache.LocalManualCache<?, ?>) cache).localCache.segmentStats();
+  }
+
   @Override
   public int hashCode() {
     return Objects.hashCode(hitCount, missCount, loadSuccessCount, loadExceptionCount,
@@ -0,0 +1,50 @@
+/*
+ * Copyright (C) 2013 The Guava Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.common.cache;
+
+import com.google.common.annotations.Beta;
+
+/**
+ * How a cache built by {@link CacheBuilder} divides its hash table among write locks, and how it
+ * applies its {@linkplain CacheBuilder#maximumSize maximum size} or {@linkplain
+ * CacheBuilder#maximumWeight maximum weight} to the resulting partitions.
+ *
+ * @since 15.0
+ */
+@Beta
+public enum ConcurrencyMode {
+  /**
+   * The table is divided into about {@linkplain CacheBuilder#concurrencyLevel concurrency level}
+   * segments, each with its own lock and an equal share of the maximum weight. This is the
+   * default. Since a segment evicts as soon as its own share is exceeded, the number of segments
+   * is reduced for small maximum sizes, limiting write concurrency.
+   */
+  SEGMENTED,
+
+  /**
+   * The table is divided into many more, smaller lock stripes: at least four per available
+   * processor, and at least the concurrency level, however small the maximum size. The maximum
+   * weight applies to the cache as a whole. A write which takes the cache over its maximum weight
+   * evicts the least-recently-used entries of its own stripe, and if that stripe is empty, of
+   * whichever other stripes are not locked at the time.
+   *
+   * <p>This allows writes to proceed in parallel on every processor, at the cost of one atomic
+   * update of the total weight per write, and of eviction which is least-recently-used within a
+   * stripe rather than across the whole cache.
+   */
+  FINE_GRAINED
+}
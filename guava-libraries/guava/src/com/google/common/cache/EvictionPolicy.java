@@ -0,0 +1,43 @@
+/*
+ * Copyright (C) 2013 The Guava Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.common.cache;
+
+import com.google.common.annotations.Beta;
+
+/**
+ * The policy used to choose which entry to evict when a cache built with
+ * {@link CacheBuilder#maximumSize} or {@link CacheBuilder#maximumWeight} exceeds its bound.
+ *
+ * @since 15.0
+ */
+@Beta
+public enum EvictionPolicy {
+  /**
+   * The least-recently-used entry is evicted. This is the default policy, and works well for
+   * workloads whose working set changes gradually.
+   */
+  LRU,
+
+  /**
+   * The least-recently-used entry is only evicted if the entry being added or updated has been
+   * requested more frequently than it. Otherwise the new entry is the one evicted. Access
+   * frequencies are estimated with a compact, periodically aged count-min sketch, so this policy
+   * keeps popular entries resident when a large scan of rarely-used keys passes through the
+   * cache.
+   */
+  TINY_LFU
+}
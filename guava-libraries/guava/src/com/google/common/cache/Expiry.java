@@ -0,0 +1,62 @@
+/*
+ * Copyright (C) 2013 The Guava Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.common.cache;
+
+import com.google.common.annotations.Beta;
+import com.google.common.annotations.GwtIncompatible;
+
+/**
+ * Calculates when cache entries expire. A cache built with {@link CacheBuilder#expireAfter}
+ * consults its expiry each time an entry is created or its value is replaced, so that each entry
+ * may be given a different lifetime.
+ *
+ * <p>Durations are measured in nanoseconds by the cache's {@linkplain CacheBuilder#ticker ticker}.
+ * A duration of zero or less causes the entry to expire immediately. Very long durations are
+ * truncated to roughly 146 years, so {@link Long#MAX_VALUE} may be used to indicate that an entry
+ * should not expire.
+ *
+ * <p>Implementations must be thread-safe, and are called while the cache holds a lock, so they
+ * should be quick to compute.
+ *
+ * @since 15.0
+ */
+@Beta
+@GwtIncompatible("To be supported")
+public interface Expiry<K, V> {
+
+  /**
+   * Returns the length of time, in nanoseconds, after which a newly created entry should expire.
+   * This is called when an entry is loaded or first put into the cache.
+   *
+   * @param key the key of the new entry
+   * @param value the value of the new entry
+   */
+  long expireAfterCreate(K key, V value);
+
+  /**
+   * Returns the length of time, in nanoseconds, after which an entry whose value has been
+   * replaced should expire. This is called when an entry is refreshed, or its value is replaced
+   * by a put or replace. To keep the entry's current expiration time, return
+   * {@code currentDuration}.
+   *
+   * @param key the key of the entry
+   * @param value the entry's new value
+   * @param currentDuration the time, in nanoseconds, that the entry had left before it would
+   *     have expired
+   */
+  long expireAfterUpdate(K key, V value, long currentDuration);
+}
@@ -0,0 +1,174 @@
+/*
+ * Copyright (C) 2013 The Guava Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/*
+ * Source:
+ * https://github.com/ben-manes/caffeine (the FrequencySketch class)
+ * Written by Ben Manes, and distributed under the Apache License, Version 2.0.
+ * (Modified to adapt to Guava coding conventions and to be guarded by the segment lock)
+ *
+ * The TinyLFU policy that this sketch supports is described in "TinyLFU: A Highly Efficient Cache
+ * Admission Policy" by Gil Einziger, Roy Friedman and Ben Manes.
+ */
+
+package com.google.common.cache;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import com.google.common.annotations.VisibleForTesting;
+
+/**
+ * A probabilistic multiset for estimating the popularity of an element within a time window. The
+ * maximum frequency of an element is limited to 15 (4-bits) and an aging process periodically
+ * halves the popularity of all elements.
+ *
+ * <p>This is a count-min sketch of depth four whose 4-bit counters are packed sixteen to a
+ * {@code long} in a single table. Each of an element's four counters is located using a different
+ * seed. Its frequency is estimated as the minimum of those counters, which may overstate but never
+ * understates the true count.
+ *
+ * <p>Once the number of increments reaches ten times the width of the sketch, all counters are
+ * halved. This keeps the estimates fresh so that formerly popular elements eventually lose their
+ * advantage over new arrivals.
+ *
+ * <p>This class is not thread-safe; instances are guarded by the lock of the owning segment.
+ */
+final class FrequencySketch {
+
+  /** Per-row multipliers; any odd constants with well mixed bits would serve. */
+  static final long[] SEED = {
+      0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L};
+
+  /** Clears the high bit of every 4-bit counter, after they have been shifted right by one. */
+  static final long RESET_MASK = 0x7777777777777777L;
+
+  /** Selects the low bit of every 4-bit counter. */
+  static final long ONE_MASK = 0x1111111111111111L;
+
+  /** The largest table that will be allocated; each slot holds sixteen counters. */
+  static final int MAXIMUM_TABLE_LENGTH = 1 << 24;
+
+  int sampleSize;
+  int tableMask;
+  long[] table;
+  int size;
+
+  /**
+   * Creates a frequency sketch wide enough to track roughly {@code expectedSize} distinct elements.
+   */
+  FrequencySketch(long expectedSize) {
+    checkArgument(expectedSize >= 0);
+    int maximum = (int) Math.min(expectedSize, MAXIMUM_TABLE_LENGTH);
+    int length = 1;
+    while (length < maximum) {
+      length <<= 1;
+    }
+    table = new long[length];
+    tableMask = length - 1;
+    sampleSize = 10 * length;
+  }
+
+  /**
+   * Returns the estimated number of occurrences of an element with the given hash, up to the
+   * maximum (15).
+   */
+  int frequency(int hash) {
+    hash = spread(hash);
+    int start = (hash & 3) << 2;
+    int frequency = Integer.MAX_VALUE;
+    for (int i = 0; i < 4; i++) {
+      int index = indexOf(hash, i);
+      int count = (int) ((table[index] >>> ((start + i) << 2)) & 0xfL);
+      frequency = Math.min(frequency, count);
+    }
+    return frequency;
+  }
+
+  /**
+   * Increments the popularity of the element with the given hash if it does not exceed the
+   * maximum (15). The popularity of all elements will be periodically down sampled when the
+   * observed events exceeds a threshold.
+   */
+  void increment(int hash) {
+    hash = spread(hash);
+    int start = (hash & 3) << 2;
+
+    int index0 = indexOf(hash, 0);
+    int index1 = indexOf(hash, 1);
+    int index2 = indexOf(hash, 2);
+    int index3 = indexOf(hash, 3);
+
+    boolean added = incrementAt(index0, start);
+    added |= incrementAt(index1, start + 1);
+    added |= incrementAt(index2, start + 2);
+    added |= incrementAt(index3, start + 3);
+
+    if (added && (++size == sampleSize)) {
+      reset();
+    }
+  }
+
+  /**
+   * Increments the specified counter by 1 if it is not already at the maximum value (15).
+   *
+   * @param i the table index (16 counters)
+   * @param j the counter to increment
+   * @return if incremented
+   */
+  boolean incrementAt(int i, int j) {
+    int offset = j << 2;
+    long mask = (0xfL << offset);
+    if ((table[i] & mask) != mask) {
+      table[i] += (1L << offset);
+      return true;
+    }
+    return false;
+  }
+
+  /** Reduces every counter by half of its original value. */
+  @VisibleForTesting
+  void reset() {
+    int count = 0;
+    for (int i = 0; i < table.length; i++) {
+      count += Long.bitCount(table[i] & ONE_MASK);
+      table[i] = (table[i] >>> 1) & RESET_MASK;
+    }
+    size = (size >>> 1) - (count >>> 2);
+  }
+
+  /**
+   * Returns the table index for the counter at the specified depth.
+   *
+   * @param hash the element's spread hash
+   * @param i the counter depth
+   * @return the table index
+   */
+  int indexOf(int hash, int i) {
+    long h = SEED[i] * hash;
+    h += h >>> 32;
+    return ((int) h) & tableMask;
+  }
+
+  /**
+   * Applies a supplemental hash function to a given hash, which defends against poor quality
+   * hash functions.
+   */
+  static int spread(int x) {
+    x = ((x >>> 16) ^ x) * 0x45d9f3b;
+    x = ((x >>> 16) ^ x) * 0x45d9f3b;
+    return (x >>> 16) ^ x;
+  }
+}
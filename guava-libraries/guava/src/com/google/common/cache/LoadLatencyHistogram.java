@@ -0,0 +1,157 @@
+/*
+ * Copyright (C) 2013 The Guava Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.common.cache;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import com.google.common.annotations.Beta;
+import com.google.common.annotations.GwtCompatible;
+
+/**
+ * A thread-safe histogram of load times, in nanoseconds, from which percentiles of the cost of a
+ * cache miss may be estimated. Recording a value never blocks: each bucket is a striped counter,
+ * so concurrent loads contend no more than they would on the counters of {@link CacheStats}.
+ *
+ * <p>Buckets are log-linear. Values below {@value #SUB_BUCKET_COUNT} nanoseconds are counted
+ * exactly, and each larger power-of-two range is split into {@value #SUB_BUCKET_COUNT} buckets of
+ * equal width, so a reported percentile is never more than 12.5% above the true value. The whole
+ * range of {@code long} is covered by a fixed {@value #BUCKET_COUNT} buckets.
+ *
+ * @see AbstractCache.HistogramStatsCounter
+ * @since 15.0
+ */
+@Beta
+@GwtCompatible
+public final class LoadLatencyHistogram {
+  static final int SUB_BUCKET_BITS = 3;
+  static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+  static final int SUB_BUCKET_MASK = SUB_BUCKET_COUNT - 1;
+
+  /** One linear group of exact values, then one group for each power of two up to 2^62. */
+  static final int BUCKET_COUNT = (Long.SIZE - SUB_BUCKET_BITS) * SUB_BUCKET_COUNT;
+
+  private final LongAddable[] buckets;
+
+  /**
+   * Constructs an empty histogram.
+   */
+  public LoadLatencyHistogram() {
+    buckets = new LongAddable[BUCKET_COUNT];
+    for (int i = 0; i < BUCKET_COUNT; i++) {
+      buckets[i] = LongAddables.create();
+    }
+  }
+
+  /**
+   * Records a single load which took {@code nanos} nanoseconds. Negative values, which may be
+   * reported by a misbehaving {@link com.google.common.base.Ticker}, are recorded as zero.
+   */
+  public void record(long nanos) {
+    buckets[bucketIndex(nanos)].increment();
+  }
+
+  /**
+   * Returns the number of values recorded.
+   */
+  public long count() {
+    long count = 0;
+    for (LongAddable bucket : buckets) {
+      count += bucket.sum();
+    }
+    return count;
+  }
+
+  /**
+   * Returns an upper bound of the given percentile of the recorded values, in nanoseconds, or
+   * zero if no values have been recorded. For example, {@code percentile(99.0)} is a load time
+   * which at least 99% of loads did not exceed.
+   *
+   * <p>Values recorded while this method runs may or may not be taken into account.
+   *
+   * @param percentile a percentile between 0.0 and 100.0, inclusive
+   * @throws IllegalArgumentException if {@code percentile} is out of range
+   */
+  public long percentile(double percentile) {
+    checkArgument(percentile >= 0.0 && percentile <= 100.0,
+        "percentile must be between 0.0 and 100.0: %s", percentile);
+    long[] counts = new long[BUCKET_COUNT];
+    long total = 0;
+    for (int i = 0; i < BUCKET_COUNT; i++) {
+      counts[i] = buckets[i].sum();
+      total += counts[i];
+    }
+    if (total == 0) {
+      return 0;
+    }
+
+    long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * total));
+    long seen = 0;
+    for (int i = 0; i < BUCKET_COUNT; i++) {
+      seen += counts[i];
+      if (seen >= rank) {
+        return highestValueInBucket(i);
+      }
+    }
+    throw new AssertionError(); // the last non-empty bucket reaches total
+  }
+
+  /**
+   * Adds every value recorded by {@code other} to this histogram, so that the histograms of the
+   * segments of a cache may be combined.
+   */
+  public void incrementBy(LoadLatencyHistogram other) {
+    for (int i = 0; i < BUCKET_COUNT; i++) {
+      long count = other.buckets[i].sum();
+      if (count != 0) {
+        buckets[i].add(count);
+      }
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "LoadLatencyHistogram{count=" + count()
+        + ", p50=" + percentile(50.0)
+        + ", p99=" + percentile(99.0)
+        + ", max=" + percentile(100.0) + "}";
+  }
+
+  static int bucketIndex(long value) {
+    if (value < SUB_BUCKET_COUNT) {
+      return (value < 0) ? 0 : (int) value;
+    }
+    int exponent = (Long.SIZE - 1) - Long.numberOfLeadingZeros(value);
+    int group = exponent - SUB_BUCKET_BITS + 1;
+    int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & SUB_BUCKET_MASK;
+    return (group << SUB_BUCKET_BITS) + subBucket;
+  }
+
+  static long lowestValueInBucket(int index) {
+    int group = index >>> SUB_BUCKET_BITS;
+    if (group == 0) {
+      return index;
+    }
+    long subBucket = index & SUB_BUCKET_MASK;
+    return (SUB_BUCKET_COUNT + subBucket) << (group - 1);
+  }
+
+  static long highestValueInBucket(int index) {
+    return (index == BUCKET_COUNT - 1)
+        ? Long.MAX_VALUE
+        : lowestValueInBucket(index + 1) - 1;
+  }
+}
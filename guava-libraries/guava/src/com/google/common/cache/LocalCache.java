@@ -37,8 +37,10 @@ import com.google.common.cache.CacheBuilder.OneWeigher;
 import com.google.common.cache.CacheLoader.InvalidCacheLoadException;
 import com.google.common.cache.CacheLoader.UnsupportedLoadingOperationException;
 import com.google.common.collect.AbstractSequentialIterator;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Iterators;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 import com.google.common.primitives.Ints;
@@ -61,8 +63,12 @@ import java.lang.ref.WeakReference;
 import java.util.AbstractMap;
 import java.util.AbstractQueue;
 import java.util.AbstractSet;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Queue;
@@ -71,8 +77,12 @@ import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReferenceArray;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.logging.Level;
@@ -132,6 +142,9 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
   /** The maximum number of segments to allow; used to bound constructor arguments. */
   static final int MAX_SEGMENTS = 1 << 16; // slightly conservative
 
+  /** The minimum number of segments per available processor of a fine-grained map. */
+  static final int FINE_GRAINED_SEGMENTS_PER_PROCESSOR = 4;
+
   /** Number of (unsynchronized) retries in the containsValue method. */
   static final int CONTAINS_VALUE_RETRIES = 3;
 
@@ -151,6 +164,25 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
   // TODO(fry): empirically optimize this
   static final int DRAIN_MAX = 16;
 
+  /**
+   * The longest lifetime an {@link Expiry} may give an entry (roughly 146 years), so that
+   * expiration times can be compared without overflow.
+   */
+  static final long MAXIMUM_EXPIRATION_NANOS = Long.MAX_VALUE >> 1;
+
+  /**
+   * The largest number of distinct entries a segment's {@link FrequencySketch} is sized for. The
+   * sketch takes eight bytes per entry, and a custom weigher may give a segment a maximum weight far
+   * larger than the number of entries it will ever hold.
+   */
+  static final int MAXIMUM_SKETCH_SIZE = 1 << 16;
+
+  /**
+   * The smallest number of distinct entries a segment's {@link FrequencySketch} is sized for, so
+   * that the segments of a small cache split across many segments can still tell entries apart.
+   */
+  static final int MINIMUM_SKETCH_SIZE = 64;
+
   // Fields
 
   static final Logger logger = Logger.getLogger(LocalCache.class.getName());
@@ -175,6 +207,19 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
   /** The concurrency level. */
   final int concurrencyLevel;
 
+  /** How the table is divided among locks, and how the maximum weight applies to the parts. */
+  final ConcurrencyMode concurrencyMode;
+
+  /**
+   * The total weight of the entries in all segments, or null unless the map {@linkplain
+   * #evictsGlobally evicts globally}.
+   */
+  @Nullable
+  final AtomicLong globalWeight;
+
+  /** The segment at which eviction from other segments starts, rotated on each use. */
+  final AtomicInteger evictionCursor = new AtomicInteger();
+
   /** Strategy for comparing keys. */
   final Equivalence<Object> keyEquivalence;
 
@@ -193,15 +238,28 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
   /** Weigher to weigh cache entries. */
   final Weigher<K, V> weigher;
 
+  /** Policy used to select entries for size-based eviction. */
+  final EvictionPolicy evictionPolicy;
+
+  /** How reads are recorded until they are applied to the access order. */
+  final ReadBufferMode readBufferMode;
+
   /** How long after the last access to an entry the map will retain that entry. */
   final long expireAfterAccessNanos;
 
   /** How long after the last write to an entry the map will retain that entry. */
   final long expireAfterWriteNanos;
 
+  /** Calculates a lifetime for each entry, or null if entries don't expire variably. */
+  @Nullable
+  final Expiry<K, V> expiry;
+
   /** How long after the last write an entry becomes a candidate for refresh. */
   final long refreshNanos;
 
+  /** Executor on which entries are reloaded; {@link #sameThreadExecutor} to reload inline. */
+  final Executor refreshExecutor;
+
   /** Entries waiting to be consumed by the removal listener. */
   // TODO(fry): define a new type which creates event objects and automates the clear logic
   final Queue<RemovalNotification<K, V>> removalNotificationQueue;
@@ -230,12 +288,17 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
   @Nullable
   final CacheLoader<? super K, V> defaultLoader;
 
+  /** Stores values off the heap, or null unless the map {@linkplain #storesValuesOffHeap does}. */
+  @Nullable
+  final SlabAllocator slabAllocator;
+
   /**
    * Creates a new, empty map with the specified strategy, initial capacity and concurrency level.
    */
   LocalCache(
       CacheBuilder<? super K, ? super V> builder, @Nullable CacheLoader<? super K, V> loader) {
     concurrencyLevel = Math.min(builder.getConcurrencyLevel(), MAX_SEGMENTS);
+    concurrencyMode = builder.getConcurrencyMode();
 
     keyStrength = builder.getKeyStrength();
     valueStrength = builder.getValueStrength();
@@ -245,9 +308,13 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
 
     maxWeight = builder.getMaximumWeight();
     weigher = builder.getWeigher();
+    evictionPolicy = builder.getEvictionPolicy();
+    readBufferMode = builder.getReadBufferMode();
     expireAfterAccessNanos = builder.getExpireAfterAccessNanos();
     expireAfterWriteNanos = builder.getExpireAfterWriteNanos();
+    expiry = builder.getExpiry();
     refreshNanos = builder.getRefreshNanos();
+    refreshExecutor = builder.getRefreshExecutor();
 
     removalListener = builder.getRemovalListener();
     removalNotificationQueue = (removalListener == NullListener.INSTANCE)
@@ -258,6 +325,8 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
     entryFactory = EntryFactory.getFactory(keyStrength, usesAccessEntries(), usesWriteEntries());
     globalStatsCounter = builder.getStatsCounterSupplier().get();
     defaultLoader = loader;
+    slabAllocator = storesValuesOffHeap() ? new SlabAllocator() : null;
+    globalWeight = evictsGlobally() ? new AtomicLong() : null;
 
     int initialCapacity = Math.min(builder.getInitialCapacity(), MAXIMUM_CAPACITY);
     if (evictsBySize() && !customWeigher()) {
@@ -268,13 +337,23 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
     // maximumSize/Weight is specified in which case ensure that each segment gets at least 10
     // entries. The special casing for size-based eviction is only necessary because that eviction
     // happens per segment instead of globally, so too many segments compared to the maximum size
-    // will result in random eviction behavior.
+    // will result in random eviction behavior. Fine-grained maps evict globally, and use at least
+    // a few segments per processor.
     int segmentShift = 0;
     int segmentCount = 1;
-    while (segmentCount < concurrencyLevel
-           && (!evictsBySize() || segmentCount * 20 <= maxWeight)) {
-      ++segmentShift;
-      segmentCount <<= 1;
+    if (concurrencyMode == ConcurrencyMode.FINE_GRAINED) {
+      int stripes = Math.max(concurrencyLevel,
+          FINE_GRAINED_SEGMENTS_PER_PROCESSOR * Runtime.getRuntime().availableProcessors());
+      while (segmentCount < Math.min(stripes, MAX_SEGMENTS)) {
+        ++segmentShift;
+        segmentCount <<= 1;
+      }
+    } else {
+      while (segmentCount < concurrencyLevel
+             && (!evictsBySize() || segmentCount * 20 <= maxWeight)) {
+        ++segmentShift;
+        segmentCount <<= 1;
+      }
     }
     this.segmentShift = 32 - segmentShift;
     segmentMask = segmentCount - 1;
@@ -291,7 +370,13 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
       segmentSize <<= 1;
     }
 
-    if (evictsBySize()) {
+    if (evictsGlobally()) {
+      // Each segment may grow to the overall max weight, which is enforced across segments
+      for (int i = 0; i < this.segments.length; ++i) {
+        this.segments[i] =
+            createSegment(segmentSize, maxWeight, builder.getStatsCounterSupplier().get());
+      }
+    } else if (evictsBySize()) {
       // Ensure sum of segment max weights = overall max weights
       long maxSegmentWeight = maxWeight / segmentCount + 1;
       long remainder = maxWeight % segmentCount;
@@ -314,12 +399,20 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
     return maxWeight >= 0;
   }
 
+  boolean evictsGlobally() {
+    return evictsBySize() && concurrencyMode == ConcurrencyMode.FINE_GRAINED;
+  }
+
   boolean customWeigher() {
     return weigher != OneWeigher.INSTANCE;
   }
 
+  boolean evictsByFrequency() {
+    return evictsBySize() && evictionPolicy == EvictionPolicy.TINY_LFU;
+  }
+
   boolean expires() {
-    return expiresAfterWrite() || expiresAfterAccess();
+    return expiresAfterWrite() || expiresAfterAccess() || expiresVariably();
   }
 
   boolean expiresAfterWrite() {
@@ -330,10 +423,18 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
     return expireAfterAccessNanos > 0;
   }
 
+  boolean expiresVariably() {
+    return expiry != null;
+  }
+
   boolean refreshes() {
     return refreshNanos > 0;
   }
 
+  boolean refreshesAsynchronously() {
+    return refreshExecutor != sameThreadExecutor;
+  }
+
   boolean usesAccessQueue() {
     return expiresAfterAccess() || evictsBySize();
   }
@@ -351,15 +452,20 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
   }
 
   boolean recordsTime() {
-    return recordsWrite() || recordsAccess();
+    return recordsWrite() || recordsAccess() || expiresVariably();
   }
 
+  /*
+   * Variable expiration stores each entry's expiration time in its access time, and links it into
+   * a timer wheel using its write queue pointers.
+   */
+
   boolean usesWriteEntries() {
-    return usesWriteQueue() || recordsWrite();
+    return usesWriteQueue() || recordsWrite() || expiresVariably();
   }
 
   boolean usesAccessEntries() {
-    return usesAccessQueue() || recordsAccess();
+    return usesAccessQueue() || recordsAccess() || expiresVariably();
   }
 
   boolean usesKeyReferences() {
@@ -367,7 +473,11 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
   }
 
   boolean usesValueReferences() {
-    return valueStrength != Strength.STRONG;
+    return valueStrength == Strength.WEAK || valueStrength == Strength.SOFT;
+  }
+
+  boolean storesValuesOffHeap() {
+    return valueStrength == Strength.OFF_HEAP;
   }
 
   enum Strength {
@@ -421,6 +531,20 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
       Equivalence<Object> defaultEquivalence() {
         return Equivalence.identity();
       }
+    },
+
+    /** Values are byte arrays copied outside of the heap; used only for values. */
+    OFF_HEAP {
+      @Override
+      <K, V> ValueReference<K, V> referenceValue(
+          Segment<K, V> segment, ReferenceEntry<K, V> entry, V value, int weight) {
+        return new OffHeapValueReference<K, V>(segment.map.slabAllocator, (byte[]) value);
+      }
+
+      @Override
+      Equivalence<Object> defaultEquivalence() {
+        return ByteArrayEquivalence.INSTANCE;
+      }
     };
 
     /**
@@ -1847,6 +1971,142 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
     }
   }
 
+  /**
+   * References a byte array value stored off the heap by a {@link SlabAllocator}. The value's
+   * memory is freed once the reference has been {@linkplain #release released} from the map and
+   * no thread is still copying the value out.
+   */
+  static final class OffHeapValueReference<K, V> implements ValueReference<K, V> {
+    @SuppressWarnings("rawtypes") // the class literal of a generic class is raw
+    static final AtomicIntegerFieldUpdater<OffHeapValueReference> PINS_UPDATER =
+        AtomicIntegerFieldUpdater.newUpdater(OffHeapValueReference.class, "pins");
+
+    final SlabAllocator allocator;
+    final long address;
+    final int length;
+
+    /**
+     * The number of threads copying the value out, with the sign bit set once the reference has
+     * been released.
+     */
+    volatile int pins;
+
+    OffHeapValueReference(SlabAllocator allocator, byte[] value) {
+      this.allocator = allocator;
+      this.address = allocator.allocate(value);
+      this.length = value.length;
+    }
+
+    /**
+     * Returns a copy of the value, or {@code null} if the reference has been released, in which
+     * case it was concurrently removed from the map.
+     */
+    @SuppressWarnings("unchecked") // values stored off the heap are always byte arrays
+    @Override
+    public V get() {
+      for (;;) {
+        int current = pins;
+        if (current < 0) {
+          return null;
+        } else if (PINS_UPDATER.compareAndSet(this, current, current + 1)) {
+          break;
+        }
+      }
+      try {
+        return (V) allocator.read(address, length);
+      } finally {
+        if (PINS_UPDATER.decrementAndGet(this) == Integer.MIN_VALUE) {
+          allocator.free(address, length);
+        }
+      }
+    }
+
+    /**
+     * Returns whether the reference has been released, without copying the value out. A reference
+     * which has not been released still has its value.
+     */
+    boolean isReleased() {
+      return pins < 0;
+    }
+
+    /**
+     * Marks this reference as no longer in the map, freeing its memory unless a thread is still
+     * copying the value. Has no effect if the reference was already released.
+     */
+    void release() {
+      for (;;) {
+        int current = pins;
+        if (current < 0) {
+          return;
+        } else if (PINS_UPDATER.compareAndSet(this, current, current | Integer.MIN_VALUE)) {
+          if (current == 0) {
+            allocator.free(address, length);
+          }
+          return;
+        }
+      }
+    }
+
+    @Override
+    public int getWeight() {
+      return length;
+    }
+
+    @Override
+    public ReferenceEntry<K, V> getEntry() {
+      return null;
+    }
+
+    @Override
+    public ValueReference<K, V> copyFor(
+        ReferenceQueue<V> queue, V value, ReferenceEntry<K, V> entry) {
+      return this;
+    }
+
+    @Override
+    public boolean isLoading() {
+      return false;
+    }
+
+    @Override
+    public boolean isActive() {
+      return true;
+    }
+
+    @Override
+    public V waitForValue() {
+      return get();
+    }
+
+    @Override
+    public void notifyNewValue(V newValue) {}
+  }
+
+  /**
+   * Compares byte arrays stored off the heap by their contents, since each read returns a copy.
+   */
+  static final class ByteArrayEquivalence extends Equivalence<Object> implements Serializable {
+    static final ByteArrayEquivalence INSTANCE = new ByteArrayEquivalence();
+
+    @Override
+    protected boolean doEquivalent(Object a, Object b) {
+      return (a instanceof byte[]) && (b instanceof byte[])
+          ? Arrays.equals((byte[]) a, (byte[]) b)
+          : a.equals(b);
+    }
+
+    @Override
+    protected int doHash(Object o) {
+      return (o instanceof byte[]) ? Arrays.hashCode((byte[]) o) : o.hashCode();
+    }
+
+    private Object readResolve() {
+      return INSTANCE;
+    }
+
+    private static final long serialVersionUID = 1;
+  }
+
   /**
    * Applies a supplemental hash function to a given hash code, which defends against poor quality
    * hash functions. This is critical when the concurrent hash map uses power-of-two length hash
@@ -1937,6 +2197,16 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
     return new Segment<K, V>(this, initialCapacity, maxSegmentWeight, statsCounter);
   }
 
+  /**
+   * Returns whether {@code valueReference} currently has a value. Unlike checking {@link
+   * ValueReference#get} for null, this does not copy out a value stored off the heap.
+   */
+  static boolean hasValue(ValueReference<?, ?> valueReference) {
+    return (valueReference instanceof OffHeapValueReference)
+        ? !((OffHeapValueReference<?, ?>) valueReference).isReleased()
+        : valueReference.get() != null;
+  }
+
   /**
    * Gets the value from an entry. Returns null if the entry is invalid, partially-collected,
    * loading, or expired. Unlike {@link Segment#getLiveValue} this method does not attempt to
@@ -1974,6 +2244,9 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
         && (now - entry.getWriteTime() >= expireAfterWriteNanos)) {
       return true;
     }
+    if (expiresVariably() && (now - entry.getAccessTime() >= 0)) {
+      return true;
+    }
     return false;
   }
 
@@ -2120,7 +2393,8 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
     /**
      * The recency queue is used to record which entries were accessed for updating the access
      * list's ordering. It is drained as a batch operation when either the DRAIN_THRESHOLD is
-     * crossed or a write occurs on the segment.
+     * crossed or a write occurs on the segment. With {@link ReadBufferMode#STRIPED} this is a lossy
+     * {@link ReadBuffer}, so reads may be dropped rather than recorded under heavy contention.
      */
     final Queue<ReferenceEntry<K, V>> recencyQueue;
 
@@ -2132,7 +2406,8 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
 
     /**
      * A queue of elements currently in the map, ordered by write time. Elements are added to the
-     * tail of the queue on write.
+     * tail of the queue on write. If the map expires entries variably this is a {@link TimerWheel},
+     * ordered by expiration time.
      */
     @GuardedBy("Segment.this")
     final Queue<ReferenceEntry<K, V>> writeQueue;
@@ -2144,6 +2419,14 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
     @GuardedBy("Segment.this")
     final Queue<ReferenceEntry<K, V>> accessQueue;
 
+    /**
+     * Estimates how often each entry has recently been read or written, used to decide whether a
+     * new entry should be admitted at the expense of the eviction victim. Null unless the map
+     * evicts by frequency.
+     */
+    @GuardedBy("Segment.this")
+    final FrequencySketch frequencySketch;
+
     /** Accumulates cache statistics. */
     final StatsCounter statsCounter;
 
@@ -2160,17 +2443,32 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
       valueReferenceQueue = map.usesValueReferences()
            ? new ReferenceQueue<V>() : null;
 
-      recencyQueue = map.usesAccessQueue()
-          ? new ConcurrentLinkedQueue<ReferenceEntry<K, V>>()
-          : LocalCache.<ReferenceEntry<K, V>>discardingQueue();
+      if (!map.usesAccessQueue()) {
+        recencyQueue = LocalCache.<ReferenceEntry<K, V>>discardingQueue();
+      } else if (map.readBufferMode == ReadBufferMode.STRIPED) {
+        recencyQueue = new ReadBuffer<ReferenceEntry<K, V>>();
+      } else {
+        recencyQueue = new ConcurrentLinkedQueue<ReferenceEntry<K, V>>();
+      }
 
-      writeQueue = map.usesWriteQueue()
-          ? new WriteQueue<K, V>()
-          : LocalCache.<ReferenceEntry<K, V>>discardingQueue();
+      if (map.expiresVariably()) {
+        writeQueue = new TimerWheel<K, V>(map.ticker.read());
+      } else {
+        writeQueue = map.usesWriteQueue()
+            ? new WriteQueue<K, V>()
+            : LocalCache.<ReferenceEntry<K, V>>discardingQueue();
+      }
 
       accessQueue = map.usesAccessQueue()
           ? new AccessQueue<K, V>()
           : LocalCache.<ReferenceEntry<K, V>>discardingQueue();
+
+      frequencySketch = map.evictsByFrequency()
+          // sized once for this segment's share of the cache, so that no history is lost as the
+          // table grows; when evicting globally, maxSegmentWeight is the weight of the whole cache
+          ? new FrequencySketch(Math.max(MINIMUM_SKETCH_SIZE,
+              Math.min(map.maxWeight / map.segments.length, MAXIMUM_SKETCH_SIZE)))
+          : null;
     }
 
     AtomicReferenceArray<ReferenceEntry<K, V>> newEntryArray(int size) {
@@ -2203,10 +2501,19 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
       }
 
       ValueReference<K, V> valueReference = original.getValueReference();
-      V value = valueReference.get();
-      if ((value == null) && valueReference.isActive()) {
-        // value collected
-        return null;
+      V value;
+      if (valueReference instanceof OffHeapValueReference) {
+        // the copy shares the off-heap value, so there is no need to copy it out
+        if (!hasValue(valueReference)) {
+          return null;
+        }
+        value = null;
+      } else {
+        value = valueReference.get();
+        if ((value == null) && valueReference.isActive()) {
+          // value collected
+          return null;
+        }
       }
 
       ReferenceEntry<K, V> newEntry = map.entryFactory.copyEntry(this, original, newNext);
@@ -2226,10 +2533,31 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
       ValueReference<K, V> valueReference =
           map.valueStrength.referenceValue(this, entry, value, weight);
       entry.setValueReference(valueReference);
+      if (map.expiresVariably()) {
+        setExpirationTime(entry, key, value, previous.isActive(), now);
+      }
       recordWrite(entry, weight, now);
       previous.notifyNewValue(value);
     }
 
+    /**
+     * Sets the time at which {@code entry} expires, as calculated by the map's {@link Expiry}.
+     * This must be called before {@link #recordWrite}, which schedules the entry's expiration.
+     */
+    @GuardedBy("Segment.this")
+    void setExpirationTime(
+        ReferenceEntry<K, V> entry, K key, V value, boolean replaced, long now) {
+      long duration;
+      if (replaced) {
+        long currentDuration = Math.max(0, entry.getAccessTime() - now);
+        duration = map.expiry.expireAfterUpdate(key, value, currentDuration);
+      } else {
+        duration = map.expiry.expireAfterCreate(key, value);
+      }
+      duration = Math.min(Math.max(0, duration), MAXIMUM_EXPIRATION_NANOS);
+      entry.setAccessTime(now + duration);
+    }
+
     // loading
 
     V get(K key, int hash, CacheLoader<? super K, V> loader) throws ExecutionException {
@@ -2421,99 +2749,323 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
       }
     }
 
-    V scheduleRefresh(ReferenceEntry<K, V> entry, K key, int hash, V oldValue, long now,
-        CacheLoader<? super K, V> loader) {
-      if (map.refreshes() && (now - entry.getWriteTime() > map.refreshNanos)
-          && !entry.getValueReference().isLoading()) {
-        V newValue = refresh(key, hash, loader, true);
-        if (newValue != null) {
-          return newValue;
-        }
+    // asynchronous loading
+
+    /**
+     * Returns a future for the value associated with {@code key}, starting a load on {@code
+     * executor} if it is absent. A load which is already in progress is shared rather than
+     * repeated.
+     */
+    ListenableFuture<V> getAsync(K key, int hash, CacheLoader<? super K, V> loader,
+        Executor executor) {
+      checkNotNull(executor);
+      ListenableFuture<V> future = getPresentOrLoading(key, hash, loader, executor);
+      if (future != null) {
+        return future;
       }
-      return oldValue;
+
+      LoadingValueReference<K, V> loadingValueReference = new LoadingValueReference<K, V>();
+      future = lockedGetOrReserve(key, hash, loadingValueReference);
+      if (future != null) {
+        return future;
+      }
+      loadOnExecutor(key, hash, loadingValueReference, loader, executor);
+      return loadingFuture(key, loadingValueReference);
     }
 
     /**
-     * Refreshes the value associated with {@code key}, unless another thread is already doing so.
-     * Returns the newly refreshed value associated with {@code key} if it was refreshed inline, or
-     * {@code null} if another thread is performing the refresh or if an error occurs during
-     * refresh.
+     * Returns a future for the value associated with {@code key} if it is present or being
+     * loaded, or {@code null} if it is absent or expired. Does not acquire the segment lock. A
+     * present value that is due to be refreshed is returned as is, while the refresh runs on the
+     * map's refresh executor if it has one, or on {@code executor} otherwise.
      */
     @Nullable
-    V refresh(K key, int hash, CacheLoader<? super K, V> loader, boolean checkTime) {
-      final LoadingValueReference<K, V> loadingValueReference =
-          insertLoadingValueReference(key, hash, checkTime);
-      if (loadingValueReference == null) {
-        return null;
-      }
-
-      ListenableFuture<V> result = loadAsync(key, hash, loadingValueReference, loader);
-      if (result.isDone()) {
-        try {
-          return Uninterruptibles.getUninterruptibly(result);
-        } catch (Throwable t) {
-          // don't let refresh exceptions propagate; error was already logged
+    ListenableFuture<V> getPresentOrLoading(K key, int hash, CacheLoader<? super K, V> loader,
+        Executor executor) {
+      checkNotNull(key);
+      checkNotNull(loader);
+      checkNotNull(executor);
+      try {
+        if (count != 0) { // read-volatile
+          // don't call getLiveEntry, which would ignore loading values
+          ReferenceEntry<K, V> e = getEntry(key, hash);
+          if (e != null) {
+            long now = map.ticker.read();
+            V value = getLiveValue(e, now);
+            if (value != null) {
+              recordRead(e, now);
+              statsCounter.recordHits(1);
+              scheduleRefreshOnExecutor(e, key, hash, now, loader, executor);
+              return Futures.immediateFuture(value);
+            }
+            ValueReference<K, V> valueReference = e.getValueReference();
+            if (valueReference.isLoading()) {
+              statsCounter.recordMisses(1);
+              return loadingFuture(key, valueReference);
+            }
+          }
         }
+        return null;
+      } finally {
+        postReadCleanup();
       }
-      return null;
     }
 
     /**
-     * Returns a newly inserted {@code LoadingValueReference}, or null if the live value reference
-     * is already loading.
+     * Returns a future for the value associated with {@code key} if another thread has made it
+     * present or started to load it. Otherwise installs {@code loadingValueReference}, which the
+     * caller is then responsible for completing, and returns {@code null}.
      */
     @Nullable
-    LoadingValueReference<K, V> insertLoadingValueReference(final K key, final int hash,
-        boolean checkTime) {
-      ReferenceEntry<K, V> e = null;
+    ListenableFuture<V> lockedGetOrReserve(K key, int hash,
+        LoadingValueReference<K, V> loadingValueReference) {
       lock();
       try {
+        // re-read ticker once inside the lock
         long now = map.ticker.read();
         preWriteCleanup(now);
 
+        int newCount = this.count - 1;
         AtomicReferenceArray<ReferenceEntry<K, V>> table = this.table;
         int index = hash & (table.length() - 1);
         ReferenceEntry<K, V> first = table.get(index);
 
-        // Look for an existing entry.
+        ReferenceEntry<K, V> e;
         for (e = first; e != null; e = e.getNext()) {
           K entryKey = e.getKey();
           if (e.getHash() == hash && entryKey != null
               && map.keyEquivalence.equivalent(key, entryKey)) {
-            // We found an existing entry.
-
             ValueReference<K, V> valueReference = e.getValueReference();
-            if (valueReference.isLoading()
-                || (checkTime && (now - e.getWriteTime() < map.refreshNanos))) {
-              // refresh is a no-op if loading is pending
-              // if checkTime, we want to check *after* acquiring the lock if refresh still needs
-              // to be scheduled
-              return null;
+            if (valueReference.isLoading()) {
+              statsCounter.recordMisses(1);
+              return loadingFuture(key, valueReference);
+            }
+            V value = valueReference.get();
+            if (value == null) {
+              enqueueNotification(entryKey, hash, valueReference, RemovalCause.COLLECTED);
+            } else if (map.isExpired(e, now)) {
+              // This is a duplicate check, as preWriteCleanup already purged expired
+              // entries, but let's accomodate an incorrect expiration queue.
+              enqueueNotification(entryKey, hash, valueReference, RemovalCause.EXPIRED);
+            } else {
+              recordLockedRead(e, now);
+              statsCounter.recordHits(1);
+              // we were concurrent with loading; don't consider refresh
+              return Futures.immediateFuture(value);
             }
 
-            // continue returning old value while loading
-            ++modCount;
-            LoadingValueReference<K, V> loadingValueReference =
-                new LoadingValueReference<K, V>(valueReference);
-            e.setValueReference(loadingValueReference);
-            return loadingValueReference;
+            // immediately reuse invalid entries
+            writeQueue.remove(e);
+            accessQueue.remove(e);
+            this.count = newCount; // write-volatile
+            break;
           }
         }
 
-        ++modCount;
-        LoadingValueReference<K, V> loadingValueReference = new LoadingValueReference<K, V>();
-        e = newEntry(key, hash, first);
-        e.setValueReference(loadingValueReference);
-        table.set(index, e);
-        return loadingValueReference;
+        statsCounter.recordMisses(1);
+        if (e == null) {
+          e = newEntry(key, hash, first);
+          e.setValueReference(loadingValueReference);
+          table.set(index, e);
+        } else {
+          e.setValueReference(loadingValueReference);
+        }
+        return null;
       } finally {
         unlock();
         postWriteCleanup();
       }
     }
 
-    // reference queues, for garbage collection cleanup
-
+    /**
+     * Loads the value for a reserved {@code loadingValueReference} on {@code executor}. Failures
+     * are reported through the loading value reference's future. If {@code executor} rejects the
+     * task, the loading value reference is removed.
+     */
+    void loadOnExecutor(final K key, final int hash,
+        final LoadingValueReference<K, V> loadingValueReference,
+        final CacheLoader<? super K, V> loader, Executor executor) {
+      try {
+        executor.execute(new Runnable() {
+          @Override
+          public void run() {
+            final ListenableFuture<V> loadingFuture = loadingValueReference.loadFuture(key, loader);
+            loadingFuture.addListener(new Runnable() {
+              @Override
+              public void run() {
+                try {
+                  getAndRecordStats(key, hash, loadingValueReference, loadingFuture);
+                } catch (Throwable t) {
+                  // the failure has been reported to callers through the loading future
+                }
+              }
+            }, sameThreadExecutor);
+          }
+        });
+      } catch (RejectedExecutionException e) {
+        removeLoadingValue(key, hash, loadingValueReference);
+        loadingValueReference.setException(e);
+      }
+    }
+
+    /**
+     * Returns a future for the value being loaded by {@code valueReference}, which fails with an
+     * {@link InvalidCacheLoadException} if the loader returns null.
+     */
+    ListenableFuture<V> loadingFuture(final K key, ValueReference<K, V> valueReference) {
+      checkState(valueReference instanceof LoadingValueReference,
+          "Unexpected loading value reference: %s", valueReference);
+      LoadingValueReference<K, V> loadingValueReference =
+          (LoadingValueReference<K, V>) valueReference;
+      return Futures.transform(loadingValueReference.futureValue, new Function<V, V>() {
+        @Override
+        public V apply(@Nullable V value) {
+          if (value == null) {
+            throw new InvalidCacheLoadException("CacheLoader returned null for key " + key + ".");
+          }
+          return value;
+        }
+      });
+    }
+
+    V scheduleRefresh(ReferenceEntry<K, V> entry, K key, int hash, V oldValue, long now,
+        CacheLoader<? super K, V> loader) {
+      if (map.refreshes() && (now - entry.getWriteTime() > map.refreshNanos)
+          && !entry.getValueReference().isLoading()) {
+        V newValue = refresh(key, hash, loader, true);
+        if (newValue != null) {
+          return newValue;
+        }
+      }
+      return oldValue;
+    }
+
+    /**
+     * Starts refreshing {@code entry} if it is due, without waiting for the new value, which is
+     * loaded on the map's refresh executor if it has one, or on {@code executor} otherwise.
+     */
+    void scheduleRefreshOnExecutor(ReferenceEntry<K, V> entry, K key, int hash, long now,
+        CacheLoader<? super K, V> loader, Executor executor) {
+      if (map.refreshes() && (now - entry.getWriteTime() > map.refreshNanos)
+          && !entry.getValueReference().isLoading()) {
+        LoadingValueReference<K, V> loadingValueReference =
+            insertLoadingValueReference(key, hash, true);
+        if (loadingValueReference != null) {
+          reloadAsync(key, hash, loadingValueReference, loader,
+              map.refreshesAsynchronously() ? map.refreshExecutor : executor);
+        }
+      }
+    }
+
+    /**
+     * Refreshes the value associated with {@code key}, unless another thread is already doing so.
+     * Returns the newly refreshed value associated with {@code key} if it was refreshed inline, or
+     * {@code null} if another thread is performing the refresh, if the refresh was handed to the
+     * map's refresh executor, or if an error occurs during refresh.
+     */
+    @Nullable
+    V refresh(K key, int hash, CacheLoader<? super K, V> loader, boolean checkTime) {
+      final LoadingValueReference<K, V> loadingValueReference =
+          insertLoadingValueReference(key, hash, checkTime);
+      if (loadingValueReference == null) {
+        return null;
+      }
+
+      if (map.refreshesAsynchronously()) {
+        reloadAsync(key, hash, loadingValueReference, loader, map.refreshExecutor);
+        return null;
+      }
+
+      ListenableFuture<V> result = loadAsync(key, hash, loadingValueReference, loader);
+      if (result.isDone()) {
+        try {
+          return Uninterruptibles.getUninterruptibly(result);
+        } catch (Throwable t) {
+          // don't let refresh exceptions propagate; error was already logged
+        }
+      }
+      return null;
+    }
+
+    /**
+     * Loads a new value on {@code executor}. If the executor rejects the task then the loading
+     * value reference is removed, restoring the old value so that a later request can retry the
+     * refresh.
+     */
+    void reloadAsync(final K key, final int hash,
+        final LoadingValueReference<K, V> loadingValueReference,
+        final CacheLoader<? super K, V> loader, Executor executor) {
+      try {
+        executor.execute(new Runnable() {
+          @Override
+          public void run() {
+            loadAsync(key, hash, loadingValueReference, loader);
+          }
+        });
+      } catch (RejectedExecutionException e) {
+        logger.log(Level.WARNING, "Refresh rejected by executor", e);
+        removeLoadingValue(key, hash, loadingValueReference);
+        // unblock any thread waiting on a key which had no value to fall back on
+        loadingValueReference.setException(e);
+      }
+    }
+
+    /**
+     * Returns a newly inserted {@code LoadingValueReference}, or null if the live value reference
+     * is already loading.
+     */
+    @Nullable
+    LoadingValueReference<K, V> insertLoadingValueReference(final K key, final int hash,
+        boolean checkTime) {
+      ReferenceEntry<K, V> e = null;
+      lock();
+      try {
+        long now = map.ticker.read();
+        preWriteCleanup(now);
+
+        AtomicReferenceArray<ReferenceEntry<K, V>> table = this.table;
+        int index = hash & (table.length() - 1);
+        ReferenceEntry<K, V> first = table.get(index);
+
+        // Look for an existing entry.
+        for (e = first; e != null; e = e.getNext()) {
+          K entryKey = e.getKey();
+          if (e.getHash() == hash && entryKey != null
+              && map.keyEquivalence.equivalent(key, entryKey)) {
+            // We found an existing entry.
+
+            ValueReference<K, V> valueReference = e.getValueReference();
+            if (valueReference.isLoading()
+                || (checkTime && (now - e.getWriteTime() < map.refreshNanos))) {
+              // refresh is a no-op if loading is pending
+              // if checkTime, we want to check *after* acquiring the lock if refresh still needs
+              // to be scheduled
+              return null;
+            }
+
+            // continue returning old value while loading
+            ++modCount;
+            LoadingValueReference<K, V> loadingValueReference =
+                new LoadingValueReference<K, V>(valueReference);
+            e.setValueReference(loadingValueReference);
+            return loadingValueReference;
+          }
+        }
+
+        ++modCount;
+        LoadingValueReference<K, V> loadingValueReference = new LoadingValueReference<K, V>();
+        e = newEntry(key, hash, first);
+        e.setValueReference(loadingValueReference);
+        table.set(index, e);
+        return loadingValueReference;
+      } finally {
+        unlock();
+        postWriteCleanup();
+      }
+    }
+
+    // reference queues, for garbage collection cleanup
+
     /**
      * Cleanup collected entries when the lock is available.
      */
@@ -2594,7 +3146,8 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
     /**
      * Records the relative order in which this read was performed by adding {@code entry} to the
      * recency queue. At write-time, or when the queue is full past the threshold, the queue will
-     * be drained and the entries therein processed.
+     * be drained and the entries therein processed. If the queue is a full {@link ReadBuffer} the
+     * read is dropped, and the queue is drained if the lock is available.
      *
      * <p>Note: locked reads should use {@link #recordLockedRead}.
      */
@@ -2602,7 +3155,22 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
       if (map.recordsAccess()) {
         entry.setAccessTime(now);
       }
-      recencyQueue.add(entry);
+      if (!recencyQueue.offer(entry)) {
+        tryDrainRecencyQueue();
+      }
+    }
+
+    /**
+     * Drains the recency queue if the lock is available, without blocking.
+     */
+    void tryDrainRecencyQueue() {
+      if (tryLock()) {
+        try {
+          drainRecencyQueue();
+        } finally {
+          unlock();
+        }
+      }
     }
 
     /**
@@ -2618,6 +3186,7 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
         entry.setAccessTime(now);
       }
       accessQueue.add(entry);
+      recordFrequency(entry);
     }
 
     /**
@@ -2629,6 +3198,9 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
       // we are already under lock, so drain the recency queue immediately
       drainRecencyQueue();
       totalWeight += weight;
+      if (map.evictsGlobally()) {
+        map.globalWeight.addAndGet(weight);
+      }
 
       if (map.recordsAccess()) {
         entry.setAccessTime(now);
@@ -2638,6 +3210,17 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
       }
       accessQueue.add(entry);
       writeQueue.add(entry);
+      recordFrequency(entry);
+    }
+
+    /**
+     * Updates the estimated popularity of {@code entry}, if the map evicts by frequency.
+     */
+    @GuardedBy("Segment.this")
+    void recordFrequency(ReferenceEntry<K, V> entry) {
+      if (map.evictsByFrequency()) {
+        frequencySketch.increment(entry.getHash());
+      }
     }
 
     /**
@@ -2656,6 +3239,7 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
         // all of the segment's entries.
         if (accessQueue.contains(e)) {
           accessQueue.add(e);
+          recordFrequency(e);
         }
       }
     }
@@ -2680,6 +3264,11 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
     void expireEntries(long now) {
       drainRecencyQueue();
 
+      if (map.expiresVariably()) {
+        // move the entries whose time has come to the head of the queue
+        ((TimerWheel<K, V>) writeQueue).advance(now);
+      }
+
       ReferenceEntry<K, V> e;
       while ((e = writeQueue.peek()) != null && map.isExpired(e, now)) {
         if (!removeEntry(e, e.getHash(), RemovalCause.EXPIRED)) {
@@ -2704,6 +3293,9 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
     void enqueueNotification(@Nullable K key, int hash, ValueReference<K, V> valueReference,
         RemovalCause cause) {
       totalWeight -= valueReference.getWeight();
+      if (map.evictsGlobally()) {
+        map.globalWeight.addAndGet(-valueReference.getWeight());
+      }
       if (cause.wasEvicted()) {
         statsCounter.recordEviction();
       }
@@ -2712,27 +3304,133 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
         RemovalNotification<K, V> notification = new RemovalNotification<K, V>(key, value, cause);
         map.removalNotificationQueue.offer(notification);
       }
+      if (map.storesValuesOffHeap()) {
+        releaseOffHeap(valueReference);
+      }
     }
 
     /**
-     * Performs eviction if the segment is full. This should only be called prior to adding a new
-     * entry and increasing {@code count}.
+     * Frees the off-heap memory of a value which is leaving the map. A loading reference is
+     * released along with the value it replaces.
      */
     @GuardedBy("Segment.this")
-    void evictEntries() {
+    void releaseOffHeap(ValueReference<K, V> valueReference) {
+      if (valueReference instanceof LoadingValueReference) {
+        valueReference = ((LoadingValueReference<K, V>) valueReference).getOldValue();
+      }
+      if (valueReference instanceof OffHeapValueReference) {
+        ((OffHeapValueReference<K, V>) valueReference).release();
+      }
+    }
+
+    /**
+     * Performs eviction if the segment is over capacity. This should be called after {@code newest}
+     * has been added or updated, and {@code count} has been adjusted.
+     *
+     * <p>When the map evicts by frequency, {@code newest} is a candidate for admission: if it has
+     * not been used more often than the least-recently-used entry then it is evicted in that
+     * entry's place.
+     *
+     * <p>When the map evicts globally, entries are evicted from this segment first, since its lock
+     * is already held. Once {@code newest} is the only evictable entry left in this segment, entries
+     * are evicted from other segments instead, and {@code newest} is only evicted if they are all
+     * empty or locked.
+     */
+    @GuardedBy("Segment.this")
+    void evictEntries(ReferenceEntry<K, V> newest) {
       if (!map.evictsBySize()) {
         return;
       }
 
       drainRecencyQueue();
-      while (totalWeight > maxSegmentWeight) {
+      ReferenceEntry<K, V> candidate = map.evictsByFrequency() ? newest : null;
+      boolean triedOtherSegments = false;
+      while (isOverweight()) {
+        if (totalWeight <= 0) {
+          // only possible when evicting globally, once this segment is empty
+          if (!triedOtherSegments) {
+            evictFromOtherSegments();
+          }
+          return;
+        }
         ReferenceEntry<K, V> e = getNextEvictable();
+        if (map.evictsGlobally() && e == newest && !triedOtherSegments) {
+          // rather than evict the entry just written, look for older entries elsewhere
+          evictFromOtherSegments();
+          triedOtherSegments = true;
+          continue;
+        }
+        if (candidate != null && candidate != e && !admit(candidate, e)) {
+          e = candidate;
+        }
+        if (e == candidate) {
+          candidate = null;
+        }
         if (!removeEntry(e, e.getHash(), RemovalCause.SIZE)) {
           throw new AssertionError();
         }
       }
     }
 
+    /**
+     * Returns true if this segment, or the whole map if it {@linkplain LocalCache#evictsGlobally
+     * evicts globally}, holds more than its maximum weight.
+     */
+    boolean isOverweight() {
+      return map.evictsGlobally()
+          ? map.globalWeight.get() > map.maxWeight
+          : totalWeight > maxSegmentWeight;
+    }
+
+    /**
+     * Evicts the least-recently-used entries of other segments until the map is back within its
+     * maximum weight, one entry from each segment in turn. Segments which are locked by another
+     * thread are skipped rather than waited for, so that two segments evicting from each other can
+     * never deadlock; the other thread will itself evict if the map is still overweight.
+     */
+    @GuardedBy("Segment.this")
+    void evictFromOtherSegments() {
+      Segment<K, V>[] segments = map.segments;
+      boolean evicted = true;
+      while (evicted && isOverweight()) {
+        evicted = false;
+        int start = map.evictionCursor.getAndIncrement();
+        for (int i = 0; i < segments.length && isOverweight(); i++) {
+          Segment<K, V> segment = segments[(start + i) & (segments.length - 1)];
+          if (segment == this || !segment.tryLock()) {
+            continue;
+          }
+          try {
+            segment.drainRecencyQueue();
+            if (segment.totalWeight > 0) {
+              ReferenceEntry<K, V> e = segment.getNextEvictable();
+              if (!segment.removeEntry(e, e.getHash(), RemovalCause.SIZE)) {
+                throw new AssertionError();
+              }
+              evicted = true;
+            }
+          } finally {
+            segment.unlock();
+          }
+        }
+      }
+    }
+
+    /**
+     * Returns true if {@code candidate} should be retained at the expense of {@code victim}, based
+     * on their estimated frequency of use.
+     */
+    @GuardedBy("Segment.this")
+    boolean admit(ReferenceEntry<K, V> candidate, ReferenceEntry<K, V> victim) {
+      if (candidate.getValueReference().getWeight() == 0) {
+        // weightless entries are never evicted by size
+        return true;
+      }
+      int candidateFrequency = frequencySketch.frequency(candidate.getHash());
+      int victimFrequency = frequencySketch.frequency(victim.getHash());
+      return candidateFrequency > victimFrequency;
+    }
+
     // TODO(fry): instead implement this with an eviction head
     ReferenceEntry<K, V> getNextEvictable() {
       for (ReferenceEntry<K, V> e : accessQueue) {
@@ -2841,7 +3539,7 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
           if (e == null) {
             return false;
           }
-          return e.getValueReference().get() != null;
+          return hasValue(e.getValueReference());
         }
 
         return false;
@@ -2918,7 +3616,7 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
                 newCount = this.count + 1;
               }
               this.count = newCount; // write-volatile
-              evictEntries();
+              evictEntries(e);
               return null;
             } else if (onlyIfAbsent) {
               // Mimic
@@ -2931,7 +3629,7 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
               ++modCount;
               enqueueNotification(key, hash, valueReference, RemovalCause.REPLACED);
               setValue(e, key, value, now);
-              evictEntries();
+              evictEntries(e);
               return entryValue;
             }
           }
@@ -2944,7 +3642,7 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
         table.set(index, newEntry);
         newCount = this.count + 1;
         this.count = newCount; // write-volatile
-        evictEntries();
+        evictEntries(newEntry);
         return null;
       } finally {
         unlock();
@@ -2952,6 +3650,147 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
       }
     }
 
+    /**
+     * Adds an entry read from a snapshot, unless an entry for {@code key} is already present, in
+     * which case it holds a value at least as fresh as the snapshot. The entry's write and access
+     * times are set back by the given ages, and it becomes the most recently used entry of the
+     * segment. Returns whether the entry was added.
+     *
+     * <p>The back-dated entry is appended to the write and access queues regardless of its times,
+     * so {@link #finishRestore} must be called once the snapshot has been read.
+     */
+    boolean restore(K key, int hash, V value, long writeAge, long accessAge) {
+      lock();
+      try {
+        long now = map.ticker.read();
+        preWriteCleanup(now);
+
+        int newCount = this.count + 1;
+        if (newCount > this.threshold) { // ensure capacity
+          expand();
+          newCount = this.count + 1;
+        }
+
+        AtomicReferenceArray<ReferenceEntry<K, V>> table = this.table;
+        int index = hash & (table.length() - 1);
+        ReferenceEntry<K, V> first = table.get(index);
+
+        for (ReferenceEntry<K, V> e = first; e != null; e = e.getNext()) {
+          K entryKey = e.getKey();
+          if (e.getHash() == hash && entryKey != null
+              && map.keyEquivalence.equivalent(key, entryKey)) {
+            return false;
+          }
+        }
+
+        ++modCount;
+        ReferenceEntry<K, V> newEntry = newEntry(key, hash, first);
+        setValue(newEntry, key, value, now);
+        if (map.recordsWrite()) {
+          newEntry.setWriteTime(now - writeAge);
+        }
+        if (map.recordsAccess()) {
+          newEntry.setAccessTime(now - accessAge);
+        }
+        table.set(index, newEntry);
+        this.count = newCount; // write-volatile
+        evictEntries(newEntry);
+        return true;
+      } finally {
+        unlock();
+        postWriteCleanup();
+      }
+    }
+
+    /**
+     * Sorts the write and access queues by write and access time after entries have been {@link
+     * #restore restored}, as {@link #expireEntries} stops at the first entry which has not
+     * expired, and then removes the entries which have expired.
+     */
+    void finishRestore() {
+      lock();
+      try {
+        drainRecencyQueue();
+        if (map.usesWriteQueue() && !map.expiresVariably()) {
+          sortQueue(writeQueue, WRITE_TIME_ORDER);
+        }
+        if (map.recordsAccess()) {
+          sortQueue(accessQueue, ACCESS_TIME_ORDER);
+        }
+        expireEntries(map.ticker.read());
+      } finally {
+        unlock();
+        postWriteCleanup();
+      }
+    }
+
+    /** Relinks the entries of {@code queue} in the given order; the sort is stable. */
+    @GuardedBy("Segment.this")
+    void sortQueue(Queue<ReferenceEntry<K, V>> queue,
+        Comparator<? super ReferenceEntry<K, V>> order) {
+      List<ReferenceEntry<K, V>> entries = Lists.newArrayList(queue);
+      Collections.sort(entries, order);
+      queue.clear();
+      queue.addAll(entries);
+    }
+
+    /**
+     * Passes each live entry of this segment to {@code visitor}, from least to most recently used
+     * if the segment orders its entries by access, along with the entry's age since it was last
+     * written and since it was last accessed. An age is zero if the segment does not record the
+     * corresponding time.
+     *
+     * <p>The entries are copied while holding the segment lock, and passed to the visitor after
+     * it has been released.
+     */
+    void snapshot(SnapshotVisitor<? super K, ? super V> visitor) throws IOException {
+      List<K> keys;
+      List<V> values;
+      long[] ages;
+      lock();
+      try {
+        drainRecencyQueue();
+        long now = map.ticker.read();
+        Iterable<ReferenceEntry<K, V>> entries;
+        if (map.usesAccessQueue()) {
+          entries = accessQueue;
+        } else {
+          List<ReferenceEntry<K, V>> inTable = Lists.newArrayListWithCapacity(count);
+          AtomicReferenceArray<ReferenceEntry<K, V>> table = this.table;
+          for (int i = 0; i < table.length(); ++i) {
+            for (ReferenceEntry<K, V> e = table.get(i); e != null; e = e.getNext()) {
+              inTable.add(e);
+            }
+          }
+          entries = inTable;
+        }
+
+        keys = Lists.newArrayListWithCapacity(count);
+        values = Lists.newArrayListWithCapacity(count);
+        ages = new long[2 * count];
+        for (ReferenceEntry<K, V> e : entries) {
+          K key = e.getKey();
+          V value = getLiveValue(e, now);
+          if (key == null || value == null) {
+            continue;
+          }
+          if (2 * keys.size() == ages.length) {
+            ages = Arrays.copyOf(ages, 2 * ages.length + 2);
+          }
+          ages[2 * keys.size()] = map.recordsWrite() ? now - e.getWriteTime() : 0;
+          ages[2 * keys.size() + 1] = map.recordsAccess() ? now - e.getAccessTime() : 0;
+          keys.add(key);
+          values.add(value);
+        }
+      } finally {
+        unlock();
+      }
+
+      for (int i = 0; i < keys.size(); i++) {
+        visitor.visit(keys.get(i), values.get(i), ages[2 * i], ages[2 * i + 1]);
+      }
+    }
+
     /**
      * Expands the table if possible.
      */
@@ -3058,7 +3897,7 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
               ++modCount;
               enqueueNotification(key, hash, valueReference, RemovalCause.REPLACED);
               setValue(e, key, newValue, now);
-              evictEntries();
+              evictEntries(e);
               return true;
             } else {
               // Mimic
@@ -3110,7 +3949,7 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
             ++modCount;
             enqueueNotification(key, hash, valueReference, RemovalCause.REPLACED);
             setValue(e, key, newValue, now);
-            evictEntries();
+            evictEntries(e);
             return entryValue;
           }
         }
@@ -3190,21 +4029,21 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
           if (e.getHash() == hash && entryKey != null
               && map.keyEquivalence.equivalent(key, entryKey)) {
             ValueReference<K, V> valueReference = e.getValueReference();
-            V entryValue = valueReference.get();
+            boolean entryHasValue = hasValue(valueReference);
             // replace the old LoadingValueReference if it's live, otherwise
             // perform a putIfAbsent
             if (oldValueReference == valueReference
-                || (entryValue == null && valueReference != UNSET)) {
+                || (!entryHasValue && valueReference != UNSET)) {
               ++modCount;
               if (oldValueReference.isActive()) {
                 RemovalCause cause =
-                    (entryValue == null) ? RemovalCause.COLLECTED : RemovalCause.REPLACED;
+                    entryHasValue ? RemovalCause.REPLACED : RemovalCause.COLLECTED;
                 enqueueNotification(key, hash, oldValueReference, cause);
                 newCount--;
               }
               setValue(e, key, newValue, now);
               this.count = newCount; // write-volatile
-              evictEntries();
+              evictEntries(e);
               return true;
             }
 
@@ -3220,7 +4059,7 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
         setValue(newEntry, key, newValue, now);
         table.set(index, newEntry);
         this.count = newCount; // write-volatile
-        evictEntries();
+        evictEntries(newEntry);
         return true;
       } finally {
         unlock();
@@ -3777,6 +4616,247 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
     }
   }
 
+  /**
+   * A hierarchical timer wheel for managing variable expiration. Each entry's expiration time is
+   * read from its access time, and it is linked into a bucket using its write queue pointers.
+   *
+   * <p>The wheel is made up of several levels, each divided into buckets that span a power of two
+   * nanoseconds. An entry is placed in the lowest level whose range covers its remaining
+   * lifetime. As time advances, the buckets that have been passed over are emptied: expired
+   * entries are moved to the head of the queue, while the remainder are rescheduled into a finer
+   * grained level. Scheduling, descheduling and expiring an entry therefore each take constant
+   * time, regardless of the spread of expiration times.
+   *
+   * <p>As a {@link java.util.Queue}, the head of a timer wheel is the expired entry that was
+   * found first by {@link #advance}. The queue's other entries are in no particular order.
+   */
+  static final class TimerWheel<K, V> extends AbstractQueue<ReferenceEntry<K, V>> {
+    static final int[] BUCKETS = { 64, 64, 32, 4, 1 };
+    static final long[] SPANS = {
+        ceilingPowerOfTwo(TimeUnit.SECONDS.toNanos(1)), // 1.07s
+        ceilingPowerOfTwo(TimeUnit.MINUTES.toNanos(1)), // 1.14m
+        ceilingPowerOfTwo(TimeUnit.HOURS.toNanos(1)), // 1.22h
+        ceilingPowerOfTwo(TimeUnit.DAYS.toNanos(1)), // 1.63d
+        BUCKETS[3] * ceilingPowerOfTwo(TimeUnit.DAYS.toNanos(1)), // 6.5d
+    };
+    static final long[] SHIFT = {
+        Long.numberOfTrailingZeros(SPANS[0]),
+        Long.numberOfTrailingZeros(SPANS[1]),
+        Long.numberOfTrailingZeros(SPANS[2]),
+        Long.numberOfTrailingZeros(SPANS[3]),
+        Long.numberOfTrailingZeros(SPANS[4]),
+    };
+
+    final ReferenceEntry<K, V>[][] wheel;
+    final ReferenceEntry<K, V> expired = new Sentinel<K, V>();
+    long nanos;
+
+    @SuppressWarnings({"unchecked", "rawtypes"}) // generic array creation is not allowed
+    TimerWheel(long nanos) {
+      this.nanos = nanos;
+      wheel = new ReferenceEntry[BUCKETS.length][];
+      for (int i = 0; i < wheel.length; i++) {
+        wheel[i] = new ReferenceEntry[BUCKETS[i]];
+        for (int j = 0; j < wheel[i].length; j++) {
+          wheel[i][j] = new Sentinel<K, V>();
+        }
+      }
+    }
+
+    static long ceilingPowerOfTwo(long x) {
+      return 1L << -Long.numberOfLeadingZeros(x - 1);
+    }
+
+    /**
+     * Advances the timer to {@code currentTimeNanos}, moving the entries which have expired by
+     * then to the head of the queue.
+     */
+    void advance(long currentTimeNanos) {
+      long previousTimeNanos = nanos;
+      nanos = currentTimeNanos;
+      for (int i = 0; i < SHIFT.length; i++) {
+        long previousTicks = previousTimeNanos >> SHIFT[i];
+        long currentTicks = currentTimeNanos >> SHIFT[i];
+        if ((currentTicks - previousTicks) <= 0L) {
+          break;
+        }
+        expire(i, previousTicks, currentTicks);
+      }
+    }
+
+    /**
+     * Empties the buckets of level {@code index} that have been passed over, expiring or
+     * rescheduling their entries.
+     */
+    void expire(int index, long previousTicks, long currentTicks) {
+      ReferenceEntry<K, V>[] timerWheel = wheel[index];
+      int mask = timerWheel.length - 1;
+      int steps = (int) Math.min(1 + currentTicks - previousTicks, timerWheel.length);
+      int start = (int) (previousTicks & mask);
+      int end = start + steps;
+      for (int i = start; i < end; i++) {
+        ReferenceEntry<K, V> sentinel = timerWheel[i & mask];
+        ReferenceEntry<K, V> e = sentinel.getNextInWriteQueue();
+        sentinel.setNextInWriteQueue(sentinel);
+        sentinel.setPreviousInWriteQueue(sentinel);
+
+        while (e != sentinel) {
+          ReferenceEntry<K, V> next = e.getNextInWriteQueue();
+          nullifyWriteOrder(e);
+          offer(e);
+          e = next;
+        }
+      }
+    }
+
+    /** Returns the sentinel of the bucket in which an entry expiring at {@code time} belongs. */
+    ReferenceEntry<K, V> findBucket(long time) {
+      long duration = time - nanos;
+      if (duration <= 0) {
+        return expired;
+      }
+      int length = wheel.length - 1;
+      for (int i = 0; i < length; i++) {
+        if (duration < SPANS[i + 1]) {
+          long ticks = time >> SHIFT[i];
+          int index = (int) (ticks & (wheel[i].length - 1));
+          return wheel[i][index];
+        }
+      }
+      return wheel[length][0];
+    }
+
+    // implements Queue
+
+    @Override
+    public boolean offer(ReferenceEntry<K, V> entry) {
+      // unlink
+      connectWriteOrder(entry.getPreviousInWriteQueue(), entry.getNextInWriteQueue());
+
+      // add to the tail of its bucket
+      ReferenceEntry<K, V> sentinel = findBucket(entry.getAccessTime());
+      connectWriteOrder(sentinel.getPreviousInWriteQueue(), entry);
+      connectWriteOrder(entry, sentinel);
+
+      return true;
+    }
+
+    @Override
+    public ReferenceEntry<K, V> peek() {
+      ReferenceEntry<K, V> next = expired.getNextInWriteQueue();
+      return (next == expired) ? null : next;
+    }
+
+    @Override
+    public ReferenceEntry<K, V> poll() {
+      ReferenceEntry<K, V> next = expired.getNextInWriteQueue();
+      if (next == expired) {
+        return null;
+      }
+
+      remove(next);
+      return next;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public boolean remove(Object o) {
+      ReferenceEntry<K, V> e = (ReferenceEntry) o;
+      ReferenceEntry<K, V> previous = e.getPreviousInWriteQueue();
+      ReferenceEntry<K, V> next = e.getNextInWriteQueue();
+      connectWriteOrder(previous, next);
+      nullifyWriteOrder(e);
+
+      return next != NullEntry.INSTANCE;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public boolean contains(Object o) {
+      ReferenceEntry<K, V> e = (ReferenceEntry) o;
+      return e.getNextInWriteQueue() != NullEntry.INSTANCE;
+    }
+
+    @Override
+    public int size() {
+      return Iterators.size(iterator());
+    }
+
+    @Override
+    public void clear() {
+      clear(expired);
+      for (ReferenceEntry<K, V>[] timerWheel : wheel) {
+        for (ReferenceEntry<K, V> sentinel : timerWheel) {
+          clear(sentinel);
+        }
+      }
+    }
+
+    static <K, V> void clear(ReferenceEntry<K, V> sentinel) {
+      ReferenceEntry<K, V> e = sentinel.getNextInWriteQueue();
+      while (e != sentinel) {
+        ReferenceEntry<K, V> next = e.getNextInWriteQueue();
+        nullifyWriteOrder(e);
+        e = next;
+      }
+
+      sentinel.setNextInWriteQueue(sentinel);
+      sentinel.setPreviousInWriteQueue(sentinel);
+    }
+
+    @Override
+    public Iterator<ReferenceEntry<K, V>> iterator() {
+      List<Iterator<ReferenceEntry<K, V>>> buckets = Lists.newArrayList();
+      buckets.add(bucketIterator(expired));
+      for (ReferenceEntry<K, V>[] timerWheel : wheel) {
+        for (ReferenceEntry<K, V> sentinel : timerWheel) {
+          buckets.add(bucketIterator(sentinel));
+        }
+      }
+      return Iterators.concat(buckets.iterator());
+    }
+
+    static <K, V> Iterator<ReferenceEntry<K, V>> bucketIterator(
+        final ReferenceEntry<K, V> sentinel) {
+      ReferenceEntry<K, V> first = sentinel.getNextInWriteQueue();
+      return new AbstractSequentialIterator<ReferenceEntry<K, V>>(
+          (first == sentinel) ? null : first) {
+        @Override
+        protected ReferenceEntry<K, V> computeNext(ReferenceEntry<K, V> previous) {
+          ReferenceEntry<K, V> next = previous.getNextInWriteQueue();
+          return (next == sentinel) ? null : next;
+        }
+      };
+    }
+
+    /** The head of a bucket's circular list. */
+    static final class Sentinel<K, V> extends AbstractReferenceEntry<K, V> {
+      ReferenceEntry<K, V> nextWrite = this;
+
+      @Override
+      public ReferenceEntry<K, V> getNextInWriteQueue() {
+        return nextWrite;
+      }
+
+      @Override
+      public void setNextInWriteQueue(ReferenceEntry<K, V> next) {
+        this.nextWrite = next;
+      }
+
+      ReferenceEntry<K, V> previousWrite = this;
+
+      @Override
+      public ReferenceEntry<K, V> getPreviousInWriteQueue() {
+        return previousWrite;
+      }
+
+      @Override
+      public void setPreviousInWriteQueue(ReferenceEntry<K, V> previous) {
+        this.previousWrite = previous;
+      }
+    }
+  }
+
   /**
    * A custom queue for managing access order. Note that this is tightly integrated with
    * {@code ReferenceEntry}, upon which it reliese to perform its linking.
@@ -3965,6 +5045,78 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
     return sum;
   }
 
+  /**
+   * Returns a snapshot of the statistics recorded by each segment, in segment order. Operations
+   * which span segments, such as bulk loads, are recorded in {@link #globalStatsCounter} and are
+   * not included. Hit, miss or eviction counts which are much higher in some segments than in
+   * others point to hot segments, and so to a concurrency level which is too low.
+   */
+  ImmutableList<CacheStats> segmentStats() {
+    ImmutableList.Builder<CacheStats> stats = ImmutableList.builder();
+    for (Segment<K, V> segment : segments) {
+      stats.add(segment.statsCounter.snapshot());
+    }
+    return stats.build();
+  }
+
+  /** Receives the entries of a snapshot of the cache, as written by {@link CacheSnapshot}. */
+  interface SnapshotVisitor<K, V> {
+    void visit(K key, V value, long writeAge, long accessAge) throws IOException;
+  }
+
+  /**
+   * Passes each live entry to {@code visitor}, one segment at a time, so that only one segment's
+   * entries are copied at once. Within a segment, entries are visited from least to most recently
+   * used.
+   */
+  void snapshot(SnapshotVisitor<? super K, ? super V> visitor) throws IOException {
+    for (Segment<K, V> segment : segments) {
+      segment.snapshot(visitor);
+    }
+  }
+
+  /**
+   * Adds an entry read from a snapshot, unless it has expired or the key is already present. No
+   * loader is called, and no statistics are recorded. {@link #finishRestore} must be called once
+   * all of the snapshot's entries have been added.
+   */
+  boolean restore(K key, V value, long writeAge, long accessAge) {
+    if ((expiresAfterWrite() && writeAge >= expireAfterWriteNanos)
+        || (expiresAfterAccess() && accessAge >= expireAfterAccessNanos)) {
+      return false;
+    }
+    int hash = hash(checkNotNull(key));
+    return segmentFor(hash).restore(key, hash, checkNotNull(value), writeAge, accessAge);
+  }
+
+  /**
+   * Reorders the expiration queues of every segment after entries have been {@linkplain #restore
+   * restored} out of write order, and removes the entries which have expired.
+   */
+  void finishRestore() {
+    for (Segment<K, V> segment : segments) {
+      segment.finishRestore();
+    }
+  }
+
+  /** Orders entries by write time, allowing for the ticker to wrap around. */
+  static final Comparator<ReferenceEntry<?, ?>> WRITE_TIME_ORDER =
+      new Comparator<ReferenceEntry<?, ?>>() {
+        @Override
+        public int compare(ReferenceEntry<?, ?> left, ReferenceEntry<?, ?> right) {
+          return Long.signum(left.getWriteTime() - right.getWriteTime());
+        }
+      };
+
+  /** Orders entries by access time, allowing for the ticker to wrap around. */
+  static final Comparator<ReferenceEntry<?, ?>> ACCESS_TIME_ORDER =
+      new Comparator<ReferenceEntry<?, ?>>() {
+        @Override
+        public int compare(ReferenceEntry<?, ?> left, ReferenceEntry<?, ?> right) {
+          return Long.signum(left.getAccessTime() - right.getAccessTime());
+        }
+      };
+
   @Override
   public int size() {
     return Ints.saturatedCast(longSize());
@@ -4132,6 +5284,132 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
     return result;
   }
 
+  ListenableFuture<V> getAsync(K key, CacheLoader<? super K, V> loader, Executor executor) {
+    int hash = hash(checkNotNull(key));
+    return segmentFor(hash).getAsync(key, hash, loader, executor);
+  }
+
+  /**
+   * Returns a future for the values associated with {@code keys}. Absent keys are reserved by
+   * installing loading value references, so that concurrent requests share their loads, and are
+   * then loaded together by a single call to {@link CacheLoader#loadAll} on {@code executor}.
+   */
+  ListenableFuture<ImmutableMap<K, V>> getAllAsync(Iterable<? extends K> keys,
+      CacheLoader<? super K, V> loader, Executor executor) {
+    checkNotNull(loader);
+    checkNotNull(executor);
+    // check every key before reserving any, so that a null key can't strand a reservation
+    Set<K> uniqueKeys = Sets.newLinkedHashSet();
+    for (K key : keys) {
+      uniqueKeys.add(checkNotNull(key));
+    }
+
+    final Map<K, ListenableFuture<V>> futures = Maps.newLinkedHashMap();
+    Map<K, LoadingValueReference<K, V>> keysToLoad = Maps.newLinkedHashMap();
+    for (K key : uniqueKeys) {
+      int hash = hash(key);
+      Segment<K, V> segment = segmentFor(hash);
+      ListenableFuture<V> future = segment.getPresentOrLoading(key, hash, loader, executor);
+      if (future == null) {
+        LoadingValueReference<K, V> loadingValueReference = new LoadingValueReference<K, V>();
+        future = segment.lockedGetOrReserve(key, hash, loadingValueReference);
+        if (future == null) {
+          keysToLoad.put(key, loadingValueReference);
+          future = segment.loadingFuture(key, loadingValueReference);
+        }
+      }
+      futures.put(key, future);
+    }
+
+    if (!keysToLoad.isEmpty()) {
+      loadAllOnExecutor(keysToLoad, loader, executor);
+    }
+
+    return Futures.transform(Futures.allAsList(futures.values()),
+        new Function<List<V>, ImmutableMap<K, V>>() {
+          @Override
+          public ImmutableMap<K, V> apply(List<V> values) {
+            ImmutableMap.Builder<K, V> result = ImmutableMap.builder();
+            Iterator<V> iterator = values.iterator();
+            for (K key : futures.keySet()) {
+              result.put(key, iterator.next());
+            }
+            return result.build();
+          }
+        });
+  }
+
+  /**
+   * Completes the reserved {@code keysToLoad} with a single call to {@link CacheLoader#loadAll}
+   * on {@code executor}, or with one task per key if {@code loader} doesn't implement {@code
+   * loadAll}.
+   */
+  void loadAllOnExecutor(final Map<K, LoadingValueReference<K, V>> keysToLoad,
+      final CacheLoader<? super K, V> loader, final Executor executor) {
+    Runnable task = new Runnable() {
+      @Override
+      public void run() {
+        Map<K, V> result;
+        try {
+          result = loadAll(keysToLoad.keySet(), loader);
+        } catch (UnsupportedLoadingOperationException e) {
+          // loadAll not implemented, fallback to load
+          for (Map.Entry<K, LoadingValueReference<K, V>> entry : keysToLoad.entrySet()) {
+            K key = entry.getKey();
+            int hash = hash(key);
+            segmentFor(hash).loadOnExecutor(key, hash, entry.getValue(), loader, executor);
+          }
+          return;
+        } catch (Throwable t) {
+          Throwable cause = (t instanceof ExecutionException
+              || t instanceof UncheckedExecutionException || t instanceof ExecutionError)
+              ? t.getCause() : t;
+          failLoads(keysToLoad, cause);
+          return;
+        }
+
+        // loadAll has stored the new values; release anyone waiting on them
+        for (Map.Entry<K, LoadingValueReference<K, V>> entry : keysToLoad.entrySet()) {
+          K key = entry.getKey();
+          LoadingValueReference<K, V> loadingValueReference = entry.getValue();
+          V value = result.get(key);
+          if (value == null) {
+            int hash = hash(key);
+            segmentFor(hash).removeLoadingValue(key, hash, loadingValueReference);
+            loadingValueReference.setException(
+                new InvalidCacheLoadException("loadAll failed to return a value for " + key));
+          } else {
+            loadingValueReference.set(value);
+          }
+        }
+      }
+    };
+
+    try {
+      executor.execute(task);
+    } catch (RejectedExecutionException e) {
+      failLoads(keysToLoad, e);
+    }
+  }
+
+  /**
+   * Fails the loads of those {@code keysToLoad} which are still loading. A key whose value {@link
+   * #loadAll} stored before failing, or which was written meanwhile, has already been completed
+   * with that value.
+   */
+  void failLoads(Map<K, LoadingValueReference<K, V>> keysToLoad, Throwable t) {
+    for (Map.Entry<K, LoadingValueReference<K, V>> entry : keysToLoad.entrySet()) {
+      LoadingValueReference<K, V> loadingValueReference = entry.getValue();
+      if (loadingValueReference.futureValue.isDone()) {
+        continue;
+      }
+      K key = entry.getKey();
+      int hash = hash(key);
+      segmentFor(hash).removeLoadingValue(key, hash, loadingValueReference);
+      loadingValueReference.setException(t);
+    }
+  }
+
   /**
    * Returns the internal entry for the specified key. The entry may be loading, expired, or
    * partially collected.
@@ -4615,7 +5893,11 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
     final long expireAfterAccessNanos;
     final long maxWeight;
     final Weigher<K, V> weigher;
+    final EvictionPolicy evictionPolicy;
+    final ReadBufferMode readBufferMode;
+    final Expiry<K, V> expiry;
     final int concurrencyLevel;
+    final ConcurrencyMode concurrencyMode;
     final RemovalListener<? super K, ? super V> removalListener;
     final Ticker ticker;
     final CacheLoader<? super K, V> loader;
@@ -4632,7 +5914,11 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
           cache.expireAfterAccessNanos,
           cache.maxWeight,
           cache.weigher,
+          cache.evictionPolicy,
+          cache.readBufferMode,
+          cache.expiry,
           cache.concurrencyLevel,
+          cache.concurrencyMode,
           cache.removalListener,
           cache.ticker,
           cache.defaultLoader);
@@ -4642,7 +5928,9 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
         Strength keyStrength, Strength valueStrength,
         Equivalence<Object> keyEquivalence, Equivalence<Object> valueEquivalence,
         long expireAfterWriteNanos, long expireAfterAccessNanos, long maxWeight,
-        Weigher<K, V> weigher, int concurrencyLevel,
+        Weigher<K, V> weigher, EvictionPolicy evictionPolicy, ReadBufferMode readBufferMode,
+        Expiry<K, V> expiry,
+        int concurrencyLevel, ConcurrencyMode concurrencyMode,
         RemovalListener<? super K, ? super V> removalListener,
         Ticker ticker, CacheLoader<? super K, V> loader) {
       this.keyStrength = keyStrength;
@@ -4653,7 +5941,11 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
       this.expireAfterAccessNanos = expireAfterAccessNanos;
       this.maxWeight = maxWeight;
       this.weigher = weigher;
+      this.evictionPolicy = evictionPolicy;
+      this.readBufferMode = readBufferMode;
+      this.expiry = expiry;
       this.concurrencyLevel = concurrencyLevel;
+      this.concurrencyMode = concurrencyMode;
       this.removalListener = removalListener;
       this.ticker = (ticker == Ticker.systemTicker() || ticker == NULL_TICKER)
           ? null : ticker;
@@ -4685,6 +5977,18 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
           builder.maximumSize(maxWeight);
         }
       }
+      if (evictionPolicy != null && evictionPolicy != EvictionPolicy.LRU) {
+        builder.evictionPolicy(evictionPolicy);
+      }
+      if (concurrencyMode != null && concurrencyMode != ConcurrencyMode.SEGMENTED) {
+        builder.concurrencyMode(concurrencyMode);
+      }
+      if (readBufferMode != null && readBufferMode != ReadBufferMode.UNBOUNDED) {
+        builder.readBufferMode(readBufferMode);
+      }
+      if (expiry != null) {
+        builder = builder.expireAfter(expiry);
+      }
       if (ticker != null) {
         builder.ticker(ticker);
       }
@@ -4864,6 +6168,10 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
       super(new LocalCache<K, V>(builder, checkNotNull(loader)));
     }
 
+    LocalLoadingCache(LocalCache<K, V> localCache) {
+      super(localCache);
+    }
+
     // LoadingCache methods
 
     @Override
@@ -4904,4 +6212,34 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
       return new LoadingSerializationProxy<K, V>(localCache);
     }
   }
+
+  static class LocalAsyncLoadingCache<K, V> implements AsyncLoadingCache<K, V> {
+    final LocalCache<K, V> localCache;
+    final Executor executor;
+    final LoadingCache<K, V> synchronous;
+
+    LocalAsyncLoadingCache(CacheBuilder<? super K, ? super V> builder,
+        CacheLoader<? super K, V> loader, Executor executor) {
+      this.localCache = new LocalCache<K, V>(builder, checkNotNull(loader));
+      this.executor = checkNotNull(executor);
+      this.synchronous = new LocalLoadingCache<K, V>(localCache);
+    }
+
+    // AsyncLoadingCache methods
+
+    @Override
+    public ListenableFuture<V> get(K key) {
+      return localCache.getAsync(key, localCache.defaultLoader, executor);
+    }
+
+    @Override
+    public ListenableFuture<ImmutableMap<K, V>> getAll(Iterable<? extends K> keys) {
+      return localCache.getAllAsync(keys, localCache.defaultLoader, executor);
+    }
+
+    @Override
+    public LoadingCache<K, V> synchronous() {
+      return synchronous;
+    }
+  }
 }
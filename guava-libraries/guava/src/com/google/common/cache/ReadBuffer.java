@@ -0,0 +1,226 @@
+/*
+ * Copyright (C) 2013 The Guava Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.common.cache;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.common.collect.Iterators;
+import com.google.common.collect.Lists;
+
+import java.util.AbstractQueue;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import javax.annotation.Nullable;
+
+/**
+ * A lossy, bounded buffer of the entries read from a cache segment, used in place of an unbounded
+ * concurrent queue so that recording a read neither allocates nor contends on a single tail.
+ *
+ * <p>The buffer is striped into fixed-size ring buffers, and each thread records its reads into
+ * the stripe selected by its thread id. A stripe is allocated when it is first used, so a cache
+ * read by few threads stays small. If another thread is concurrently adding to the same stripe
+ * the element is silently dropped, and if the stripe is full {@link #offer} drops the element and
+ * returns {@code false}. Losing a small fraction of reads only makes the recency order slightly
+ * less precise.
+ *
+ * <p>Any number of threads may add elements, but only one thread at a time may remove them,
+ * which in a cache segment is the thread holding the segment lock. Elements added by a single
+ * thread are removed in the order in which they were added.
+ */
+final class ReadBuffer<E> extends AbstractQueue<E> {
+
+  /**
+   * The number of elements that each stripe can hold. This must be a power of two. Segments drain
+   * their buffer every {@link LocalCache#DRAIN_THRESHOLD} reads, so this leaves room for reads to
+   * be recorded while the segment lock is held by a writer.
+   */
+  static final int STRIPE_CAPACITY = 2 * (LocalCache.DRAIN_THRESHOLD + 1);
+
+  static final int STRIPE_MASK = STRIPE_CAPACITY - 1;
+
+  /** The number of stripes, the number of processors rounded up to a power of two. */
+  static final int STRIPES = ceilingPowerOfTwo(Runtime.getRuntime().availableProcessors());
+
+  final AtomicReferenceArray<Stripe<E>> stripes;
+  final int mask;
+
+  /** The stripe that was last polled, so that draining resumes where it left off. */
+  int pollIndex;
+
+  ReadBuffer() {
+    this(STRIPES);
+  }
+
+  ReadBuffer(int stripeCount) {
+    int length = ceilingPowerOfTwo(stripeCount);
+    stripes = new AtomicReferenceArray<Stripe<E>>(length);
+    mask = length - 1;
+  }
+
+  static int ceilingPowerOfTwo(int x) {
+    return (x <= 1) ? 1 : Integer.highestOneBit(x - 1) << 1;
+  }
+
+  /** Returns the stripe that the current thread adds to, allocating it if necessary. */
+  Stripe<E> stripe() {
+    int index = LocalCache.rehash((int) Thread.currentThread().getId()) & mask;
+    Stripe<E> stripe = stripes.get(index);
+    if (stripe == null) {
+      stripes.compareAndSet(index, null, new Stripe<E>());
+      stripe = stripes.get(index);
+    }
+    return stripe;
+  }
+
+  /**
+   * Adds {@code e} to the current thread's stripe, unless another thread is adding to it at the
+   * same time. Returns {@code false} only if the stripe is full, in which case the buffer should
+   * be drained.
+   */
+  @Override
+  public boolean offer(E e) {
+    checkNotNull(e);
+    return stripe().offer(e);
+  }
+
+  /**
+   * Removes an element from the buffer. This may only be called by one thread at a time.
+   */
+  @Override
+  @Nullable
+  public E poll() {
+    for (int i = 0; i <= mask; i++) {
+      int index = (pollIndex + i) & mask;
+      Stripe<E> stripe = stripes.get(index);
+      if (stripe != null) {
+        E e = stripe.poll();
+        if (e != null) {
+          pollIndex = index;
+          return e;
+        }
+      }
+    }
+    return null;
+  }
+
+  @Override
+  @Nullable
+  public E peek() {
+    for (int i = 0; i <= mask; i++) {
+      Stripe<E> stripe = stripes.get((pollIndex + i) & mask);
+      if (stripe != null) {
+        E e = stripe.peek();
+        if (e != null) {
+          return e;
+        }
+      }
+    }
+    return null;
+  }
+
+  @Override
+  public int size() {
+    int size = 0;
+    for (int i = 0; i <= mask; i++) {
+      Stripe<E> stripe = stripes.get(i);
+      if (stripe != null) {
+        size += stripe.size();
+      }
+    }
+    return size;
+  }
+
+  /**
+   * Returns a weakly consistent iterator over the elements which have been added to the buffer
+   * and not yet removed. The iterator does not support removal.
+   */
+  @Override
+  public Iterator<E> iterator() {
+    List<E> elements = Lists.newArrayList();
+    for (int i = 0; i <= mask; i++) {
+      Stripe<E> stripe = stripes.get((pollIndex + i) & mask);
+      if (stripe != null) {
+        stripe.copyInto(elements);
+      }
+    }
+    return Iterators.unmodifiableIterator(elements.iterator());
+  }
+
+  /**
+   * A ring buffer which any number of threads may add to, and one thread at a time may remove
+   * from. A slot is claimed by advancing {@code tail}; the element is then published into the
+   * slot, and the slot is cleared once the element is removed.
+   */
+  static final class Stripe<E> {
+    final AtomicReferenceArray<E> buffer = new AtomicReferenceArray<E>(STRIPE_CAPACITY);
+    final AtomicLong tail = new AtomicLong();
+    volatile long head;
+
+    boolean offer(E e) {
+      long t = tail.get();
+      if (t - head >= STRIPE_CAPACITY) {
+        return false;
+      }
+      if (tail.compareAndSet(t, t + 1)) {
+        buffer.lazySet((int) t & STRIPE_MASK, e);
+      }
+      // otherwise drop the element rather than contend with another thread
+      return true;
+    }
+
+    @Nullable
+    E poll() {
+      long h = head;
+      if (h == tail.get()) {
+        return null;
+      }
+      int index = (int) h & STRIPE_MASK;
+      E e = buffer.get(index);
+      if (e == null) {
+        // the slot has been claimed, but the element is not yet visible
+        return null;
+      }
+      buffer.lazySet(index, null);
+      head = h + 1;
+      return e;
+    }
+
+    @Nullable
+    E peek() {
+      long h = head;
+      return (h == tail.get()) ? null : buffer.get((int) h & STRIPE_MASK);
+    }
+
+    int size() {
+      return (int) (tail.get() - head);
+    }
+
+    void copyInto(List<E> elements) {
+      long t = tail.get();
+      for (long h = head; h < t; h++) {
+        E e = buffer.get((int) h & STRIPE_MASK);
+        if (e == null) {
+          break;
+        }
+        elements.add(e);
+      }
+    }
+  }
+}
@@ -0,0 +1,44 @@
+/*
+ * Copyright (C) 2013 The Guava Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.common.cache;
+
+import com.google.common.annotations.Beta;
+
+/**
+ * How a cache which orders its entries by access, because it was built with {@link
+ * CacheBuilder#maximumSize}, {@link CacheBuilder#maximumWeight} or {@link
+ * CacheBuilder#expireAfterAccess}, records the reads which hit it until they are applied to that
+ * order.
+ *
+ * @since 15.0
+ */
+@Beta
+public enum ReadBufferMode {
+  /**
+   * Every read is recorded in an unbounded concurrent queue. This is the default mode. Each read
+   * allocates a queue node, and all the reads of a segment contend for the tail of its queue.
+   */
+  UNBOUNDED,
+
+  /**
+   * Reads are recorded in fixed-size ring buffers, striped by thread, which are drained when the
+   * segment's lock is free. A read which finds its buffer full or contended is dropped rather than
+   * retried, so the access order may miss some reads under heavy load, but recording a read
+   * allocates nothing and readers rarely contend.
+   */
+  STRIPED
+}
@@ -0,0 +1,231 @@
+/*
+ * Copyright (C) 2013 The Guava Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.common.cache;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import javax.annotation.concurrent.GuardedBy;
+
+/**
+ * Stores byte arrays in direct {@link ByteBuffer}s, outside of the Java heap, for caches built
+ * with {@link CacheBuilder#offHeapValues}.
+ *
+ * <p>Memory is divided into pages of {@value #PAGE_SIZE} bytes, each of which is carved into
+ * equal slots of one power-of-two size class. A freed slot is reused by a later allocation of the
+ * same class; pages are never returned to the operating system, so the memory in use stays close
+ * to the high-water mark of the cache. An array too large for any size class is given a page of
+ * its own, which is dropped when the array is freed.
+ *
+ * <p>An allocation is identified by its <i>address</i>, the index of its page in the high 32 bits
+ * and its offset within the page in the low 32 bits. Callers must ensure that an address is not
+ * read after it has been freed.
+ */
+final class SlabAllocator {
+  static final int PAGE_SHIFT = 20;
+  static final int PAGE_SIZE = 1 << PAGE_SHIFT;
+  static final int MIN_SLOT_SHIFT = 4;
+  static final int MAX_SLOT_SHIFT = PAGE_SHIFT - 1;
+
+  /** Pages indexed by the high half of an address; written only while holding this lock. */
+  volatile ByteBuffer[] pages = new ByteBuffer[16];
+
+  @GuardedBy("this")
+  int pageCount;
+
+  /** Indexes of dropped oversized pages, available for reuse. */
+  @GuardedBy("this")
+  final IntStack freePageIndexes = new IntStack();
+
+  @GuardedBy("this")
+  long reservedBytes;
+
+  final SizeClass[] sizeClasses;
+
+  SlabAllocator() {
+    sizeClasses = new SizeClass[MAX_SLOT_SHIFT - MIN_SLOT_SHIFT + 1];
+    for (int i = 0; i < sizeClasses.length; i++) {
+      sizeClasses[i] = new SizeClass(1 << (MIN_SLOT_SHIFT + i));
+    }
+  }
+
+  /**
+   * Returns the index of the size class for arrays of {@code length} bytes, or -1 if they are
+   * too large to share a page.
+   */
+  static int sizeClass(int length) {
+    if (length <= (1 << MIN_SLOT_SHIFT)) {
+      return 0;
+    } else if (length > (1 << MAX_SLOT_SHIFT)) {
+      return -1;
+    }
+    int shift = Integer.SIZE - Integer.numberOfLeadingZeros(length - 1);
+    return shift - MIN_SLOT_SHIFT;
+  }
+
+  /** Copies {@code value} off the heap, returning the address of the copy. */
+  long allocate(byte[] value) {
+    int length = value.length;
+    int sizeClass = sizeClass(length);
+    long address = (sizeClass < 0)
+        ? ((long) newPage(length)) << 32
+        : sizeClasses[sizeClass].allocate();
+
+    ByteBuffer buffer = pageOf(address).duplicate();
+    buffer.position(offsetOf(address));
+    buffer.put(value);
+    return address;
+  }
+
+  /** Returns a copy of the {@code length} bytes stored at {@code address}. */
+  byte[] read(long address, int length) {
+    byte[] value = new byte[length];
+    ByteBuffer buffer = pageOf(address).duplicate();
+    buffer.position(offsetOf(address));
+    buffer.get(value);
+    return value;
+  }
+
+  /** Frees the {@code length} bytes stored at {@code address}, so that they may be reused. */
+  void free(long address, int length) {
+    int sizeClass = sizeClass(length);
+    if (sizeClass < 0) {
+      dropPage((int) (address >>> 32));
+    } else {
+      sizeClasses[sizeClass].free(address);
+    }
+  }
+
+  /** Returns the number of bytes of direct memory held by this allocator. */
+  synchronized long reservedBytes() {
+    return reservedBytes;
+  }
+
+  ByteBuffer pageOf(long address) {
+    return pages[(int) (address >>> 32)];
+  }
+
+  static int offsetOf(long address) {
+    return (int) address;
+  }
+
+  /** Allocates a page of {@code size} bytes, returning its index. */
+  synchronized int newPage(int size) {
+    ByteBuffer page = ByteBuffer.allocateDirect(size);
+    reservedBytes += size;
+
+    int index;
+    if (!freePageIndexes.isEmpty()) {
+      index = freePageIndexes.pop();
+    } else {
+      index = pageCount++;
+    }
+    ByteBuffer[] pages = this.pages;
+    if (index == pages.length) {
+      pages = Arrays.copyOf(pages, 2 * pages.length);
+    }
+    pages[index] = page;
+    this.pages = pages; // write-volatile
+    return index;
+  }
+
+  synchronized void dropPage(int index) {
+    ByteBuffer[] pages = this.pages;
+    reservedBytes -= pages[index].capacity();
+    pages[index] = null;
+    freePageIndexes.push(index);
+    this.pages = pages; // write-volatile
+  }
+
+  /** Slots of a single size, allocated from shared pages. */
+  final class SizeClass {
+    final int slotSize;
+
+    @GuardedBy("this")
+    final LongStack freeSlots = new LongStack();
+
+    /** The page currently being carved into slots, or -1 if there is none. */
+    @GuardedBy("this")
+    int page = -1;
+
+    @GuardedBy("this")
+    int nextOffset;
+
+    SizeClass(int slotSize) {
+      this.slotSize = slotSize;
+    }
+
+    synchronized long allocate() {
+      if (!freeSlots.isEmpty()) {
+        return freeSlots.pop();
+      }
+      if ((page < 0) || (nextOffset + slotSize > PAGE_SIZE)) {
+        page = newPage(PAGE_SIZE);
+        nextOffset = 0;
+      }
+      long address = (((long) page) << 32) | nextOffset;
+      nextOffset += slotSize;
+      return address;
+    }
+
+    synchronized void free(long address) {
+      freeSlots.push(address);
+    }
+  }
+
+  /** A growable stack of primitive longs. */
+  static final class LongStack {
+    long[] elements = new long[16];
+    int size;
+
+    boolean isEmpty() {
+      return size == 0;
+    }
+
+    void push(long element) {
+      if (size == elements.length) {
+        elements = Arrays.copyOf(elements, 2 * size);
+      }
+      elements[size++] = element;
+    }
+
+    long pop() {
+      return elements[--size];
+    }
+  }
+
+  /** A growable stack of primitive ints. */
+  static final class IntStack {
+    int[] elements = new int[4];
+    int size;
+
+    boolean isEmpty() {
+      return size == 0;
+    }
+
+    void push(int element) {
+      if (size == elements.length) {
+        elements = Arrays.copyOf(elements, 2 * size);
+      }
+      elements[size++] = element;
+    }
+
+    int pop() {
+      return elements[--size];
+    }
+  }
+}
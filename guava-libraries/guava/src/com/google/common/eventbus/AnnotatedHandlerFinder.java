@@ -16,6 +16,8 @@
 
 package com.google.common.eventbus;
 
+import static com.google.common.base.Preconditions.checkNotNull;
+
 import com.google.common.base.Objects;
 import com.google.common.base.Throwables;
 import com.google.common.cache.CacheBuilder;
@@ -60,6 +62,26 @@ class AnnotatedHandlerFinder implements HandlerFindingStrategy {
             }
           });
 
+  /** Strategy for calling the handler methods found by this finder. */
+  private final HandlerDispatchStrategy dispatcher;
+
+  /**
+   * Creates a finder whose handlers call their methods through invokers
+   * generated by a {@link GeneratedHandlerDispatcher}, or by reflection where
+   * no invoker can be generated.
+   */
+  AnnotatedHandlerFinder() {
+    this(new GeneratedHandlerDispatcher());
+  }
+
+  /**
+   * Creates a finder whose handlers call their methods using {@code
+   * dispatcher}.
+   */
+  AnnotatedHandlerFinder(HandlerDispatchStrategy dispatcher) {
+    this.dispatcher = checkNotNull(dispatcher);
+  }
+
   /**
    * {@inheritDoc}
    *
@@ -144,12 +166,13 @@ class AnnotatedHandlerFinder implements HandlerFindingStrategy {
    * @return an EventHandler that will call {@code method} on {@code listener}
    *         when invoked.
    */
-  private static EventHandler makeHandler(Object listener, Method method) {
+  private EventHandler makeHandler(Object listener, Method method) {
     EventHandler wrapper;
+    HandlerDispatchStrategy.Invoker invoker = dispatcher.invokerFor(method);
     if (methodIsDeclaredThreadSafe(method)) {
-      wrapper = new EventHandler(listener, method);
+      wrapper = new EventHandler(listener, method, invoker);
     } else {
-      wrapper = new SynchronizedEventHandler(listener, method);
+      wrapper = new SynchronizedEventHandler(listener, method, invoker);
     }
     return wrapper;
   }
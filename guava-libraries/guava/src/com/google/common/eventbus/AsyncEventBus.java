@@ -16,17 +16,39 @@
 
 package com.google.common.eventbus;
 
+import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 
 import com.google.common.annotations.Beta;
+import com.google.common.collect.MapMaker;
+import com.google.common.util.concurrent.Uninterruptibles;
 
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.annotation.Nullable;
 
 /**
  * An {@link EventBus} that takes the Executor of your choice and uses it to
  * dispatch events, allowing dispatch to occur asynchronously.
  *
+ * <p>By default, events are queued in a single unbounded queue, and each
+ * delivery of an event to a handler is a separate task for the executor.  An
+ * AsyncEventBus created with a queue capacity instead queues the events of
+ * each handler separately, in a queue of that capacity, and delivers them in
+ * batches: a task delivers the queued events of a handler one after the other,
+ * until the queue is empty.  Only one such task at a time delivers the events
+ * of a handler, unless the handler is marked with {@link
+ * AllowConcurrentEvents}, in which case more tasks are started as its queue
+ * fills, so that its events may be delivered concurrently.  When the queue of
+ * a handler is full, posting an event to it follows an {@link OverflowPolicy}.
+ *
  * @author Cliff Biffle
  * @since 10.0
  */
@@ -38,6 +60,67 @@ public class AsyncEventBus extends EventBus {
   private final ConcurrentLinkedQueue<EventWithHandler> eventsToDispatch =
       new ConcurrentLinkedQueue<EventWithHandler>();
 
+  /**
+   * The capacity of the queue of each handler, or 0 if the events of all
+   * handlers are queued in {@link #eventsToDispatch}.
+   */
+  private final int queueCapacity;
+  @Nullable private final OverflowPolicy overflowPolicy;
+
+  /**
+   * The queue of each handler, if {@link #queueCapacity} is positive. The keys
+   * are weak, and compared by identity, so that the queue of a handler which
+   * was unregistered is discarded once its events are delivered.
+   */
+  @Nullable private final ConcurrentMap<EventHandler, HandlerQueue> handlerQueues;
+
+  /**
+   * Logger for events dropped by {@link OverflowPolicy#DROP}; the same logger
+   * as that of the superclass, which is private to it.
+   */
+  private final Logger logger;
+
+  /**
+   * The number of queued events for which one more task draining the queue
+   * of a handler which accepts concurrent events is submitted.
+   */
+  private static final int CONCURRENT_DRAIN_BATCH_SIZE = 16;
+
+  /** The states of a {@link HandlerQueue}. */
+  private static final int IDLE = 0;
+  private static final int SCHEDULED = 1;
+  private static final int DRAINING = 2;
+
+  /**
+   * What to do with an event which is posted to a handler whose queue is full.
+   *
+   * @since 15.0
+   */
+  public enum OverflowPolicy {
+    /**
+     * The posting thread waits until the queue has room for the event.  A
+     * handler which posts events to itself with this policy can deadlock, as
+     * it can never make room.
+     */
+    BLOCK,
+
+    /**
+     * The event is discarded, for that handler only, and a warning is logged.
+     */
+    DROP,
+
+    /**
+     * The event is delivered to the handler by the posting thread, before
+     * {@link EventBus#post} returns.  Unless the handler is marked with
+     * {@link AllowConcurrentEvents}, the posting thread delivers the events
+     * waiting in its queue first, so that the handler still receives its
+     * events in order, and from one thread at a time; if another thread is
+     * delivering them at the time, the posting thread waits for it to make
+     * room in the queue instead.
+     */
+    CALLER_RUNS
+  }
+
   /**
    * Creates a new AsyncEventBus that will use {@code executor} to dispatch
    * events.  Assigns {@code identifier} as the bus's name for logging purposes.
@@ -50,6 +133,38 @@ public class AsyncEventBus extends EventBus {
   public AsyncEventBus(String identifier, Executor executor) {
     super(identifier);
     this.executor = checkNotNull(executor);
+    this.logger = logger(identifier);
+    this.queueCapacity = 0;
+    this.overflowPolicy = null;
+    this.handlerQueues = null;
+  }
+
+  /**
+   * Creates a new AsyncEventBus that will use {@code executor} to dispatch
+   * events in batches, from a queue of {@code queueCapacity} events for each
+   * handler.  Assigns {@code identifier} as the bus's name for logging
+   * purposes.
+   *
+   * @param identifier short name for the bus, for logging purposes.
+   * @param executor   Executor to use to dispatch events. It is the caller's
+   *        responsibility to shut down the executor after the last event has
+   *        been posted to this event bus.
+   * @param queueCapacity the maximum number of events waiting to be delivered
+   *        to each handler.
+   * @param overflowPolicy what to do with an event which is posted to a
+   *        handler whose queue is full.
+   * @throws IllegalArgumentException if {@code queueCapacity} is not positive
+   * @since 15.0
+   */
+  public AsyncEventBus(String identifier, Executor executor, int queueCapacity,
+      OverflowPolicy overflowPolicy) {
+    super(identifier);
+    checkArgument(queueCapacity > 0, "queueCapacity (%s) must be > 0", queueCapacity);
+    this.executor = checkNotNull(executor);
+    this.logger = logger(identifier);
+    this.queueCapacity = queueCapacity;
+    this.overflowPolicy = checkNotNull(overflowPolicy);
+    this.handlerQueues = new MapMaker().weakKeys().makeMap();
   }
 
   /**
@@ -62,11 +177,50 @@ public class AsyncEventBus extends EventBus {
    */
   public AsyncEventBus(Executor executor) {
     this.executor = checkNotNull(executor);
+    this.logger = logger("default");
+    this.queueCapacity = 0;
+    this.overflowPolicy = null;
+    this.handlerQueues = null;
+  }
+
+  /**
+   * Creates a new AsyncEventBus that will use {@code executor} to dispatch
+   * events in batches, from a queue of {@code queueCapacity} events for each
+   * handler.
+   *
+   * @param executor Executor to use to dispatch events. It is the caller's
+   *        responsibility to shut down the executor after the last event has
+   *        been posted to this event bus.
+   * @param queueCapacity the maximum number of events waiting to be delivered
+   *        to each handler.
+   * @param overflowPolicy what to do with an event which is posted to a
+   *        handler whose queue is full.
+   * @throws IllegalArgumentException if {@code queueCapacity} is not positive
+   * @since 15.0
+   */
+  public AsyncEventBus(Executor executor, int queueCapacity, OverflowPolicy overflowPolicy) {
+    this("default", executor, queueCapacity, overflowPolicy);
+  }
+
+  private static Logger logger(String identifier) {
+    return Logger.getLogger(EventBus.class.getName() + "." + identifier);
   }
 
   @Override
   void enqueueEvent(Object event, EventHandler handler) {
-    eventsToDispatch.offer(new EventWithHandler(event, handler));
+    if (handlerQueues == null) {
+      eventsToDispatch.offer(new EventWithHandler(event, handler));
+      return;
+    }
+    HandlerQueue queue = handlerQueues.get(handler);
+    if (queue == null) {
+      HandlerQueue newQueue = new HandlerQueue(handler);
+      queue = handlerQueues.putIfAbsent(handler, newQueue);
+      if (queue == null) {
+        queue = newQueue;
+      }
+    }
+    queue.enqueue(new EventWithHandler(event, handler));
   }
 
   /**
@@ -86,6 +240,213 @@ public class AsyncEventBus extends EventBus {
     }
   }
 
+  /**
+   * The bounded queue of events waiting to be delivered to one handler, which
+   * also serves as the task delivering them.
+   *
+   * <p>If the handler accepts concurrent events, tasks draining the queue are
+   * submitted to the {@link #executor} as it fills, one for each
+   * {@link #CONCURRENT_DRAIN_BATCH_SIZE} queued events, and run concurrently.
+   * Otherwise the queue is {@link #SCHEDULED} on the executor whenever it
+   * holds events and is {@link #IDLE}, and the thread delivering its events
+   * sets it to {@link #DRAINING} meanwhile, so that only one thread at a time
+   * does.
+   *
+   * <p>The queued pairs hold the handler, rather than the queue itself, as it
+   * is the value of the handler's weak key in {@link #handlerQueues}.
+   */
+  private final class HandlerQueue implements Runnable {
+    final BlockingQueue<EventWithHandler> events =
+        new ArrayBlockingQueue<EventWithHandler>(queueCapacity);
+    final boolean concurrent;
+    final AtomicInteger state = new AtomicInteger(IDLE);
+
+    /** The number of tasks draining the queue, if the handler accepts concurrent events. */
+    final AtomicInteger concurrentDrains = new AtomicInteger();
+
+    /** The thread delivering the queued events, while the queue is draining. */
+    @Nullable volatile Thread drainingThread;
+
+    HandlerQueue(EventHandler handler) {
+      this.concurrent = !(handler instanceof SynchronizedEventHandler);
+    }
+
+    void enqueue(EventWithHandler eventWithHandler) {
+      switch (overflowPolicy) {
+        case BLOCK:
+          Uninterruptibles.putUninterruptibly(events, eventWithHandler);
+          break;
+        case DROP:
+          if (!events.offer(eventWithHandler)) {
+            logger.log(Level.WARNING, "Dropped event: " + eventWithHandler.event
+                + " to handler " + eventWithHandler.handler + ", whose queue is full");
+            return;
+          }
+          break;
+        case CALLER_RUNS:
+          if (!events.offer(eventWithHandler)) {
+            if (concurrent) {
+              AsyncEventBus.super.dispatch(eventWithHandler.event, eventWithHandler.handler);
+              return;
+            }
+            enqueueOnCaller(eventWithHandler);
+          }
+          break;
+        default:
+          throw new AssertionError(overflowPolicy);
+      }
+      scheduleIfNeeded();
+    }
+
+    /**
+     * Queues an event for a handler which doesn't accept concurrent events,
+     * whose queue is full, by delivering queued events on the posting thread
+     * if no other thread is.
+     */
+    private void enqueueOnCaller(EventWithHandler eventWithHandler) {
+      while (!events.offer(eventWithHandler)) {
+        if (drainingThread == Thread.currentThread()) {
+          // The handler posted to itself; make room by delivering the oldest
+          // event now, as this thread is the one delivering them.
+          EventWithHandler oldest = events.poll();
+          AsyncEventBus.super.dispatch(oldest.event, oldest.handler);
+        } else if (state.compareAndSet(IDLE, DRAINING)
+            || state.compareAndSet(SCHEDULED, DRAINING)) {
+          // No thread is delivering the events, though a task may be about to;
+          // deliver them, and this one, here instead.
+          drain(eventWithHandler);
+          return;
+        } else {
+          // Another thread is delivering the events, and will make room.
+          Uninterruptibles.putUninterruptibly(events, eventWithHandler);
+          return;
+        }
+      }
+    }
+
+    void scheduleIfNeeded() {
+      if (concurrent) {
+        if (tryAddConcurrentDrain()) {
+          try {
+            executor.execute(this);
+          } catch (RuntimeException e) {
+            concurrentDrains.decrementAndGet();
+            throw e;
+          }
+        }
+      } else if (!events.isEmpty() && state.compareAndSet(IDLE, SCHEDULED)) {
+        try {
+          executor.execute(this);
+        } catch (RuntimeException e) {
+          state.compareAndSet(SCHEDULED, IDLE);
+          throw e;
+        }
+      }
+    }
+
+    /**
+     * Counts one more task draining the queue of a handler which accepts
+     * concurrent events, if the queued events are more than the tasks already
+     * draining it deliver in a batch.
+     */
+    private boolean tryAddConcurrentDrain() {
+      while (true) {
+        int drains = concurrentDrains.get();
+        int size = events.size();
+        if (size == 0 || drains > (size - 1) / CONCURRENT_DRAIN_BATCH_SIZE) {
+          return false;
+        }
+        if (concurrentDrains.compareAndSet(drains, drains + 1)) {
+          return true;
+        }
+      }
+    }
+
+    @Override
+    public void run() {
+      if (concurrent) {
+        drainConcurrently();
+      } else if (state.compareAndSet(SCHEDULED, DRAINING)) {
+        drain(null);
+      }
+      // Otherwise a posting thread claimed the queue, and delivers its events.
+    }
+
+    /**
+     * Delivers the queued events until the queue is empty, alongside any other
+     * task doing the same, for a handler which accepts concurrent events.
+     */
+    private void drainConcurrently() {
+      boolean completedNormally = false;
+      try {
+        do {
+          EventWithHandler eventWithHandler;
+          while ((eventWithHandler = events.poll()) != null) {
+            AsyncEventBus.super.dispatch(eventWithHandler.event, eventWithHandler.handler);
+          }
+          concurrentDrains.decrementAndGet();
+          // An event queued after our last poll() may have seen that we were
+          // still draining, so check for it after we stop counting.
+        } while (tryAddConcurrentDrain());
+        completedNormally = true;
+      } finally {
+        if (!completedNormally) {
+          // A handler threw an Error; let another task deliver the rest.
+          concurrentDrains.decrementAndGet();
+          scheduleIfNeeded();
+        }
+      }
+    }
+
+    /**
+     * Delivers the queued events until the queue is empty, from the current
+     * thread, which has set the queue to {@link #DRAINING}.  The events which
+     * are queued meanwhile are delivered by this thread too, rather than by a
+     * new task, so that no task is submitted after the last event is posted,
+     * when the executor may have been shut down.
+     *
+     * @param pending an event to queue once there is room for it, or null
+     */
+    private void drain(@Nullable EventWithHandler pending) {
+      Thread currentThread = Thread.currentThread();
+      boolean completedNormally = false;
+      try {
+        do {
+          drainingThread = currentThread;
+          EventWithHandler eventWithHandler;
+          while ((eventWithHandler = events.poll()) != null || pending != null) {
+            if (eventWithHandler == null) {
+              // The queue was emptied before there was room for the pending
+              // event, so it is the next one.
+              eventWithHandler = pending;
+              pending = null;
+            } else if (pending != null && events.offer(pending)) {
+              pending = null;
+            }
+            AsyncEventBus.super.dispatch(eventWithHandler.event, eventWithHandler.handler);
+          }
+          drainingThread = null;
+          state.set(IDLE);
+          // An event queued after our last poll() may have seen that we were
+          // still draining, so check for it after releasing the queue.
+        } while (!events.isEmpty() && state.compareAndSet(IDLE, DRAINING));
+        completedNormally = true;
+      } finally {
+        if (!completedNormally) {
+          // A handler threw an Error; let another task deliver the rest,
+          // including the pending event if it wasn't queued yet.
+          drainingThread = null;
+          state.set(IDLE);
+          scheduleIfNeeded();
+          if (pending != null) {
+            Uninterruptibles.putUninterruptibly(events, pending);
+            scheduleIfNeeded();
+          }
+        }
+      }
+    }
+  }
+
   /**
    * Calls the {@link #executor} to dispatch {@code event} to {@code handler}.
    */
@@ -24,9 +24,12 @@ import com.google.common.base.Throwables;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
 import com.google.common.cache.LoadingCache;
-import com.google.common.collect.HashMultimap;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.MapMaker;
+import com.google.common.collect.Maps;
 import com.google.common.collect.Multimap;
-import com.google.common.collect.SetMultimap;
+import com.google.common.collect.Sets;
 import com.google.common.reflect.TypeToken;
 import com.google.common.util.concurrent.UncheckedExecutionException;
 
@@ -36,8 +39,7 @@ import java.util.LinkedList;
 import java.util.Map.Entry;
 import java.util.Queue;
 import java.util.Set;
-import java.util.concurrent.locks.ReadWriteLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.ConcurrentMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -131,12 +133,23 @@ public class EventBus {
   /**
    * All registered event handlers, indexed by event type.
    *
-   * <p>This SetMultimap is NOT safe for concurrent use; all access should be
-   * made after acquiring a read or write lock via {@link #handlersByTypeLock}.
+   * <p>Each set is an immutable snapshot, which is replaced by a copy, while
+   * holding {@link #registrationLock}, when handlers are registered or
+   * unregistered.  This lets {@link #post} read the handlers without locking.
    */
-  private final SetMultimap<Class<?>, EventHandler> handlersByType =
-      HashMultimap.create();
-  private final ReadWriteLock handlersByTypeLock = new ReentrantReadWriteLock();
+  private final ConcurrentMap<Class<?>, ImmutableSet<EventHandler>> handlersByType =
+      Maps.newConcurrentMap();
+  private final Object registrationLock = new Object();
+
+  /**
+   * The handlers for each class of event posted since the handlers last
+   * changed, including the handlers for all of its supertypes.  Registering or
+   * unregistering handlers replaces it with an empty map, so that a value
+   * computed concurrently from the old handlers can only be stored in the map
+   * which is discarded.
+   */
+  private volatile ConcurrentMap<Class<?>, ImmutableList<EventHandler>> handlersByEventClass =
+      newHandlersByEventClass();
 
   /**
    * Logger for event dispatch failures.  Named by the fully-qualified name of
@@ -147,7 +160,8 @@ public class EventBus {
   /**
    * Strategy for finding handler methods in registered objects.  Currently,
    * only the {@link AnnotatedHandlerFinder} is supported, but this is
-   * encapsulated for future expansion.
+   * encapsulated for future expansion.  Its handlers call their methods with
+   * the invokers of a {@link GeneratedHandlerDispatcher}.
    */
   private final HandlerFindingStrategy finder = new AnnotatedHandlerFinder();
 
@@ -195,11 +209,18 @@ public class EventBus {
   public void register(Object object) {
     Multimap<Class<?>, EventHandler> methodsInListener =
         finder.findAllHandlers(object);
-    handlersByTypeLock.writeLock().lock();
-    try {
-      handlersByType.putAll(methodsInListener);
-    } finally {
-      handlersByTypeLock.writeLock().unlock();
+    synchronized (registrationLock) {
+      for (Entry<Class<?>, Collection<EventHandler>> entry : methodsInListener.asMap().entrySet()) {
+        Class<?> eventType = entry.getKey();
+        ImmutableSet<EventHandler> currentHandlers = handlersByType.get(eventType);
+        handlersByType.put(eventType, currentHandlers == null
+            ? ImmutableSet.copyOf(entry.getValue())
+            : ImmutableSet.<EventHandler>builder()
+                .addAll(currentHandlers)
+                .addAll(entry.getValue())
+                .build());
+      }
+      handlersByEventClass = newHandlersByEventClass();
     }
   }
 
@@ -211,21 +232,25 @@ public class EventBus {
    */
   public void unregister(Object object) {
     Multimap<Class<?>, EventHandler> methodsInListener = finder.findAllHandlers(object);
-    for (Entry<Class<?>, Collection<EventHandler>> entry : methodsInListener.asMap().entrySet()) {
-      Class<?> eventType = entry.getKey();
-      Collection<EventHandler> eventMethodsInListener = entry.getValue();
-
-      handlersByTypeLock.writeLock().lock();
-      try {
-        Set<EventHandler> currentHandlers = handlersByType.get(eventType);
-        if (!currentHandlers.containsAll(eventMethodsInListener)) {
+    synchronized (registrationLock) {
+      for (Entry<Class<?>, Collection<EventHandler>> entry : methodsInListener.asMap().entrySet()) {
+        ImmutableSet<EventHandler> currentHandlers = handlersByType.get(entry.getKey());
+        if (currentHandlers == null || !currentHandlers.containsAll(entry.getValue())) {
           throw new IllegalArgumentException(
               "missing event handler for an annotated method. Is " + object + " registered?");
         }
-        currentHandlers.removeAll(eventMethodsInListener);
-      } finally {
-        handlersByTypeLock.writeLock().unlock();
       }
+      for (Entry<Class<?>, Collection<EventHandler>> entry : methodsInListener.asMap().entrySet()) {
+        Class<?> eventType = entry.getKey();
+        ImmutableSet<EventHandler> remainingHandlers = ImmutableSet.copyOf(
+            Sets.difference(handlersByType.get(eventType), ImmutableSet.copyOf(entry.getValue())));
+        if (remainingHandlers.isEmpty()) {
+          handlersByType.remove(eventType);
+        } else {
+          handlersByType.put(eventType, remainingHandlers);
+        }
+      }
+      handlersByEventClass = newHandlersByEventClass();
     }
   }
 
@@ -241,32 +266,50 @@ public class EventBus {
    * @param event  event to post.
    */
   public void post(Object event) {
-    Set<Class<?>> dispatchTypes = flattenHierarchy(event.getClass());
+    ImmutableList<EventHandler> wrappers = handlersFor(event.getClass());
 
-    boolean dispatched = false;
-    for (Class<?> eventType : dispatchTypes) {
-      handlersByTypeLock.readLock().lock();
-      try {
-        Set<EventHandler> wrappers = handlersByType.get(eventType);
-
-        if (!wrappers.isEmpty()) {
-          dispatched = true;
-          for (EventHandler wrapper : wrappers) {
-            enqueueEvent(event, wrapper);
-          }
-        }
-      } finally {
-        handlersByTypeLock.readLock().unlock();
-      }
+    for (int i = 0; i < wrappers.size(); i++) {
+      enqueueEvent(event, wrappers.get(i));
     }
 
-    if (!dispatched && !(event instanceof DeadEvent)) {
+    if (wrappers.isEmpty() && !(event instanceof DeadEvent)) {
       post(new DeadEvent(this, event));
     }
 
     dispatchQueuedEvents();
   }
 
+  /**
+   * Returns the handlers for events of class {@code eventClass}: those for
+   * each of the types in its hierarchy.
+   */
+  private ImmutableList<EventHandler> handlersFor(Class<?> eventClass) {
+    ConcurrentMap<Class<?>, ImmutableList<EventHandler>> cache = handlersByEventClass;
+    ImmutableList<EventHandler> wrappers = cache.get(eventClass);
+    if (wrappers == null) {
+      ImmutableList.Builder<EventHandler> builder = ImmutableList.builder();
+      for (Class<?> eventType : flattenHierarchy(eventClass)) {
+        ImmutableSet<EventHandler> handlers = handlersByType.get(eventType);
+        if (handlers != null) {
+          builder.addAll(handlers);
+        }
+      }
+      wrappers = builder.build();
+      // Racing threads compute equal lists, so it doesn't matter which one wins.
+      cache.put(eventClass, wrappers);
+    }
+    return wrappers;
+  }
+
+  /**
+   * Returns an empty cache for {@link #handlersByEventClass}.  Like
+   * {@link #flattenHierarchyCache}, it has weak keys, so that it doesn't keep
+   * event classes from being unloaded.
+   */
+  private static ConcurrentMap<Class<?>, ImmutableList<EventHandler>> newHandlersByEventClass() {
+    return new MapMaker().weakKeys().makeMap();
+  }
+
   /**
    * Queue the {@code event} for dispatch during
    * {@link #dispatchQueuedEvents()}. Events are queued in-order of occurrence
@@ -43,20 +43,38 @@ class EventHandler {
   private final Object target;
   /** Handler method. */
   private final Method method;
+  /** Calls the handler method. */
+  private final HandlerDispatchStrategy.Invoker invoker;
 
   /**
-   * Creates a new EventHandler to wrap {@code method} on @{code target}.
+   * Creates a new EventHandler to wrap {@code method} on @{code target}, and
+   * to call it by reflection.
    *
    * @param target  object to which the method applies.
    * @param method  handler method.
    */
   EventHandler(Object target, Method method) {
+    this(target, method, new ReflectiveHandlerDispatcher().invokerFor(
+        Preconditions.checkNotNull(method, "EventHandler method cannot be null.")));
+  }
+
+  /**
+   * Creates a new EventHandler to wrap {@code method} on @{code target}, and
+   * to call it with {@code invoker}.
+   *
+   * @param target  object to which the method applies.
+   * @param method  handler method.
+   * @param invoker  invoker of {@code method}, returned by a
+   *     {@link HandlerDispatchStrategy}.
+   */
+  EventHandler(Object target, Method method, HandlerDispatchStrategy.Invoker invoker) {
     Preconditions.checkNotNull(target,
         "EventHandler target cannot be null.");
     Preconditions.checkNotNull(method, "EventHandler method cannot be null.");
 
     this.target = target;
     this.method = method;
+    this.invoker = Preconditions.checkNotNull(invoker);
     method.setAccessible(true);
   }
 
@@ -71,11 +89,9 @@ class EventHandler {
   public void handleEvent(Object event) throws InvocationTargetException {
     checkNotNull(event);
     try {
-      method.invoke(target, new Object[] { event });
+      invoker.invoke(target, event);
     } catch (IllegalArgumentException e) {
       throw new Error("Method rejected target/argument: " + event, e);
-    } catch (IllegalAccessException e) {
-      throw new Error("Method became inaccessible: " + event, e);
     } catch (InvocationTargetException e) {
       if (e.getCause() instanceof Error) {
         throw (Error) e.getCause();
@@ -0,0 +1,446 @@
+/*
+ * Copyright (C) 2013 The Guava Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.common.eventbus;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Throwables;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A {@link HandlerDispatchStrategy} which calls handler methods directly, from
+ * a small class generated for each handler method, instead of by reflection.
+ * The invoker generated for a method {@code void handle(Event)} of a class
+ * {@code Foo} is equivalent to:
+ *
+ * <pre>   {@code
+ *   public final class Foo$$EventHandlerInvoker$1 implements Invoker {
+ *     public void invoke(Object target, Object event)
+ *         throws InvocationTargetException {
+ *       Foo foo;
+ *       Event e;
+ *       try {
+ *         foo = (Foo) target;
+ *         e = (Event) event;
+ *       } catch (ClassCastException cce) {
+ *         throw new IllegalArgumentException(cce);
+ *       }
+ *       try {
+ *         foo.handle(e);
+ *       } catch (Throwable t) {
+ *         throw new InvocationTargetException(t);
+ *       }
+ *     }
+ *   }}</pre>
+ *
+ * <p>The invokers of methods of classes loaded by the same class loader are
+ * defined in a class loader of their own, whose parent is that class loader,
+ * so they can only call public instance methods of public classes, which
+ * accept a public class of events.  Other handler methods, and all of them if
+ * classes can't be defined (for example because a security manager forbids
+ * creating class loaders), are called by reflection instead.
+ */
+class GeneratedHandlerDispatcher implements HandlerDispatchStrategy {
+  private static final HandlerDispatchStrategy REFLECTIVE = new ReflectiveHandlerDispatcher();
+
+  /**
+   * A thread-safe cache of the invoker of each handler method. The cache is
+   * shared across all instances of this class, so that the invoker of a method
+   * is shared by the handlers calling it.  Its values are weak, so that it
+   * doesn't keep the class loaders of invoker classes, and through them the
+   * class loaders of handler classes, from being garbage collected.
+   */
+  private static final LoadingCache<Method, Invoker> invokerCache =
+      CacheBuilder.newBuilder()
+          .weakKeys()
+          .weakValues()
+          .build(new CacheLoader<Method, Invoker>() {
+            @Override
+            public Invoker load(Method method) {
+              if (canGenerateInvoker(method)) {
+                try {
+                  return generateInvoker(method);
+                } catch (LinkageError e) {
+                  // fall back to reflection
+                } catch (SecurityException e) {
+                  // fall back to reflection
+                } catch (InstantiationException e) {
+                  // fall back to reflection
+                } catch (IllegalAccessException e) {
+                  // fall back to reflection
+                }
+              }
+              return REFLECTIVE.invokerFor(method);
+            }
+          });
+
+  /**
+   * A thread-safe cache of the class loader defining the invoker classes of
+   * handler methods, by the class loader of their classes.  The values are
+   * weak, so a class loader is kept only while one of its invoker classes is
+   * in use.
+   */
+  private static final LoadingCache<ClassLoader, InvokerClassLoader> invokerClassLoaders =
+      CacheBuilder.newBuilder()
+          .weakKeys()
+          .weakValues()
+          .build(new CacheLoader<ClassLoader, InvokerClassLoader>() {
+            @Override
+            public InvokerClassLoader load(ClassLoader parent) {
+              return new InvokerClassLoader(parent);
+            }
+          });
+
+  private static final AtomicInteger invokerCount = new AtomicInteger();
+
+  @Override
+  public Invoker invokerFor(Method method) {
+    return invokerCache.getUnchecked(checkNotNull(method));
+  }
+
+  /**
+   * Returns whether a generated class can call {@code method}: a public
+   * instance method of a public class, accepting a single argument whose type
+   * is a public class, which excludes primitive types and arrays.
+   */
+  @VisibleForTesting
+  static boolean canGenerateInvoker(Method method) {
+    Class<?>[] parameterTypes = method.getParameterTypes();
+    if (parameterTypes.length != 1) {
+      return false;
+    }
+    Class<?> eventType = parameterTypes[0];
+    return Modifier.isPublic(method.getModifiers())
+        && !Modifier.isStatic(method.getModifiers())
+        && Modifier.isPublic(method.getDeclaringClass().getModifiers())
+        && Modifier.isPublic(eventType.getModifiers())
+        && !eventType.isPrimitive()
+        && !eventType.isArray();
+  }
+
+  private static Invoker generateInvoker(Method method)
+      throws InstantiationException, IllegalAccessException {
+    ClassLoader classLoader = method.getDeclaringClass().getClassLoader();
+    InvokerClassLoader invokerClassLoader;
+    if (classLoader == null) {
+      invokerClassLoader = new InvokerClassLoader(null); // the bootstrap class loader
+    } else {
+      try {
+        invokerClassLoader = invokerClassLoaders.getUnchecked(classLoader);
+      } catch (UncheckedExecutionException e) {
+        // thrown if a security manager forbids creating the class loader
+        Throwables.propagateIfInstanceOf(e.getCause(), SecurityException.class);
+        throw e;
+      }
+    }
+    return (Invoker) invokerClassLoader.invokerClass(method).newInstance();
+  }
+
+  /**
+   * A class loader which defines the invoker classes of handler methods whose
+   * classes share a class loader.  It resolves {@link Invoker} to the
+   * interface loaded with this class, and every other class through the class
+   * loader of the handler methods.
+   */
+  private static final class InvokerClassLoader extends ClassLoader {
+    /**
+     * The invoker class of each method, so that a method's class is only
+     * defined once, even if its invoker is garbage collected.
+     */
+    private final Map<Method, Class<?>> invokerClasses = Maps.newHashMap();
+
+    InvokerClassLoader(ClassLoader parent) {
+      super(parent);
+    }
+
+    synchronized Class<?> invokerClass(Method method) {
+      Class<?> invokerClass = invokerClasses.get(method);
+      if (invokerClass == null) {
+        String className = method.getDeclaringClass().getName()
+            + "$$EventHandlerInvoker$" + invokerCount.incrementAndGet();
+        byte[] classFile = new InvokerClassWriter(className, method).toByteArray();
+        invokerClass = defineClass(className, classFile, 0, classFile.length);
+        invokerClasses.put(method, invokerClass);
+      }
+      return invokerClass;
+    }
+
+    @Override
+    protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+      if (name.equals(Invoker.class.getName())) {
+        return Invoker.class;
+      }
+      return super.loadClass(name, resolve);
+    }
+  }
+
+  /**
+   * Writes the class file of an invoker, as specified by chapter 4 of the Java
+   * Virtual Machine Specification.  The class file version is 49 (Java 5), for
+   * which the code of methods needs no stack map frames.
+   */
+  private static final class InvokerClassWriter {
+    private static final int CLASS_FILE_MAGIC = 0xCAFEBABE;
+    private static final int CLASS_FILE_VERSION = 49;
+
+    private static final int ACC_PUBLIC = 0x0001;
+    private static final int ACC_FINAL = 0x0010;
+    private static final int ACC_SUPER = 0x0020;
+
+    private static final int CONSTANT_UTF8 = 1;
+    private static final int CONSTANT_CLASS = 7;
+    private static final int CONSTANT_METHODREF = 10;
+    private static final int CONSTANT_INTERFACE_METHODREF = 11;
+    private static final int CONSTANT_NAME_AND_TYPE = 12;
+
+    private static final int ALOAD_0 = 0x2a;
+    private static final int ALOAD_1 = 0x2b;
+    private static final int ALOAD_2 = 0x2c;
+    private static final int ALOAD_3 = 0x2d;
+    private static final int ASTORE_3 = 0x4e;
+    private static final int POP = 0x57;
+    private static final int POP2 = 0x58;
+    private static final int DUP = 0x59;
+    private static final int RETURN = 0xb1;
+    private static final int INVOKEVIRTUAL = 0xb6;
+    private static final int INVOKESPECIAL = 0xb7;
+    private static final int INVOKEINTERFACE = 0xb9;
+    private static final int NEW = 0xbb;
+    private static final int ATHROW = 0xbf;
+    private static final int CHECKCAST = 0xc0;
+
+    private final String className;
+    private final Method method;
+
+    private final ByteArrayOutputStream constantPoolBytes = new ByteArrayOutputStream();
+    private final DataOutputStream constantPool = new DataOutputStream(constantPoolBytes);
+    private int constantPoolCount = 1; // entry 0 is unused
+
+    InvokerClassWriter(String className, Method method) {
+      this.className = className;
+      this.method = method;
+    }
+
+    byte[] toByteArray() {
+      try {
+        return write();
+      } catch (IOException e) {
+        throw new AssertionError(e); // we only write to byte arrays
+      }
+    }
+
+    private byte[] write() throws IOException {
+      Class<?> declaringClass = method.getDeclaringClass();
+      Class<?> eventType = method.getParameterTypes()[0];
+      Class<?> returnType = method.getReturnType();
+
+      int thisClass = addClass(className);
+      int objectClass = addClass(Object.class.getName());
+      int invokerInterface = addClass(Invoker.class.getName());
+      int init = addUtf8("<init>");
+      int noArgsDescriptor = addUtf8("()V");
+      int objectInit = addMethodref(CONSTANT_METHODREF, objectClass, init, noArgsDescriptor);
+      int invoke = addUtf8("invoke");
+      int invokeDescriptor = addUtf8("(Ljava/lang/Object;Ljava/lang/Object;)V");
+      int targetClass = addClass(declaringClass.getName());
+      int eventClass = addClass(eventType.getName());
+      int handlerMethod = addMethodref(
+          declaringClass.isInterface() ? CONSTANT_INTERFACE_METHODREF : CONSTANT_METHODREF,
+          targetClass,
+          addUtf8(method.getName()),
+          addUtf8("(" + descriptor(eventType) + ")" + descriptor(returnType)));
+      int throwableInitDescriptor = addUtf8("(Ljava/lang/Throwable;)V");
+      int exceptionClass = addClass("java.lang.reflect.InvocationTargetException");
+      int exceptionInit =
+          addMethodref(CONSTANT_METHODREF, exceptionClass, init, throwableInitDescriptor);
+      int classCastClass = addClass(ClassCastException.class.getName());
+      int illegalArgumentClass = addClass(IllegalArgumentException.class.getName());
+      int illegalArgumentInit =
+          addMethodref(CONSTANT_METHODREF, illegalArgumentClass, init, throwableInitDescriptor);
+      int codeAttribute = addUtf8("Code");
+
+      // The constructor: super();
+      ByteArrayOutputStream initBytes = new ByteArrayOutputStream();
+      DataOutputStream initCode = new DataOutputStream(initBytes);
+      initCode.writeByte(ALOAD_0);
+      initCode.writeByte(INVOKESPECIAL);
+      initCode.writeShort(objectInit);
+      initCode.writeByte(RETURN);
+
+      // invoke(target, event): ((Target) target).handle((Event) event);
+      ByteArrayOutputStream invokeBytes = new ByteArrayOutputStream();
+      DataOutputStream invokeCode = new DataOutputStream(invokeBytes);
+      int castStart = invokeCode.size();
+      invokeCode.writeByte(ALOAD_1);
+      invokeCode.writeByte(CHECKCAST);
+      invokeCode.writeShort(targetClass);
+      invokeCode.writeByte(ALOAD_2);
+      invokeCode.writeByte(CHECKCAST);
+      invokeCode.writeShort(eventClass);
+      int tryStart = invokeCode.size();
+      if (declaringClass.isInterface()) {
+        invokeCode.writeByte(INVOKEINTERFACE);
+        invokeCode.writeShort(handlerMethod);
+        invokeCode.writeByte(2); // the target and the event
+        invokeCode.writeByte(0);
+      } else {
+        invokeCode.writeByte(INVOKEVIRTUAL);
+        invokeCode.writeShort(handlerMethod);
+      }
+      int tryEnd = invokeCode.size();
+      if (returnType == long.class || returnType == double.class) {
+        invokeCode.writeByte(POP2);
+      } else if (returnType != void.class) {
+        invokeCode.writeByte(POP);
+      }
+      invokeCode.writeByte(RETURN);
+      // catch (Throwable t) { throw new InvocationTargetException(t); }
+      int catchStart = invokeCode.size();
+      invokeCode.writeByte(ASTORE_3);
+      invokeCode.writeByte(NEW);
+      invokeCode.writeShort(exceptionClass);
+      invokeCode.writeByte(DUP);
+      invokeCode.writeByte(ALOAD_3);
+      invokeCode.writeByte(INVOKESPECIAL);
+      invokeCode.writeShort(exceptionInit);
+      invokeCode.writeByte(ATHROW);
+      // catch (ClassCastException e) { throw new IllegalArgumentException(e); }, as reflection
+      // would throw, around the casts
+      int castCatchStart = invokeCode.size();
+      invokeCode.writeByte(ASTORE_3);
+      invokeCode.writeByte(NEW);
+      invokeCode.writeShort(illegalArgumentClass);
+      invokeCode.writeByte(DUP);
+      invokeCode.writeByte(ALOAD_3);
+      invokeCode.writeByte(INVOKESPECIAL);
+      invokeCode.writeShort(illegalArgumentInit);
+      invokeCode.writeByte(ATHROW);
+
+      ByteArrayOutputStream classFileBytes = new ByteArrayOutputStream();
+      DataOutputStream out = new DataOutputStream(classFileBytes);
+      out.writeInt(CLASS_FILE_MAGIC);
+      out.writeShort(0); // minor version
+      out.writeShort(CLASS_FILE_VERSION);
+      out.writeShort(constantPoolCount);
+      constantPoolBytes.writeTo(out);
+      out.writeShort(ACC_PUBLIC | ACC_FINAL | ACC_SUPER);
+      out.writeShort(thisClass);
+      out.writeShort(objectClass);
+      out.writeShort(1); // interfaces
+      out.writeShort(invokerInterface);
+      out.writeShort(0); // fields
+      out.writeShort(2); // methods
+      writeMethod(out, init, noArgsDescriptor, codeAttribute, 1, 1, initBytes.toByteArray(),
+          new int[0]);
+      writeMethod(out, invoke, invokeDescriptor, codeAttribute, 4, 4, invokeBytes.toByteArray(),
+          new int[] {
+              castStart, tryStart, castCatchStart, classCastClass,
+              tryStart, tryEnd, catchStart, 0 /* any Throwable */});
+      out.writeShort(0); // attributes
+      return classFileBytes.toByteArray();
+    }
+
+    /**
+     * Writes a public method with the given code.  The exception table holds
+     * four entries for each exception handler: the start and end of the code
+     * it covers, the start of the handler, and the class it catches.
+     */
+    private static void writeMethod(DataOutputStream out, int name, int descriptor,
+        int codeAttribute, int maxStack, int maxLocals, byte[] code, int[] exceptionTable)
+        throws IOException {
+      out.writeShort(ACC_PUBLIC);
+      out.writeShort(name);
+      out.writeShort(descriptor);
+      out.writeShort(1); // attributes
+      out.writeShort(codeAttribute);
+      out.writeInt(2 + 2 + 4 + code.length + 2 + 2 * exceptionTable.length + 2);
+      out.writeShort(maxStack);
+      out.writeShort(maxLocals);
+      out.writeInt(code.length);
+      out.write(code);
+      out.writeShort(exceptionTable.length / 4);
+      for (int entry : exceptionTable) {
+        out.writeShort(entry);
+      }
+      out.writeShort(0); // attributes of the code
+    }
+
+    private int addUtf8(String value) throws IOException {
+      constantPool.writeByte(CONSTANT_UTF8);
+      constantPool.writeUTF(value);
+      return constantPoolCount++;
+    }
+
+    /** Adds a class, given its binary name, as returned by {@link Class#getName}. */
+    private int addClass(String binaryName) throws IOException {
+      int name = addUtf8(binaryName.replace('.', '/'));
+      constantPool.writeByte(CONSTANT_CLASS);
+      constantPool.writeShort(name);
+      return constantPoolCount++;
+    }
+
+    private int addMethodref(int tag, int owner, int name, int descriptor) throws IOException {
+      constantPool.writeByte(CONSTANT_NAME_AND_TYPE);
+      constantPool.writeShort(name);
+      constantPool.writeShort(descriptor);
+      int nameAndType = constantPoolCount++;
+      constantPool.writeByte(tag);
+      constantPool.writeShort(owner);
+      constantPool.writeShort(nameAndType);
+      return constantPoolCount++;
+    }
+
+    private static String descriptor(Class<?> type) {
+      if (type.isArray()) {
+        return type.getName().replace('.', '/');
+      } else if (!type.isPrimitive()) {
+        return "L" + type.getName().replace('.', '/') + ";";
+      } else if (type == void.class) {
+        return "V";
+      } else if (type == boolean.class) {
+        return "Z";
+      } else if (type == byte.class) {
+        return "B";
+      } else if (type == char.class) {
+        return "C";
+      } else if (type == short.class) {
+        return "S";
+      } else if (type == int.class) {
+        return "I";
+      } else if (type == long.class) {
+        return "J";
+      } else if (type == float.class) {
+        return "F";
+      } else {
+        return "D";
+      }
+    }
+  }
+}
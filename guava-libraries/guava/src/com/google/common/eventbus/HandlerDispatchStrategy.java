@@ -0,0 +1,52 @@
+/*
+ * Copyright (C) 2013 The Guava Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.common.eventbus;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
+/**
+ * A method for calling event handler methods, for use by {@link EventHandler}.
+ */
+interface HandlerDispatchStrategy {
+
+  /**
+   * Returns an {@code Invoker} which calls {@code method}.
+   *
+   * @param method  a handler method, which accepts a single argument.
+   */
+  Invoker invokerFor(Method method);
+
+  /**
+   * Calls a handler method on a target object.
+   *
+   * <p>This interface is public, although it is nested in a package-private
+   * interface, so that it can be implemented by invoker classes which
+   * {@link GeneratedHandlerDispatcher} defines in other class loaders.
+   */
+  public interface Invoker {
+    /**
+     * Calls the handler method on {@code target}, passing it {@code event}.
+     *
+     * @throws IllegalArgumentException  if {@code target} is not an instance
+     *     of the class declaring the handler method, or {@code event} is not
+     *     an instance of its parameter type.
+     * @throws InvocationTargetException  if the handler method throws any
+     *     {@link Throwable}.
+     */
+    void invoke(Object target, Object event) throws InvocationTargetException;
+  }
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright (C) 2013 The Guava Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.common.eventbus;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
+/**
+ * A {@link HandlerDispatchStrategy} which calls handler methods by reflection,
+ * using {@link Method#invoke}.
+ */
+class ReflectiveHandlerDispatcher implements HandlerDispatchStrategy {
+
+  @Override
+  public Invoker invokerFor(Method method) {
+    return new ReflectiveInvoker(method);
+  }
+
+  private static final class ReflectiveInvoker implements Invoker {
+    private final Method method;
+
+    ReflectiveInvoker(Method method) {
+      this.method = checkNotNull(method);
+      method.setAccessible(true);
+    }
+
+    @Override
+    public void invoke(Object target, Object event) throws InvocationTargetException {
+      try {
+        method.invoke(target, new Object[] { event });
+      } catch (IllegalAccessException e) {
+        throw new Error("Method became inaccessible: " + event, e);
+      }
+    }
+
+    @Override public String toString() {
+      return "[reflective invoker " + method + "]";
+    }
+  }
+}
@@ -40,6 +40,19 @@ final class SynchronizedEventHandler extends EventHandler {
     super(target, method);
   }
 
+  /**
+   * Creates a new SynchronizedEventHandler to wrap {@code method} on
+   * {@code target}, and to call it with {@code invoker}.
+   *
+   * @param target  object to which the method applies.
+   * @param method  handler method.
+   * @param invoker  invoker of {@code method}.
+   */
+  SynchronizedEventHandler(
+      Object target, Method method, HandlerDispatchStrategy.Invoker invoker) {
+    super(target, method, invoker);
+  }
+
   @Override
   public void handleEvent(Object event) throws InvocationTargetException {
     // https://code.google.com/p/guava-libraries/issues/detail?id=1403
@@ -22,8 +22,17 @@ import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Objects;
 import com.google.common.base.Predicate;
 import com.google.common.hash.BloomFilterStrategies.BitArray;
-
+import com.google.common.hash.BloomFilterStrategies.ReadableBits;
+import com.google.common.hash.BloomFilterStrategies.WritableBits;
+import com.google.common.math.LongMath;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.Serializable;
+import java.math.RoundingMode;
 
 import javax.annotation.Nullable;
 
@@ -60,14 +69,14 @@ public final class BloomFilter<T> implements Predicate<T>, Serializable {
      *
      * <p>Returns whether any bits changed as a result of this operation.
      */
-    <T> boolean put(T object, Funnel<? super T> funnel, int numHashFunctions, BitArray bits);
+    <T> boolean put(T object, Funnel<? super T> funnel, int numHashFunctions, WritableBits bits);
 
     /**
      * Queries {@code numHashFunctions} bits of the given bit array, by hashing a user element;
      * returns {@code true} if and only if all selected bits are set.
      */
     <T> boolean mightContain(
-        T object, Funnel<? super T> funnel, int numHashFunctions, BitArray bits);
+        T object, Funnel<? super T> funnel, int numHashFunctions, ReadableBits bits);
 
     /**
      * Identifier used to encode this strategy, when marshalled as part of a BloomFilter.
@@ -79,6 +88,56 @@ public final class BloomFilter<T> implements Predicate<T>, Serializable {
     int ordinal();
   }
 
+  /**
+   * How a {@code BloomFilter} lays out the bits it sets for each element, trading false positive
+   * probability against memory access cost.
+   *
+   * @since 15.0
+   */
+  @Beta
+  public enum Layout {
+    /**
+     * The bits for an element are spread across the whole bit array. This gives the lowest false
+     * positive probability for a given size, but a query on a filter larger than the processor
+     * caches may need one memory access per hash function. This is the default.
+     */
+    SPREAD(BloomFilterStrategies.MURMUR128_MITZ_32),
+
+    /**
+     * The bits for an element are all set within a single 64-byte block, the size of a cache
+     * line on most processors, so that a query needs at most one memory access. For the same
+     * size and number of insertions, the false positive probability is somewhat higher than with
+     * {@link #SPREAD}, increasingly so for low probabilities: about 1.1 times as high at 3%, and
+     * 1.6 times as high at 0.1%.
+     */
+    BLOCKED(BloomFilterStrategies.MURMUR128_BLOCKED_64) {
+      @Override long roundNumOfBits(long numBits) {
+        return LongMath.divide(numBits, BloomFilterStrategies.BLOCK_BITS, RoundingMode.CEILING)
+            * BloomFilterStrategies.BLOCK_BITS;
+      }
+    };
+
+    final Strategy strategy;
+
+    Layout(Strategy strategy) {
+      this.strategy = strategy;
+    }
+
+    /** Rounds the optimal number of bits for a filter up to a size that this layout supports. */
+    long roundNumOfBits(long numBits) {
+      return numBits;
+    }
+  }
+
+  /** The version of the format written by {@link #writeTo}. */
+  static final byte FORMAT_VERSION = 1;
+
+  /**
+   * The length in bytes of the header written by {@link #writeTo}, which keeps the bit array that
+   * follows it aligned to a multiple of eight bytes.
+   */
+  static final int HEADER_BYTES = 8;
+
   /** The bit set of the BloomFilter (not necessarily power of 2!)*/
   private final BitArray bits;
 
@@ -96,7 +155,7 @@ public final class BloomFilter<T> implements Predicate<T>, Serializable {
   /**
    * Creates a BloomFilter.
    */
-  private BloomFilter(BitArray bits, int numHashFunctions, Funnel<T> funnel,
+  BloomFilter(BitArray bits, int numHashFunctions, Funnel<T> funnel,
       Strategy strategy) {
     checkArgument(numHashFunctions > 0,
         "numHashFunctions (%s) must be > 0", numHashFunctions);
@@ -269,7 +328,30 @@ public final class BloomFilter<T> implements Predicate<T>, Serializable {
    */
   public static <T> BloomFilter<T> create(
       Funnel<T> funnel, int expectedInsertions /* n */, double fpp) {
+    return create(funnel, expectedInsertions, fpp, Layout.SPREAD);
+  }
+
+  /**
+   * Creates a {@link BloomFilter BloomFilter<T>} with the expected number of insertions and
+   * expected false positive probability, which lays out its bits as specified by {@code layout}.
+   * With {@link Layout#SPREAD}, this is equivalent to {@link #create(Funnel, int, double)}.
+   *
+   * <p>With {@link Layout#BLOCKED}, the filter is sized as for {@code SPREAD}, rounded up to a
+   * whole number of blocks, so that its actual false positive probability will be somewhat higher
+   * than {@code fpp}; pass a lower {@code fpp} to compensate.
+   *
+   * @param funnel the funnel of T's that the constructed {@code BloomFilter<T>} will use
+   * @param expectedInsertions the number of expected insertions to the constructed
+   *     {@code BloomFilter<T>}; must be positive
+   * @param fpp the desired false positive probability (must be positive and less than 1.0)
+   * @param layout how the constructed {@code BloomFilter<T>} lays out its bits
+   * @return a {@code BloomFilter}
+   * @since 15.0
+   */
+  public static <T> BloomFilter<T> create(
+      Funnel<T> funnel, int expectedInsertions /* n */, double fpp, Layout layout) {
     checkNotNull(funnel);
+    checkNotNull(layout);
     checkArgument(expectedInsertions >= 0, "Expected insertions (%s) must be >= 0",
         expectedInsertions);
     checkArgument(fpp > 0.0, "False positive probability (%s) must be > 0.0", fpp);
@@ -285,9 +367,9 @@ public final class BloomFilter<T> implements Predicate<T>, Serializable {
      */
     long numBits = optimalNumOfBits(expectedInsertions, fpp);
     int numHashFunctions = optimalNumOfHashFunctions(expectedInsertions, numBits);
+    numBits = layout.roundNumOfBits(numBits);
     try {
-      return new BloomFilter<T>(new BitArray(numBits), numHashFunctions, funnel,
-          BloomFilterStrategies.MURMUR128_MITZ_32);
+      return new BloomFilter<T>(new BitArray(numBits), numHashFunctions, funnel, layout.strategy);
     } catch (IllegalArgumentException e) {
       throw new IllegalArgumentException("Could not create BloomFilter of " + numBits + " bits", e);
     }
@@ -358,6 +440,102 @@ public final class BloomFilter<T> implements Predicate<T>, Serializable {
     return (long) (-n * Math.log(p) / (Math.log(2) * Math.log(2)));
   }
 
+  /**
+   * Writes this {@code BloomFilter} to an output stream, in a compact binary format which is
+   * independent of Java serialization and of the funnel. The format consists of:
+   *
+   * <ul>
+   * <li>one byte: the version of the format, currently 1
+   * <li>one byte: the strategy used to map elements to bits
+   * <li>one unsigned byte: the number of hash functions
+   * <li>one byte: reserved, currently 0
+   * <li>a big-endian {@code int}: the number of {@code long} words in the bit array
+   * <li>the words of the bit array, as big-endian {@code long} values
+   * </ul>
+   *
+   * <p>The header is eight bytes long, so that the bit array is aligned when the output is
+   * {@linkplain MappedBloomFilter#map mapped} into memory.
+   *
+   * <p>The stream is not closed, and is flushed but not otherwise buffered; wrap it in a {@link
+   * java.io.BufferedOutputStream} if needed.
+   *
+   * @param out the stream to write the Bloom filter to
+   * @throws IOException if an I/O error occurs
+   * @see #readFrom(InputStream, Funnel)
+   * @since 15.0
+   */
+  public void writeTo(OutputStream out) throws IOException {
+    DataOutputStream dout = new DataOutputStream(out);
+    dout.writeByte(FORMAT_VERSION);
+    dout.writeByte(strategy.ordinal());
+    dout.writeByte(numHashFunctions); // note: checked at construction to be at most 255
+    dout.writeByte(0);
+    dout.writeInt(bits.data.length);
+    for (long value : bits.data) {
+      dout.writeLong(value);
+    }
+    dout.flush();
+  }
+
+  /**
+   * Reads a {@code BloomFilter} written by {@link #writeTo(OutputStream)} from an input stream.
+   * The funnel must be equivalent to the one used by the filter that was written; this is not,
+   * and cannot be, checked.
+   *
+   * <p>Exactly the bytes of the Bloom filter are read, and the stream is not closed. The bits are
+   * read a {@code long} at a time, so an unbuffered stream, such as a {@link
+   * java.io.FileInputStream}, should be wrapped in a {@link java.io.BufferedInputStream}.
+   *
+   * @param in the stream to read the Bloom filter from
+   * @param funnel the funnel of T's that the read {@code BloomFilter<T>} will use
+   * @throws IOException if an I/O error occurs, or if the stream does not contain a Bloom filter
+   *     in a supported format
+   * @since 15.0
+   */
+  public static <T> BloomFilter<T> readFrom(InputStream in, Funnel<T> funnel) throws IOException {
+    checkNotNull(in);
+    checkNotNull(funnel);
+    DataInputStream din = new DataInputStream(in);
+    checkFormatVersion(din.readByte());
+    Strategy strategy = strategyForOrdinal(din.readByte());
+    int numHashFunctions = checkNumHashFunctions(din.readUnsignedByte());
+    din.readByte(); // reserved
+    long[] data = new long[checkDataLength(din.readInt())];
+    for (int i = 0; i < data.length; i++) {
+      data[i] = din.readLong();
+    }
+    return new BloomFilter<T>(new BitArray(data), numHashFunctions, funnel, strategy);
+  }
+
+  static void checkFormatVersion(byte version) throws IOException {
+    if (version != FORMAT_VERSION) {
+      throw new IOException("Unsupported BloomFilter format version: " + version);
+    }
+  }
+
+  static Strategy strategyForOrdinal(byte ordinal) throws IOException {
+    BloomFilterStrategies[] strategies = BloomFilterStrategies.values();
+    if (ordinal < 0 || ordinal >= strategies.length) {
+      throw new IOException("Unsupported BloomFilter strategy: " + ordinal);
+    }
+    return strategies[ordinal];
+  }
+
+  static int checkNumHashFunctions(int numHashFunctions) throws IOException {
+    if (numHashFunctions == 0) {
+      throw new IOException("Invalid BloomFilter number of hash functions: 0");
+    }
+    return numHashFunctions;
+  }
+
+  static int checkDataLength(int dataLength) throws IOException {
+    // bit indexes are ints, so the bit array can't be longer than this
+    if (dataLength <= 0 || dataLength > Integer.MAX_VALUE / Long.SIZE) {
+      throw new IOException("Invalid BloomFilter bit array length: " + dataLength);
+    }
+    return dataLength;
+  }
+
   private Object writeReplace() {
     return new SerialForm<T>(this);
   }
@@ -0,0 +1,167 @@
+/*
+ * Copyright (C) 2013 The Guava Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.common.hash;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.common.annotations.Beta;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Predicate;
+import com.google.common.hash.BloomFilter.Layout;
+import com.google.common.hash.BloomFilter.Strategy;
+import com.google.common.hash.BloomFilterStrategies.AtomicBitArray;
+
+/**
+ * A Bloom filter for instances of {@code T} which may be put into and queried by multiple threads
+ * concurrently, without locking. It behaves as a {@link BloomFilter} created with the same
+ * arguments, and an element put into it by one thread is visible to {@link #mightContain} in
+ * other threads as soon as {@link #put} returns.
+ *
+ * <p>Each bit is set with an atomic compare-and-swap of the word containing it, so that threads
+ * putting elements concurrently never lose each other's bits, and only retry when they set bits
+ * in the same word at the same moment. This makes {@code put} somewhat slower than that of a
+ * {@code BloomFilter} when used by a single thread, but avoids keeping a filter per thread and
+ * merging them with {@link BloomFilter#putAll}.
+ *
+ * <p>To serialize the filter, or to combine it with other filters, take a {@link #snapshot}.
+ *
+ * @param <T> the type of instances that the {@code ConcurrentBloomFilter} accepts
+ * @since 15.0
+ */
+@Beta
+public final class ConcurrentBloomFilter<T> implements Predicate<T> {
+  private final AtomicBitArray bits;
+  private final int numHashFunctions;
+  private final Funnel<T> funnel;
+  private final Strategy strategy;
+
+  private ConcurrentBloomFilter(
+      AtomicBitArray bits, int numHashFunctions, Funnel<T> funnel, Strategy strategy) {
+    this.bits = bits;
+    this.numHashFunctions = numHashFunctions;
+    this.funnel = funnel;
+    this.strategy = strategy;
+  }
+
+  /**
+   * Creates a {@link ConcurrentBloomFilter ConcurrentBloomFilter<T>} with the expected number of
+   * insertions and expected false positive probability. See {@link BloomFilter#create(Funnel, int,
+   * double)}.
+   *
+   * @param funnel the funnel of T's that the constructed {@code ConcurrentBloomFilter<T>} will use
+   * @param expectedInsertions the number of expected insertions to the constructed
+   *     {@code ConcurrentBloomFilter<T>}; must be positive
+   * @param fpp the desired false positive probability (must be positive and less than 1.0)
+   */
+  public static <T> ConcurrentBloomFilter<T> create(
+      Funnel<T> funnel, int expectedInsertions, double fpp) {
+    return create(funnel, expectedInsertions, fpp, Layout.SPREAD);
+  }
+
+  /**
+   * Creates a {@link ConcurrentBloomFilter ConcurrentBloomFilter<T>} with the expected number of
+   * insertions and expected false positive probability, which lays out its bits as specified by
+   * {@code layout}. See {@link BloomFilter#create(Funnel, int, double, Layout)}.
+   *
+   * @param funnel the funnel of T's that the constructed {@code ConcurrentBloomFilter<T>} will use
+   * @param expectedInsertions the number of expected insertions to the constructed
+   *     {@code ConcurrentBloomFilter<T>}; must be positive
+   * @param fpp the desired false positive probability (must be positive and less than 1.0)
+   * @param layout how the constructed {@code ConcurrentBloomFilter<T>} lays out its bits
+   */
+  public static <T> ConcurrentBloomFilter<T> create(
+      Funnel<T> funnel, int expectedInsertions, double fpp, Layout layout) {
+    checkNotNull(funnel);
+    checkNotNull(layout);
+    checkArgument(expectedInsertions >= 0, "Expected insertions (%s) must be >= 0",
+        expectedInsertions);
+    checkArgument(fpp > 0.0, "False positive probability (%s) must be > 0.0", fpp);
+    checkArgument(fpp < 1.0, "False positive probability (%s) must be < 1.0", fpp);
+    if (expectedInsertions == 0) {
+      expectedInsertions = 1;
+    }
+    long numBits = BloomFilter.optimalNumOfBits(expectedInsertions, fpp);
+    int numHashFunctions = BloomFilter.optimalNumOfHashFunctions(expectedInsertions, numBits);
+    checkArgument(numHashFunctions <= 255,
+        "numHashFunctions (%s) must be <= 255", numHashFunctions);
+    numBits = layout.roundNumOfBits(numBits);
+    try {
+      return new ConcurrentBloomFilter<T>(
+          new AtomicBitArray(numBits), numHashFunctions, funnel, layout.strategy);
+    } catch (IllegalArgumentException e) {
+      throw new IllegalArgumentException("Could not create BloomFilter of " + numBits + " bits", e);
+    }
+  }
+
+  /**
+   * Returns {@code true} if the element <i>might</i> have been put in this Bloom filter,
+   * {@code false} if this is <i>definitely</i> not the case.
+   */
+  public boolean mightContain(T object) {
+    return strategy.mightContain(object, funnel, numHashFunctions, bits);
+  }
+
+  /**
+   * Equivalent to {@link #mightContain}; provided only to satisfy the {@link Predicate} interface.
+   * When using a reference of type {@code ConcurrentBloomFilter}, always invoke {@link
+   * #mightContain} directly instead.
+   */
+  @Override public boolean apply(T input) {
+    return mightContain(input);
+  }
+
+  /**
+   * Puts an element into this {@code ConcurrentBloomFilter}. Ensures that subsequent invocations
+   * of {@link #mightContain(Object)} with the same element, in any thread, will always return
+   * {@code true}.
+   *
+   * @return true if this call changed any of the filter's bits, in which case this is
+   *     <i>definitely</i> the first time {@code object} has been added to the filter. When two
+   *     threads put the same new element at the same time, either or both may return true.
+   */
+  public boolean put(T object) {
+    return strategy.put(object, funnel, numHashFunctions, bits);
+  }
+
+  /**
+   * Returns the probability that {@linkplain #mightContain(Object)} will erroneously return
+   * {@code true} for an object that has not actually been put in the filter. While elements are
+   * being put concurrently, this may not yet account for all of them.
+   */
+  public double expectedFpp() {
+    return Math.pow((double) bits.bitCount() / bitSize(), numHashFunctions);
+  }
+
+  /**
+   * Returns a new {@link BloomFilter} containing the elements of this filter. The snapshot
+   * contains every element whose {@code put} completed before this method was called, and may
+   * contain some that are put concurrently with it. The snapshot is compatible with other
+   * snapshots of filters created with the same arguments, and with a {@code BloomFilter} created
+   * with the same arguments.
+   */
+  public BloomFilter<T> snapshot() {
+    return new BloomFilter<T>(bits.toBitArray(), numHashFunctions, funnel, strategy);
+  }
+
+  /**
+   * Returns the number of bits in the underlying bit array.
+   */
+  @VisibleForTesting long bitSize() {
+    return bits.bitSize();
+  }
+}
@@ -0,0 +1,256 @@
+/*
+ * Copyright (C) 2013 The Guava Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.common.hash;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.common.annotations.Beta;
+import com.google.common.annotations.VisibleForTesting;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A count-min sketch, which estimates how many times each instance of {@code T} has been added to
+ * it, in a fixed amount of memory however many distinct elements there are. See "An Improved Data
+ * Stream Summary: The Count-Min Sketch and its Applications" by Graham Cormode and S.
+ * Muthukrishnan.
+ *
+ * <p>The sketch is a table of {@code depth} rows of {@code width} counters. Each element is hashed
+ * with {@link Hashing#murmur3_128()} to one counter in each row, and its estimated count is the
+ * smallest of those counters. Estimates are never lower than the true count; with probability at
+ * least {@code 1 - delta}, an estimate exceeds the true count by at most {@code epsilon} times the
+ * {@linkplain #totalCount total} of all counts, where {@code width = ⌈e / epsilon⌉} and {@code
+ * depth = ⌈ln(1 / delta)⌉}.
+ *
+ * <p>Compared to a {@link com.google.common.collect.ConcurrentHashMultiset}, a sketch uses
+ * {@code 8 * width * depth} bytes from construction on, allocates nothing per distinct element
+ * (though hashing each element added or queried allocates a short-lived {@link Hasher}), and
+ * estimates the counts of frequent elements accurately; the counts of rare elements are
+ * overestimated by up to {@code epsilon * totalCount()}. It can't enumerate its elements; see
+ * {@link HeavyHitters} to track the most frequent ones.
+ *
+ * <p>There are two kinds of sketch:
+ *
+ * <ul>
+ * <li>{@link #create} returns a sketch which is not thread-safe, and applies <i>conservative
+ *     update</i>: adding an element raises only those of its counters which are below its new
+ *     estimated count, which noticeably reduces overestimation.
+ * <li>{@link #createConcurrent} returns a sketch which may be updated and queried by multiple
+ *     threads without locking. Each counter is incremented atomically; conservative update is not
+ *     used, since it can't be applied atomically to several counters.
+ * </ul>
+ *
+ * @param <T> the type of instances that the {@code CountMinSketch} counts
+ * @since 15.0
+ */
+@Beta
+public abstract class CountMinSketch<T> {
+  private final Funnel<T> funnel;
+  final int width;
+  final int depth;
+
+  CountMinSketch(Funnel<T> funnel, int width, int depth) {
+    this.funnel = funnel;
+    this.width = width;
+    this.depth = depth;
+  }
+
+  /**
+   * Creates a {@link CountMinSketch CountMinSketch<T>} which is not thread-safe, and uses
+   * conservative update.
+   *
+   * @param funnel the funnel of T's that the constructed {@code CountMinSketch<T>} will use
+   * @param epsilon the bound of the overestimate of a count, relative to the total of all counts
+   *     (must be positive and less than 1.0)
+   * @param delta the probability that an estimate exceeds the bound (must be positive and less
+   *     than 1.0)
+   */
+  public static <T> CountMinSketch<T> create(Funnel<T> funnel, double epsilon, double delta) {
+    checkNotNull(funnel);
+    return new ConservativeCountMinSketch<T>(funnel, width(epsilon), depth(delta));
+  }
+
+  /**
+   * Creates a {@link CountMinSketch CountMinSketch<T>} which may be updated and queried by
+   * multiple threads concurrently.
+   *
+   * @param funnel the funnel of T's that the constructed {@code CountMinSketch<T>} will use
+   * @param epsilon the bound of the overestimate of a count, relative to the total of all counts
+   *     (must be positive and less than 1.0)
+   * @param delta the probability that an estimate exceeds the bound (must be positive and less
+   *     than 1.0)
+   */
+  public static <T> CountMinSketch<T> createConcurrent(
+      Funnel<T> funnel, double epsilon, double delta) {
+    checkNotNull(funnel);
+    return new ConcurrentCountMinSketch<T>(funnel, width(epsilon), depth(delta));
+  }
+
+  @VisibleForTesting
+  static int width(double epsilon) {
+    checkArgument(epsilon > 0.0, "epsilon (%s) must be > 0.0", epsilon);
+    checkArgument(epsilon < 1.0, "epsilon (%s) must be < 1.0", epsilon);
+    double width = Math.ceil(Math.E / epsilon);
+    checkArgument(width <= Integer.MAX_VALUE, "epsilon (%s) is too small", epsilon);
+    return (int) width;
+  }
+
+  @VisibleForTesting
+  static int depth(double delta) {
+    checkArgument(delta > 0.0, "delta (%s) must be > 0.0", delta);
+    checkArgument(delta < 1.0, "delta (%s) must be < 1.0", delta);
+    return Math.max(1, (int) Math.ceil(Math.log(1 / delta)));
+  }
+
+  /**
+   * Adds one occurrence of an element to this sketch.
+   *
+   * @return the estimated count of the element after adding it
+   */
+  public long add(T element) {
+    return add(element, 1);
+  }
+
+  /**
+   * Adds a number of occurrences of an element to this sketch.
+   *
+   * @param occurrences the number of occurrences to add; may not be negative
+   * @return the estimated count of the element after adding them
+   */
+  public long add(T element, long occurrences) {
+    checkArgument(occurrences >= 0, "occurrences (%s) must be >= 0", occurrences);
+    return addHash(Hashing.murmur3_128().hashObject(element, funnel).asLong(), occurrences);
+  }
+
+  /**
+   * Returns an estimate of the number of occurrences of an element that have been added to this
+   * sketch. It is never lower than the actual number.
+   */
+  public long estimateCount(T element) {
+    return estimateCountOfHash(Hashing.murmur3_128().hashObject(element, funnel).asLong());
+  }
+
+  /**
+   * Returns the total number of occurrences of all elements that have been added to this sketch.
+   */
+  public abstract long totalCount();
+
+  /**
+   * Returns the bound of the overestimate of any count, with probability at least {@code 1 -
+   * delta}: {@code e / width} times the {@linkplain #totalCount total count}.
+   */
+  public long errorBound() {
+    return (long) Math.ceil(Math.E / width * totalCount());
+  }
+
+  abstract long addHash(long hash, long occurrences);
+
+  abstract long estimateCountOfHash(long hash);
+
+  /**
+   * Returns the index, within the table of counters, of the counter in {@code row} of an element
+   * with the given hash. Rows are indexed by combining two halves of the hash, as in {@link
+   * BloomFilterStrategies#MURMUR128_MITZ_32}.
+   */
+  final int index(long hash, int row) {
+    int hash1 = (int) hash;
+    int hash2 = (int) (hash >>> 32);
+    int combined = hash1 + row * hash2;
+    if (combined < 0) {
+      combined = ~combined;
+    }
+    return row * width + combined % width;
+  }
+
+  /** A sketch backed by a plain array, which uses conservative update. */
+  private static final class ConservativeCountMinSketch<T> extends CountMinSketch<T> {
+    final long[] counters;
+    long totalCount;
+
+    ConservativeCountMinSketch(Funnel<T> funnel, int width, int depth) {
+      super(funnel, width, depth);
+      checkArgument((long) width * depth <= Integer.MAX_VALUE,
+          "Sketch of %s by %s counters is too large", width, depth);
+      this.counters = new long[width * depth];
+    }
+
+    @Override long addHash(long hash, long occurrences) {
+      long estimate = estimateCountOfHash(hash) + occurrences;
+      for (int row = 0; row < depth; row++) {
+        int index = index(hash, row);
+        if (counters[index] < estimate) {
+          counters[index] = estimate;
+        }
+      }
+      totalCount += occurrences;
+      return estimate;
+    }
+
+    @Override long estimateCountOfHash(long hash) {
+      long estimate = Long.MAX_VALUE;
+      for (int row = 0; row < depth; row++) {
+        estimate = Math.min(estimate, counters[index(hash, row)]);
+      }
+      return estimate;
+    }
+
+    @Override public long totalCount() {
+      return totalCount;
+    }
+  }
+
+  /** A sketch backed by an atomic array, which may be updated and queried concurrently. */
+  private static final class ConcurrentCountMinSketch<T> extends CountMinSketch<T> {
+    final AtomicLongArray counters;
+
+    ConcurrentCountMinSketch(Funnel<T> funnel, int width, int depth) {
+      super(funnel, width, depth);
+      checkArgument((long) width * depth <= Integer.MAX_VALUE,
+          "Sketch of %s by %s counters is too large", width, depth);
+      this.counters = new AtomicLongArray(width * depth);
+    }
+
+    @Override long addHash(long hash, long occurrences) {
+      long estimate = Long.MAX_VALUE;
+      for (int row = 0; row < depth; row++) {
+        estimate = Math.min(estimate, counters.addAndGet(index(hash, row), occurrences));
+      }
+      return estimate;
+    }
+
+    @Override long estimateCountOfHash(long hash) {
+      long estimate = Long.MAX_VALUE;
+      for (int row = 0; row < depth; row++) {
+        estimate = Math.min(estimate, counters.get(index(hash, row)));
+      }
+      return estimate;
+    }
+
+    /**
+     * Every occurrence is added to exactly one counter of the first row, so their sum is the
+     * total count; it may miss occurrences being added concurrently.
+     */
+    @Override public long totalCount() {
+      long totalCount = 0;
+      for (int i = 0; i < width; i++) {
+        totalCount += counters.get(i);
+      }
+      return totalCount;
+    }
+  }
+}
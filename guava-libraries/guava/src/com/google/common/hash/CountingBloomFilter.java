@@ -0,0 +1,349 @@
+/*
+ * Copyright (C) 2013 The Guava Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.common.hash;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.common.annotations.Beta;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Objects;
+import com.google.common.base.Predicate;
+import com.google.common.hash.BloomFilter.Strategy;
+import com.google.common.hash.BloomFilterStrategies.WritableBits;
+import com.google.common.math.LongMath;
+import com.google.common.primitives.Ints;
+
+import java.io.Serializable;
+import java.math.RoundingMode;
+import java.util.Arrays;
+
+import javax.annotation.Nullable;
+
+/**
+ * A counting Bloom filter for instances of {@code T}: a Bloom filter from which elements may also
+ * be removed. Like a {@link BloomFilter}, it offers an approximate containment test with one-sided
+ * error, as long as only elements which were put into it are removed from it.
+ *
+ * <p>Each bit of a {@code BloomFilter} is replaced by a 4-bit counter, so that a counting Bloom
+ * filter created with the same arguments has the same false positive probability and uses four
+ * times as much memory. A counter which reaches 15 is never decremented again, since it is no
+ * longer known how many elements it counts. With the optimal number of hash functions and no more
+ * elements than expected, this is vanishingly unlikely; see "Summary Cache: A Scalable Wide-Area
+ * Web Cache Sharing Protocol" by Li Fan, Pei Cao, Jussara Almeida and Andrei Z. Broder.
+ *
+ * <p>Removing an element which was never put into the filter may cause later false negatives for
+ * other elements. {@link #remove} guards against the most common case, by not removing elements
+ * which the filter does not contain at all.
+ *
+ * @param <T> the type of instances that the {@code CountingBloomFilter} accepts
+ * @since 15.0
+ */
+@Beta
+public final class CountingBloomFilter<T> implements Predicate<T>, Serializable {
+  /** The counters of the filter, which the strategy treats as bits that are set when non-zero. */
+  private final CounterArray counters;
+
+  /** Number of hashes per element */
+  private final int numHashFunctions;
+
+  /** The funnel to translate Ts to bytes */
+  private final Funnel<T> funnel;
+
+  /** The strategy we employ to map an element T to {@code numHashFunctions} counter indexes. */
+  private final Strategy strategy;
+
+  private CountingBloomFilter(CounterArray counters, int numHashFunctions, Funnel<T> funnel,
+      Strategy strategy) {
+    checkArgument(numHashFunctions > 0,
+        "numHashFunctions (%s) must be > 0", numHashFunctions);
+    checkArgument(numHashFunctions <= 255,
+        "numHashFunctions (%s) must be <= 255", numHashFunctions);
+    this.counters = checkNotNull(counters);
+    this.numHashFunctions = numHashFunctions;
+    this.funnel = checkNotNull(funnel);
+    this.strategy = checkNotNull(strategy);
+  }
+
+  /**
+   * Creates a {@link CountingBloomFilter CountingBloomFilter<T>} with the expected number of
+   * insertions and expected false positive probability. It has as many counters as a {@link
+   * BloomFilter} created with the same arguments has bits.
+   *
+   * <p>The constructed {@code CountingBloomFilter<T>} will be serializable if the provided
+   * {@code Funnel<T>} is.
+   *
+   * @param funnel the funnel of T's that the constructed {@code CountingBloomFilter<T>} will use
+   * @param expectedInsertions the number of elements expected to be in the constructed
+   *     {@code CountingBloomFilter<T>} at any one time; must be positive
+   * @param fpp the desired false positive probability (must be positive and less than 1.0)
+   */
+  public static <T> CountingBloomFilter<T> create(
+      Funnel<T> funnel, int expectedInsertions, double fpp) {
+    checkNotNull(funnel);
+    checkArgument(expectedInsertions >= 0, "Expected insertions (%s) must be >= 0",
+        expectedInsertions);
+    checkArgument(fpp > 0.0, "False positive probability (%s) must be > 0.0", fpp);
+    checkArgument(fpp < 1.0, "False positive probability (%s) must be < 1.0", fpp);
+    if (expectedInsertions == 0) {
+      expectedInsertions = 1;
+    }
+    long numCounters = BloomFilter.optimalNumOfBits(expectedInsertions, fpp);
+    int numHashFunctions = BloomFilter.optimalNumOfHashFunctions(expectedInsertions, numCounters);
+    try {
+      return new CountingBloomFilter<T>(new CounterArray(numCounters), numHashFunctions, funnel,
+          BloomFilterStrategies.MURMUR128_MITZ_32);
+    } catch (IllegalArgumentException e) {
+      throw new IllegalArgumentException(
+          "Could not create CountingBloomFilter of " + numCounters + " counters", e);
+    }
+  }
+
+  /**
+   * Creates a {@link CountingBloomFilter CountingBloomFilter<T>} with the expected number of
+   * insertions and a default expected false positive probability of 3%.
+   *
+   * @param funnel the funnel of T's that the constructed {@code CountingBloomFilter<T>} will use
+   * @param expectedInsertions the number of elements expected to be in the constructed
+   *     {@code CountingBloomFilter<T>} at any one time; must be positive
+   */
+  public static <T> CountingBloomFilter<T> create(Funnel<T> funnel, int expectedInsertions) {
+    return create(funnel, expectedInsertions, 0.03);
+  }
+
+  /**
+   * Creates a new {@code CountingBloomFilter} that's a copy of this instance. The new instance is
+   * equal to this instance but shares no mutable state.
+   */
+  public CountingBloomFilter<T> copy() {
+    return new CountingBloomFilter<T>(counters.copy(), numHashFunctions, funnel, strategy);
+  }
+
+  /**
+   * Returns {@code true} if the element <i>might</i> have been put in this filter and not
+   * removed since, {@code false} if this is <i>definitely</i> not the case.
+   */
+  public boolean mightContain(T object) {
+    return strategy.mightContain(object, funnel, numHashFunctions, counters);
+  }
+
+  /**
+   * Equivalent to {@link #mightContain}; provided only to satisfy the {@link Predicate} interface.
+   * When using a reference of type {@code CountingBloomFilter}, always invoke {@link
+   * #mightContain} directly instead.
+   */
+  @Override public boolean apply(T input) {
+    return mightContain(input);
+  }
+
+  /**
+   * Puts an element into this {@code CountingBloomFilter}. Ensures that subsequent invocations of
+   * {@link #mightContain(Object)} with the same element will return {@code true}, until it is
+   * removed as many times as it was put.
+   *
+   * @return true if the element was <i>definitely</i> not in the filter before this call. This is
+   *     always the opposite of what {@code mightContain(t)} would have returned at the time it is
+   *     called.
+   */
+  public boolean put(T object) {
+    return strategy.put(object, funnel, numHashFunctions, counters);
+  }
+
+  /**
+   * Removes one occurrence of an element from this {@code CountingBloomFilter}. The element
+   * should have been put into the filter; see the class documentation.
+   *
+   * @return true if the filter might have contained the element, and so was changed; false if it
+   *     definitely did not, in which case the filter is unchanged
+   */
+  public boolean remove(T object) {
+    if (!mightContain(object)) {
+      return false;
+    }
+    // the strategy "sets" each index the element maps to, which decrements the counter there
+    strategy.put(object, funnel, numHashFunctions, counters.decrementer);
+    return true;
+  }
+
+  /**
+   * Returns the probability that {@linkplain #mightContain(Object)} will erroneously return
+   * {@code true} for an object that is not actually in the {@code CountingBloomFilter}.
+   */
+  public double expectedFpp() {
+    return Math.pow((double) counters.nonZeroCount / counters.bitSize(), numHashFunctions);
+  }
+
+  /**
+   * Returns the number of counters in the underlying counter array.
+   */
+  @VisibleForTesting long counterCount() {
+    return counters.bitSize();
+  }
+
+  @Override
+  public boolean equals(@Nullable Object object) {
+    if (object == this) {
+      return true;
+    }
+    if (object instanceof CountingBloomFilter) {
+      CountingBloomFilter<?> that = (CountingBloomFilter<?>) object;
+      return this.numHashFunctions == that.numHashFunctions
+          && this.funnel.equals(that.funnel)
+          && this.counters.equals(that.counters)
+          && this.strategy.equals(that.strategy);
+    }
+    return false;
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hashCode(numHashFunctions, funnel, strategy, counters);
+  }
+
+  /**
+   * An array of saturating 4-bit counters, packed sixteen to a {@code long}. As {@link
+   * WritableBits}, a counter is set when it is non-zero, and setting it increments it; its {@link
+   * #decrementer} view decrements counters instead.
+   */
+  @VisibleForTesting
+  static final class CounterArray implements WritableBits {
+    static final int BITS_PER_COUNTER = 4;
+    static final int COUNTERS_PER_WORD = Long.SIZE / BITS_PER_COUNTER;
+    static final int MAX_COUNT = (1 << BITS_PER_COUNTER) - 1;
+
+    final long[] data;
+    int nonZeroCount;
+
+    /** A view which decrements a counter when the strategy sets it. */
+    final WritableBits decrementer = new WritableBits() {
+      @Override public boolean set(int index) {
+        return decrement(index);
+      }
+
+      @Override public boolean get(int index) {
+        return CounterArray.this.get(index);
+      }
+
+      @Override public int bitSize() {
+        return CounterArray.this.bitSize();
+      }
+    };
+
+    CounterArray(long counters) {
+      this(new long[Ints.checkedCast(
+          LongMath.divide(counters, COUNTERS_PER_WORD, RoundingMode.CEILING))]);
+    }
+
+    // Used by serialization
+    CounterArray(long[] data) {
+      checkArgument(data.length > 0, "data length is zero!");
+      checkArgument(data.length <= Integer.MAX_VALUE / COUNTERS_PER_WORD,
+          "data length (%s) is too large", data.length);
+      this.data = data;
+      int nonZeroCount = 0;
+      for (int i = 0; i < bitSize(); i++) {
+        if (count(i) != 0) {
+          nonZeroCount++;
+        }
+      }
+      this.nonZeroCount = nonZeroCount;
+    }
+
+    int count(int index) {
+      return (int) (data[index / COUNTERS_PER_WORD] >>> shift(index)) & MAX_COUNT;
+    }
+
+    private static int shift(int index) {
+      return (index % COUNTERS_PER_WORD) * BITS_PER_COUNTER;
+    }
+
+    /** Increments a counter unless it is saturated; returns true if it was zero. */
+    @Override public boolean set(int index) {
+      int count = count(index);
+      if (count < MAX_COUNT) {
+        data[index / COUNTERS_PER_WORD] += 1L << shift(index);
+      }
+      if (count == 0) {
+        nonZeroCount++;
+        return true;
+      }
+      return false;
+    }
+
+    /** Decrements a counter unless it is zero or saturated; returns true if it became zero. */
+    boolean decrement(int index) {
+      int count = count(index);
+      if (count == 0 || count == MAX_COUNT) {
+        return false;
+      }
+      data[index / COUNTERS_PER_WORD] -= 1L << shift(index);
+      if (count == 1) {
+        nonZeroCount--;
+        return true;
+      }
+      return false;
+    }
+
+    @Override public boolean get(int index) {
+      return count(index) != 0;
+    }
+
+    /** Number of counters */
+    @Override public int bitSize() {
+      return data.length * COUNTERS_PER_WORD;
+    }
+
+    CounterArray copy() {
+      return new CounterArray(data.clone());
+    }
+
+    @Override public boolean equals(Object o) {
+      if (o instanceof CounterArray) {
+        CounterArray counterArray = (CounterArray) o;
+        return Arrays.equals(data, counterArray.data);
+      }
+      return false;
+    }
+
+    @Override public int hashCode() {
+      return Arrays.hashCode(data);
+    }
+  }
+
+  private Object writeReplace() {
+    return new SerialForm<T>(this);
+  }
+
+  private static class SerialForm<T> implements Serializable {
+    final long[] data;
+    final int numHashFunctions;
+    final Funnel<T> funnel;
+    final Strategy strategy;
+
+    SerialForm(CountingBloomFilter<T> cbf) {
+      this.data = cbf.counters.data;
+      this.numHashFunctions = cbf.numHashFunctions;
+      this.funnel = cbf.funnel;
+      this.strategy = cbf.strategy;
+    }
+    Object readResolve() {
+      return new CountingBloomFilter<T>(
+          new CounterArray(data), numHashFunctions, funnel, strategy);
+    }
+    private static final long serialVersionUID = 1;
+  }
+}
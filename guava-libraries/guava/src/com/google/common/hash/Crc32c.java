@@ -0,0 +1,165 @@
+/*
+ * Copyright (C) 2013 The Guava Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.common.hash;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkPositionIndexes;
+
+import java.util.zip.Checksum;
+
+/**
+ * A {@link Checksum} computing the CRC-32C (Castagnoli) checksum, as used by iSCSI (RFC 3720),
+ * SCTP and ext4.
+ *
+ * <p>Arrays are processed eight bytes at a time, using the "slicing-by-8" algorithm described in
+ * "A Systematic Approach to Building High Performance Software-based CRC Generators" by Michael
+ * E. Kounavis and Frank L. Berry.
+ */
+final class Crc32c implements Checksum {
+  /** The reversed representation of the Castagnoli polynomial. */
+  private static final int POLYNOMIAL = 0x82F63B78;
+
+  // The byte-wise tables: T0 is the usual table, Tk the CRC of a byte followed by k zero bytes.
+  private static final int[] T0;
+  private static final int[] T1;
+  private static final int[] T2;
+  private static final int[] T3;
+  private static final int[] T4;
+  private static final int[] T5;
+  private static final int[] T6;
+  private static final int[] T7;
+
+  static {
+    int[][] tables = new int[8][256];
+    for (int n = 0; n < 256; n++) {
+      int crc = n;
+      for (int k = 0; k < 8; k++) {
+        crc = (crc & 1) != 0 ? (crc >>> 1) ^ POLYNOMIAL : crc >>> 1;
+      }
+      tables[0][n] = crc;
+    }
+    for (int n = 0; n < 256; n++) {
+      for (int k = 1; k < 8; k++) {
+        int previous = tables[k - 1][n];
+        tables[k][n] = (previous >>> 8) ^ tables[0][previous & 0xFF];
+      }
+    }
+    T0 = tables[0];
+    T1 = tables[1];
+    T2 = tables[2];
+    T3 = tables[3];
+    T4 = tables[4];
+    T5 = tables[5];
+    T6 = tables[6];
+    T7 = tables[7];
+  }
+
+  /** The inverted CRC of the bytes so far, as the algorithm updates it. */
+  private int crc = ~0;
+
+  @Override
+  public void update(int b) {
+    crc = (crc >>> 8) ^ T0[(crc ^ b) & 0xFF];
+  }
+
+  @Override
+  public void update(byte[] bytes, int off, int len) {
+    checkPositionIndexes(off, off + len, bytes.length);
+    crc = update(crc, bytes, off, len);
+  }
+
+  private static int update(int crc, byte[] bytes, int off, int len) {
+    int end = off + len;
+    for (int limit = end - 7; off < limit; off += 8) {
+      int low = crc
+          ^ ((bytes[off] & 0xFF)
+              | (bytes[off + 1] & 0xFF) << 8
+              | (bytes[off + 2] & 0xFF) << 16
+              | (bytes[off + 3] & 0xFF) << 24);
+      crc = T7[low & 0xFF]
+          ^ T6[(low >>> 8) & 0xFF]
+          ^ T5[(low >>> 16) & 0xFF]
+          ^ T4[low >>> 24]
+          ^ T3[bytes[off + 4] & 0xFF]
+          ^ T2[bytes[off + 5] & 0xFF]
+          ^ T1[bytes[off + 6] & 0xFF]
+          ^ T0[bytes[off + 7] & 0xFF];
+    }
+    for (; off < end; off++) {
+      crc = (crc >>> 8) ^ T0[(crc ^ bytes[off]) & 0xFF];
+    }
+    return crc;
+  }
+
+  @Override
+  public long getValue() {
+    return ~crc & 0xFFFFFFFFL;
+  }
+
+  @Override
+  public void reset() {
+    crc = ~0;
+  }
+
+  /**
+   * Returns the CRC-32C of the concatenation of two byte sequences, given the CRC-32C of each
+   * of them and the length of the second one, in time proportional to the logarithm of that
+   * length. Appending {@code secondLength} bytes multiplies the CRC of the first sequence by
+   * <i>x</i><sup>8 * secondLength</sup> modulo the polynomial, which is computed from the
+   * precomputed powers <i>x</i><sup>2<sup>n</sup></sup>; the pre- and post-conditioning of both
+   * CRCs cancel out.
+   */
+  static int combine(int firstCrc, int secondCrc, long secondLength) {
+    checkArgument(secondLength >= 0, "secondLength (%s) must be >= 0", secondLength);
+    return multiplyModP(xPow8nModP(secondLength), firstCrc) ^ secondCrc;
+  }
+
+  /**
+   * {@code X_POW_2N[n]} is <i>x</i><sup>2<sup>n</sup></sup> modulo the polynomial, for the powers
+   * needed by lengths of up to {@code Long.MAX_VALUE} bytes.
+   */
+  private static final int[] X_POW_2N = new int[3 + 63];
+
+  static {
+    int p = 1 << 30; // x^1, in the reversed representation
+    for (int n = 0; n < X_POW_2N.length; n++) {
+      X_POW_2N[n] = p;
+      p = multiplyModP(p, p);
+    }
+  }
+
+  /** Returns <i>x</i><sup>8 * n</sup> modulo the polynomial, for {@code n >= 0}. */
+  private static int xPow8nModP(long n) {
+    int p = 1 << 31; // x^0
+    for (int k = 3; n != 0; n >>>= 1, k++) {
+      if ((n & 1) != 0) {
+        p = multiplyModP(X_POW_2N[k], p);
+      }
+    }
+    return p;
+  }
+
+  /** Returns {@code a * b} modulo the polynomial, both in the reversed representation. */
+  private static int multiplyModP(int a, int b) {
+    int product = 0;
+    for (int m = 1 << 31; m != 0; m >>>= 1) {
+      if ((a & m) != 0) {
+        product ^= b;
+      }
+      b = (b & 1) != 0 ? (b >>> 1) ^ POLYNOMIAL : b >>> 1;
+    }
+    return product;
+  }
+}
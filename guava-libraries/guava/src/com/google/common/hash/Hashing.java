@@ -145,6 +145,78 @@ public final class Hashing {
 
   private static final HashFunction MURMUR3_128 = new Murmur3_128HashFunction(0);
 
+  /**
+   * Returns a hash function implementing the <a href="https://code.google.com/p/xxhash/">xxHash64
+   * algorithm</a> (64 hash bits), using a seed value of zero.
+   *
+   * <p>xxHash64 is a non-cryptographic hash function which processes long inputs about twice as
+   * fast as {@link #murmur3_128}, which makes it well suited to checksums of stored blocks. Its
+   * {@linkplain HashCode#asLong long value} is the result of the reference {@code XXH64} function.
+   *
+   * @since 15.0
+   */
+  public static HashFunction xxHash64() {
+    return XX_HASH_64;
+  }
+
+  private static final HashFunction XX_HASH_64 = new XxHash64HashFunction(0);
+
+  /**
+   * Returns a hash function implementing the <a href="https://code.google.com/p/xxhash/">xxHash64
+   * algorithm</a> (64 hash bits), using the given seed value.
+   *
+   * @since 15.0
+   */
+  public static HashFunction xxHash64(long seed) {
+    return new XxHash64HashFunction(seed);
+  }
+
+  /**
+   * Returns a hash function implementing FarmHash's Fingerprint64, an open-source fingerprinting
+   * algorithm for strings (64 hash bits). Its {@linkplain HashCode#asLong long value} is the
+   * result of the reference {@code farmhash::Fingerprint64} function. Fingerprint64 descends
+   * from CityHash64; it is very fast for short inputs such as keys and strings, and its values
+   * are stable across releases, so they may be persisted.
+   *
+   * <p>This function is not streaming: hashers buffer all of their input before hashing it.
+   *
+   * @since 15.0
+   */
+  public static HashFunction farmHashFingerprint64() {
+    return FARM_HASH_FINGERPRINT_64;
+  }
+
+  private static final HashFunction FARM_HASH_FINGERPRINT_64 = new FarmHashFingerprint64();
+
+  /**
+   * Returns a hash function implementing the <a href="https://131002.net/siphash/">64-bit
+   * SipHash-2-4 algorithm</a> using a seed value of {@code k = 00 01 02 ...}.
+   *
+   * @since 15.0
+   */
+  public static HashFunction sipHash24() {
+    return SIP_HASH_24;
+  }
+
+  private static final HashFunction SIP_HASH_24 =
+      new SipHashFunction(2, 4, 0x0706050403020100L, 0x0f0e0d0c0b0a0908L);
+
+  /**
+   * Returns a hash function implementing the <a href="https://131002.net/siphash/">64-bit
+   * SipHash-2-4 algorithm</a> using the given seed.
+   *
+   * <p>SipHash is a keyed hash function: an attacker who doesn't know the 128-bit key can't
+   * choose inputs which collide. Hash tables which key on untrusted input, and hash it with
+   * SipHash using a randomly chosen secret key, are therefore protected against hash flooding.
+   *
+   * @param k0 the first 64 bits of the key, as the little-endian value of key bytes 0 to 7
+   * @param k1 the second 64 bits of the key, as the little-endian value of key bytes 8 to 15
+   * @since 15.0
+   */
+  public static HashFunction sipHash24(long k0, long k1) {
+    return new SipHashFunction(2, 4, k0, k1);
+  }
+
   /**
    * Returns a hash function implementing the MD5 hash algorithm (128 hash bits) by delegating to
    * the MD5 {@link MessageDigest}.
@@ -204,6 +276,25 @@ public final class Hashing {
   private static final HashFunction CRC_32 =
       checksumHashFunction(ChecksumType.CRC_32, "Hashing.crc32()");
 
+  /**
+   * Returns a hash function implementing the CRC-32C checksum algorithm (32 hash bits), which uses
+   * the Castagnoli polynomial, as described by RFC 3720, Section 12.1. It detects more errors
+   * than {@link #crc32} in the data lengths of storage and network blocks.
+   *
+   * <p>To get the {@code long} value equivalent to {@link Checksum#getValue()} for a
+   * {@code HashCode} produced by this function, use {@link HashCode#padToLong()}. The checksums
+   * of consecutive segments of data, which may be computed in parallel, can be combined into the
+   * checksum of all of the data by {@link #combineCrc32c}.
+   *
+   * @since 15.0
+   */
+  public static HashFunction crc32c() {
+    return CRC_32C;
+  }
+
+  private static final HashFunction CRC_32C =
+      checksumHashFunction(ChecksumType.CRC_32C, "Hashing.crc32c()");
+
   /**
    * Returns a hash function implementing the Adler-32 checksum algorithm (32 hash bits) by
    * delegating to the {@link Adler32} {@link Checksum}.
@@ -231,6 +322,12 @@ public final class Hashing {
         return new CRC32();
       }
     },
+    CRC_32C(32) {
+      @Override
+      public Checksum get() {
+        return new Crc32c();
+      }
+    },
     ADLER_32(32) {
       @Override
       public Checksum get() {
@@ -305,6 +402,26 @@ public final class Hashing {
     }
   }
 
+  /**
+   * Returns the {@link #crc32c} hash code of the concatenation of two byte sequences, given the
+   * {@code crc32c} hash code of each of them, and the length of the second one. This lets the
+   * checksum of a large file be computed from the checksums of its chunks, each of which may be
+   * computed by a different thread. It takes time proportional to the logarithm of {@code
+   * secondLength}.
+   *
+   * @param first the {@code crc32c} hash code of the first sequence
+   * @param second the {@code crc32c} hash code of the second sequence
+   * @param secondLength the number of bytes in the second sequence
+   * @throws IllegalArgumentException if either hash code doesn't have 32 bits, or if {@code
+   *     secondLength} is negative
+   * @since 15.0
+   */
+  public static HashCode combineCrc32c(HashCode first, HashCode second, long secondLength) {
+    checkArgument(first.bits() == 32, "first must be a crc32c hash code");
+    checkArgument(second.bits() == 32, "second must be a crc32c hash code");
+    return HashCodes.fromInt(Crc32c.combine(first.asInt(), second.asInt(), secondLength));
+  }
+
   /**
    * Returns a hash code, having the same bit length as each of the input hash codes,
    * that combines the information of these hash codes in an ordered fashion. That
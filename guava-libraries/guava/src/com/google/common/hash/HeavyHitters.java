@@ -0,0 +1,184 @@
+/*
+ * Copyright (C) 2013 The Guava Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.common.hash;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.common.annotations.Beta;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import com.google.common.primitives.Longs;
+
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Tracks the {@code k} most frequent instances of {@code T} added to it, using a {@link
+ * CountMinSketch} to estimate the counts of all elements, and a set of {@code k} candidates whose
+ * estimates are the highest seen so far. Memory use is that of the sketch plus {@code k}
+ * elements, however many distinct elements there are.
+ *
+ * <p>An element with a high count displaces the candidate with the lowest estimated count as soon
+ * as its own estimate exceeds it. Since estimates may exceed true counts by up to {@link
+ * CountMinSketch#errorBound}, the reported elements and counts are approximate when that bound
+ * is comparable to the counts of the {@code k}-th most frequent elements.
+ *
+ * <p>A tracker is thread-safe if its sketch was created by {@link
+ * CountMinSketch#createConcurrent}. Adding an element which is already a candidate, or whose
+ * estimate is below that of every candidate, doesn't lock; only changes to the candidates do.
+ *
+ * <p>Null elements are not supported, even if the sketch's funnel accepts them.
+ *
+ * @param <T> the type of instances that the {@code HeavyHitters} tracks
+ * @since 15.0
+ */
+@Beta
+public final class HeavyHitters<T> {
+  private final CountMinSketch<T> sketch;
+  private final int k;
+
+  /** The elements with the highest estimated counts; guarded by itself for changes. */
+  private final Set<T> candidates = Sets.newConcurrentHashSet();
+
+  /**
+   * The lowest estimated count of a candidate, as of the last change to the candidates, or zero
+   * while there are fewer than {@code k}. Counts only grow, so it is never above the current
+   * lowest count.
+   */
+  private volatile long threshold;
+
+  private HeavyHitters(CountMinSketch<T> sketch, int k) {
+    this.sketch = sketch;
+    this.k = k;
+  }
+
+  /**
+   * Creates a {@link HeavyHitters HeavyHitters<T>} tracking the {@code k} most frequent elements,
+   * whose counts are estimated by {@code sketch}. All elements must be added to the sketch through
+   * the tracker.
+   *
+   * @param sketch an empty sketch
+   * @param k the number of elements to track; must be positive
+   */
+  public static <T> HeavyHitters<T> create(CountMinSketch<T> sketch, int k) {
+    checkNotNull(sketch);
+    checkArgument(k > 0, "k (%s) must be > 0", k);
+    checkArgument(sketch.totalCount() == 0, "sketch must be empty");
+    return new HeavyHitters<T>(sketch, k);
+  }
+
+  /**
+   * Returns the sketch estimating the counts of the elements added to this tracker.
+   */
+  public CountMinSketch<T> sketch() {
+    return sketch;
+  }
+
+  /**
+   * Adds one occurrence of an element.
+   *
+   * @return the estimated count of the element after adding it
+   * @throws NullPointerException if {@code element} is null
+   */
+  public long add(T element) {
+    return add(element, 1);
+  }
+
+  /**
+   * Adds a number of occurrences of an element.
+   *
+   * @param occurrences the number of occurrences to add; may not be negative
+   * @return the estimated count of the element after adding them
+   * @throws NullPointerException if {@code element} is null
+   */
+  public long add(T element, long occurrences) {
+    checkNotNull(element);
+    long estimate = sketch.add(element, occurrences);
+    if (estimate > threshold && !candidates.contains(element)) {
+      synchronized (candidates) {
+        offer(element, estimate);
+      }
+    }
+    return estimate;
+  }
+
+  /** Makes an element a candidate if there is room, or if it has a higher count than another. */
+  private void offer(T element, long estimate) {
+    if (candidates.contains(element)) {
+      return;
+    }
+    if (candidates.size() < k) {
+      candidates.add(element);
+      if (candidates.size() == k) {
+        threshold = lowestCandidateCount();
+      }
+      return;
+    }
+    T lowest = null;
+    long lowestCount = Long.MAX_VALUE;
+    for (T candidate : candidates) {
+      long count = sketch.estimateCount(candidate);
+      if (count < lowestCount) {
+        lowest = candidate;
+        lowestCount = count;
+      }
+    }
+    if (estimate > lowestCount) {
+      candidates.remove(lowest);
+      candidates.add(element);
+      threshold = lowestCandidateCount();
+    } else {
+      threshold = lowestCount;
+    }
+  }
+
+  private long lowestCandidateCount() {
+    long lowestCount = Long.MAX_VALUE;
+    for (T candidate : candidates) {
+      lowestCount = Math.min(lowestCount, sketch.estimateCount(candidate));
+    }
+    return lowestCount;
+  }
+
+  /**
+   * Returns the (at most {@code k}) most frequent elements added so far, mapped to their estimated
+   * counts, in decreasing order of count.
+   */
+  public ImmutableMap<T, Long> topK() {
+    List<T> elements = Lists.newArrayList(candidates);
+    final long[] counts = new long[elements.size()];
+    List<Integer> order = Lists.newArrayListWithCapacity(elements.size());
+    for (int i = 0; i < counts.length; i++) {
+      counts[i] = sketch.estimateCount(elements.get(i));
+      order.add(i);
+    }
+    Collections.sort(order, new Comparator<Integer>() {
+      @Override public int compare(Integer left, Integer right) {
+        return Longs.compare(counts[right], counts[left]);
+      }
+    });
+    ImmutableMap.Builder<T, Long> builder = ImmutableMap.builder();
+    for (int i : order) {
+      builder.put(elements.get(i), counts[i]);
+    }
+    return builder.build();
+  }
+}
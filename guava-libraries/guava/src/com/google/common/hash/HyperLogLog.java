@@ -0,0 +1,473 @@
+/*
+ * Copyright (C) 2013 The Guava Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.common.hash;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.common.annotations.Beta;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Objects;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InvalidObjectException;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.util.Arrays;
+
+import javax.annotation.Nullable;
+
+/**
+ * A HyperLogLog sketch, which estimates the number of distinct instances of {@code T} put into
+ * it using a small, fixed amount of memory. See "HyperLogLog: the analysis of a near-optimal
+ * cardinality estimation algorithm" by Philippe Flajolet, Éric Fusy, Olivier Gandouet and
+ * Frédéric Meunier.
+ *
+ * <p>Elements are hashed with {@link Hashing#murmur3_128()}. A sketch of precision {@code p} has
+ * 2<sup>p</sup> registers, and estimates cardinalities with a relative standard error of about
+ * 1.04 / 2<sup>p/2</sup>: 1.6% for the default precision of 12, with 4096 registers. Since the
+ * hash has 64 bits, estimates remain accurate far beyond 2<sup>32</sup> distinct elements.
+ *
+ * <p>Sketches of the same precision and funnel may be {@linkplain #putAll combined}, giving a
+ * sketch of the union of their elements; sketches of different shards may thus be built
+ * independently and combined centrally. As in "HyperLogLog in Practice" by Stefan Heule, Marc
+ * Nunkesser and Alexander Hall, a sketch which has seen few distinct elements is held in a sparse
+ * encoding, a sorted list of its non-empty registers, and switches to a dense array of registers
+ * once that would be smaller. Both encodings give the same estimates.
+ *
+ * <p>{@link #writeTo} writes a compact binary form of the sketch, which is also used for Java
+ * serialization.
+ *
+ * @param <T> the type of instances that the {@code HyperLogLog} accepts
+ * @since 15.0
+ */
+@Beta
+public final class HyperLogLog<T> implements Serializable {
+  /** The smallest supported precision. */
+  static final int MIN_PRECISION = 4;
+
+  /** The largest supported precision. */
+  static final int MAX_PRECISION = 18;
+
+  /** The precision used by {@link #create(Funnel)}. */
+  static final int DEFAULT_PRECISION = 12;
+
+  /** The version of the format written by {@link #writeTo}. */
+  static final byte FORMAT_VERSION = 1;
+
+  private static final byte SPARSE = 0;
+  private static final byte DENSE = 1;
+
+  /** The number of low bits of a sparse entry holding the register value; the rest is its index. */
+  private static final int VALUE_BITS = 6;
+  private static final int VALUE_MASK = (1 << VALUE_BITS) - 1;
+
+  private final int precision;
+  private final Funnel<T> funnel;
+
+  /** The registers of the dense encoding, or null while the sketch is sparse. */
+  @Nullable private byte[] registers;
+
+  /**
+   * The entries of the sparse encoding, each a register index shifted left by {@link
+   * #VALUE_BITS} and or'ed with the (non-zero) register value, sorted by index. Only the first
+   * {@code sparseSize} are used. Null once the sketch is dense.
+   */
+  @Nullable private int[] sparseEntries;
+  private int sparseSize;
+
+  private HyperLogLog(int precision, Funnel<T> funnel) {
+    this.precision = precision;
+    this.funnel = funnel;
+    this.sparseEntries = new int[4];
+  }
+
+  /**
+   * Creates an empty {@link HyperLogLog HyperLogLog<T>} with the default precision of 12, which
+   * estimates cardinalities with a relative standard error of about 1.6% using 4 KB of memory.
+   *
+   * @param funnel the funnel of T's that the constructed {@code HyperLogLog<T>} will use
+   */
+  public static <T> HyperLogLog<T> create(Funnel<T> funnel) {
+    return create(funnel, DEFAULT_PRECISION);
+  }
+
+  /**
+   * Creates an empty {@link HyperLogLog HyperLogLog<T>} with 2<sup>precision</sup> registers,
+   * which estimates cardinalities with a relative standard error of about
+   * 1.04 / 2<sup>precision/2</sup>, and holds one byte per register once dense.
+   *
+   * <p>The constructed {@code HyperLogLog<T>} will be serializable if the provided
+   * {@code Funnel<T>} is.
+   *
+   * @param funnel the funnel of T's that the constructed {@code HyperLogLog<T>} will use
+   * @param precision the base 2 logarithm of the number of registers; must be between 4 and 18
+   */
+  public static <T> HyperLogLog<T> create(Funnel<T> funnel, int precision) {
+    checkNotNull(funnel);
+    checkArgument(precision >= MIN_PRECISION && precision <= MAX_PRECISION,
+        "precision (%s) must be between %s and %s", precision, MIN_PRECISION, MAX_PRECISION);
+    return new HyperLogLog<T>(precision, funnel);
+  }
+
+  /**
+   * Creates a new {@code HyperLogLog} that's a copy of this instance. The new instance is equal
+   * to this instance but shares no mutable state.
+   */
+  public HyperLogLog<T> copy() {
+    HyperLogLog<T> copy = new HyperLogLog<T>(precision, funnel);
+    copy.registers = (registers == null) ? null : registers.clone();
+    copy.sparseEntries = (sparseEntries == null) ? null : sparseEntries.clone();
+    copy.sparseSize = sparseSize;
+    return copy;
+  }
+
+  /**
+   * Puts an element into this {@code HyperLogLog}.
+   *
+   * @return true if the sketch changed as a result of this operation, in which case this is
+   *     <i>definitely</i> the first time {@code object} has been put into it
+   */
+  public boolean put(T object) {
+    long hash = Hashing.murmur3_128().hashObject(object, funnel).asLong();
+    int index = (int) (hash >>> (Long.SIZE - precision));
+    // the position of the first 1 bit in the remaining bits, capped as though followed by a 1
+    int value = Long.numberOfLeadingZeros((hash << precision) | (1L << (precision - 1))) + 1;
+    return update(index, value);
+  }
+
+  /**
+   * Combines this sketch with another, so that it estimates the cardinality of the union of the
+   * elements put into either. The mutations happen to <b>this</b> instance.
+   *
+   * @param that the sketch to combine this sketch with. It is not mutated.
+   * @throws IllegalArgumentException if the sketches have different precisions or funnels, or
+   *     are the same instance
+   */
+  public void putAll(HyperLogLog<T> that) {
+    checkNotNull(that);
+    checkArgument(this != that, "Cannot combine a HyperLogLog with itself.");
+    checkArgument(this.precision == that.precision,
+        "HyperLogLogs must have the same precision (%s != %s)", this.precision, that.precision);
+    checkArgument(this.funnel.equals(that.funnel),
+        "HyperLogLogs must have equal funnels (%s != %s)", this.funnel, that.funnel);
+    if (that.registers != null) {
+      toDense();
+      for (int i = 0; i < registers.length; i++) {
+        registers[i] = (byte) Math.max(registers[i], that.registers[i]);
+      }
+    } else {
+      for (int i = 0; i < that.sparseSize; i++) {
+        int entry = that.sparseEntries[i];
+        update(entry >>> VALUE_BITS, entry & VALUE_MASK);
+      }
+    }
+  }
+
+  /**
+   * Returns an estimate of the number of distinct elements put into this sketch, and into the
+   * sketches combined with it.
+   */
+  public long cardinality() {
+    int registerCount = 1 << precision;
+    double sum = 0;
+    int zeros = 0;
+    if (registers != null) {
+      for (byte value : registers) {
+        sum += inversePowerOfTwo(value);
+        if (value == 0) {
+          zeros++;
+        }
+      }
+    } else {
+      zeros = registerCount - sparseSize;
+      sum = zeros;
+      for (int i = 0; i < sparseSize; i++) {
+        sum += inversePowerOfTwo(sparseEntries[i] & VALUE_MASK);
+      }
+    }
+    double estimate = alpha(registerCount) * registerCount * registerCount / sum;
+    if (estimate <= 2.5 * registerCount && zeros > 0) {
+      // small range correction: linear counting is more accurate while many registers are zero
+      estimate = registerCount * Math.log((double) registerCount / zeros);
+    }
+    return Math.round(estimate);
+  }
+
+  private static double inversePowerOfTwo(int exponent) {
+    return Double.longBitsToDouble((long) (1023 - exponent) << 52);
+  }
+
+  private static double alpha(int registerCount) {
+    switch (registerCount) {
+      case 16:
+        return 0.673;
+      case 32:
+        return 0.697;
+      case 64:
+        return 0.709;
+      default:
+        return 0.7213 / (1 + 1.079 / registerCount);
+    }
+  }
+
+  /** Raises the register at {@code index} to {@code value}; returns true if it was lower. */
+  private boolean update(int index, int value) {
+    if (registers != null) {
+      if (registers[index] < value) {
+        registers[index] = (byte) value;
+        return true;
+      }
+      return false;
+    }
+    int position = Arrays.binarySearch(sparseEntries, 0, sparseSize, index << VALUE_BITS);
+    if (position < 0) {
+      position = -position - 1;
+    }
+    if (position < sparseSize && (sparseEntries[position] >>> VALUE_BITS) == index) {
+      if ((sparseEntries[position] & VALUE_MASK) < value) {
+        sparseEntries[position] = (index << VALUE_BITS) | value;
+        return true;
+      }
+      return false;
+    }
+    if (sparseSize + 1 > sparseThreshold()) {
+      toDense();
+      return update(index, value);
+    }
+    if (sparseSize == sparseEntries.length) {
+      sparseEntries = Arrays.copyOf(sparseEntries, Math.min(2 * sparseSize, sparseThreshold()));
+    }
+    System.arraycopy(sparseEntries, position, sparseEntries, position + 1, sparseSize - position);
+    sparseEntries[position] = (index << VALUE_BITS) | value;
+    sparseSize++;
+    return true;
+  }
+
+  /** The largest number of sparse entries, which take four bytes each instead of one. */
+  private int sparseThreshold() {
+    return (1 << precision) / 4;
+  }
+
+  private void toDense() {
+    if (registers == null) {
+      registers = new byte[1 << precision];
+      for (int i = 0; i < sparseSize; i++) {
+        int entry = sparseEntries[i];
+        registers[entry >>> VALUE_BITS] = (byte) (entry & VALUE_MASK);
+      }
+      sparseEntries = null;
+      sparseSize = 0;
+    }
+  }
+
+  /** Returns whether this sketch is held in the sparse encoding. */
+  @VisibleForTesting boolean isSparse() {
+    return registers == null;
+  }
+
+  /**
+   * Writes this sketch to an output stream, in a compact binary format which is independent of
+   * the funnel. The format consists of:
+   *
+   * <ul>
+   * <li>one byte: the version of the format, currently 1
+   * <li>one byte: the precision
+   * <li>one byte: the encoding, 0 for sparse or 1 for dense
+   * <li>for the sparse encoding, a big-endian {@code int} holding the number of non-empty
+   *     registers, followed by their entries in increasing order of register index, each entry
+   *     holding the register index shifted left by six and or'ed with its value. The first entry
+   *     and the differences between consecutive entries are written as unsigned variable-length
+   *     integers, seven bits per byte, least significant first.
+   * <li>for the dense encoding, one byte per register, in increasing order of register index
+   * </ul>
+   *
+   * <p>The stream is not closed, and is flushed but not otherwise buffered.
+   *
+   * @param out the stream to write the sketch to
+   * @throws IOException if an I/O error occurs
+   * @see #readFrom(InputStream, Funnel)
+   */
+  public void writeTo(OutputStream out) throws IOException {
+    DataOutputStream dout = new DataOutputStream(out);
+    dout.writeByte(FORMAT_VERSION);
+    dout.writeByte(precision);
+    if (registers != null) {
+      dout.writeByte(DENSE);
+      dout.write(registers);
+    } else {
+      dout.writeByte(SPARSE);
+      dout.writeInt(sparseSize);
+      int previous = 0;
+      for (int i = 0; i < sparseSize; i++) {
+        writeVarInt(dout, sparseEntries[i] - previous);
+        previous = sparseEntries[i];
+      }
+    }
+    dout.flush();
+  }
+
+  /**
+   * Reads a sketch written by {@link #writeTo(OutputStream)} from an input stream. The funnel
+   * must be equivalent to the one used by the sketch that was written; this is not, and cannot
+   * be, checked.
+   *
+   * @param in the stream to read the sketch from
+   * @param funnel the funnel of T's that the read {@code HyperLogLog<T>} will use
+   * @throws IOException if an I/O error occurs, or if the stream does not contain a sketch in a
+   *     supported format
+   */
+  public static <T> HyperLogLog<T> readFrom(InputStream in, Funnel<T> funnel) throws IOException {
+    checkNotNull(in);
+    checkNotNull(funnel);
+    DataInputStream din = new DataInputStream(in);
+    byte version = din.readByte();
+    if (version != FORMAT_VERSION) {
+      throw new IOException("Unsupported HyperLogLog format version: " + version);
+    }
+    int precision = din.readUnsignedByte();
+    if (precision < MIN_PRECISION || precision > MAX_PRECISION) {
+      throw new IOException("Invalid HyperLogLog precision: " + precision);
+    }
+    HyperLogLog<T> sketch = new HyperLogLog<T>(precision, funnel);
+    byte encoding = din.readByte();
+    int maxValue = Long.SIZE - precision + 1;
+    if (encoding == DENSE) {
+      sketch.toDense();
+      din.readFully(sketch.registers);
+      for (byte value : sketch.registers) {
+        if (value < 0 || value > maxValue) {
+          throw new IOException("Invalid HyperLogLog register value: " + value);
+        }
+      }
+    } else if (encoding == SPARSE) {
+      int size = din.readInt();
+      if (size < 0 || size > sketch.sparseThreshold()) {
+        throw new IOException("Invalid HyperLogLog sparse size: " + size);
+      }
+      int[] entries = new int[Math.max(size, 4)];
+      int previous = 0;
+      for (int i = 0; i < size; i++) {
+        int entry = previous + readVarInt(din);
+        int value = entry & VALUE_MASK;
+        // entries must be sorted by index, with at most one entry for each register
+        if ((i > 0 && (entry >>> VALUE_BITS) <= (previous >>> VALUE_BITS))
+            || (entry >>> VALUE_BITS) >= (1 << precision)
+            || value == 0 || value > maxValue) {
+          throw new IOException("Invalid HyperLogLog sparse entry: " + entry);
+        }
+        entries[i] = entry;
+        previous = entry;
+      }
+      sketch.sparseEntries = entries;
+      sketch.sparseSize = size;
+    } else {
+      throw new IOException("Unsupported HyperLogLog encoding: " + encoding);
+    }
+    return sketch;
+  }
+
+  private static void writeVarInt(DataOutputStream out, int value) throws IOException {
+    while ((value & ~0x7F) != 0) {
+      out.writeByte((value & 0x7F) | 0x80);
+      value >>>= 7;
+    }
+    out.writeByte(value);
+  }
+
+  private static int readVarInt(DataInputStream in) throws IOException {
+    int value = 0;
+    for (int shift = 0; shift < Integer.SIZE; shift += 7) {
+      int b = in.readUnsignedByte();
+      value |= (b & 0x7F) << shift;
+      if ((b & 0x80) == 0) {
+        return value;
+      }
+    }
+    throw new IOException("Malformed variable-length integer");
+  }
+
+  /**
+   * Returns {@code true} if {@code object} is a {@code HyperLogLog} with the same precision,
+   * funnel and registers as this one, whichever encoding each is held in.
+   */
+  @Override
+  public boolean equals(@Nullable Object object) {
+    if (object == this) {
+      return true;
+    }
+    if (object instanceof HyperLogLog) {
+      HyperLogLog<?> that = (HyperLogLog<?>) object;
+      return this.precision == that.precision
+          && this.funnel.equals(that.funnel)
+          && Arrays.equals(this.denseRegisters(), that.denseRegisters());
+    }
+    return false;
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hashCode(precision, funnel) * 31 + Arrays.hashCode(denseRegisters());
+  }
+
+  /** Returns the registers in the dense encoding, without changing the encoding of the sketch. */
+  private byte[] denseRegisters() {
+    if (registers != null) {
+      return registers;
+    }
+    byte[] dense = new byte[1 << precision];
+    for (int i = 0; i < sparseSize; i++) {
+      dense[sparseEntries[i] >>> VALUE_BITS] = (byte) (sparseEntries[i] & VALUE_MASK);
+    }
+    return dense;
+  }
+
+  private Object writeReplace() {
+    return new SerialForm<T>(this);
+  }
+
+  private static class SerialForm<T> implements Serializable {
+    final byte[] bytes;
+    final Funnel<T> funnel;
+
+    SerialForm(HyperLogLog<T> sketch) {
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      try {
+        sketch.writeTo(out);
+      } catch (IOException impossible) {
+        throw new AssertionError(impossible);
+      }
+      this.bytes = out.toByteArray();
+      this.funnel = sketch.funnel;
+    }
+    Object readResolve() throws InvalidObjectException {
+      try {
+        return readFrom(new ByteArrayInputStream(bytes), funnel);
+      } catch (IOException e) {
+        InvalidObjectException invalid = new InvalidObjectException(e.getMessage());
+        invalid.initCause(e);
+        throw invalid;
+      }
+    }
+    private static final long serialVersionUID = 1;
+  }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright (C) 2013 The Guava Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.common.hash;
+
+import static com.google.common.base.Preconditions.checkPositionIndexes;
+
+import com.google.common.annotations.Beta;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A hash function which returns 64-bit hash codes as primitive {@code long} values, without
+ * allocating any objects. It is meant for hot paths, such as routing or partitioning by key,
+ * where the {@link Hasher} and {@link HashCode} allocated by each call to a {@link HashFunction}
+ * would create significant garbage.
+ *
+ * <p>Each {@code LongHashFunction} corresponds to a {@link HashFunction}, and returns the same
+ * value as {@link HashCode#asLong()} of the hash code which that function computes for the same
+ * input. For example, {@code LongHashFunction.murmur3_128().hashLong(x)} is equal to {@code
+ * Hashing.murmur3_128().hashLong(x).asLong()}.
+ *
+ * <p>Instances are immutable and thread-safe.
+ *
+ * @since 15.0
+ */
+@Beta
+public abstract class LongHashFunction {
+  LongHashFunction() {}
+
+  /**
+   * Returns a function which computes the first 64 bits of the 128-bit <a
+   * href="http://smhasher.googlecode.com/svn/trunk/MurmurHash3.cpp">murmur3 algorithm, x64
+   * variant</a> (little-endian variant), using a seed value of zero; that is, {@link
+   * HashCode#asLong()} of the hash codes computed by {@link Hashing#murmur3_128()}.
+   */
+  public static LongHashFunction murmur3_128() {
+    return Murmur3_128HashFunction.LongHash.MURMUR3_128;
+  }
+
+  /**
+   * Returns a function which computes the first 64 bits of the 128-bit murmur3 algorithm, x64
+   * variant, using the given seed value; that is, {@link HashCode#asLong()} of the hash codes
+   * computed by {@link Hashing#murmur3_128(int)}.
+   */
+  public static LongHashFunction murmur3_128(int seed) {
+    return new Murmur3_128HashFunction.LongHash(seed);
+  }
+
+  /**
+   * Returns the hash of {@code input}, which is equal to {@code hashBytes(bytes)} where {@code
+   * bytes} is {@code input} in little-endian order.
+   */
+  public abstract long hashLong(long input);
+
+  /**
+   * Returns the hash of {@code input}, which is equal to {@code hashBytes(bytes)} where {@code
+   * bytes} is {@code input} in little-endian order.
+   */
+  public abstract long hashInt(int input);
+
+  /**
+   * Returns the hash of the bytes of {@code input}.
+   */
+  public long hashBytes(byte[] input) {
+    return hashBytes(input, 0, input.length);
+  }
+
+  /**
+   * Returns the hash of {@code len} bytes of {@code input}, starting at {@code off}.
+   *
+   * @throws IndexOutOfBoundsException if {@code off < 0} or {@code off + len > bytes.length} or
+   *     {@code len < 0}
+   */
+  public long hashBytes(byte[] input, int off, int len) {
+    checkPositionIndexes(off, off + len, input.length);
+    return hashBytesUnchecked(input, off, len);
+  }
+
+  /**
+   * Returns the hash of the remaining bytes of {@code input}, from its position to its limit. The
+   * position of the buffer is not changed.
+   */
+  public abstract long hashBytes(ByteBuffer input);
+
+  /**
+   * Returns the hash of the characters of {@code input}, each as two bytes in little-endian
+   * order, without encoding them; equal to {@link HashCode#asLong()} of {@link
+   * HashFunction#hashUnencodedChars}.
+   */
+  public abstract long hashUnencodedChars(CharSequence input);
+
+  abstract long hashBytesUnchecked(byte[] input, int off, int len);
+}
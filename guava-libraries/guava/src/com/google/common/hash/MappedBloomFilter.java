@@ -0,0 +1,174 @@
+/*
+ * Copyright (C) 2013 The Guava Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.common.hash;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.common.annotations.Beta;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Predicate;
+import com.google.common.hash.BloomFilter.Strategy;
+import com.google.common.hash.BloomFilterStrategies.ReadableBits;
+import com.google.common.io.Files;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+
+/**
+ * A read-only Bloom filter which answers queries directly from a file written by {@link
+ * BloomFilter#writeTo}, mapped into memory.
+ *
+ * <p>Mapping a filter takes constant time however large it is: its bits are only read from disk
+ * as they are queried, and are kept in the operating system's page cache rather than on the Java
+ * heap. The page cache is shared by every process which maps the same file, so that many
+ * processes can query one large filter while holding a single copy of it in memory.
+ *
+ * <p>A {@code MappedBloomFilter} answers {@link #mightContain} exactly as the {@link BloomFilter}
+ * that was written would, provided that it is given an equivalent funnel. It is safe for use by
+ * multiple threads. The file must not be modified while it is mapped.
+ *
+ * @param <T> the type of instances that the {@code MappedBloomFilter} accepts
+ * @since 15.0
+ */
+@Beta
+public final class MappedBloomFilter<T> implements Predicate<T> {
+  /** The words of the bit array, in a read-only view of the mapped file. */
+  private final MappedBits bits;
+
+  /** Number of hashes per element */
+  private final int numHashFunctions;
+
+  /** The funnel to translate Ts to bytes */
+  private final Funnel<T> funnel;
+
+  /** The strategy used to map an element T to {@code numHashFunctions} bit indexes. */
+  private final Strategy strategy;
+
+  private MappedBloomFilter(
+      MappedBits bits, int numHashFunctions, Funnel<T> funnel, Strategy strategy) {
+    this.bits = bits;
+    this.numHashFunctions = numHashFunctions;
+    this.funnel = funnel;
+    this.strategy = strategy;
+  }
+
+  /**
+   * Maps a Bloom filter written by {@link BloomFilter#writeTo} to {@code file} into memory. The
+   * funnel must be equivalent to the one used by the filter that was written; this is not, and
+   * cannot be, checked.
+   *
+   * @param file the file containing the Bloom filter
+   * @param funnel the funnel of T's that the {@code MappedBloomFilter<T>} will use
+   * @throws IOException if an I/O error occurs, or if the file does not contain a Bloom filter in
+   *     a supported format
+   */
+  public static <T> MappedBloomFilter<T> map(File file, Funnel<T> funnel) throws IOException {
+    checkNotNull(file);
+    checkNotNull(funnel);
+    return wrap(Files.map(file), funnel);
+  }
+
+  /**
+   * Returns a {@code MappedBloomFilter} reading the Bloom filter that starts at the current
+   * position of {@code buffer}. The position of {@code buffer} is not changed.
+   */
+  @VisibleForTesting
+  static <T> MappedBloomFilter<T> wrap(ByteBuffer buffer, Funnel<T> funnel) throws IOException {
+    ByteBuffer header = buffer.duplicate().order(ByteOrder.BIG_ENDIAN);
+    if (header.remaining() < BloomFilter.HEADER_BYTES) {
+      throw new IOException("Truncated BloomFilter header");
+    }
+    BloomFilter.checkFormatVersion(header.get());
+    Strategy strategy = BloomFilter.strategyForOrdinal(header.get());
+    int numHashFunctions = BloomFilter.checkNumHashFunctions(header.get() & 0xFF);
+    header.get(); // reserved
+    int dataLength = BloomFilter.checkDataLength(header.getInt());
+    if (header.remaining() < (long) dataLength * (Long.SIZE / Byte.SIZE)) {
+      throw new IOException("Truncated BloomFilter bit array");
+    }
+    LongBuffer words = header.slice().order(ByteOrder.BIG_ENDIAN).asLongBuffer();
+    words.limit(dataLength);
+    return new MappedBloomFilter<T>(
+        new MappedBits(words.slice()), numHashFunctions, funnel, strategy);
+  }
+
+  /**
+   * Returns {@code true} if the element <i>might</i> have been put in this Bloom filter,
+   * {@code false} if this is <i>definitely</i> not the case.
+   */
+  public boolean mightContain(T object) {
+    return strategy.mightContain(object, funnel, numHashFunctions, bits);
+  }
+
+  /**
+   * Equivalent to {@link #mightContain}; provided only to satisfy the {@link Predicate} interface.
+   * When using a reference of type {@code MappedBloomFilter}, always invoke {@link #mightContain}
+   * directly instead.
+   */
+  @Override public boolean apply(T input) {
+    return mightContain(input);
+  }
+
+  /**
+   * Returns the probability that {@linkplain #mightContain(Object)} will erroneously return
+   * {@code true} for an object that has not actually been put in the Bloom filter.
+   *
+   * <p>Unlike {@link BloomFilter#expectedFpp}, this reads the whole bit array to count the bits
+   * that are set, and so takes time proportional to the size of the filter.
+   */
+  public double expectedFpp() {
+    return Math.pow((double) bits.bitCount() / bitSize(), numHashFunctions);
+  }
+
+  /**
+   * Returns the number of bits in the underlying bit array.
+   */
+  @VisibleForTesting long bitSize() {
+    return bits.bitSize();
+  }
+
+  /**
+   * The bits of a Bloom filter, read from a big-endian view of a (typically mapped) byte buffer.
+   * Only absolute reads are used, so that a single instance may be shared between threads.
+   */
+  private static final class MappedBits implements ReadableBits {
+    final LongBuffer words;
+
+    MappedBits(LongBuffer words) {
+      this.words = words;
+    }
+
+    @Override public boolean get(int index) {
+      return (words.get(index >> 6) & (1L << index)) != 0;
+    }
+
+    @Override public int bitSize() {
+      return words.capacity() * Long.SIZE;
+    }
+
+    int bitCount() {
+      int bitCount = 0;
+      for (int i = 0; i < words.capacity(); i++) {
+        bitCount += Long.bitCount(words.get(i));
+      }
+      return bitCount;
+    }
+  }
+}
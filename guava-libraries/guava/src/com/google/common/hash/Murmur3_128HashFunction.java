@@ -76,9 +76,6 @@ final class Murmur3_128HashFunction extends AbstractStreamingHashFunction implem
   }
 
   private static final class Murmur3_128Hasher extends AbstractStreamingHasher {
-    private static final int CHUNK_SIZE = 16;
-    private static final long C1 = 0x87c37b91114253d5L;
-    private static final long C2 = 0x4cf5ad432745937fL;
     private long h1;
     private long h2;
     private int length;
@@ -175,29 +172,207 @@ final class Murmur3_128HashFunction extends AbstractStreamingHashFunction implem
           .putLong(h2)
           .array());
     }
+  }
+
+  private static final int CHUNK_SIZE = 16;
+  private static final long C1 = 0x87c37b91114253d5L;
+  private static final long C2 = 0x4cf5ad432745937fL;
+
+  private static long fmix64(long k) {
+    k ^= k >>> 33;
+    k *= 0xff51afd7ed558ccdL;
+    k ^= k >>> 33;
+    k *= 0xc4ceb9fe1a85ec53L;
+    k ^= k >>> 33;
+    return k;
+  }
+
+  private static long mixK1(long k1) {
+    k1 *= C1;
+    k1 = Long.rotateLeft(k1, 31);
+    k1 *= C2;
+    return k1;
+  }
+
+  private static long mixK2(long k2) {
+    k2 *= C2;
+    k2 = Long.rotateLeft(k2, 33);
+    k2 *= C1;
+    return k2;
+  }
+
+  /**
+   * Computes the first 64 bits of the same hash as {@link Murmur3_128Hasher}, with local
+   * variables in place of the hasher's state and buffer, so that no objects are allocated.
+   */
+  static final class LongHash extends LongHashFunction implements Serializable {
+    static final LongHash MURMUR3_128 = new LongHash(0);
 
-    private static long fmix64(long k) {
-      k ^= k >>> 33;
-      k *= 0xff51afd7ed558ccdL;
-      k ^= k >>> 33;
-      k *= 0xc4ceb9fe1a85ec53L;
-      k ^= k >>> 33;
-      return k;
+    private final int seed;
+
+    LongHash(int seed) {
+      this.seed = seed;
     }
 
-    private static long mixK1(long k1) {
-      k1 *= C1;
-      k1 = Long.rotateLeft(k1, 31);
-      k1 *= C2;
-      return k1;
+    @Override public long hashLong(long input) {
+      return finish(seed ^ mixK1(input), seed, Long.SIZE / Byte.SIZE);
     }
 
-    private static long mixK2(long k2) {
-      k2 *= C2;
-      k2 = Long.rotateLeft(k2, 33);
-      k2 *= C1;
-      return k2;
+    @Override public long hashInt(int input) {
+      return finish(seed ^ mixK1(input & 0xFFFFFFFFL), seed, Integer.SIZE / Byte.SIZE);
     }
+
+    @Override long hashBytesUnchecked(byte[] input, int off, int len) {
+      long h1 = seed;
+      long h2 = seed;
+      int end = off + len;
+      int i = off;
+      for (; end - i >= CHUNK_SIZE; i += CHUNK_SIZE) {
+        long k1 = getLongLittleEndian(input, i);
+        long k2 = getLongLittleEndian(input, i + 8);
+
+        // bmix64
+        h1 ^= mixK1(k1);
+        h1 = Long.rotateLeft(h1, 27);
+        h1 += h2;
+        h1 = h1 * 5 + 0x52dce729;
+        h2 ^= mixK2(k2);
+        h2 = Long.rotateLeft(h2, 31);
+        h2 += h1;
+        h2 = h2 * 5 + 0x38495ab5;
+      }
+      long k1 = 0;
+      long k2 = 0;
+      for (int shift = 0; i < end; i++, shift += 8) {
+        if (shift < Long.SIZE) {
+          k1 ^= (long) toInt(input[i]) << shift;
+        } else {
+          k2 ^= (long) toInt(input[i]) << (shift - Long.SIZE);
+        }
+      }
+      return finish(h1 ^ mixK1(k1), h2 ^ mixK2(k2), len);
+    }
+
+    @Override public long hashBytes(ByteBuffer input) {
+      if (input.hasArray()) {
+        return hashBytesUnchecked(
+            input.array(), input.arrayOffset() + input.position(), input.remaining());
+      }
+      boolean littleEndian = input.order() == ByteOrder.LITTLE_ENDIAN;
+      long h1 = seed;
+      long h2 = seed;
+      int end = input.limit();
+      int i = input.position();
+      for (; end - i >= CHUNK_SIZE; i += CHUNK_SIZE) {
+        long k1 = input.getLong(i);
+        long k2 = input.getLong(i + 8);
+        if (!littleEndian) {
+          k1 = Long.reverseBytes(k1);
+          k2 = Long.reverseBytes(k2);
+        }
+
+        // bmix64
+        h1 ^= mixK1(k1);
+        h1 = Long.rotateLeft(h1, 27);
+        h1 += h2;
+        h1 = h1 * 5 + 0x52dce729;
+        h2 ^= mixK2(k2);
+        h2 = Long.rotateLeft(h2, 31);
+        h2 += h1;
+        h2 = h2 * 5 + 0x38495ab5;
+      }
+      long k1 = 0;
+      long k2 = 0;
+      for (int shift = 0; i < end; i++, shift += 8) {
+        if (shift < Long.SIZE) {
+          k1 ^= (long) toInt(input.get(i)) << shift;
+        } else {
+          k2 ^= (long) toInt(input.get(i)) << (shift - Long.SIZE);
+        }
+      }
+      return finish(h1 ^ mixK1(k1), h2 ^ mixK2(k2), input.remaining());
+    }
+
+    @Override public long hashUnencodedChars(CharSequence input) {
+      long h1 = seed;
+      long h2 = seed;
+      int length = input.length();
+      int i = 0;
+      // eight chars make a 16-byte chunk
+      for (; length - i >= 8; i += 8) {
+        long k1 = input.charAt(i)
+            | (long) input.charAt(i + 1) << 16
+            | (long) input.charAt(i + 2) << 32
+            | (long) input.charAt(i + 3) << 48;
+        long k2 = input.charAt(i + 4)
+            | (long) input.charAt(i + 5) << 16
+            | (long) input.charAt(i + 6) << 32
+            | (long) input.charAt(i + 7) << 48;
+
+        // bmix64
+        h1 ^= mixK1(k1);
+        h1 = Long.rotateLeft(h1, 27);
+        h1 += h2;
+        h1 = h1 * 5 + 0x52dce729;
+        h2 ^= mixK2(k2);
+        h2 = Long.rotateLeft(h2, 31);
+        h2 += h1;
+        h2 = h2 * 5 + 0x38495ab5;
+      }
+      long k1 = 0;
+      long k2 = 0;
+      for (int shift = 0; i < length; i++, shift += 16) {
+        if (shift < Long.SIZE) {
+          k1 ^= (long) input.charAt(i) << shift;
+        } else {
+          k2 ^= (long) input.charAt(i) << (shift - Long.SIZE);
+        }
+      }
+      return finish(h1 ^ mixK1(k1), h2 ^ mixK2(k2), 2 * length);
+    }
+
+    /** Returns the first 64 bits of the hash, as in {@link Murmur3_128Hasher#makeHash}. */
+    private static long finish(long h1, long h2, int length) {
+      h1 ^= length;
+      h2 ^= length;
+
+      h1 += h2;
+      h2 += h1;
+
+      h1 = fmix64(h1);
+      h2 = fmix64(h2);
+
+      return h1 + h2;
+    }
+
+    private static long getLongLittleEndian(byte[] input, int offset) {
+      return (long) toInt(input[offset])
+          | (long) toInt(input[offset + 1]) << 8
+          | (long) toInt(input[offset + 2]) << 16
+          | (long) toInt(input[offset + 3]) << 24
+          | (long) toInt(input[offset + 4]) << 32
+          | (long) toInt(input[offset + 5]) << 40
+          | (long) toInt(input[offset + 6]) << 48
+          | (long) toInt(input[offset + 7]) << 56;
+    }
+
+    @Override public String toString() {
+      return "LongHashFunction.murmur3_128(" + seed + ")";
+    }
+
+    @Override public boolean equals(@Nullable Object object) {
+      if (object instanceof LongHash) {
+        LongHash other = (LongHash) object;
+        return seed == other.seed;
+      }
+      return false;
+    }
+
+    @Override public int hashCode() {
+      return getClass().hashCode() ^ seed;
+    }
+
+    private static final long serialVersionUID = 0L;
   }
 
   private static final long serialVersionUID = 0L;
@@ -0,0 +1,272 @@
+/*
+ * Copyright (C) 2013 The Guava Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.common.hash;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.common.annotations.Beta;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Objects;
+import com.google.common.base.Predicate;
+import com.google.common.collect.Lists;
+
+import java.io.Serializable;
+import java.util.List;
+
+import javax.annotation.Nullable;
+
+/**
+ * A Bloom filter for instances of {@code T} which grows as elements are put into it, so that its
+ * false positive probability stays below a chosen bound however many elements it holds. Like a
+ * {@link BloomFilter}, it offers an approximate containment test with one-sided error.
+ *
+ * <p>A {@code ScalableBloomFilter} is a chain of Bloom filters, or <i>generations</i>. Elements
+ * are put into the newest generation until it holds as many elements as it was sized for, at
+ * which point a new generation is added with {@value #GROWTH_FACTOR} times the capacity and a
+ * false positive probability {@value #TIGHTENING_RATIO} times as large. The false positive
+ * probabilities of the generations form a geometric series whose sum is the probability passed
+ * to {@link #create(Funnel, int, double)}. See "Scalable Bloom Filters" by Paulo Sérgio Almeida,
+ * Carlos Baquero, Nuno Preguiça and David Hutchison.
+ *
+ * <p>Since an element is only put into the newest generation if no generation might already
+ * contain it, a {@code ScalableBloomFilter} uses slightly more memory than a {@code BloomFilter}
+ * created with the final number of elements, and {@link #mightContain} may need to probe every
+ * generation. Choose an initial number of expected insertions close to the typical final size.
+ *
+ * @param <T> the type of instances that the {@code ScalableBloomFilter} accepts
+ * @since 15.0
+ */
+@Beta
+public final class ScalableBloomFilter<T> implements Predicate<T>, Serializable {
+  /** The ratio between the capacities of consecutive generations. */
+  static final int GROWTH_FACTOR = 2;
+
+  /** The ratio between the false positive probabilities of consecutive generations. */
+  static final double TIGHTENING_RATIO = 0.8;
+
+  /** The generations, oldest first. Only the last one is put into. */
+  private final List<BloomFilter<T>> generations;
+
+  /** The number of elements put into the newest generation. */
+  private int newestCount;
+
+  /** The number of elements the first generation is sized for. */
+  private final int initialExpectedInsertions;
+
+  /** The false positive probability bound of the whole filter. */
+  private final double fpp;
+
+  private final Funnel<T> funnel;
+
+  private ScalableBloomFilter(List<BloomFilter<T>> generations, int newestCount,
+      int initialExpectedInsertions, double fpp, Funnel<T> funnel) {
+    this.generations = generations;
+    this.newestCount = newestCount;
+    this.initialExpectedInsertions = initialExpectedInsertions;
+    this.fpp = fpp;
+    this.funnel = funnel;
+  }
+
+  /**
+   * Creates a {@link ScalableBloomFilter ScalableBloomFilter<T>} whose first generation is sized
+   * for {@code initialExpectedInsertions} elements, and whose false positive probability never
+   * exceeds {@code fpp}, however many elements are put into it.
+   *
+   * <p>The constructed {@code ScalableBloomFilter<T>} will be serializable if the provided
+   * {@code Funnel<T>} is.
+   *
+   * @param funnel the funnel of T's that the constructed {@code ScalableBloomFilter<T>} will use
+   * @param initialExpectedInsertions the number of insertions the first generation is sized for;
+   *     must be positive
+   * @param fpp the bound of the false positive probability (must be positive and less than 1.0)
+   */
+  public static <T> ScalableBloomFilter<T> create(
+      Funnel<T> funnel, int initialExpectedInsertions, double fpp) {
+    checkNotNull(funnel);
+    checkArgument(initialExpectedInsertions > 0,
+        "Initial expected insertions (%s) must be > 0", initialExpectedInsertions);
+    checkArgument(fpp > 0.0, "False positive probability (%s) must be > 0.0", fpp);
+    checkArgument(fpp < 1.0, "False positive probability (%s) must be < 1.0", fpp);
+    List<BloomFilter<T>> generations = Lists.newArrayList();
+    generations.add(
+        BloomFilter.create(funnel, initialExpectedInsertions, generationFpp(fpp, 0)));
+    return new ScalableBloomFilter<T>(generations, 0, initialExpectedInsertions, fpp, funnel);
+  }
+
+  /**
+   * Returns the number of elements the generation at {@code index} is sized for.
+   */
+  @VisibleForTesting
+  static int generationCapacity(int initialExpectedInsertions, int index) {
+    long capacity = initialExpectedInsertions;
+    for (int i = 0; i < index && capacity < Integer.MAX_VALUE; i++) {
+      capacity *= GROWTH_FACTOR;
+    }
+    return (int) Math.min(capacity, Integer.MAX_VALUE);
+  }
+
+  /**
+   * Returns the false positive probability of the generation at {@code index}, such that the sum
+   * over all generations is {@code fpp}.
+   */
+  @VisibleForTesting
+  static double generationFpp(double fpp, int index) {
+    return fpp * (1 - TIGHTENING_RATIO) * Math.pow(TIGHTENING_RATIO, index);
+  }
+
+  /**
+   * Creates a new {@code ScalableBloomFilter} that's a copy of this instance. The new instance is
+   * equal to this instance but shares no mutable state.
+   */
+  public ScalableBloomFilter<T> copy() {
+    List<BloomFilter<T>> copies = Lists.newArrayListWithCapacity(generations.size());
+    for (BloomFilter<T> generation : generations) {
+      copies.add(generation.copy());
+    }
+    return new ScalableBloomFilter<T>(
+        copies, newestCount, initialExpectedInsertions, fpp, funnel);
+  }
+
+  /**
+   * Returns {@code true} if the element <i>might</i> have been put in this Bloom filter,
+   * {@code false} if this is <i>definitely</i> not the case.
+   */
+  public boolean mightContain(T object) {
+    // the newest generation is the largest, and the most likely to contain recent elements
+    for (int i = generations.size() - 1; i >= 0; i--) {
+      if (generations.get(i).mightContain(object)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Equivalent to {@link #mightContain}; provided only to satisfy the {@link Predicate} interface.
+   * When using a reference of type {@code ScalableBloomFilter}, always invoke {@link
+   * #mightContain} directly instead.
+   */
+  @Override public boolean apply(T input) {
+    return mightContain(input);
+  }
+
+  /**
+   * Puts an element into this {@code ScalableBloomFilter}, unless it might already contain it.
+   * Ensures that subsequent invocations of {@link #mightContain(Object)} with the same element
+   * will always return {@code true}.
+   *
+   * @return true if the element was put into the filter, in which case this is <i>definitely</i>
+   *     the first time {@code object} has been added to the filter. If it returns false, this
+   *     <i>might</i> be the first time {@code object} has been added to the filter. As with
+   *     {@link BloomFilter#put}, this is always the opposite of what {@code mightContain(t)}
+   *     would have returned at the time it is called.
+   */
+  public boolean put(T object) {
+    if (mightContain(object)) {
+      return false;
+    }
+    int index = generations.size() - 1;
+    if (newestCount >= generationCapacity(initialExpectedInsertions, index)) {
+      index++;
+      generations.add(BloomFilter.create(funnel,
+          generationCapacity(initialExpectedInsertions, index), generationFpp(fpp, index)));
+      newestCount = 0;
+    }
+    generations.get(index).put(object);
+    newestCount++;
+    return true;
+  }
+
+  /**
+   * Returns the probability that {@linkplain #mightContain(Object)} will erroneously return
+   * {@code true} for an object that has not actually been put in the {@code ScalableBloomFilter}.
+   * This is computed from the number of bits set in each generation, and is normally well below
+   * the {@code fpp} passed to {@link #create}.
+   */
+  public double expectedFpp() {
+    double noFalsePositive = 1.0;
+    for (BloomFilter<T> generation : generations) {
+      noFalsePositive *= 1.0 - generation.expectedFpp();
+    }
+    return 1.0 - noFalsePositive;
+  }
+
+  /**
+   * Returns the number of generations in this filter.
+   */
+  @VisibleForTesting int generationCount() {
+    return generations.size();
+  }
+
+  /**
+   * Returns the total number of bits in the generations of this filter.
+   */
+  @VisibleForTesting long bitSize() {
+    long bitSize = 0;
+    for (BloomFilter<T> generation : generations) {
+      bitSize += generation.bitSize();
+    }
+    return bitSize;
+  }
+
+  @Override
+  public boolean equals(@Nullable Object object) {
+    if (object == this) {
+      return true;
+    }
+    if (object instanceof ScalableBloomFilter) {
+      ScalableBloomFilter<?> that = (ScalableBloomFilter<?>) object;
+      return this.initialExpectedInsertions == that.initialExpectedInsertions
+          && this.fpp == that.fpp
+          && this.newestCount == that.newestCount
+          && this.funnel.equals(that.funnel)
+          && this.generations.equals(that.generations);
+    }
+    return false;
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hashCode(initialExpectedInsertions, fpp, funnel, generations);
+  }
+
+  private Object writeReplace() {
+    return new SerialForm<T>(this);
+  }
+
+  private static class SerialForm<T> implements Serializable {
+    final List<BloomFilter<T>> generations;
+    final int newestCount;
+    final int initialExpectedInsertions;
+    final double fpp;
+    final Funnel<T> funnel;
+
+    SerialForm(ScalableBloomFilter<T> sbf) {
+      this.generations = sbf.generations;
+      this.newestCount = sbf.newestCount;
+      this.initialExpectedInsertions = sbf.initialExpectedInsertions;
+      this.fpp = sbf.fpp;
+      this.funnel = sbf.funnel;
+    }
+    Object readResolve() {
+      return new ScalableBloomFilter<T>(Lists.newArrayList(generations), newestCount,
+          initialExpectedInsertions, fpp, funnel);
+    }
+    private static final long serialVersionUID = 1;
+  }
+}
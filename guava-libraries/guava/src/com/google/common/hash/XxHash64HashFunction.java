@@ -0,0 +1,173 @@
+/*
+ * Copyright (C) 2013 The Guava Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+/*
+ * xxHash was written by Yann Collet, and is distributed under the BSD 2-Clause License.
+ */
+
+/*
+ * Source:
+ * https://code.google.com/p/xxhash/
+ * (Modified to adapt to Guava coding conventions and to use the HashFunction interface)
+ */
+
+package com.google.common.hash;
+
+import static com.google.common.primitives.UnsignedBytes.toInt;
+
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+
+import javax.annotation.Nullable;
+
+/**
+ * See https://code.google.com/p/xxhash/
+ * XXH64
+ */
+final class XxHash64HashFunction extends AbstractStreamingHashFunction implements Serializable {
+  private final long seed;
+
+  XxHash64HashFunction(long seed) {
+    this.seed = seed;
+  }
+
+  @Override public int bits() {
+    return 64;
+  }
+
+  @Override public Hasher newHasher() {
+    return new XxHash64Hasher(seed);
+  }
+
+  @Override
+  public String toString() {
+    return "Hashing.xxHash64(" + seed + ")";
+  }
+
+  @Override
+  public boolean equals(@Nullable Object object) {
+    if (object instanceof XxHash64HashFunction) {
+      XxHash64HashFunction other = (XxHash64HashFunction) object;
+      return seed == other.seed;
+    }
+    return false;
+  }
+
+  @Override
+  public int hashCode() {
+    return getClass().hashCode() ^ (int) (seed ^ (seed >>> 32));
+  }
+
+  private static final class XxHash64Hasher extends AbstractStreamingHasher {
+    private final long seed;
+    private long v1;
+    private long v2;
+    private long v3;
+    private long v4;
+    private long length;
+
+    /** The hash of the stripes processed so far; valid once {@link #converge} is called. */
+    private long h;
+    private boolean converged;
+
+    XxHash64Hasher(long seed) {
+      super(CHUNK_SIZE);
+      this.seed = seed;
+      this.v1 = seed + PRIME64_1 + PRIME64_2;
+      this.v2 = seed + PRIME64_2;
+      this.v3 = seed;
+      this.v4 = seed - PRIME64_1;
+    }
+
+    @Override protected void process(ByteBuffer bb) {
+      v1 = round(v1, bb.getLong());
+      v2 = round(v2, bb.getLong());
+      v3 = round(v3, bb.getLong());
+      v4 = round(v4, bb.getLong());
+      length += CHUNK_SIZE;
+    }
+
+    @Override protected void processRemaining(ByteBuffer bb) {
+      length += bb.remaining();
+      converge();
+      while (bb.remaining() >= 8) {
+        h ^= round(0, bb.getLong());
+        h = Long.rotateLeft(h, 27) * PRIME64_1 + PRIME64_4;
+      }
+      if (bb.remaining() >= 4) {
+        h ^= (bb.getInt() & 0xFFFFFFFFL) * PRIME64_1;
+        h = Long.rotateLeft(h, 23) * PRIME64_2 + PRIME64_3;
+      }
+      while (bb.hasRemaining()) {
+        h ^= toInt(bb.get()) * PRIME64_5;
+        h = Long.rotateLeft(h, 11) * PRIME64_1;
+      }
+    }
+
+    /**
+     * Merges the four accumulators, which are only used if at least one whole stripe was
+     * processed, and mixes in the total length. Must be called after the last stripe.
+     */
+    private void converge() {
+      if (converged) {
+        return;
+      }
+      if (length >= CHUNK_SIZE) {
+        h = Long.rotateLeft(v1, 1) + Long.rotateLeft(v2, 7)
+            + Long.rotateLeft(v3, 12) + Long.rotateLeft(v4, 18);
+        h = mergeRound(h, v1);
+        h = mergeRound(h, v2);
+        h = mergeRound(h, v3);
+        h = mergeRound(h, v4);
+      } else {
+        h = seed + PRIME64_5;
+      }
+      h += length;
+      converged = true;
+    }
+
+    @Override public HashCode makeHash() {
+      converge();
+      h ^= h >>> 33;
+      h *= PRIME64_2;
+      h ^= h >>> 29;
+      h *= PRIME64_3;
+      h ^= h >>> 32;
+      return HashCodes.fromLong(h);
+    }
+  }
+
+  /** The length of a stripe: four little-endian longs, one for each accumulator. */
+  private static final int CHUNK_SIZE = 32;
+
+  private static final long PRIME64_1 = 0x9E3779B185EBCA87L;
+  private static final long PRIME64_2 = 0xC2B2AE3D27D4EB4FL;
+  private static final long PRIME64_3 = 0x165667B19E3779F9L;
+  private static final long PRIME64_4 = 0x85EBCA77C2B2AE63L;
+  private static final long PRIME64_5 = 0x27D4EB2F165667C5L;
+
+  private static long round(long acc, long input) {
+    acc += input * PRIME64_2;
+    acc = Long.rotateLeft(acc, 31);
+    acc *= PRIME64_1;
+    return acc;
+  }
+
+  private static long mergeRound(long acc, long v) {
+    acc ^= round(0, v);
+    return acc * PRIME64_1 + PRIME64_4;
+  }
+
+  private static final long serialVersionUID = 0L;
+}
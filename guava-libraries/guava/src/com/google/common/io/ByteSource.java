@@ -19,11 +19,15 @@ package com.google.common.io;
 import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 
+import com.google.common.annotations.Beta;
+import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
 import com.google.common.hash.Funnels;
 import com.google.common.hash.HashCode;
 import com.google.common.hash.HashFunction;
 import com.google.common.hash.Hasher;
+import com.google.common.util.concurrent.Uninterruptibles;
 
 import java.io.BufferedInputStream;
 import java.io.ByteArrayInputStream;
@@ -35,6 +39,11 @@ import java.io.Reader;
 import java.nio.charset.Charset;
 import java.util.Arrays;
 import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
 
 /**
  * A readable source of bytes, such as a file. Unlike an {@link InputStream}, a
@@ -259,6 +268,122 @@ public abstract class ByteSource implements InputSupplier<InputStream> {
     return hasher.hash();
   }
 
+  /**
+   * Hashes the contents of this byte source as a two-level tree, so that its parts can be hashed
+   * in parallel. The source is split into consecutive {@linkplain #slice slices} of {@code
+   * leafSize} bytes (the last one may be shorter), each of which is hashed with {@code
+   * hashFunction}, prefixed by a zero byte, by a task run on {@code executor}. The result is
+   * {@code hashFunction} applied to a one byte followed by the {@linkplain HashCode#asBytes bytes}
+   * of those leaf hash codes, in order. The prefixes keep the hash code of a leaf from being equal
+   * to that of a node with different contents.
+   *
+   * <p>The result depends only on the contents of the source, the hash function and the leaf size,
+   * not on the executor; it is <i>not</i> equal to {@link #hash(HashFunction)}.
+   *
+   * <p>Byte arrays and the leaves of a file obtained from {@link Files#asByteSource} are read
+   * directly, the latter using memory-mapped I/O. Any other source opens a new stream for each
+   * leaf and {@linkplain InputStream#skip skips} to its offset; unless its streams can skip without
+   * reading, the total amount read is then quadratic in the number of leaves.
+   *
+   * <p>The {@linkplain #size size} of the source is read once, to determine the slices; the source
+   * must not change size while it is being hashed. Some sources, such as special files, report a
+   * size of zero though they have contents; a source reporting zero is instead read through a
+   * single stream, its leaves being hashed in turn on the calling thread.
+   *
+   * @param hashFunction the function hashing the leaves, and their hash codes
+   * @param leafSize the number of bytes in each leaf; must be positive
+   * @param executor the executor which runs the task hashing each leaf
+   * @throws IOException if an I/O error occurs in the process of reading from this source
+   * @since 15.0
+   */
+  @Beta
+  public HashCode hash(final HashFunction hashFunction, final long leafSize, Executor executor)
+      throws IOException {
+    checkNotNull(hashFunction);
+    checkArgument(leafSize > 0, "leafSize (%s) must be positive", leafSize);
+    checkNotNull(executor);
+    long size = size();
+    if (size == 0) {
+      // the size may not be known; read the leaves from a stream until it is exhausted
+      return hashLeavesInTurn(hashFunction, leafSize);
+    }
+    long leafCount = (size - 1) / leafSize + 1;
+    checkArgument(leafCount <= Integer.MAX_VALUE, "leafSize (%s) is too small", leafSize);
+
+    List<FutureTask<HashCode>> leaves = Lists.newArrayListWithCapacity((int) leafCount);
+    try {
+      for (long i = 0; i < leafCount; i++) {
+        final long offset = i * leafSize;
+        FutureTask<HashCode> leaf = new FutureTask<HashCode>(new Callable<HashCode>() {
+          @Override
+          public HashCode call() throws IOException {
+            Hasher hasher = hashFunction.newHasher().putByte(LEAF_PREFIX);
+            putSlice(hasher, offset, leafSize);
+            return hasher.hash();
+          }
+        });
+        leaves.add(leaf);
+        executor.execute(leaf);
+      }
+      Hasher root = hashFunction.newHasher().putByte(NODE_PREFIX);
+      for (FutureTask<HashCode> leaf : leaves) {
+        root.putBytes(Uninterruptibles.getUninterruptibly(leaf).asBytes());
+      }
+      return root.hash();
+    } catch (ExecutionException e) {
+      Throwables.propagateIfPossible(e.getCause(), IOException.class);
+      throw new AssertionError(e.getCause());
+    } finally {
+      for (FutureTask<HashCode> leaf : leaves) {
+        leaf.cancel(false);
+      }
+    }
+  }
+
+  /** The byte preceding the contents of a leaf in {@link #hash(HashFunction, long, Executor)}. */
+  private static final byte LEAF_PREFIX = 0;
+
+  /** The byte preceding the leaf hash codes in {@link #hash(HashFunction, long, Executor)}. */
+  private static final byte NODE_PREFIX = 1;
+
+  /**
+   * Computes {@link #hash(HashFunction, long, Executor)} from a single stream, for a source whose
+   * size isn't known in advance.
+   */
+  private HashCode hashLeavesInTurn(HashFunction hashFunction, long leafSize) throws IOException {
+    Hasher root = hashFunction.newHasher().putByte(NODE_PREFIX);
+    Closer closer = Closer.create();
+    try {
+      InputStream in = closer.register(openStream());
+      for (boolean first = true; ; first = false) {
+        Hasher leaf = hashFunction.newHasher().putByte(LEAF_PREFIX);
+        long count =
+            ByteStreams.copy(ByteStreams.limit(in, leafSize), Funnels.asOutputStream(leaf));
+        if (count == 0 && !first) {
+          // the previous leaf was full, and ended the source
+          break;
+        }
+        root.putBytes(leaf.hash().asBytes());
+        if (count < leafSize) {
+          break;
+        }
+      }
+      return root.hash();
+    } catch (Throwable e) {
+      throw closer.rethrow(e);
+    } finally {
+      closer.close();
+    }
+  }
+
+  /**
+   * Puts a leaf of {@link #hash(HashFunction, long, Executor)} into {@code hasher}: at most {@code
+   * length} bytes of this source, starting at {@code offset}.
+   */
+  void putSlice(Hasher hasher, long offset, long length) throws IOException {
+    slice(offset, length).copyTo(Funnels.asOutputStream(hasher));
+  }
+
   /**
    * Checks that the contents of this byte source are equal to the contents of the given byte
    * source.
@@ -427,6 +552,12 @@ public abstract class ByteSource implements InputSupplier<InputStream> {
       return ByteSource.this.slice(this.offset + offset, Math.min(length, maxLength));
     }
 
+    @Override
+    void putSlice(Hasher hasher, long offset, long length) throws IOException {
+      long maxLength = Math.max(0, this.length - offset);
+      ByteSource.this.putSlice(hasher, this.offset + offset, Math.min(length, maxLength));
+    }
+
     @Override
     public String toString() {
       return ByteSource.this.toString() + ".slice(" + offset + ", " + length + ")";
@@ -467,6 +598,13 @@ public abstract class ByteSource implements InputSupplier<InputStream> {
       return hashFunction.hashBytes(bytes);
     }
 
+    @Override
+    void putSlice(Hasher hasher, long offset, long length) {
+      int start = (int) Math.min(offset, bytes.length);
+      int end = (int) Math.min(start + length, bytes.length);
+      hasher.putBytes(bytes, start, end - start);
+    }
+
     // TODO(user): Possibly override slice()
 
     @Override
@@ -29,6 +29,7 @@ import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.TreeTraverser;
 import com.google.common.hash.HashCode;
 import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hasher;
 
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
@@ -68,6 +69,9 @@ public final class Files {
   /** Maximum loop count when creating temp directories. */
   private static final int TEMP_DIR_ATTEMPTS = 10000;
 
+  /** The size of the buffer through which mapped slices of a file are hashed. */
+  private static final int HASH_BUF_SIZE = 0x2000; // 8K
+
   private Files() {}
 
   /**
@@ -196,6 +200,44 @@ public final class Files {
       }
     }
 
+    /**
+     * Reads the slice by mapping it into memory, rather than through a stream, so that slices of
+     * a large file can be hashed concurrently without contending for a stream position.
+     */
+    @Override
+    void putSlice(Hasher hasher, long offset, long length) throws IOException {
+      if (file.length() == 0) {
+        // some special files may return size 0 but have content; read normally
+        super.putSlice(hasher, offset, length);
+        return;
+      }
+
+      Closer closer = Closer.create();
+      try {
+        RandomAccessFile raf = closer.register(new RandomAccessFile(file, "r"));
+        FileChannel channel = closer.register(raf.getChannel());
+        long remaining = Math.min(length, Math.max(0, channel.size() - offset));
+        byte[] buf = new byte[HASH_BUF_SIZE];
+        for (long position = offset; remaining > 0; ) {
+          // a single mapping can't be larger than Integer.MAX_VALUE bytes
+          MappedByteBuffer region = channel.map(
+              MapMode.READ_ONLY, position, Math.min(remaining, Integer.MAX_VALUE));
+          int regionSize = region.remaining();
+          while (region.hasRemaining()) {
+            int count = Math.min(buf.length, region.remaining());
+            region.get(buf, 0, count);
+            hasher.putBytes(buf, 0, count);
+          }
+          position += regionSize;
+          remaining -= regionSize;
+        }
+      } catch (Throwable e) {
+        throw closer.rethrow(e);
+      } finally {
+        closer.close();
+      }
+    }
+
     @Override
     public String toString() {
       return "Files.asByteSource(" + file + ")";
@@ -23,7 +23,8 @@ import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
-import java.util.concurrent.locks.AbstractQueuedSynchronizer;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import java.util.concurrent.locks.LockSupport;
 
 import javax.annotation.Nullable;
 
@@ -42,33 +43,65 @@ import javax.annotation.Nullable;
  * #interruptTask()}, which will be invoked automatically if a call to {@link
  * #cancel(boolean) cancel(true)} succeeds in canceling the future.
  *
- * <p>{@code AbstractFuture} uses an {@link AbstractQueuedSynchronizer} to deal
- * with concurrency issues and guarantee thread safety.
+ * <p>{@code AbstractFuture} is lock-free: its result is published by a single
+ * compare-and-set, and the threads blocked in {@code get} and the registered
+ * listeners are kept in two Treiber stacks, which are atomically replaced by a
+ * marker when the future completes. A future which completes without being
+ * waited on costs no objects besides itself and one node per listener.
  *
  * <p>The state changing methods all return a boolean indicating success or
  * failure in changing the future's state.  Valid states are running,
  * completed, failed, or cancelled.
  *
- * <p>This class uses an {@link ExecutionList} to guarantee that all registered
- * listeners will be executed, either when the future finishes or, for listeners
- * that are added after the future completes, immediately.
- * {@code Runnable}-{@code Executor} pairs are stored in the execution list but
- * are not necessarily executed in the order in which they were added.  (If a
- * listener is added after the Future is complete, it will be executed
- * immediately, even if earlier listeners have not been executed. Additionally,
- * executors need not guarantee FIFO execution, or different listeners may run
- * in different executors.)
+ * <p>This class guarantees that all registered listeners will be executed,
+ * either when the future finishes or, for listeners that are added after the
+ * future completes, immediately, in the same manner as an {@link
+ * ExecutionList}. {@code Runnable}-{@code Executor} pairs are not necessarily
+ * executed in the order in which they were added.  (If a listener is added
+ * after the Future is complete, it will be executed immediately, even if
+ * earlier listeners have not been executed. Additionally, executors need not
+ * guarantee FIFO execution, or different listeners may run in different
+ * executors.)
  *
  * @author Sven Mawson
  * @since 1.0
  */
 public abstract class AbstractFuture<V> implements ListenableFuture<V> {
 
-  /** Synchronization control for AbstractFutures. */
-  private final Sync<V> sync = new Sync<V>();
+  @SuppressWarnings("rawtypes") // the class literal of a generic class is raw
+  private static final AtomicReferenceFieldUpdater<AbstractFuture, Object> VALUE_UPDATER =
+      AtomicReferenceFieldUpdater.newUpdater(AbstractFuture.class, Object.class, "value");
 
-  // The execution list to hold our executors.
-  private final ExecutionList executionList = new ExecutionList();
+  @SuppressWarnings("rawtypes") // the class literal of a generic class is raw
+  private static final AtomicReferenceFieldUpdater<AbstractFuture, Waiter> WAITERS_UPDATER =
+      AtomicReferenceFieldUpdater.newUpdater(AbstractFuture.class, Waiter.class, "waiters");
+
+  @SuppressWarnings("rawtypes") // the class literal of a generic class is raw
+  private static final AtomicReferenceFieldUpdater<AbstractFuture, Listener> LISTENERS_UPDATER =
+      AtomicReferenceFieldUpdater.newUpdater(AbstractFuture.class, Listener.class, "listeners");
+
+  /** The value of a future which completed with a {@code null} result. */
+  private static final Object NULL = new Object();
+
+  /**
+   * The result of the future: {@code null} while it is running; once it is
+   * done, {@link #NULL}, a {@link Failure}, a {@link Cancellation}, or the
+   * value it was {@linkplain #set set} to. It is only changed once, from
+   * {@code null}, by {@link #complete}.
+   */
+  private volatile Object value;
+
+  /**
+   * The threads blocked in {@code get}, or {@link Waiter#TOMBSTONE} once the
+   * future is done.
+   */
+  private volatile Waiter waiters;
+
+  /**
+   * The listeners to execute when the future is done, most recently added
+   * first, or {@link Listener#TOMBSTONE} once they have been executed.
+   */
+  private volatile Listener listeners;
 
   /**
    * Constructor for use by subclasses.
@@ -93,7 +126,40 @@ public abstract class AbstractFuture<V> implements ListenableFuture<V> {
   @Override
   public V get(long timeout, TimeUnit unit) throws InterruptedException,
       TimeoutException, ExecutionException {
-    return sync.get(unit.toNanos(timeout));
+    long remainingNanos = unit.toNanos(timeout);
+    if (Thread.interrupted()) {
+      throw new InterruptedException();
+    }
+    Object localValue = value;
+    if (localValue != null) {
+      return getDoneValue(localValue);
+    }
+    if (remainingNanos > 0) {
+      long deadline = System.nanoTime() + remainingNanos;
+      Waiter node = pushWaiter();
+      if (node != null) {
+        do {
+          LockSupport.parkNanos(this, remainingNanos);
+          if (Thread.interrupted()) {
+            removeWaiter(node);
+            throw new InterruptedException();
+          }
+          localValue = value;
+          if (localValue != null) {
+            return getDoneValue(localValue);
+          }
+          remainingNanos = deadline - System.nanoTime();
+        } while (remainingNanos > 0);
+        removeWaiter(node);
+      }
+    }
+    // The future may have completed since we last checked, or the stack of
+    // waiters was already replaced by the tombstone.
+    localValue = value;
+    if (localValue != null) {
+      return getDoneValue(localValue);
+    }
+    throw new TimeoutException("Timeout waiting for task.");
   }
 
   /*
@@ -113,25 +179,67 @@ public abstract class AbstractFuture<V> implements ListenableFuture<V> {
    */
   @Override
   public V get() throws InterruptedException, ExecutionException {
-    return sync.get();
+    if (Thread.interrupted()) {
+      throw new InterruptedException();
+    }
+    Object localValue = value;
+    if (localValue != null) {
+      return getDoneValue(localValue);
+    }
+    Waiter node = pushWaiter();
+    if (node != null) {
+      while (true) {
+        LockSupport.park(this);
+        if (Thread.interrupted()) {
+          removeWaiter(node);
+          throw new InterruptedException();
+        }
+        localValue = value;
+        if (localValue != null) {
+          return getDoneValue(localValue);
+        }
+      }
+    }
+    // The stack of waiters was replaced by the tombstone, so we are done.
+    return getDoneValue(value);
+  }
+
+  /**
+   * Returns the value of a done future, or throws the exception it failed
+   * with.
+   */
+  private V getDoneValue(Object localValue) throws ExecutionException {
+    if (localValue instanceof Cancellation) {
+      throw cancellationExceptionWithCause(
+          "Task was cancelled.", ((Cancellation) localValue).cause);
+    } else if (localValue instanceof Failure) {
+      throw new ExecutionException(((Failure) localValue).exception);
+    } else if (localValue == NULL) {
+      return null;
+    } else {
+      @SuppressWarnings("unchecked") // only set() stores other objects
+      V asV = (V) localValue;
+      return asV;
+    }
   }
 
   @Override
   public boolean isDone() {
-    return sync.isDone();
+    return value != null;
   }
 
   @Override
   public boolean isCancelled() {
-    return sync.isCancelled();
+    return value instanceof Cancellation;
   }
 
   @Override
   public boolean cancel(boolean mayInterruptIfRunning) {
-    if (!sync.cancel(mayInterruptIfRunning)) {
+    // Don't actually construct a CancellationException until necessary.
+    if (value != null || !complete(new Cancellation(mayInterruptIfRunning,
+        new CancellationException("Future.cancel() was called.")))) {
       return false;
     }
-    executionList.execute();
     if (mayInterruptIfRunning) {
       interruptTask();
     }
@@ -157,7 +265,9 @@ public abstract class AbstractFuture<V> implements ListenableFuture<V> {
    * @since 14.0
    */
   protected final boolean wasInterrupted() {
-    return sync.wasInterrupted();
+    Object localValue = value;
+    return (localValue instanceof Cancellation)
+        && ((Cancellation) localValue).wasInterrupted;
   }
 
   /**
@@ -167,223 +277,199 @@ public abstract class AbstractFuture<V> implements ListenableFuture<V> {
    */
   @Override
   public void addListener(Runnable listener, Executor exec) {
-    executionList.add(listener, exec);
+    // Fail fast on a null, as ExecutionList.add does.
+    checkNotNull(listener, "Runnable was null.");
+    checkNotNull(exec, "Executor was null.");
+    Listener oldHead = listeners;
+    if (oldHead != Listener.TOMBSTONE) {
+      Listener newNode = new Listener(listener, exec);
+      do {
+        newNode.next = oldHead;
+        if (LISTENERS_UPDATER.compareAndSet(this, oldHead, newNode)) {
+          return;
+        }
+        oldHead = listeners;
+      } while (oldHead != Listener.TOMBSTONE);
+    }
+    // The listeners have already been executed, so execute this one now.
+    ExecutionList.executeListener(listener, exec);
   }
 
   /**
    * Subclasses should invoke this method to set the result of the computation
-   * to {@code value}.  This will set the state of the future to
-   * {@link AbstractFuture.Sync#COMPLETED} and invoke the listeners if the
-   * state was successfully changed.
+   * to {@code value}.  This will set the state of the future to completed and
+   * invoke the listeners if the state was successfully changed.
    *
    * @param value the value that was the result of the task.
    * @return true if the state was successfully changed.
    */
   protected boolean set(@Nullable V value) {
-    boolean result = sync.set(value);
-    if (result) {
-      executionList.execute();
-    }
-    return result;
+    return complete(value == null ? NULL : value);
   }
 
   /**
    * Subclasses should invoke this method to set the result of the computation
    * to an error, {@code throwable}.  This will set the state of the future to
-   * {@link AbstractFuture.Sync#COMPLETED} and invoke the listeners if the
-   * state was successfully changed.
+   * failed and invoke the listeners if the state was successfully changed.
    *
    * @param throwable the exception that the task failed with.
    * @return true if the state was successfully changed.
    */
   protected boolean setException(Throwable throwable) {
-    boolean result = sync.setException(checkNotNull(throwable));
-    if (result) {
-      executionList.execute();
-    }
-    return result;
+    return complete(new Failure(checkNotNull(throwable)));
   }
 
   /**
-   * <p>Following the contract of {@link AbstractQueuedSynchronizer} we create a
-   * private subclass to hold the synchronizer.  This synchronizer is used to
-   * implement the blocking and waiting calls as well as to handle state changes
-   * in a thread-safe manner.  The current state of the future is held in the
-   * Sync state, and the lock is released whenever the state changes to
-   * {@link #COMPLETED}, {@link #CANCELLED}, or {@link #INTERRUPTED}
-   *
-   * <p>To avoid races between threads doing release and acquire, we transition
-   * to the final state in two steps.  One thread will successfully CAS from
-   * RUNNING to COMPLETING, that thread will then set the result of the
-   * computation, and only then transition to COMPLETED, CANCELLED, or
-   * INTERRUPTED.
+   * Sets the result of the future, if it is still running, then wakes up the
+   * waiting threads and executes the listeners.
    *
-   * <p>We don't use the integer argument passed between acquire methods so we
-   * pass around a -1 everywhere.
+   * @return true if this call completed the future
    */
-  static final class Sync<V> extends AbstractQueuedSynchronizer {
-
-    private static final long serialVersionUID = 0L;
-
-    /* Valid states. */
-    static final int RUNNING = 0;
-    static final int COMPLETING = 1;
-    static final int COMPLETED = 2;
-    static final int CANCELLED = 4;
-    static final int INTERRUPTED = 8;
-
-    private V value;
-    private Throwable exception;
-
-    /*
-     * Acquisition succeeds if the future is done, otherwise it fails.
-     */
-    @Override
-    protected int tryAcquireShared(int ignored) {
-      if (isDone()) {
-        return 1;
-      }
-      return -1;
+  private boolean complete(Object newValue) {
+    if (!VALUE_UPDATER.compareAndSet(this, null, newValue)) {
+      return false;
     }
+    releaseWaiters();
+    executeListeners();
+    return true;
+  }
 
-    /*
-     * We always allow a release to go through, this means the state has been
-     * successfully changed and the result is available.
-     */
-    @Override
-    protected boolean tryReleaseShared(int finalState) {
-      setState(finalState);
-      return true;
+  /**
+   * Pushes a node for the current thread onto the stack of waiters, unless
+   * the future is done.
+   *
+   * @return the node, or null if the stack was already replaced by the
+   *     tombstone
+   */
+  @Nullable private Waiter pushWaiter() {
+    Waiter oldHead = waiters;
+    if (oldHead == Waiter.TOMBSTONE) {
+      return null;
     }
+    Waiter node = new Waiter(Thread.currentThread());
+    do {
+      node.next = oldHead;
+      if (WAITERS_UPDATER.compareAndSet(this, oldHead, node)) {
+        return node;
+      }
+      oldHead = waiters;
+    } while (oldHead != Waiter.TOMBSTONE);
+    return null;
+  }
 
-    /**
-     * Blocks until the task is complete or the timeout expires.  Throws a
-     * {@link TimeoutException} if the timer expires, otherwise behaves like
-     * {@link #get()}.
-     */
-    V get(long nanos) throws TimeoutException, CancellationException,
-        ExecutionException, InterruptedException {
-
-      // Attempt to acquire the shared lock with a timeout.
-      if (!tryAcquireSharedNanos(-1, nanos)) {
-        throw new TimeoutException("Timeout waiting for task.");
+  /**
+   * Unlinks a node whose thread stopped waiting because it was interrupted or
+   * timed out. Its thread is cleared first, which marks it for removal; the
+   * stack is then traversed, unlinking every marked node. If another thread
+   * changes the stack concurrently, the traversal restarts.
+   */
+  private void removeWaiter(Waiter node) {
+    node.thread = null;
+    restart: while (true) {
+      Waiter pred = null;
+      Waiter curr = waiters;
+      if (curr == Waiter.TOMBSTONE) {
+        return; // the future is done, and the stack is no longer used
+      }
+      while (curr != null) {
+        Waiter succ = curr.next;
+        if (curr.thread != null) {
+          pred = curr;
+        } else if (pred != null) {
+          pred.next = succ;
+          if (pred.thread == null) {
+            // pred was itself removed concurrently; we may have relinked it
+            continue restart;
+          }
+        } else if (!WAITERS_UPDATER.compareAndSet(this, curr, succ)) {
+          continue restart; // the head changed
+        }
+        curr = succ;
       }
+      return;
+    }
+  }
 
-      return getValue();
+  /** Replaces the stack of waiters by the tombstone, and wakes them up. */
+  private void releaseWaiters() {
+    @SuppressWarnings("unchecked") // the updater's type is raw
+    Waiter head = WAITERS_UPDATER.getAndSet(this, Waiter.TOMBSTONE);
+    for (Waiter waiter = head; waiter != null; waiter = waiter.next) {
+      Thread thread = waiter.thread;
+      if (thread != null) {
+        waiter.thread = null;
+        LockSupport.unpark(thread);
+      }
     }
+  }
 
-    /**
-     * Blocks until {@link #complete(Object, Throwable, int)} has been
-     * successfully called.  Throws a {@link CancellationException} if the task
-     * was cancelled, or a {@link ExecutionException} if the task completed with
-     * an error.
-     */
-    V get() throws CancellationException, ExecutionException,
-        InterruptedException {
-
-      // Acquire the shared lock allowing interruption.
-      acquireSharedInterruptibly(-1);
-      return getValue();
+  /**
+   * Replaces the stack of listeners by the tombstone, and executes them in the
+   * order in which they were added.
+   */
+  private void executeListeners() {
+    @SuppressWarnings("unchecked") // the updater's type is raw
+    Listener list = LISTENERS_UPDATER.getAndSet(this, Listener.TOMBSTONE);
+    // The stack holds the most recently added listener first; reverse it.
+    Listener reversedList = null;
+    while (list != null) {
+      Listener tmp = list;
+      list = list.next;
+      tmp.next = reversedList;
+      reversedList = tmp;
+    }
+    while (reversedList != null) {
+      ExecutionList.executeListener(reversedList.runnable, reversedList.executor);
+      reversedList = reversedList.next;
     }
+  }
 
-    /**
-     * Implementation of the actual value retrieval.  Will return the value
-     * on success, an exception on failure, a cancellation on cancellation, or
-     * an illegal state if the synchronizer is in an invalid state.
-     */
-    private V getValue() throws CancellationException, ExecutionException {
-      int state = getState();
-      switch (state) {
-        case COMPLETED:
-          if (exception != null) {
-            throw new ExecutionException(exception);
-          } else {
-            return value;
-          }
+  /** A node of the stack of threads blocked in {@code get}. */
+  private static final class Waiter {
+    static final Waiter TOMBSTONE = new Waiter(null);
 
-        case CANCELLED:
-        case INTERRUPTED:
-          throw cancellationExceptionWithCause(
-              "Task was cancelled.", exception);
+    /** The waiting thread, or null once it has been woken up or stopped waiting. */
+    @Nullable volatile Thread thread;
+    @Nullable volatile Waiter next;
 
-        default:
-          throw new IllegalStateException(
-              "Error, synchronizer in invalid state: " + state);
-      }
+    Waiter(@Nullable Thread thread) {
+      this.thread = thread;
     }
+  }
 
-    /**
-     * Checks if the state is {@link #COMPLETED}, {@link #CANCELLED}, or {@link
-     * INTERRUPTED}.
-     */
-    boolean isDone() {
-      return (getState() & (COMPLETED | CANCELLED | INTERRUPTED)) != 0;
-    }
+  /** A node of the stack of listeners. */
+  private static final class Listener {
+    static final Listener TOMBSTONE = new Listener(null, null);
 
-    /**
-     * Checks if the state is {@link #CANCELLED} or {@link #INTERRUPTED}.
-     */
-    boolean isCancelled() {
-      return (getState() & (CANCELLED | INTERRUPTED)) != 0;
-    }
+    final Runnable runnable;
+    final Executor executor;
+    // Written before the node is published by a CAS, and read after the stack
+    // is taken by the thread executing the listeners.
+    @Nullable Listener next;
 
-    /**
-     * Checks if the state is {@link #INTERRUPTED}.
-     */
-    boolean wasInterrupted() {
-      return getState() == INTERRUPTED;
+    Listener(Runnable runnable, Executor executor) {
+      this.runnable = runnable;
+      this.executor = executor;
     }
+  }
 
-    /**
-     * Transition to the COMPLETED state and set the value.
-     */
-    boolean set(@Nullable V v) {
-      return complete(v, null, COMPLETED);
-    }
+  /** The value of a future which failed. */
+  private static final class Failure {
+    final Throwable exception;
 
-    /**
-     * Transition to the COMPLETED state and set the exception.
-     */
-    boolean setException(Throwable t) {
-      return complete(null, t, COMPLETED);
+    Failure(Throwable exception) {
+      this.exception = exception;
     }
+  }
 
-    /**
-     * Transition to the CANCELLED or INTERRUPTED state.
-     */
-    boolean cancel(boolean interrupt) {
-      return complete(null, null, interrupt ? INTERRUPTED : CANCELLED);
-    }
+  /** The value of a future which was cancelled. */
+  private static final class Cancellation {
+    final boolean wasInterrupted;
+    final Throwable cause;
 
-    /**
-     * Implementation of completing a task.  Either {@code v} or {@code t} will
-     * be set but not both.  The {@code finalState} is the state to change to
-     * from {@link #RUNNING}.  If the state is not in the RUNNING state we
-     * return {@code false} after waiting for the state to be set to a valid
-     * final state ({@link #COMPLETED}, {@link #CANCELLED}, or {@link
-     * #INTERRUPTED}).
-     *
-     * @param v the value to set as the result of the computation.
-     * @param t the exception to set as the result of the computation.
-     * @param finalState the state to transition to.
-     */
-    private boolean complete(@Nullable V v, @Nullable Throwable t,
-        int finalState) {
-      boolean doCompletion = compareAndSetState(RUNNING, COMPLETING);
-      if (doCompletion) {
-        // If this thread successfully transitioned to COMPLETING, set the value
-        // and exception and then release to the final state.
-        this.value = v;
-        // Don't actually construct a CancellationException until necessary.
-        this.exception = ((finalState & (CANCELLED | INTERRUPTED)) != 0)
-            ? new CancellationException("Future.cancel() was called.") : t;
-        releaseShared(finalState);
-      } else if (getState() == COMPLETING) {
-        // If some other thread is currently completing the future, block until
-        // they are done so we can guarantee completion.
-        acquireShared(-1);
-      }
-      return doCompletion;
+    Cancellation(boolean wasInterrupted, Throwable cause) {
+      this.wasInterrupted = wasInterrupted;
+      this.cause = cause;
     }
   }
 
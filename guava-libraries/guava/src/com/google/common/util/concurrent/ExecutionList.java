@@ -149,9 +149,10 @@ public final class ExecutionList {
 
   /**
    * Submits the given runnable to the given {@link Executor} catching and logging all 
-   * {@linkplain RuntimeException runtime exceptions} thrown by the executor.
+   * {@linkplain RuntimeException runtime exceptions} thrown by the executor. Also used by
+   * {@link AbstractFuture}, which keeps its own list of listeners.
    */
-  private static void executeListener(Runnable runnable, Executor executor) {
+  static void executeListener(Runnable runnable, Executor executor) {
     try {
       executor.execute(runnable);
     } catch (RuntimeException e) {
@@ -22,6 +22,7 @@ import com.google.common.base.Preconditions;
 import com.google.common.base.Ticker;
 
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 
 import javax.annotation.concurrent.ThreadSafe;
 
@@ -206,6 +207,13 @@ public abstract class RateLimiter {
    * in that idle time). So, if rate == 1 permit per second, and arrivals come exactly
    * one second after the previous, then storedPermits is _never_ increased -- we would only
    * increase it for arrivals _later_ than the expected one second.
+   *
+   * All of the above (storedPermits, maxPermits, the stable interval and the time of the next
+   * free ticket) is kept in a single immutable State, which is replaced by compare-and-set. A
+   * request reads the state, then the time, computes its reservation and tries to install the
+   * resulting state; if another request (or setRate) got in first, it simply retries. This gives
+   * the same results as serializing all requests on a lock, without making concurrent callers
+   * queue up on one: the only shared write is the compare-and-set itself.
    */
 
   /**
@@ -335,28 +343,10 @@ public abstract class RateLimiter {
   private final long offsetNanos;
 
   /**
-   * The currently stored permits.
-   */
-  double storedPermits;
-
-  /**
-   * The maximum number of stored permits.
-   */
-  double maxPermits;
-
-  /**
-   * The interval between two unit requests, at our stable rate. E.g., a stable rate of 5 permits
-   * per second has a stable interval of 200ms.
+   * The current state; never null.
    */
-  volatile double stableIntervalMicros;
-
-  private final Object mutex = new Object();
-
-  /**
-   * The time when the next request (no matter its size) will be granted. After granting a request,
-   * this is pushed further in the future. Large requests push this further than small requests.
-   */
-  private long nextFreeTicketMicros = 0L; // could be either in the past or future
+  private final AtomicReference<State> state =
+      new AtomicReference<State>(new State(0L, 0.0, 0.0, 0.0));
 
   private RateLimiter(SleepingTicker ticker) {
     this.ticker = ticker;
@@ -384,15 +374,21 @@ public abstract class RateLimiter {
   public final void setRate(double permitsPerSecond) {
     Preconditions.checkArgument(permitsPerSecond > 0.0
         && !Double.isNaN(permitsPerSecond), "rate must be positive");
-    synchronized (mutex) {
-      resync(readSafeMicros());
-      double stableIntervalMicros = TimeUnit.SECONDS.toMicros(1L) / permitsPerSecond;
-      this.stableIntervalMicros = stableIntervalMicros;
-      doSetRate(permitsPerSecond, stableIntervalMicros);
+    double stableIntervalMicros = TimeUnit.SECONDS.toMicros(1L) / permitsPerSecond;
+    while (true) {
+      State current = state.get();
+      State updated = doSetRate(
+          resync(current, readSafeMicros()), permitsPerSecond, stableIntervalMicros);
+      if (state.compareAndSet(current, updated)) {
+        return;
+      }
     }
   }
 
-  abstract void doSetRate(double permitsPerSecond, double stableIntervalMicros);
+  /**
+   * Returns the state that results from changing the stable rate in the given (resynced) state.
+   */
+  abstract State doSetRate(State state, double permitsPerSecond, double stableIntervalMicros);
 
   /**
    * Returns the stable rate (as {@code permits per seconds}) with which this
@@ -402,7 +398,7 @@ public abstract class RateLimiter {
    * to {@linkplain #setRate}.
    */
   public final double getRate() {
-    return TimeUnit.SECONDS.toMicros(1L) / stableIntervalMicros;
+    return TimeUnit.SECONDS.toMicros(1L) / state.get().stableIntervalMicros;
   }
 
   /**
@@ -422,10 +418,7 @@ public abstract class RateLimiter {
    */
   public void acquire(int permits) {
     checkPermits(permits);
-    long microsToWait;
-    synchronized (mutex) {
-      microsToWait = reserveNextTicket(permits, readSafeMicros());
-    }
+    long microsToWait = reserve(permits, Long.MAX_VALUE);
     ticker.sleepMicrosUninterruptibly(microsToWait);
   }
 
@@ -487,14 +480,9 @@ public abstract class RateLimiter {
   public boolean tryAcquire(int permits, long timeout, TimeUnit unit) {
     long timeoutMicros = unit.toMicros(timeout);
     checkPermits(permits);
-    long microsToWait;
-    synchronized (mutex) {
-      long nowMicros = readSafeMicros();
-      if (nextFreeTicketMicros > nowMicros + timeoutMicros) {
-        return false;
-      } else {
-        microsToWait = reserveNextTicket(permits, nowMicros);
-      }
+    long microsToWait = reserve(permits, timeoutMicros);
+    if (microsToWait < 0) {
+      return false;
     }
     ticker.sleepMicrosUninterruptibly(microsToWait);
     return true;
@@ -505,20 +493,34 @@ public abstract class RateLimiter {
   }
 
   /**
-   * Reserves next ticket and returns the wait time that the caller must wait for.
+   * Reserves the next ticket, unless it would not be granted within {@code timeoutMicros}, and
+   * returns the time that the caller must wait for, or -1 if nothing was reserved.
    */
-  private long reserveNextTicket(double requiredPermits, long nowMicros) {
-    resync(nowMicros);
-    long microsToNextFreeTicket = nextFreeTicketMicros - nowMicros;
-    double storedPermitsToSpend = Math.min(requiredPermits, this.storedPermits);
-    double freshPermits = requiredPermits - storedPermitsToSpend;
-
-    long waitMicros = storedPermitsToWaitTime(this.storedPermits, storedPermitsToSpend)
-        + (long) (freshPermits * stableIntervalMicros);
-
-    this.nextFreeTicketMicros = nextFreeTicketMicros + waitMicros;
-    this.storedPermits -= storedPermitsToSpend;
-    return microsToNextFreeTicket;
+  private long reserve(int requiredPermits, long timeoutMicros) {
+    while (true) {
+      State current = state.get();
+      // Reading the time after the state makes it no earlier than the time seen by whoever
+      // installed that state, exactly as if both requests had been serialized on a lock.
+      long nowMicros = readSafeMicros();
+      if (current.nextFreeTicketMicros - nowMicros > timeoutMicros) {
+        return -1;
+      }
+      State resynced = resync(current, nowMicros);
+      long microsToNextFreeTicket = resynced.nextFreeTicketMicros - nowMicros;
+      double storedPermitsToSpend = Math.min(requiredPermits, resynced.storedPermits);
+      double freshPermits = requiredPermits - storedPermitsToSpend;
+
+      long waitMicros = storedPermitsToWaitTime(
+              resynced.storedPermits, storedPermitsToSpend, resynced.stableIntervalMicros)
+          + (long) (freshPermits * resynced.stableIntervalMicros);
+
+      State updated = new State(resynced.nextFreeTicketMicros + waitMicros,
+          resynced.storedPermits - storedPermitsToSpend, resynced.maxPermits,
+          resynced.stableIntervalMicros);
+      if (state.compareAndSet(current, updated)) {
+        return microsToNextFreeTicket;
+      }
+    }
   }
 
   /**
@@ -529,15 +531,17 @@ public abstract class RateLimiter {
    *
    * This always holds: {@code 0 <= permitsToTake <= storedPermits}
    */
-  abstract long storedPermitsToWaitTime(double storedPermits, double permitsToTake);
+  abstract long storedPermitsToWaitTime(
+      double storedPermits, double permitsToTake, double stableIntervalMicros);
 
-  private void resync(long nowMicros) {
+  private static State resync(State state, long nowMicros) {
     // if nextFreeTicket is in the past, resync to now
-    if (nowMicros > nextFreeTicketMicros) {
-      storedPermits = Math.min(maxPermits,
-          storedPermits + (nowMicros - nextFreeTicketMicros) / stableIntervalMicros);
-      nextFreeTicketMicros = nowMicros;
+    if (nowMicros > state.nextFreeTicketMicros) {
+      double storedPermits = Math.min(state.maxPermits, state.storedPermits
+          + (nowMicros - state.nextFreeTicketMicros) / state.stableIntervalMicros);
+      return new State(nowMicros, storedPermits, state.maxPermits, state.stableIntervalMicros);
     }
+    return state;
   }
 
   private long readSafeMicros() {
@@ -546,7 +550,44 @@ public abstract class RateLimiter {
 
   @Override
   public String toString() {
-    return String.format("RateLimiter[stableRate=%3.1fqps]", 1000000.0 / stableIntervalMicros);
+    return String.format(
+        "RateLimiter[stableRate=%3.1fqps]", 1000000.0 / state.get().stableIntervalMicros);
+  }
+
+  /**
+   * An immutable snapshot of the state of a {@code RateLimiter}.
+   */
+  static final class State {
+    /**
+     * The time when the next request (no matter its size) will be granted. After granting a
+     * request, this is pushed further in the future. Large requests push this further than small
+     * requests.
+     */
+    final long nextFreeTicketMicros; // could be either in the past or future
+
+    /**
+     * The currently stored permits.
+     */
+    final double storedPermits;
+
+    /**
+     * The maximum number of stored permits.
+     */
+    final double maxPermits;
+
+    /**
+     * The interval between two unit requests, at our stable rate. E.g., a stable rate of 5 permits
+     * per second has a stable interval of 200ms.
+     */
+    final double stableIntervalMicros;
+
+    State(long nextFreeTicketMicros, double storedPermits, double maxPermits,
+        double stableIntervalMicros) {
+      this.nextFreeTicketMicros = nextFreeTicketMicros;
+      this.storedPermits = storedPermits;
+      this.maxPermits = maxPermits;
+      this.stableIntervalMicros = stableIntervalMicros;
+    }
   }
 
   /**
@@ -627,12 +668,6 @@ public abstract class RateLimiter {
   private static class WarmingUp extends RateLimiter {
 
     final long warmupPeriodMicros;
-    /**
-     * The slope of the line from the stable interval (when permits == 0), to the cold interval
-     * (when permits == maxPermits)
-     */
-    private double slope;
-    private double halfPermits;
 
     WarmingUp(SleepingTicker ticker, long warmupPeriod, TimeUnit timeUnit) {
       super(ticker);
@@ -640,32 +675,40 @@ public abstract class RateLimiter {
     }
 
     @Override
-    void doSetRate(double permitsPerSecond, double stableIntervalMicros) {
-      double oldMaxPermits = maxPermits;
-      maxPermits = warmupPeriodMicros / stableIntervalMicros;
-      halfPermits = maxPermits / 2.0;
-      // Stable interval is x, cold is 3x, so on average it's 2x. Double the time -> halve the rate
-      double coldIntervalMicros = stableIntervalMicros * 3.0;
-      slope = (coldIntervalMicros - stableIntervalMicros) / halfPermits;
+    State doSetRate(State state, double permitsPerSecond, double stableIntervalMicros) {
+      double oldMaxPermits = state.maxPermits;
+      double maxPermits = maxPermits(stableIntervalMicros);
+      double storedPermits;
       if (oldMaxPermits == Double.POSITIVE_INFINITY) {
         // if we don't special-case this, we would get storedPermits == NaN, below
         storedPermits = 0.0;
       } else {
         storedPermits = (oldMaxPermits == 0.0)
             ? maxPermits // initial state is cold
-            : storedPermits * maxPermits / oldMaxPermits;
+            : state.storedPermits * maxPermits / oldMaxPermits;
       }
+      return new State(
+          state.nextFreeTicketMicros, storedPermits, maxPermits, stableIntervalMicros);
     }
 
     @Override
-    long storedPermitsToWaitTime(double storedPermits, double permitsToTake) {
+    long storedPermitsToWaitTime(
+        double storedPermits, double permitsToTake, double stableIntervalMicros) {
+      double halfPermits = maxPermits(stableIntervalMicros) / 2.0;
+      // Stable interval is x, cold is 3x, so on average it's 2x. Double the time -> halve the rate
+      double coldIntervalMicros = stableIntervalMicros * 3.0;
+      // The slope of the line from the stable interval (when permits == 0), to the cold interval
+      // (when permits == maxPermits)
+      double slope = (coldIntervalMicros - stableIntervalMicros) / halfPermits;
       double availablePermitsAboveHalf = storedPermits - halfPermits;
       long micros = 0;
       // measuring the integral on the right part of the function (the climbing line)
       if (availablePermitsAboveHalf > 0.0) {
         double permitsAboveHalfToTake = Math.min(availablePermitsAboveHalf, permitsToTake);
-        micros = (long) (permitsAboveHalfToTake * (permitsToTime(availablePermitsAboveHalf)
-            + permitsToTime(availablePermitsAboveHalf - permitsAboveHalfToTake)) / 2.0);
+        micros = (long) (permitsAboveHalfToTake
+            * (permitsToTime(availablePermitsAboveHalf, stableIntervalMicros, slope)
+                + permitsToTime(availablePermitsAboveHalf - permitsAboveHalfToTake,
+                    stableIntervalMicros, slope)) / 2.0);
         permitsToTake -= permitsAboveHalfToTake;
       }
       // measuring the integral on the left part of the function (the horizontal line)
@@ -673,7 +716,11 @@ public abstract class RateLimiter {
       return micros;
     }
 
-    private double permitsToTime(double permits) {
+    private double maxPermits(double stableIntervalMicros) {
+      return warmupPeriodMicros / stableIntervalMicros;
+    }
+
+    private static double permitsToTime(double permits, double stableIntervalMicros, double slope) {
       return stableIntervalMicros + permits * slope;
     }
   }
@@ -694,16 +741,19 @@ public abstract class RateLimiter {
     }
 
     @Override
-    void doSetRate(double permitsPerSecond, double stableIntervalMicros) {
-      double oldMaxPermits = this.maxPermits;
-      maxPermits = maxBurstSeconds * permitsPerSecond;
-      storedPermits = (oldMaxPermits == 0.0)
+    State doSetRate(State state, double permitsPerSecond, double stableIntervalMicros) {
+      double oldMaxPermits = state.maxPermits;
+      double maxPermits = maxBurstSeconds * permitsPerSecond;
+      double storedPermits = (oldMaxPermits == 0.0)
           ? 0.0 // initial state
-          : storedPermits * maxPermits / oldMaxPermits;
+          : state.storedPermits * maxPermits / oldMaxPermits;
+      return new State(
+          state.nextFreeTicketMicros, storedPermits, maxPermits, stableIntervalMicros);
     }
 
     @Override
-    long storedPermitsToWaitTime(double storedPermits, double permitsToTake) {
+    long storedPermitsToWaitTime(
+        double storedPermits, double permitsToTake, double stableIntervalMicros) {
       return 0L;
     }
   }